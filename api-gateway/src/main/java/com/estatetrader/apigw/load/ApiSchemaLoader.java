@@ -1,9 +1,13 @@
 package com.estatetrader.apigw.load;
 
+import com.estatetrader.apigw.core.contracts.MetricsSource;
 import com.estatetrader.apigw.core.contracts.ServiceInstance;
 import com.estatetrader.apigw.core.extensions.Extensions;
+import com.estatetrader.apigw.core.features.ServiceIsolationFeature;
 import com.estatetrader.apigw.core.models.*;
 import com.estatetrader.apigw.core.phases.parsing.ApiParser;
+import com.estatetrader.apigw.core.services.ApiClassLoaders;
+import com.estatetrader.apigw.core.services.ApiSchemaHolder;
 import com.estatetrader.rule.definition.ApiDefinitionManager;
 import com.estatetrader.rule.definition.ApiInfo;
 import com.estatetrader.rule.definition.ApiParamInfo;
@@ -18,59 +22,218 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Service;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
-
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 加载API jar包并生成ApiSchema
+ *
+ * 启用热加载（gateway.api-jars.hot-reload.enabled）后，每次加载时将jar包复制到独立的目录并使用新的子类加载器加载，
+ * 新的ApiSchema在解析和校验通过后原子地替换旧的ApiSchema，正在处理的请求继续使用旧的ApiSchema，
+ * 旧的类加载器和dubbo引用在这些请求全部结束后关闭。加载失败时继续使用旧的ApiSchema。
+ * 新的ApiSchema发布后，dubbo客户端线程的上下文类加载器切换为新的类加载器，以便hessian2反序列化API中的类（见ApiClassLoaders）。
+ * 重新加载（包括手动触发和jar包目录的定期检查）在独立的单线程中依次执行，不占用请求处理线程
+ */
 @Service
-public class ApiSchemaLoader {
+public class ApiSchemaLoader implements MetricsSource, Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ApiSchemaLoader.class);
 
+    private final ApiDefinitionManager apiDefinitionManager;
     private final ApiParser apiParser;
-    private final ApiSchema apiSchema;
+    private final ServiceIsolationFeature.Config serviceIsolation;
+    private final Extensions<ShippedService> shippedServices;
+    private final File apiJarDirectory;
+    private final boolean hotReloadEnabled;
+    private final ApiSchemaHolder schemaHolder;
+    /**
+     * 各代API jar包的类加载器，未启用热加载时为null
+     */
+    private final ApiClassLoaders apiClassLoaders;
+    private final List<RegistryConfig> registryConfigList;
+    private final ConsumerConfig consumer;
     private final String registryUrl;
     private final int dubboConsumerThreads;
     private final String dubboConsumerThreadPool;
     private final int dubboConsumerQueues;
+    private final int dubboCallTimeout;
+    private final int apiJarsParseParallelism;
+
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder reloadFailures = new LongAdder();
+    private volatile long lastReloadMillis;
+    private volatile String lastReloadError;
+    /**
+     * 执行重新加载的线程，未启用热加载时为null
+     */
+    private final ScheduledExecutorService reloadExecutor;
+    private volatile ApiJarsWatcher watcher;
 
     public ApiSchemaLoader(
         @Autowired(required = false) ApiDefinitionManager apiDefinitionManager,
         ApiParser apiParser,
+        ServiceIsolationFeature.Config serviceIsolation,
         Extensions<ShippedService> shippedServices,
         @Value("${gateway.api-jars.path}") String apiJarsPath,
+        @Value("${gateway.api-jars.parse-parallelism:0}") int apiJarsParseParallelism,
+        @Value("${gateway.api-jars.hot-reload.enabled:false}") boolean hotReloadEnabled,
+        @Value("${gateway.api-jars.hot-reload.watch-interval:0}") long watchInterval,
         @Value("${gateway.application.name}") String applicationName,
         @Value("${dubbo.registry.url}") String registryUrl,
         @Value("${com.estatetrader.apigw.dubboConsumerThreads:8}") int dubboConsumerThreads,
         @Value("${com.estatetrader.apigw.dubboConsumerThreadPool:cached}") String dubboConsumerThreadPool,
         @Value("${com.estatetrader.apigw.dubboConsumerQueues:5000}") int dubboConsumerQueues,
+        @Value("${com.estatetrader.apigw.dubboCallTimeout:0}") int dubboCallTimeout,
         @Value("${com.estatetrader.dubbo.serialization:hessian2}") String serializationMethod) throws IOException {
 
+        this.apiDefinitionManager = apiDefinitionManager;
         this.apiParser = apiParser;
+        this.serviceIsolation = serviceIsolation;
+        this.shippedServices = shippedServices;
+        this.apiJarDirectory = new File(apiJarsPath);
+        this.hotReloadEnabled = hotReloadEnabled;
         this.registryUrl = registryUrl;
         this.dubboConsumerThreads = dubboConsumerThreads;
         this.dubboConsumerThreadPool = dubboConsumerThreadPool;
         this.dubboConsumerQueues = dubboConsumerQueues;
+        this.dubboCallTimeout = dubboCallTimeout;
+        this.apiJarsParseParallelism = apiJarsParseParallelism > 0 ?
+            apiJarsParseParallelism : Runtime.getRuntime().availableProcessors();
+        this.apiClassLoaders = hotReloadEnabled ? new ApiClassLoaders(getClass().getClassLoader()) : null;
+
+        ApplicationConfig application = new ApplicationConfig();
+        application.setName(applicationName);
+        application.setParameters(new HashMap<>());
+        application.getParameters().put("serialization", serializationMethod);
+        ApplicationModel.getConfigManager().setApplication(application);
+
+        // 连接注册中心配置
+        this.registryConfigList = getRegistryConfigs();
+        this.consumer = prepareConsumerConfig(new ServiceIsolationFeature.ConsumerSettings());
+
+        List<AutoCloseable> resources = new ArrayList<>();
+        ApiSchema schema;
+        try {
+            schema = loadSchema(resources);
+        } catch (RuntimeException | IOException e) {
+            closeAll(resources);
+            throw e;
+        }
+        this.schemaHolder = new ApiSchemaHolder(schema, resources);
+        if (apiClassLoaders != null) {
+            apiClassLoaders.activateLatest();
+        }
+        onSchemaLoaded(schema);
+
+        this.reloadExecutor = hotReloadEnabled ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "api-schema-reloader");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+        if (hotReloadEnabled && watchInterval > 0) {
+            this.watcher = new ApiJarsWatcher(watchInterval);
+        }
+    }
+
+    /**
+     * 在重新加载线程中重新加载API jar包，参见{@link #reload()}
+     *
+     * @return 在加载结束后完成，其值为新的ApiSchema的版本号；加载失败时以reload抛出的异常结束
+     */
+    public CompletableFuture<Integer> reloadAsync() {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        if (reloadExecutor == null) {
+            future.completeExceptionally(new IllegalStateException("hot reload of api jars is disabled"));
+            return future;
+        }
+        try {
+            reloadExecutor.execute(() -> {
+                try {
+                    future.complete(reload());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 网关正在关闭
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 重新加载API jar包，新的ApiSchema解析和校验通过后替换当前的ApiSchema
+     *
+     * @return 新的ApiSchema的版本号
+     * @throws IOException 读取jar包失败
+     * @throws IllegalStateException 未启用热加载
+     * @throws com.estatetrader.define.IllegalApiDefinitionException API定义有误，继续使用旧的ApiSchema
+     */
+    public synchronized int reload() throws IOException {
+        if (!hotReloadEnabled) {
+            throw new IllegalStateException("hot reload of api jars is disabled");
+        }
+
+        long start = System.currentTimeMillis();
+        List<AutoCloseable> resources = new ArrayList<>();
+        ApiSchema schema;
+        try {
+            schema = loadSchema(resources);
+        } catch (RuntimeException | IOException e) {
+            closeAll(resources);
+            reloadFailures.increment();
+            lastReloadError = e.getMessage();
+            LOGGER.error("failed to reload api jars, the current api schema is kept", e);
+            throw e;
+        }
+
+        ApiSchemaHolder.Generation generation = schemaHolder.publish(schema, resources);
+        apiClassLoaders.activateLatest();
+        onSchemaLoaded(schema);
 
+        reloads.increment();
+        lastReloadMillis = System.currentTimeMillis() - start;
+        lastReloadError = null;
+        LOGGER.info("api schema generation {} with {} apis is published in {}ms",
+            generation.version, schema.apiInfoMap.size(), lastReloadMillis);
+        return generation.version;
+    }
+
+    private ApiSchema loadSchema(List<AutoCloseable> resources) throws IOException {
         ApiSchema schema = new ApiSchema();
 
         apiParser.parseCommonInfo(schema);
 
         //加载业务接口
-        List<ApiMethodInfo> apisInJars = loadApiJars(apiJarsPath, applicationName, serializationMethod);
+        List<ApiMethodInfo> apisInJars = loadApiJars(resources);
         apiParser.register(apisInJars, schema);
 
         // 加载网关内置的API
@@ -82,7 +245,10 @@ public class ApiSchemaLoader {
 
         apiParser.process(schema);
         apiParser.verify(schema);
+        return schema;
+    }
 
+    private void onSchemaLoaded(ApiSchema schema) {
         if (apiDefinitionManager != null) {
             // 异步化api同步任务，以提高启动速度，api信息不应阻塞启动过程
             List<ApiInfo> apiInfos = Lambda.map(schema.getApiInfoList(), ApiSchemaLoader::convertToApiInfo);
@@ -96,8 +262,6 @@ public class ApiSchemaLoader {
             });
         }
 
-        this.apiSchema = schema;
-
         for (ShippedService s : shippedServices) {
             if (s instanceof ShippedService.ApiSchemaAware) {
                 ((ShippedService.ApiSchemaAware) s).setApiSchema(schema);
@@ -128,19 +292,68 @@ public class ApiSchemaLoader {
         return result;
     }
 
-    @Bean
+    /**
+     * @return 当前生效的ApiSchema
+     */
     public ApiSchema getApiSchema() {
-        return apiSchema;
+        return schemaHolder.current();
     }
 
-    private ConsumerConfig prepareConsumerConfig() {
+    /**
+     * 获取当前生效的ApiSchema用于处理请求，请求结束后须调用release，在此之前旧的ApiSchema占用的资源不会被关闭
+     */
+    public ApiSchemaHolder.Generation acquireApiSchema() {
+        return schemaHolder.acquire();
+    }
+
+    @Override
+    public String metricsName() {
+        return "api-schema";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("hotReloadEnabled", hotReloadEnabled);
+        metrics.put("version", schemaHolder.currentVersion());
+        metrics.put("apis", schemaHolder.current().apiInfoMap.size());
+        metrics.put("liveGenerations", schemaHolder.liveGenerations());
+        metrics.put("reloads", reloads.sum());
+        metrics.put("reloadFailures", reloadFailures.sum());
+        metrics.put("lastReloadMillis", lastReloadMillis);
+        metrics.put("lastReloadError", lastReloadError);
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        ApiJarsWatcher w = watcher;
+        if (w != null) {
+            w.close();
+        }
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 生成消费者配置，settings中未指定的项使用全局配置
+     */
+    private ConsumerConfig prepareConsumerConfig(ServiceIsolationFeature.ConsumerSettings settings) {
         ConsumerConfig consumer = new ConsumerConfig();
 
         Map<String, String> consumerParams = new HashMap<>();
-        consumerParams.put(CommonConstants.THREADS_KEY, String.valueOf(dubboConsumerThreads));
-        consumerParams.put(CommonConstants.THREADPOOL_KEY, dubboConsumerThreadPool);
-        consumerParams.put(CommonConstants.QUEUES_KEY, String.valueOf(dubboConsumerQueues));
+        consumerParams.put(CommonConstants.THREADS_KEY,
+            String.valueOf(settings.threads > 0 ? settings.threads : dubboConsumerThreads));
+        consumerParams.put(CommonConstants.THREADPOOL_KEY,
+            settings.threadPool != null ? settings.threadPool : dubboConsumerThreadPool);
+        consumerParams.put(CommonConstants.QUEUES_KEY,
+            String.valueOf(settings.queues >= 0 ? settings.queues : dubboConsumerQueues));
         consumer.setParameters(consumerParams);
+        int timeout = settings.timeout > 0 ? settings.timeout : dubboCallTimeout;
+        if (timeout > 0) {
+            consumer.setTimeout(timeout);
+        }
         return consumer;
     }
 
@@ -156,20 +369,58 @@ public class ApiSchemaLoader {
         return registryConfigList;
     }
 
-    private List<ApiMethodInfo> loadApiJars(String apiJarsPath, String applicationName, String serializationMethod)
-        throws IOException {
+    private List<ApiMethodInfo> loadApiJars(List<AutoCloseable> resources) throws IOException {
+        File[] files = listApiJars();
 
-        File apiJarDirectory = new File(apiJarsPath);
-        ApplicationConfig application = new ApplicationConfig();
-        application.setName(applicationName);
-        application.setParameters(new HashMap<>());
-        application.getParameters().put("serialization", serializationMethod);
-        ApplicationModel.getConfigManager().setApplication(application);
+        ClassLoader classLoader;
+        List<String> fileNames = new ArrayList<>(files.length);
+        if (hotReloadEnabled) {
+            // 复制jar包，使加载完成后jar包目录中的文件可以被替换，而旧的类加载器仍然可以从副本中加载尚未加载的类
+            Path copyDirectory = Files.createTempDirectory("api-jars-");
+            resources.add(() -> deleteDirectory(copyDirectory));
+            URL[] urls = new URL[files.length];
+            for (int i = 0; i < files.length; i++) {
+                Path copy = copyDirectory.resolve(files[i].getName());
+                Files.copy(files[i].toPath(), copy);
+                urls[i] = copy.toUri().toURL();
+                fileNames.add(copy.toString());
+            }
+            URLClassLoader childClassLoader = new URLClassLoader(urls, getClass().getClassLoader());
+            resources.add(childClassLoader);
+            // 在类加载器关闭之前将仍然使用它的线程切换到当前的一代
+            resources.add(apiClassLoaders.add(childClassLoader));
+            classLoader = childClassLoader;
+        } else {
+            classLoader = getClass().getClassLoader();
+            for (File file : files) {
+                ClassLoaderUtil.addUrlToClassLoader(classLoader, file.toURI().toURL());
+                fileNames.add(file.getPath());
+            }
+        }
 
-        // 连接注册中心配置
-        List<RegistryConfig> registryConfigList = getRegistryConfigs();
-        ConsumerConfig consumer = prepareConsumerConfig();
+        // 这一代的ApiSchema中的API所使用的dubbo引用，在这一代被替换并且请求全部结束后销毁
+        DubboReferences references = new DubboReferences();
+        resources.add(references);
 
+        // 各个jar包并行解析，instanceGetter会被并发调用
+        Map<Class<?>, ServiceInstance> instanceMap = new ConcurrentHashMap<>();
+        Function<Class<?>, ServiceInstance> instanceCreator = clazz -> new LazyServiceInstance(
+            () -> loadInterface(references, clazz));
+
+        Function<Class<?>, ServiceInstance> instanceGetter =
+            clazz -> instanceMap.computeIfAbsent(clazz, instanceCreator);
+
+        List<ApiMethodInfo> apis = apiParser.parseJars(instanceGetter, fileNames, classLoader, apiJarsParseParallelism);
+        for (ApiMethodInfo info : apis) {
+            // 未通过@ApiDubboConsumer或者网关配置为服务指定超时时间时使用全局配置
+            if (info.apiMethodType == ApiMethodType.DUBBO && info.timeout <= 0) {
+                info.timeout = dubboCallTimeout;
+            }
+        }
+        return apis;
+    }
+
+    private File[] listApiJars() {
         // 确定需要加载的jar文件
         if (!apiJarDirectory.exists() || !apiJarDirectory.isDirectory()) {
             throw new IllegalArgumentException("invalid api jar directory: " + apiJarDirectory.getAbsolutePath());
@@ -179,29 +430,37 @@ public class ApiSchemaLoader {
         if (files == null) {
             throw new IllegalArgumentException("invalid api jar folder: " + apiJarDirectory.getAbsolutePath());
         }
+        // listFiles返回的顺序与文件系统有关，排序后API的注册顺序在各个环境中保持一致
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        return files;
+    }
 
-        ClassLoader classLoader = getClass().getClassLoader();
-
-        List<String> fileNames = new ArrayList<>(files.length);
-        for (File file : files) {
-            ClassLoaderUtil.addUrlToClassLoader(classLoader, file.toURI().toURL());
-            fileNames.add(file.getPath());
+    private static void deleteDirectory(Path directory) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            paths = stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
         }
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
 
-        Map<Class<?>, ServiceInstance> instanceMap = new HashMap<>();
-        Function<Class<?>, ServiceInstance> instanceCreator = clazz -> new LazyServiceInstance(
-            () -> loadInterface(registryConfigList, consumer, clazz));
-
-        Function<Class<?>, ServiceInstance> instanceGetter =
-            clazz -> instanceMap.computeIfAbsent(clazz, instanceCreator);
-
-        return apiParser.parseJars(instanceGetter, fileNames, classLoader);
+    private static void closeAll(List<AutoCloseable> resources) {
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            try {
+                resources.get(i).close();
+            } catch (Exception e) {
+                LOGGER.warn("failed to close {}", resources.get(i), e);
+            }
+        }
     }
 
-    private Object loadInterface(List<RegistryConfig> registryConfigList,
-                                 ConsumerConfig consumer,
-                                 Class<?> clazz) {
-        ReferenceConfig<?> reference = createReferenceConfig(registryConfigList, consumer, clazz);
+    private Object loadInterface(DubboReferences references, Class<?> clazz) {
+        ServiceIsolationFeature.ConsumerSettings settings = serviceIsolation.consumerSettings(clazz);
+        // 指定了独立线程池配置的服务使用独立的消费者配置，其余的服务共享全局的消费者配置
+        ConsumerConfig consumerConfig = settings.hasThreadPoolSettings() ? prepareConsumerConfig(settings) : consumer;
+        ReferenceConfig<?> reference = createReferenceConfig(registryConfigList, consumerConfig, settings, clazz);
+        references.add(reference);
         Object service = reference.get(); // 注意：此代理对象内部封装了所有通讯细节，对象较重，请缓存复用
         if (service == null) {
             throw new IllegalStateException("cannot find dubbo service for " + clazz.getName());
@@ -212,6 +471,7 @@ public class ApiSchemaLoader {
 
     private ReferenceConfig<?> createReferenceConfig(List<RegistryConfig> registryConfigList,
                                                      ConsumerConfig consumer,
+                                                     ServiceIsolationFeature.ConsumerSettings settings,
                                                      Class<?> clazz) {
 
         // 注意：ReferenceConfig为重对象，内部封装了与注册中心的连接，以及与服务提供方的连接
@@ -229,10 +489,99 @@ public class ApiSchemaLoader {
         reference.setConsumer(consumer);
         // 和本地bean一样使用xxxService
         reference.setRetries(0);
+        if (settings.timeout > 0) {
+            reference.setTimeout(settings.timeout);
+        }
+        if (settings.connections > 0) {
+            reference.setConnections(settings.connections);
+        }
+        if (settings.loadBalance != null) {
+            reference.setLoadbalance(settings.loadBalance);
+        }
 
         return reference;
     }
 
+    /**
+     * 一代ApiSchema所创建的dubbo引用
+     */
+    private static class DubboReferences implements AutoCloseable {
+        private final List<ReferenceConfig<?>> references = new ArrayList<>();
+        private boolean closed;
+
+        void add(ReferenceConfig<?> reference) {
+            synchronized (this) {
+                if (!closed) {
+                    references.add(reference);
+                    return;
+                }
+            }
+            // 旧的一代已经关闭后才创建的引用（请求结束之后才触发的延迟创建）立即销毁
+            reference.destroy();
+        }
+
+        @Override
+        public void close() {
+            List<ReferenceConfig<?>> list;
+            synchronized (this) {
+                closed = true;
+                list = new ArrayList<>(references);
+                references.clear();
+            }
+            for (ReferenceConfig<?> reference : list) {
+                try {
+                    reference.destroy();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("failed to destroy dubbo reference of {}", reference.getInterface(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 定期检查jar包目录，jar包的名称、大小或修改时间发生变化并且在一个检查周期内保持不变后重新加载
+     */
+    private class ApiJarsWatcher implements Closeable {
+        private final ScheduledFuture<?> task;
+        private String lastSeen;
+        private String loaded;
+
+        ApiJarsWatcher(long interval) {
+            this.loaded = this.lastSeen = fingerprint();
+            // 与手动触发的重新加载在同一个线程中执行
+            this.task = reloadExecutor.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        private String fingerprint() {
+            StringBuilder sb = new StringBuilder();
+            for (File file : listApiJars()) {
+                sb.append(file.getName()).append(':').append(file.length()).append(':')
+                    .append(file.lastModified()).append('\n');
+            }
+            return sb.toString();
+        }
+
+        private void check() {
+            try {
+                String current = fingerprint();
+                // 等待复制完成，连续两次检查的结果一致时才加载
+                if (current.equals(lastSeen) && !current.equals(loaded)) {
+                    loaded = current;
+                    LOGGER.info("api jars are changed, reloading");
+                    reload();
+                }
+                lastSeen = current;
+            } catch (Exception e) {
+                LOGGER.error("failed to check or reload the api jars", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            task.cancel(false);
+        }
+    }
+
     private static class ClassLoaderUtil {
         private static final Method CLASS_LOADER_ADD_URL_METHOD;
 
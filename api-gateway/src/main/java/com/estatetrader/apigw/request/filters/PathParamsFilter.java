@@ -22,8 +22,7 @@ public class PathParamsFilter implements GatewayRequestFilter {
      */
     @Override
     public void filter(GatewayRequest request, GatewayResponse response, FilterChain chain) {
-        String path = request.getPath();
-        String[] parts = path.split("/");
+        String[] parts = request.getPathSegments();
         if (parts.length < 4) {
             chain.next(request, response);
             return;
@@ -32,14 +31,20 @@ public class PathParamsFilter implements GatewayRequestFilter {
         request.setParameter("_mt", method);
         for (int i = 3; i < parts.length; i++) {
             String name = "$p" + (i - 3);
-            String value;
-            try {
-                value = URLDecoder.decode(parts[i], StandardCharsets.UTF_8.name());
-            } catch (UnsupportedEncodingException e) {
-                throw new IllegalStateException(e);
-            }
-            request.setParameter(name, value);
+            request.setParameter(name, decode(parts[i]));
         }
         chain.next(request, response);
     }
+
+    private static String decode(String part) {
+        // 不含有转义字符时URLDecoder.decode的结果与原值相同
+        if (part.indexOf('%') < 0 && part.indexOf('+') < 0) {
+            return part;
+        }
+        try {
+            return URLDecoder.decode(part, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
\ No newline at end of file
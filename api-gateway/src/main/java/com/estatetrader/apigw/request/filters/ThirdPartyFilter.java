@@ -17,10 +17,10 @@ public class ThirdPartyFilter implements GatewayRequestFilter {
      */
     @Override
     public void filter(GatewayRequest request, GatewayResponse response, FilterChain chain) {
-        String path = request.getPath();
-        //第三方回调接口格式为'/#{apiName}.api'
-        int index = path.lastIndexOf('/') + 1;
-        String method = path.substring(index, path.length() - 4);
+        //第三方回调接口格式为'/#{apiName}.api'，url pattern保证了路径不以'/'结尾
+        String[] parts = request.getPathSegments();
+        String last = parts[parts.length - 1];
+        String method = last.substring(0, last.length() - 4);
         request.setParameter("_mt", method);
         chain.next(request, response);
     }
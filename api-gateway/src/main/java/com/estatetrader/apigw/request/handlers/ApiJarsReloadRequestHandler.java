@@ -0,0 +1,82 @@
+package com.estatetrader.apigw.request.handlers;
+
+import com.alibaba.fastjson.JSON;
+import com.estatetrader.apigw.core.contracts.GatewayRequest;
+import com.estatetrader.apigw.core.contracts.GatewayResponse;
+import com.estatetrader.apigw.load.ApiSchemaLoader;
+import com.estatetrader.apigw.request.GatewayRequestHandler;
+import com.estatetrader.apigw.request.RequestHandler;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 重新加载API jar包目录中的jar包，新的API在解析和校验通过后生效，正在处理的请求不受影响
+ *
+ * 需要启用gateway.api-jars.hot-reload.enabled，仅允许内网环境（携带X-INTERNAL-ENVIRONMENT-TOKEN请求头）调用。
+ * 加载在ApiSchemaLoader的重新加载线程中执行，加载结束后返回新的版本号以及api-schema指标
+ */
+@RequestHandler(handlerName = "api-jars-reload-request", urlPatterns = "/apigw/api-jars/reload", methods = "POST")
+public class ApiJarsReloadRequestHandler implements GatewayRequestHandler {
+
+    private static final String INTERNAL_ENVIRONMENT_TOKEN_HEADER = "X-INTERNAL-ENVIRONMENT-TOKEN";
+
+    private final ApiSchemaLoader schemaLoader;
+    private final boolean hotReloadEnabled;
+    private final String internalEnvironmentToken;
+
+    public ApiJarsReloadRequestHandler(ApiSchemaLoader schemaLoader,
+                                       @Value("${gateway.api-jars.hot-reload.enabled:false}") boolean hotReloadEnabled,
+                                       @Value("${com.estatetrader.apigw.internalEnvironmentToken}") String internalEnvironmentToken) {
+        this.schemaLoader = schemaLoader;
+        this.hotReloadEnabled = hotReloadEnabled;
+        this.internalEnvironmentToken = internalEnvironmentToken;
+    }
+
+    /**
+     * 处理请求
+     *
+     * @param request  请求
+     * @param response 响应
+     * @return 表示处理结束的future，返回null表示处理结果同步完成
+     */
+    @Override
+    public CompletableFuture<Void> handle(GatewayRequest request, GatewayResponse response) throws IOException {
+        response.setContentType("application/json; charset=utf-8");
+        if (!hotReloadEnabled) {
+            response.setStatus(403, "Forbidden");
+            JSON.writeJSONString(response.getOutputStream(), Collections.singletonMap("error", "hot reload of api jars is disabled"));
+            return null;
+        }
+
+        String token = request.getHeader(INTERNAL_ENVIRONMENT_TOKEN_HEADER);
+        if (token == null || !token.equals(internalEnvironmentToken)) {
+            response.setStatus(403, "Forbidden");
+            JSON.writeJSONString(response.getOutputStream(), Collections.singletonMap("error", "internal environment only"));
+            return null;
+        }
+
+        return schemaLoader.reloadAsync().handle((version, throwable) -> {
+            Map<String, Object> result = new LinkedHashMap<>();
+            if (throwable == null) {
+                result.put("version", version);
+            } else {
+                // 加载失败时继续使用旧的API
+                response.setStatus(500, "Internal Server Error");
+                result.put("error", throwable.getMessage());
+            }
+            result.putAll(schemaLoader.metrics());
+            try {
+                JSON.writeJSONString(response.getOutputStream(), result);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+}
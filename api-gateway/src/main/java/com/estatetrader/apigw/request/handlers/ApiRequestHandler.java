@@ -2,8 +2,9 @@ package com.estatetrader.apigw.request.handlers;
 
 import com.estatetrader.apigw.core.contracts.GatewayRequest;
 import com.estatetrader.apigw.core.contracts.GatewayResponse;
-import com.estatetrader.apigw.core.models.ApiSchema;
 import com.estatetrader.apigw.core.phases.executing.RequestExecutor;
+import com.estatetrader.apigw.core.services.ApiSchemaHolder;
+import com.estatetrader.apigw.load.ApiSchemaLoader;
 import com.estatetrader.apigw.request.RequestHandler;
 import com.estatetrader.apigw.request.GatewayRequestHandler;
 
@@ -16,11 +17,11 @@ import java.util.concurrent.CompletableFuture;
 public class ApiRequestHandler implements GatewayRequestHandler {
 
     private final RequestExecutor executor;
-    private final ApiSchema apiSchema;
+    private final ApiSchemaLoader schemaLoader;
 
-    public ApiRequestHandler(RequestExecutor executor, ApiSchema apiSchema) {
+    public ApiRequestHandler(RequestExecutor executor, ApiSchemaLoader schemaLoader) {
         this.executor = executor;
-        this.apiSchema = apiSchema;
+        this.schemaLoader = schemaLoader;
     }
 
     /**
@@ -32,6 +33,20 @@ public class ApiRequestHandler implements GatewayRequestHandler {
      */
     @Override
     public CompletableFuture<Void> handle(GatewayRequest request, GatewayResponse response) {
-        return executor.execute(request, response, apiSchema);
+        // 请求结束前持有其使用的ApiSchema，ApiSchema被热加载替换后旧的类加载器和dubbo引用等待请求结束后才关闭
+        ApiSchemaHolder.Generation generation = schemaLoader.acquireApiSchema();
+        CompletableFuture<Void> future;
+        try {
+            future = executor.execute(request, response, generation.schema);
+        } catch (RuntimeException | Error e) {
+            generation.release();
+            throw e;
+        }
+        if (future == null) {
+            generation.release();
+            return null;
+        }
+        future.whenComplete((r, e) -> generation.release());
+        return future;
     }
 }
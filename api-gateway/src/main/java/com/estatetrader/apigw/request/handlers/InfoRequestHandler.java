@@ -45,7 +45,8 @@ public class InfoRequestHandler implements GatewayRequestHandler {
     private final boolean infoApiEnabled;
     private final List<String> externalDocUrls;
 
-    private final DocumentFrame internalDocumentFrame;
+    private final ApiSchemaLoader schemaLoader;
+    private volatile DocumentFrame internalDocumentFrame;
     private final AtomicReference<DocumentFrame> mergedDocumentFrameCache;
     private final CloseableHttpClient httpClient;
 
@@ -64,8 +65,9 @@ public class InfoRequestHandler implements GatewayRequestHandler {
                 }
             }
         }
+        this.schemaLoader = schemaLoader;
         ApiDocument internalDoc = schemaLoader.getApiSchema().document;
-        this.internalDocumentFrame = new DocumentFrame(internalDoc, System.currentTimeMillis());
+        this.internalDocumentFrame = new DocumentFrame(internalDoc, System.currentTimeMillis(), internalDoc);
         this.mergedDocumentFrameCache = new AtomicReference<>();
         this.httpClient = HttpClientBuilder.create().build();
     }
@@ -107,7 +109,7 @@ public class InfoRequestHandler implements GatewayRequestHandler {
                 return null;
             }
         } else {
-            frame = internalDocumentFrame;
+            frame = internalDocumentFrame();
         }
 
         String method = request.getParameter("_mt");
@@ -130,13 +132,27 @@ public class InfoRequestHandler implements GatewayRequestHandler {
         return null;
     }
 
+    /**
+     * API jar包被热加载后重新生成文档
+     */
+    private DocumentFrame internalDocumentFrame() {
+        DocumentFrame frame = internalDocumentFrame;
+        ApiDocument internalDoc = schemaLoader.getApiSchema().document;
+        if (frame.source != internalDoc) {
+            frame = new DocumentFrame(internalDoc, System.currentTimeMillis(), internalDoc);
+            internalDocumentFrame = frame;
+        }
+        return frame;
+    }
+
     private DocumentFrame checkAndGetMergedDocumentFrameCache() {
+        DocumentFrame internal = internalDocumentFrame();
         if (externalDocUrls.isEmpty()) {
-            return internalDocumentFrame;
+            return internal;
         }
         long now = System.currentTimeMillis();
         DocumentFrame cache = mergedDocumentFrameCache.get();
-        if (cache != null && now <= cache.createTime + CACHE_EXPIRE_WINDOW) {
+        if (cache != null && cache.source == internal.source && now <= cache.createTime + CACHE_EXPIRE_WINDOW) {
             return cache;
         }
         mergedDocumentFrameCache.set(generateMergedDocumentFrame());
@@ -144,13 +160,14 @@ public class InfoRequestHandler implements GatewayRequestHandler {
     }
 
     private DocumentFrame generateMergedDocumentFrame() {
-        ApiDocument doc = generateMergedDocument();
-        return new DocumentFrame(doc, System.currentTimeMillis());
+        ApiDocument internalDoc = internalDocumentFrame().document;
+        ApiDocument doc = generateMergedDocument(internalDoc);
+        return new DocumentFrame(doc, System.currentTimeMillis(), internalDoc);
     }
 
-    private ApiDocument generateMergedDocument() {
+    private ApiDocument generateMergedDocument(ApiDocument internalDoc) {
         ApiDocument doc = new ApiDocument();
-        doc.merge(internalDocumentFrame.document);
+        doc.merge(internalDoc);
         for (String externalDocUrl : externalDocUrls) {
             ApiDocument externalDoc = loadExternalDocument(externalDocUrl);
             doc.merge(externalDoc);
@@ -191,9 +208,12 @@ public class InfoRequestHandler implements GatewayRequestHandler {
         final byte[] serialized;
         final String etag;
         final long createTime;
+        // 生成此文档所依据的网关内部文档
+        final ApiDocument source;
 
-        public DocumentFrame(ApiDocument document, long createTime) {
+        public DocumentFrame(ApiDocument document, long createTime, ApiDocument source) {
             this.document = document;
+            this.source = source;
             this.serialized =  serializeAndCompress(document);
             this.etag = Md5Util.computeToBase64(this.serialized);
             this.createTime = createTime;
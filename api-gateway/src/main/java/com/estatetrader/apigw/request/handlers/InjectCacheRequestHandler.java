@@ -0,0 +1,76 @@
+package com.estatetrader.apigw.request.handlers;
+
+import com.alibaba.fastjson.JSON;
+import com.estatetrader.apigw.core.contracts.GatewayRequest;
+import com.estatetrader.apigw.core.contracts.GatewayResponse;
+import com.estatetrader.apigw.core.features.ResponseFilterFeature;
+import com.estatetrader.apigw.request.GatewayRequestHandler;
+import com.estatetrader.apigw.request.RequestHandler;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 删除返回值注入provider的缓存，用于provider的数据发生变更后使缓存立即失效
+ *
+ * 参数provider: provider名称，缺省表示所有的provider
+ * 参数key: 需要删除的datum key，可以指定多个，缺省表示删除所有的key
+ *
+ * 仅允许内网环境（携带X-INTERNAL-ENVIRONMENT-TOKEN请求头）调用
+ */
+@RequestHandler(handlerName = "inject-cache-request", urlPatterns = "/apigw/inject-cache/invalidate", methods = "POST")
+public class InjectCacheRequestHandler implements GatewayRequestHandler {
+
+    private static final String INTERNAL_ENVIRONMENT_TOKEN_HEADER = "X-INTERNAL-ENVIRONMENT-TOKEN";
+
+    private final ResponseFilterFeature.Config config;
+    private final boolean adminEnabled;
+    private final String internalEnvironmentToken;
+
+    public InjectCacheRequestHandler(ResponseFilterFeature.Config config,
+                                     @Value("${gateway.inject-cache.admin.enabled:true}") boolean adminEnabled,
+                                     @Value("${com.estatetrader.apigw.internalEnvironmentToken}") String internalEnvironmentToken) {
+        this.config = config;
+        this.adminEnabled = adminEnabled;
+        this.internalEnvironmentToken = internalEnvironmentToken;
+    }
+
+    /**
+     * 处理请求
+     *
+     * @param request  请求
+     * @param response 响应
+     * @return 表示处理结束的future，返回null表示处理结果同步完成
+     */
+    @Override
+    public CompletableFuture<Void> handle(GatewayRequest request, GatewayResponse response) throws IOException {
+        response.setContentType("application/json; charset=utf-8");
+        if (!adminEnabled) {
+            response.setStatus(403, "Forbidden");
+            JSON.writeJSONString(response.getOutputStream(), Collections.singletonMap("error", "inject cache admin is disabled"));
+            return null;
+        }
+
+        String token = request.getHeader(INTERNAL_ENVIRONMENT_TOKEN_HEADER);
+        if (token == null || !token.equals(internalEnvironmentToken)) {
+            response.setStatus(403, "Forbidden");
+            JSON.writeJSONString(response.getOutputStream(), Collections.singletonMap("error", "internal environment only"));
+            return null;
+        }
+
+        String provider = request.getParameter("provider");
+        List<String> keys = request.getParameters().get("key");
+        Map<String, Integer> invalidated = config.invalidateCache(
+            provider == null || provider.isEmpty() ? null : provider, keys);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("invalidated", invalidated);
+        JSON.writeJSONString(response.getOutputStream(), result);
+        return null;
+    }
+}
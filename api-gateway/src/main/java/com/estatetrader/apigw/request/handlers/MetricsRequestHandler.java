@@ -0,0 +1,69 @@
+package com.estatetrader.apigw.request.handlers;
+
+import com.alibaba.fastjson.JSON;
+import com.estatetrader.apigw.core.contracts.GatewayRequest;
+import com.estatetrader.apigw.core.contracts.GatewayResponse;
+import com.estatetrader.apigw.core.contracts.MetricsSource;
+import com.estatetrader.apigw.request.GatewayRequestHandler;
+import com.estatetrader.apigw.request.RequestHandler;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 输出网关各组件的运行指标
+ *
+ * 仅允许内网环境（携带X-INTERNAL-ENVIRONMENT-TOKEN请求头）调用
+ */
+@RequestHandler(handlerName = "metrics-request", urlPatterns = "/apigw/metrics", methods = "GET")
+public class MetricsRequestHandler implements GatewayRequestHandler {
+
+    private static final String INTERNAL_ENVIRONMENT_TOKEN_HEADER = "X-INTERNAL-ENVIRONMENT-TOKEN";
+
+    private final boolean metricsEnabled;
+    private final List<MetricsSource> metricsSources;
+    private final String internalEnvironmentToken;
+
+    public MetricsRequestHandler(List<MetricsSource> metricsSources,
+                                 @Value("${gateway.metrics.enabled:true}") boolean metricsEnabled,
+                                 @Value("${com.estatetrader.apigw.internalEnvironmentToken}") String internalEnvironmentToken) {
+        this.metricsSources = metricsSources;
+        this.metricsEnabled = metricsEnabled;
+        this.internalEnvironmentToken = internalEnvironmentToken;
+    }
+
+    /**
+     * 处理请求
+     *
+     * @param request  请求
+     * @param response 响应
+     * @return 表示处理结束的future，返回null表示处理结果同步完成
+     */
+    @Override
+    public CompletableFuture<Void> handle(GatewayRequest request, GatewayResponse response) throws IOException {
+        response.setContentType("application/json; charset=utf-8");
+        if (!metricsEnabled) {
+            JSON.writeJSONString(response.getOutputStream(), Collections.singletonMap("error", "metrics is disabled"));
+            return null;
+        }
+
+        String token = request.getHeader(INTERNAL_ENVIRONMENT_TOKEN_HEADER);
+        if (token == null || !token.equals(internalEnvironmentToken)) {
+            response.setStatus(403, "Forbidden");
+            JSON.writeJSONString(response.getOutputStream(), Collections.singletonMap("error", "internal environment only"));
+            return null;
+        }
+
+        Map<String, Object> metrics = new TreeMap<>();
+        for (MetricsSource source : metricsSources) {
+            metrics.put(source.metricsName(), source.metrics());
+        }
+        JSON.writeJSONString(response.getOutputStream(), metrics);
+        return null;
+    }
+}
@@ -15,13 +15,16 @@ public class GatewayChannelInitializer extends ChannelInitializer<Channel> {
 
     private final GatewayNettyChannelHandler requestHandler;
     private final int maxContentSize;
+    private final boolean consolidateFlush;
 
     public GatewayChannelInitializer(
         GatewayNettyChannelHandler requestHandler,
-        @Value("${gateway.max-content-size}") int maxContentSize) {
+        @Value("${gateway.max-content-size}") int maxContentSize,
+        @Value("${gateway.flush-consolidation:true}") boolean consolidateFlush) {
 
         this.requestHandler = requestHandler;
         this.maxContentSize = maxContentSize;
+        this.consolidateFlush = consolidateFlush;
     }
 
     /**
@@ -38,6 +41,7 @@ public class GatewayChannelInitializer extends ChannelInitializer<Channel> {
         ch.pipeline().addLast("codec", new HttpServerCodec());
         ch.pipeline().addLast("decompressor", new HttpContentDecompressor());
         ch.pipeline().addLast("aggregator", new HttpObjectAggregator(maxContentSize));
+        ch.pipeline().addLast("sequencer", new GatewayResponseSequencer(consolidateFlush));
         ch.pipeline().addLast("request", requestHandler);
     }
 }
@@ -3,6 +3,7 @@ package com.estatetrader.apigw.server;
 import com.estatetrader.apigw.core.contracts.GatewayRequest;
 import com.estatetrader.apigw.core.contracts.GatewayResponse;
 import com.estatetrader.apigw.core.extensions.Extensions;
+import com.estatetrader.apigw.core.utils.RouteTable;
 import com.estatetrader.apigw.request.RequestHandler;
 import com.estatetrader.apigw.request.GatewayRequestFilter;
 import com.estatetrader.apigw.request.GatewayRequestHandler;
@@ -10,20 +11,19 @@ import com.estatetrader.apigw.request.RequestFilter;
 import com.estatetrader.apigw.server.model.GatewayNettyRequest;
 import com.estatetrader.apigw.server.model.GatewayNettyResponse;
 import com.estatetrader.util.Lambda;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.*;
 import io.netty.handler.codec.http.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
-import org.springframework.util.AntPathMatcher;
-import org.springframework.util.PathMatcher;
 
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 import static io.netty.buffer.Unpooled.copiedBuffer;
 
@@ -33,16 +33,27 @@ public class GatewayNettyChannelHandler extends ChannelInboundHandlerAdapter {
 
     private static final Logger logger = LoggerFactory.getLogger(GatewayNettyChannelHandler.class);
 
-    private final List<GatewayRequestFilterWrapper> filters;
-    private final List<GatewayRequestHandlerWrapper> handlers;
+    /**
+     * 预先编译的过滤器和处理器路由表，保持注册的顺序
+     */
+    private final RouteTable<GatewayRequestFilterWrapper> filters;
+    private final RouteTable<GatewayRequestHandlerWrapper> handlers;
+    private final GatewayWorkerExecutor workerExecutor;
+
+    /**
+     * 响应体最多由多少个缓冲区组成，超过后netty会将其合并
+     */
+    private static final int MAX_RESPONSE_COMPONENTS = 1024;
 
     private final DateFormat DATE_HEADER_FORMAT = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss z");
 
     public GatewayNettyChannelHandler(
         Extensions<GatewayRequestFilter> filters,
-        Extensions<GatewayRequestHandler> handlers) {
-        this.filters = Lambda.map(filters, GatewayRequestFilterWrapper::new);
-        this.handlers = Lambda.map(handlers, GatewayRequestHandlerWrapper::new);
+        Extensions<GatewayRequestHandler> handlers,
+        GatewayWorkerExecutor workerExecutor) {
+        this.filters = GatewayRequestFilterWrapper.compile(Lambda.map(filters, GatewayRequestFilterWrapper::new));
+        this.handlers = GatewayRequestHandlerWrapper.compile(Lambda.map(handlers, GatewayRequestHandlerWrapper::new));
+        this.workerExecutor = workerExecutor;
     }
 
     /**
@@ -56,39 +67,81 @@ public class GatewayNettyChannelHandler extends ChannelInboundHandlerAdapter {
         if (msg instanceof FullHttpRequest) {
             FullHttpRequest request = (FullHttpRequest) msg;
 
+            CompositeByteBuf content = ctx.alloc().compositeDirectBuffer(MAX_RESPONSE_COMPONENTS);
             FullHttpResponse response = new DefaultFullHttpResponse(
                 HttpVersion.HTTP_1_1,
                 HttpResponseStatus.OK,
-                Unpooled.buffer(1024)
+                content
             );
 
             response.headers().set(HttpHeaderNames.DATE, DATE_HEADER_FORMAT.format(new Date()));
 
-            GatewayRequest gatewayRequest = new GatewayNettyRequest(request, ctx);
-            GatewayResponse gatewayResponse = new GatewayNettyResponse(response);
+            GatewayNettyRequest gatewayRequest = new GatewayNettyRequest(request, ctx);
+            GatewayNettyResponse gatewayResponse = new GatewayNettyResponse(response, ctx.alloc());
 
-            GatewayRequestFilterWrapper.applyAll(filters.iterator(), gatewayRequest, gatewayResponse);
-            CompletableFuture<Void> future = processRequest(response, gatewayRequest, gatewayResponse);
+            // 请求可能乱序完成，由sequencer保证响应按照请求的顺序写出
+            GatewayResponseSequencer sequencer = ctx.pipeline().get(GatewayResponseSequencer.class);
+            int sequence = sequencer != null ? sequencer.reserve() : -1;
+
+            CompletableFuture<Void> future;
+            try {
+                if (workerExecutor.isEnabled()) {
+                    future = workerExecutor.submit(() -> handleRequest(response, gatewayRequest, gatewayResponse));
+                } else {
+                    future = handleRequest(response, gatewayRequest, gatewayResponse);
+                }
+            } catch (RejectedExecutionException e) {
+                // 请求处理线程池已饱和，立即拒绝请求，避免请求在队列中无限堆积
+                logger.debug("request {} is rejected since the gateway is overloaded", gatewayRequest.getPath());
+                response.setStatus(HttpResponseStatus.SERVICE_UNAVAILABLE);
+                future = null;
+            } catch (Throwable e) {
+                // 响应体由池化的内存组成，无法发送时必须释放
+                gatewayResponse.release();
+                request.release();
+                // 使用预留的序号写出错误响应，使之前仍未完成的流水线请求的响应先于该错误响应写出
+                writeError(ctx, e, sequence);
+                return;
+            }
 
-            Runnable finish = () -> finishRequest(request, response, ctx);
             if (future == null) {
-                finish.run();
+                finishRequest(request, gatewayResponse, response, ctx, sequence);
             } else {
-                future.thenRun(finish);
+                future.whenComplete((v, e) -> {
+                    if (e == null) {
+                        finishRequest(request, gatewayResponse, response, ctx, sequence);
+                    } else {
+                        gatewayResponse.release();
+                        request.release();
+                        writeError(ctx, e, sequence);
+                    }
+                });
             }
         } else {
             super.channelRead(ctx, msg);
         }
     }
 
-    private CompletableFuture<Void> processRequest(FullHttpResponse response, GatewayRequest gatewayRequest, GatewayResponse gatewayResponse) throws IOException {
+    private CompletableFuture<Void> handleRequest(FullHttpResponse response,
+                                                  GatewayNettyRequest gatewayRequest,
+                                                  GatewayResponse gatewayResponse) throws IOException {
+        // 请求路径只拆分一次，同时用于匹配过滤器、处理器以及提取路径参数
+        RouteTable.Path path = gatewayRequest.getRoutePath();
+        GatewayRequestFilterWrapper.applyAll(filters.resolve(path).iterator(), gatewayRequest, gatewayResponse);
+        return processRequest(response, path, gatewayRequest, gatewayResponse);
+    }
+
+    private CompletableFuture<Void> processRequest(FullHttpResponse response,
+                                                   RouteTable.Path path,
+                                                   GatewayRequest gatewayRequest,
+                                                   GatewayResponse gatewayResponse) throws IOException {
         String method = gatewayRequest.getMethod();
         if ("OPTIONS".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method)) {
             // 不执行具体逻辑
             return null;
         }
 
-        GatewayRequestHandlerWrapper handler = GatewayRequestHandlerWrapper.firstMatched(handlers, gatewayRequest);
+        GatewayRequestHandlerWrapper handler = GatewayRequestHandlerWrapper.firstMatched(handlers, path, method);
 
         if (handler == null) {
             response.setStatus(HttpResponseStatus.NOT_FOUND);
@@ -98,8 +151,13 @@ public class GatewayNettyChannelHandler extends ChannelInboundHandlerAdapter {
         return handler.handle(gatewayRequest, gatewayResponse);
     }
 
-    private void finishRequest(FullHttpRequest request, FullHttpResponse response, ChannelHandlerContext ctx) {
+    private void finishRequest(FullHttpRequest request,
+                               GatewayNettyResponse gatewayResponse,
+                               FullHttpResponse response,
+                               ChannelHandlerContext ctx,
+                               int sequence) {
         request.release();
+        gatewayResponse.finish();
         if (!response.headers().contains(HttpHeaderNames.CONTENT_LENGTH)) {
             response.headers().set(HttpHeaderNames.CONTENT_LENGTH, response.content().writerIndex());
         }
@@ -111,7 +169,7 @@ public class GatewayNettyChannelHandler extends ChannelInboundHandlerAdapter {
             );
         }
 
-        ChannelFuture future = ctx.writeAndFlush(response);
+        ChannelFuture future = ctx.writeAndFlush(sequenced(sequence, response));
         if (!HttpUtil.isKeepAlive(request)) {
             future.addListener(ChannelFutureListener.CLOSE);
         }
@@ -125,16 +183,22 @@ public class GatewayNettyChannelHandler extends ChannelInboundHandlerAdapter {
      */
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        ctx.writeAndFlush(new DefaultFullHttpResponse(
+        writeError(ctx, cause, -1);
+    }
+
+    private void writeError(ChannelHandlerContext ctx, Throwable cause, int sequence) {
+        ctx.writeAndFlush(sequenced(sequence, new DefaultFullHttpResponse(
             HttpVersion.HTTP_1_1,
             HttpResponseStatus.INTERNAL_SERVER_ERROR,
-            copiedBuffer(cause.getMessage().getBytes())
-        )).addListener(ChannelFutureListener.CLOSE);
+            copiedBuffer(String.valueOf(cause.getMessage()).getBytes())
+        ))).addListener(ChannelFutureListener.CLOSE);
     }
 
-    private static class GatewayRequestFilterWrapper {
-        private static final PathMatcher PATH_MATCHER = new AntPathMatcher();
+    private static Object sequenced(int sequence, Object response) {
+        return sequence < 0 ? response : new GatewayResponseSequencer.SequencedResponse(sequence, response);
+    }
 
+    private static class GatewayRequestFilterWrapper {
         private final String filterName;
         private final String[] urlPatterns;
         private final GatewayRequestFilter filter;
@@ -152,33 +216,33 @@ public class GatewayNettyChannelHandler extends ChannelInboundHandlerAdapter {
             this.filter = filter;
         }
 
-        boolean match(GatewayRequest request) {
-            for (String pattern : urlPatterns) {
-                if (!PATH_MATCHER.match(pattern, request.getPath())) {
-                    return false;
-                }
+        /**
+         * 过滤器须与其所有的url pattern匹配，没有声明url pattern的过滤器匹配所有请求
+         */
+        static RouteTable<GatewayRequestFilterWrapper> compile(List<GatewayRequestFilterWrapper> list) {
+            RouteTable.Builder<GatewayRequestFilterWrapper> builder = RouteTable.builder();
+            for (GatewayRequestFilterWrapper w : list) {
+                builder.all(w, w.urlPatterns);
             }
-            return true;
+            return builder.build();
         }
 
+        /**
+         * 依次执行已经匹配的过滤器
+         */
         static void applyAll(Iterator<GatewayRequestFilterWrapper> iterator,
                                           GatewayRequest request,
                                           GatewayResponse response) {
-            while (iterator.hasNext()) {
+            if (iterator.hasNext()) {
                 GatewayRequestFilterWrapper wrapper = iterator.next();
-                if (wrapper.match(request)) {
-                    logger.trace("execute filter {} against request {}", wrapper.filterName, request.getPath());
-                    wrapper.filter.filter(request, response,
-                        (res, resp) -> applyAll(iterator, res, resp));
-                    return;
-                }
+                logger.trace("execute filter {} against request {}", wrapper.filterName, request.getPath());
+                wrapper.filter.filter(request, response,
+                    (res, resp) -> applyAll(iterator, res, resp));
             }
         }
     }
 
     private static class GatewayRequestHandlerWrapper {
-        private static final PathMatcher PATH_MATCHER = new AntPathMatcher();
-
         private final String handlerName;
         private final String[] urlPatterns;
         private final String[] methods;
@@ -199,17 +263,15 @@ public class GatewayNettyChannelHandler extends ChannelInboundHandlerAdapter {
             this.handler = handler;
         }
 
-        boolean match(GatewayRequest request) {
-            return matchPath(request.getPath()) && matchMethod(request.getMethod());
-        }
-
-        private boolean matchPath(String path) {
-            for (String pattern : urlPatterns) {
-                if (PATH_MATCHER.match(pattern, path)) {
-                    return true;
-                }
+        /**
+         * 处理器与其任意一个url pattern匹配即可，没有声明url pattern的处理器不处理任何请求
+         */
+        static RouteTable<GatewayRequestHandlerWrapper> compile(List<GatewayRequestHandlerWrapper> list) {
+            RouteTable.Builder<GatewayRequestHandlerWrapper> builder = RouteTable.builder();
+            for (GatewayRequestHandlerWrapper w : list) {
+                builder.any(w, w.urlPatterns);
             }
-            return false;
+            return builder.build();
         }
 
         private boolean matchMethod(String method) {
@@ -226,10 +288,12 @@ public class GatewayNettyChannelHandler extends ChannelInboundHandlerAdapter {
             return handler.handle(request, response);
         }
 
-        static GatewayRequestHandlerWrapper firstMatched(List<GatewayRequestHandlerWrapper> list,
-                                                         GatewayRequest request) {
-            for (GatewayRequestHandlerWrapper w : list) {
-                if (w.match(request)) {
+        static GatewayRequestHandlerWrapper firstMatched(RouteTable<GatewayRequestHandlerWrapper> table,
+                                                         RouteTable.Path path,
+                                                         String method) {
+            // 路由表按照注册的顺序返回路径匹配的处理器，因此优先级与原先逐一匹配时相同
+            for (GatewayRequestHandlerWrapper w : table.resolve(path)) {
+                if (w.matchMethod(method)) {
                     return w;
                 }
             }
@@ -1,37 +1,81 @@
 package com.estatetrader.apigw.server;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 public class GatewayNettyServer {
 
+    private static final Logger logger = LoggerFactory.getLogger(GatewayNettyServer.class);
+
     private final String listenAddress;
     private final int listenPort;
     private final int backlog;
     private final int connectionTimeout;
+    private final String transport;
+    private final int bossThreads;
+    private final int workerThreads;
+    private final boolean reusePort;
+    private final boolean tcpNoDelay;
+    private final int writeBufferLowWaterMark;
+    private final int writeBufferHighWaterMark;
     private final GatewayChannelInitializer initializer;
 
     public GatewayNettyServer(@Value("${gateway.listen.address}") String listenAddress,
                               @Value("${gateway.listen.port}") int listenPort,
                               @Value("${gateway.connection-backlog}") int backlog,
                               @Value("${gateway.connection-timeout}") int connectionTimeout,
+                              @Value("${gateway.transport:auto}") String transport,
+                              @Value("${gateway.boss-threads:0}") int bossThreads,
+                              @Value("${gateway.worker-threads:0}") int workerThreads,
+                              @Value("${gateway.reuse-port:false}") boolean reusePort,
+                              @Value("${gateway.tcp-nodelay:true}") boolean tcpNoDelay,
+                              @Value("${gateway.write-buffer.low-water-mark:32768}") int writeBufferLowWaterMark,
+                              @Value("${gateway.write-buffer.high-water-mark:65536}") int writeBufferHighWaterMark,
                               GatewayChannelInitializer initializer) {
 
         this.listenAddress = listenAddress;
         this.listenPort = listenPort;
         this.backlog = backlog;
         this.connectionTimeout = connectionTimeout;
+        this.transport = transport;
+        this.bossThreads = bossThreads;
+        this.workerThreads = workerThreads;
+        this.reusePort = reusePort;
+        this.tcpNoDelay = tcpNoDelay;
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
         this.initializer = initializer;
     }
 
     public void run() throws InterruptedException {
-        EventLoopGroup bossGroup = new NioEventLoopGroup();
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+        boolean epoll = useEpoll();
+        // SO_REUSEPORT仅epoll支持，开启后每个boss线程各自绑定一个监听socket，由内核在它们之间分配新连接
+        boolean multiAcceptor = epoll && reusePort;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int bosses = bossThreads > 0 ? bossThreads : (multiAcceptor ? cores : 1);
+        // 0表示使用netty的默认值，即2倍cpu核数
+        int workers = Math.max(workerThreads, 0);
+
+        EventLoopGroup bossGroup = epoll ? new EpollEventLoopGroup(bosses) : new NioEventLoopGroup(bosses);
+        EventLoopGroup workerGroup = epoll ? new EpollEventLoopGroup(workers) : new NioEventLoopGroup(workers);
+        Class<? extends ServerSocketChannel> channelClass = epoll ?
+            EpollServerSocketChannel.class : NioServerSocketChannel.class;
 
         Runnable shutdown = () -> {
             workerGroup.shutdownGracefully();
@@ -45,16 +89,58 @@ public class GatewayNettyServer {
 
             bootstrap
                 .group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(channelClass)
                 .childHandler(initializer)
                 .option(ChannelOption.SO_BACKLOG, backlog)
                 .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childOption(ChannelOption.TCP_NODELAY, tcpNoDelay)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                    new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark))
                 .childOption(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectionTimeout);
 
-            ChannelFuture f = bootstrap.bind(listenAddress, listenPort).sync();
-            f.channel().closeFuture().sync();
+            if (multiAcceptor) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+
+            int acceptors = multiAcceptor ? bosses : 1;
+            List<Channel> channels = new ArrayList<>(acceptors);
+            for (int i = 0; i < acceptors; i++) {
+                channels.add(bootstrap.bind(listenAddress, listenPort).sync().channel());
+            }
+
+            logger.info("gateway listening on {}:{}, transport = {}, acceptors = {}, boss threads = {}, " +
+                    "worker threads = {}, cpu cores = {}, tcp-nodelay = {}, write buffer water mark = {}/{}",
+                listenAddress, listenPort, epoll ? "epoll" : "nio", acceptors, bosses,
+                workers > 0 ? workers : "default", cores, tcpNoDelay,
+                writeBufferLowWaterMark, writeBufferHighWaterMark);
+
+            for (Channel channel : channels) {
+                channel.closeFuture().sync();
+            }
         } finally {
             shutdown.run();
         }
     }
+
+    private boolean useEpoll() {
+        switch (transport) {
+            case "nio":
+                return false;
+            case "epoll":
+                // 明确要求使用epoll时，如果不可用则直接启动失败，避免悄悄退化为nio
+                Epoll.ensureAvailability();
+                return true;
+            case "auto":
+                if (Epoll.isAvailable()) {
+                    return true;
+                }
+                logger.info("epoll transport is not available, fallback to nio: {}",
+                    String.valueOf(Epoll.unavailabilityCause()));
+                return false;
+            default:
+                throw new IllegalArgumentException("invalid gateway.transport " + transport +
+                    ", should be one of auto, epoll or nio");
+        }
+    }
 }
@@ -0,0 +1,205 @@
+package com.estatetrader.apigw.server;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 保证同一连接上的响应按照请求的顺序写出，并合并flush操作。
+ *
+ * HTTP/1.1的pipelining要求响应的顺序与请求一致，但网关中的请求是异步处理的，后到的请求可能先处理完成。
+ * 每个请求在进入网关时领取一个序号，处理完成后以{@link SequencedResponse}的形式写出，
+ * 本handler会缓存序号靠后的响应，直到它之前的所有响应都已写出。
+ *
+ * 每个连接一个实例，所有方法都在连接所属的event loop中执行，因此无需加锁。
+ */
+public class GatewayResponseSequencer extends ChannelDuplexHandler {
+
+    /**
+     * 带有请求序号的响应
+     */
+    static final class SequencedResponse implements ReferenceCounted {
+        final int sequence;
+        final Object response;
+
+        SequencedResponse(int sequence, Object response) {
+            this.sequence = sequence;
+            this.response = response;
+        }
+
+        // 在本handler之前连接就已关闭的情况下，由netty负责释放其中的响应
+
+        @Override
+        public int refCnt() {
+            return response instanceof ReferenceCounted ? ((ReferenceCounted) response).refCnt() : 1;
+        }
+
+        @Override
+        public SequencedResponse retain() {
+            ReferenceCountUtil.retain(response);
+            return this;
+        }
+
+        @Override
+        public SequencedResponse retain(int increment) {
+            ReferenceCountUtil.retain(response, increment);
+            return this;
+        }
+
+        @Override
+        public SequencedResponse touch() {
+            ReferenceCountUtil.touch(response);
+            return this;
+        }
+
+        @Override
+        public SequencedResponse touch(Object hint) {
+            ReferenceCountUtil.touch(response, hint);
+            return this;
+        }
+
+        @Override
+        public boolean release() {
+            return ReferenceCountUtil.release(response);
+        }
+
+        @Override
+        public boolean release(int decrement) {
+            return ReferenceCountUtil.release(response, decrement);
+        }
+    }
+
+    private static final class PendingWrite {
+        final Object response;
+        final ChannelPromise promise;
+
+        PendingWrite(Object response, ChannelPromise promise) {
+            this.response = response;
+            this.promise = promise;
+        }
+    }
+
+    private final boolean consolidateFlush;
+
+    /**
+     * 下一个请求将要领取的序号
+     */
+    private int nextSequence;
+    /**
+     * 下一个应当写出的响应的序号
+     */
+    private int nextToWrite;
+    /**
+     * 已处理完成但由于之前的响应还未写出而暂存的响应
+     */
+    private final Map<Integer, PendingWrite> pendingWrites = new HashMap<>();
+
+    private boolean reading;
+    private boolean flushPending;
+    private boolean flushScheduled;
+
+    public GatewayResponseSequencer(boolean consolidateFlush) {
+        this.consolidateFlush = consolidateFlush;
+    }
+
+    /**
+     * 为当前读入的请求分配序号，必须在event loop中调用
+     * @return 请求的序号
+     */
+    int reserve() {
+        return nextSequence++;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        reading = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        reading = false;
+        // 本次读取过程中同步完成的所有响应一起flush
+        if (flushPending) {
+            flushPending = false;
+            ctx.flush();
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof SequencedResponse)) {
+            ctx.write(msg, promise);
+            return;
+        }
+
+        SequencedResponse sequenced = (SequencedResponse) msg;
+        if (sequenced.sequence != nextToWrite) {
+            pendingWrites.put(sequenced.sequence, new PendingWrite(sequenced.response, promise));
+            return;
+        }
+
+        ctx.write(sequenced.response, promise);
+        nextToWrite++;
+
+        PendingWrite pending;
+        while ((pending = pendingWrites.remove(nextToWrite)) != null) {
+            ctx.write(pending.response, pending.promise);
+            nextToWrite++;
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (!consolidateFlush) {
+            ctx.flush();
+            return;
+        }
+
+        if (reading) {
+            flushPending = true;
+            return;
+        }
+
+        // 其他线程提交的写操作会以任务的形式进入event loop，
+        // 将flush也作为任务提交，使已在队列中的写操作共享同一次flush
+        if (!flushScheduled) {
+            flushScheduled = true;
+            ctx.channel().eventLoop().execute(() -> {
+                flushScheduled = false;
+                ctx.flush();
+            });
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        discardPendingWrites();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        discardPendingWrites();
+    }
+
+    private void discardPendingWrites() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+
+        ClosedChannelException cause = new ClosedChannelException();
+        for (PendingWrite pending : pendingWrites.values()) {
+            ReferenceCountUtil.release(pending.response);
+            pending.promise.tryFailure(cause);
+        }
+        pendingWrites.clear();
+    }
+}
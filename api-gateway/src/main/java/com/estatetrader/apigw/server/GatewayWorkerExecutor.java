@@ -0,0 +1,233 @@
+package com.estatetrader.apigw.server;
+
+import com.estatetrader.apigw.core.contracts.MetricsSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 请求处理线程池，用于将请求的处理逻辑（过滤器、token解析、签名验证、dubbo调用等）从netty的io线程中移出，
+ * 避免一个慢请求阻塞同一个event loop上的所有连接。
+ *
+ * 同时处于排队和执行状态的请求数量受queue-capacity和threads的限制，超出后新的请求会被立即拒绝，
+ * 由调用方返回503。在JDK 21及以上版本中可以选择使用虚拟线程，此时threads表示同时执行的请求数量上限。
+ */
+@Component
+public class GatewayWorkerExecutor implements MetricsSource, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayWorkerExecutor.class);
+
+    /**
+     * 请求的同步处理部分，返回表示异步处理结束的future，返回null表示处理已同步完成
+     */
+    @FunctionalInterface
+    public interface Task {
+        CompletableFuture<Void> run() throws Exception;
+    }
+
+    private final boolean enabled;
+    private final boolean virtualThreads;
+    private final int threads;
+    private final int queueCapacity;
+    private final ExecutorService executor;
+
+    /**
+     * 已被接受但尚未执行完同步部分的请求数量的许可
+     */
+    private final Semaphore admission;
+    /**
+     * 使用虚拟线程时，用于限制同时执行的请求数量
+     */
+    private final Semaphore running;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder totalProcessNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong maxProcessNanos = new AtomicLong();
+
+    public GatewayWorkerExecutor(@Value("${gateway.worker-executor.enabled:true}") boolean enabled,
+                                 @Value("${gateway.worker-executor.threads:200}") int threads,
+                                 @Value("${gateway.worker-executor.queue-capacity:2000}") int queueCapacity,
+                                 @Value("${gateway.worker-executor.virtual-threads:true}") boolean virtualThreads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("gateway.worker-executor.threads must be positive");
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("gateway.worker-executor.queue-capacity must not be negative");
+        }
+
+        this.enabled = enabled;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+
+        ExecutorService virtualExecutor = enabled && virtualThreads ? createVirtualThreadExecutor() : null;
+        this.virtualThreads = virtualExecutor != null;
+
+        if (!enabled) {
+            this.executor = null;
+        } else if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+        } else {
+            AtomicInteger index = new AtomicInteger();
+            // 队列长度由admission限制，这里无需再做限制
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "gateway-worker-" + index.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        this.admission = new Semaphore(threads + queueCapacity);
+        this.running = this.virtualThreads ? new Semaphore(threads) : null;
+
+        logger.info("gateway worker executor: enabled = {}, virtual threads = {}, threads = {}, queue capacity = {}",
+            enabled, this.virtualThreads, threads, queueCapacity);
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // JDK 21以下的版本不支持虚拟线程，使用普通线程池
+            return null;
+        }
+    }
+
+    /**
+     * 是否启用了请求处理线程池，未启用时请求直接在io线程中处理
+     * @return 是否启用
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 将请求的处理逻辑提交到线程池中执行
+     *
+     * @param task 请求的处理逻辑
+     * @return 在任务的同步部分和其返回的future都结束时结束的future
+     * @throws RejectedExecutionException 线程池已饱和，请求应被立即拒绝
+     */
+    public CompletableFuture<Void> submit(Task task) {
+        if (!admission.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException("gateway worker executor is saturated");
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        long submitTime = System.nanoTime();
+        queued.incrementAndGet();
+        submitted.increment();
+        try {
+            executor.execute(() -> execute(task, submitTime, result));
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭
+            queued.decrementAndGet();
+            submitted.decrement();
+            admission.release();
+            rejected.increment();
+            throw e;
+        }
+        return result;
+    }
+
+    private void execute(Task task, long submitTime, CompletableFuture<Void> result) {
+        if (running != null) {
+            running.acquireUninterruptibly();
+        }
+
+        long startTime = System.nanoTime();
+        record(startTime - submitTime, totalWaitNanos, maxWaitNanos);
+        started.increment();
+        queued.decrementAndGet();
+        active.incrementAndGet();
+
+        CompletableFuture<Void> future;
+        try {
+            future = task.run();
+        } catch (Throwable e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        } finally {
+            active.decrementAndGet();
+            admission.release();
+            if (running != null) {
+                running.release();
+            }
+        }
+
+        if (future == null) {
+            future = CompletableFuture.completedFuture(null);
+        }
+
+        future.whenComplete((v, e) -> {
+            record(System.nanoTime() - startTime, totalProcessNanos, maxProcessNanos);
+            completed.increment();
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(null);
+            }
+        });
+    }
+
+    private static void record(long nanos, LongAdder total, AtomicLong max) {
+        total.add(nanos);
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            // retry
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "worker-executor";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        long startedCount = started.sum();
+        long completedCount = completed.sum();
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("virtualThreads", virtualThreads);
+        metrics.put("threads", threads);
+        metrics.put("queueCapacity", queueCapacity);
+        metrics.put("queued", queued.get());
+        metrics.put("active", active.get());
+        metrics.put("submitted", submitted.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("completed", completedCount);
+        metrics.put("avgQueueWaitMillis", startedCount == 0 ? 0.0 :
+            totalWaitNanos.sum() / 1e6 / startedCount);
+        metrics.put("maxQueueWaitMillis", maxWaitNanos.get() / 1e6);
+        metrics.put("avgProcessMillis", completedCount == 0 ? 0.0 :
+            totalProcessNanos.sum() / 1e6 / completedCount);
+        metrics.put("maxProcessMillis", maxProcessNanos.get() / 1e6);
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
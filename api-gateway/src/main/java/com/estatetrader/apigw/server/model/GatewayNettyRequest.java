@@ -2,6 +2,7 @@ package com.estatetrader.apigw.server.model;
 
 import com.estatetrader.apigw.core.contracts.GatewayCookie;
 import com.estatetrader.apigw.core.contracts.GatewayRequest;
+import com.estatetrader.apigw.core.utils.RouteTable;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.*;
@@ -29,6 +30,11 @@ public class GatewayNettyRequest implements GatewayRequest {
     private final Map<String, GatewayCookie> cookies;
     private final ChannelHandlerContext context;
 
+    /**
+     * 拆分后的请求路径，用于路由和提取路径参数，仅在首次使用时拆分
+     */
+    private RouteTable.Path routePath;
+
     public GatewayNettyRequest(FullHttpRequest request, ChannelHandlerContext context) {
         this.request = request;
         this.method = request.method().name();
@@ -74,6 +80,28 @@ public class GatewayNettyRequest implements GatewayRequest {
         return path;
     }
 
+    /**
+     * 获取拆分后的请求路径，同一个请求只拆分一次
+     *
+     * @return 拆分后的请求路径
+     */
+    public RouteTable.Path getRoutePath() {
+        if (routePath == null) {
+            routePath = RouteTable.Path.parse(path);
+        }
+        return routePath;
+    }
+
+    /**
+     * 获取请求路径按照'/'拆分后的各个部分，与getPath().split("/")的结果一致
+     *
+     * @return 请求路径的各个部分
+     */
+    @Override
+    public String[] getPathSegments() {
+        return getRoutePath().segments();
+    }
+
     /**
      * 获取请求使用的谓词
      *
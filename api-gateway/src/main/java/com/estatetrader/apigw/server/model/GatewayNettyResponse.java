@@ -2,7 +2,11 @@ package com.estatetrader.apigw.server.model;
 
 import com.estatetrader.apigw.core.contracts.GatewayCookie;
 import com.estatetrader.apigw.core.contracts.GatewayResponse;
-import io.netty.buffer.ByteBufOutputStream;
+import com.estatetrader.apigw.core.contracts.ResponseBuffer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -10,15 +14,38 @@ import io.netty.handler.codec.http.cookie.Cookie;
 import io.netty.handler.codec.http.cookie.DefaultCookie;
 import io.netty.handler.codec.http.cookie.ServerCookieEncoder;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.function.Consumer;
 
+/**
+ * 基于netty的网关响应
+ *
+ * 响应体是一个由池化的直接内存组成的CompositeByteBuf，各API的序列化结果和共享的常量以组件的方式直接加入响应体，
+ * 通过输出流写入的内容先写入一个尾部缓冲区，在追加下一个组件或响应结束时再加入响应体
+ */
 public class GatewayNettyResponse implements GatewayResponse {
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
     private final FullHttpResponse response;
+    private final CompositeByteBuf body;
+    private final ByteBufAllocator allocator;
+    private final OutputStream outputStream = new TailOutputStream();
 
-    public GatewayNettyResponse(FullHttpResponse response) {
+    /**
+     * 尚未加入响应体的、通过输出流写入的内容
+     */
+    private ByteBuf tail;
+
+    public GatewayNettyResponse(FullHttpResponse response, ByteBufAllocator allocator) {
+        if (!(response.content() instanceof CompositeByteBuf)) {
+            throw new IllegalArgumentException("the content of the response must be a composite buffer");
+        }
         this.response = response;
+        this.body = (CompositeByteBuf) response.content();
+        this.allocator = allocator;
     }
 
     /**
@@ -40,7 +67,8 @@ public class GatewayNettyResponse implements GatewayResponse {
     @Override
     public void sendError(String errorMessage) {
         response.setStatus(HttpResponseStatus.BAD_REQUEST);
-        response.content().clear().writeCharSequence(errorMessage, StandardCharsets.UTF_8);
+        discardContent();
+        tail().writeCharSequence(errorMessage, StandardCharsets.UTF_8);
     }
 
     /**
@@ -120,6 +148,108 @@ public class GatewayNettyResponse implements GatewayResponse {
      */
     @Override
     public OutputStream getOutputStream() {
-        return new ByteBufOutputStream(response.content());
+        return outputStream;
+    }
+
+    /**
+     * 申请一块池化的直接内存作为API序列化结果的缓冲区
+     *
+     * @return 响应缓冲区
+     */
+    @Override
+    public ResponseBuffer allocateBuffer() {
+        return new GatewayNettyResponseBuffer(allocator.directBuffer(INITIAL_BUFFER_SIZE));
+    }
+
+    /**
+     * 将缓冲区中的内容追加到响应体中，由本响应申请的缓冲区会被直接引用而不是复制
+     *
+     * @param buffer 响应缓冲区
+     */
+    @Override
+    public void write(ResponseBuffer buffer) throws IOException {
+        if (!(buffer instanceof GatewayNettyResponseBuffer)) {
+            GatewayResponse.super.write(buffer);
+            return;
+        }
+
+        ByteBuf content = ((GatewayNettyResponseBuffer) buffer).content();
+        if (content.isReadable()) {
+            flushTail();
+            // 响应体持有自己的引用，调用方仍可以（也必须）释放自己的缓冲区
+            body.addComponent(true, content.retainedDuplicate());
+        }
+    }
+
+    /**
+     * 将一段共享的常量字节追加到响应体中
+     *
+     * @param bytes 常量字节
+     */
+    @Override
+    public void writeShared(byte[] bytes) {
+        if (bytes.length > 0) {
+            flushTail();
+            body.addComponent(true, Unpooled.wrappedBuffer(bytes));
+        }
+    }
+
+    /**
+     * 结束写入，在发送响应之前调用，使得响应体包含所有已写入的内容
+     */
+    public void finish() {
+        flushTail();
+    }
+
+    /**
+     * 在响应无法被发送时释放其占用的内存
+     */
+    public void release() {
+        discardTail();
+        response.release();
+    }
+
+    private ByteBuf tail() {
+        if (tail == null) {
+            tail = allocator.directBuffer(INITIAL_BUFFER_SIZE);
+        }
+        return tail;
+    }
+
+    private void flushTail() {
+        if (tail != null) {
+            if (tail.isReadable()) {
+                body.addComponent(true, tail);
+            } else {
+                tail.release();
+            }
+            tail = null;
+        }
+    }
+
+    private void discardTail() {
+        if (tail != null) {
+            tail.release();
+            tail = null;
+        }
+    }
+
+    private void discardContent() {
+        discardTail();
+        // 移除的组件会被释放
+        body.removeComponents(0, body.numComponents());
+        body.clear();
+    }
+
+    private class TailOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            tail().writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            tail().writeBytes(b, off, len);
+        }
     }
 }
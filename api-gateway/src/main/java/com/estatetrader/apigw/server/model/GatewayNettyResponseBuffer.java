@@ -0,0 +1,56 @@
+package com.estatetrader.apigw.server.model;
+
+import com.estatetrader.apigw.core.contracts.ResponseBuffer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * 基于池化的直接内存的响应缓冲区，写入GatewayNettyResponse时直接作为响应体的一个组成部分，不需要复制
+ */
+public class GatewayNettyResponseBuffer implements ResponseBuffer {
+
+    private final ByteBuf buffer;
+    private final OutputStream outputStream;
+    private boolean released;
+
+    GatewayNettyResponseBuffer(ByteBuf buffer) {
+        this.buffer = buffer;
+        this.outputStream = new ByteBufOutputStream(buffer);
+    }
+
+    ByteBuf content() {
+        return buffer;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public int size() {
+        return buffer.readableBytes();
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        buffer.getBytes(buffer.readerIndex(), output, buffer.readableBytes());
+    }
+
+    @Override
+    public String toString(Charset charset) {
+        return buffer.toString(charset);
+    }
+
+    @Override
+    public void release() {
+        if (!released) {
+            released = true;
+            buffer.release();
+        }
+    }
+}
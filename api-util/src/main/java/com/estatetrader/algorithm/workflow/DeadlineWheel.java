@@ -0,0 +1,260 @@
+package com.estatetrader.algorithm.workflow;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于哈希时间轮(hashed timing wheel)的截止时间调度器
+ *
+ * 时间轮由wheelSize个槽组成，每个槽代表一个tick的时间间隔，超过一圈的截止时间通过剩余圈数(rounds)表示。
+ * 注册和取消均为O(1)操作：注册仅将任务放入待处理队列，取消仅修改任务状态并放入取消队列，
+ * 真正的槽位插入和删除都由唯一的时间轮线程完成，因此槽位本身无需加锁。
+ *
+ * 到期任务在时间轮线程中执行，任务本身应尽量轻量，截止时间的精度为一个tick
+ */
+public class DeadlineWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadlineWheel.class);
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_CANCELLED = 1;
+    private static final int STATE_EXPIRED = 2;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime;
+    private final Queue<Deadline> pendingDeadlines = new ConcurrentLinkedQueue<>();
+    private final Queue<Deadline> cancelledDeadlines = new ConcurrentLinkedQueue<>();
+    private final Thread workerThread;
+    private volatile boolean shutdown;
+
+    /**
+     * the number of ticks the worker has processed, only accessed by the worker thread
+     */
+    private long tick;
+
+    /**
+     * @param name 时间轮线程的名称
+     * @param tickDuration 每个tick的时间间隔，也是截止时间的精度
+     * @param unit tickDuration的时间单位
+     * @param wheelSize 时间轮的槽数，将被向上取整为2的幂
+     */
+    public DeadlineWheel(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be positive");
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("invalid wheelSize " + wheelSize);
+        }
+
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+
+        this.workerThread = new Thread(this::work, name);
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    /**
+     * 注册一个截止时间，到期后task将被执行
+     * @param task 到期时需要执行的任务
+     * @param delay 距离当前的延迟时间（毫秒），非正数表示在下一个tick执行
+     * @return 可用于取消该截止时间的句柄
+     */
+    public Deadline schedule(Runnable task, long delay) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        if (shutdown) {
+            throw new IllegalStateException("the deadline wheel has already been shut down");
+        }
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0));
+        Deadline d = new Deadline(task, deadline);
+        pendingDeadlines.add(d);
+        return d;
+    }
+
+    /**
+     * 停止时间轮线程，所有尚未到期的任务将不再被执行
+     */
+    public void shutdown() {
+        shutdown = true;
+        workerThread.interrupt();
+    }
+
+    private void work() {
+        while (!shutdown) {
+            long sleepNanos = startTime + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (shutdown) {
+                        break;
+                    }
+                    continue;
+                }
+            }
+
+            try {
+                processCancelledDeadlines();
+                transferPendingDeadlines();
+                wheel[(int) (tick & mask)].expire();
+            } catch (Throwable t) {
+                logger.error("error occurred in deadline wheel loop", t);
+            }
+            tick++;
+        }
+    }
+
+    private void transferPendingDeadlines() {
+        // limit the number of transferred deadlines per tick to avoid starving the expiring of current bucket
+        for (int i = 0; i < 100000; i++) {
+            Deadline d = pendingDeadlines.poll();
+            if (d == null) {
+                return;
+            }
+            if (d.state.get() == STATE_CANCELLED) {
+                continue;
+            }
+
+            long calculated = d.deadline / tickNanos;
+            d.remainingRounds = (calculated - tick) / wheel.length;
+            // deadlines in the past will be expired in current tick
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(d);
+        }
+    }
+
+    private void processCancelledDeadlines() {
+        Deadline d;
+        while ((d = cancelledDeadlines.poll()) != null) {
+            if (d.bucket != null) {
+                d.bucket.remove(d);
+            }
+        }
+    }
+
+    /**
+     * 截止时间句柄
+     */
+    public final class Deadline {
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+
+        /**
+         * the following fields are only accessed by the worker thread
+         */
+        private long remainingRounds;
+        private Bucket bucket;
+        private Deadline prev;
+        private Deadline next;
+
+        private Deadline(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消截止时间，取消后任务将不再被执行
+         * @return 如果成功取消则返回true，如果任务已经到期或已被取消则返回false
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+                return false;
+            }
+            cancelledDeadlines.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(STATE_PENDING, STATE_EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Throwable t) {
+                logger.warn("error occurred while executing deadline task", t);
+            }
+        }
+    }
+
+    /**
+     * a doubly linked list of deadlines, only accessed by the worker thread
+     */
+    private static final class Bucket {
+        private Deadline head;
+        private Deadline tail;
+
+        void add(Deadline d) {
+            d.bucket = this;
+            if (head == null) {
+                head = tail = d;
+            } else {
+                tail.next = d;
+                d.prev = tail;
+                tail = d;
+            }
+        }
+
+        void expire() {
+            Deadline d = head;
+            while (d != null) {
+                Deadline next = d.next;
+                if (d.remainingRounds <= 0) {
+                    remove(d);
+                    d.expire();
+                } else if (d.isCancelled()) {
+                    remove(d);
+                } else {
+                    d.remainingRounds--;
+                }
+                d = next;
+            }
+        }
+
+        void remove(Deadline d) {
+            if (d.bucket != this) {
+                return;
+            }
+            if (d.prev != null) {
+                d.prev.next = d.next;
+            } else {
+                head = d.next;
+            }
+            if (d.next != null) {
+                d.next.prev = d.prev;
+            } else {
+                tail = d.prev;
+            }
+            d.prev = null;
+            d.next = null;
+            d.bucket = null;
+        }
+    }
+}
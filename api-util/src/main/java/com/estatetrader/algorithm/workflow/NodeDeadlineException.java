@@ -0,0 +1,21 @@
+package com.estatetrader.algorithm.workflow;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * the exception used to fail a node by force when it has not completed before the deadline set by
+ * {@link WorkflowPipeline#deadline(long)}
+ */
+public class NodeDeadlineException extends TimeoutException {
+
+    private final String nodeName;
+
+    public NodeDeadlineException(String nodeName, long timeout) {
+        super("node " + nodeName + " has timed out " + timeout + "ms");
+        this.nodeName = nodeName;
+    }
+
+    public String getNodeName() {
+        return nodeName;
+    }
+}
@@ -6,29 +6,42 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 工作流图
+ *
+ * 节点之间的依赖关系不使用全局锁保护：每个节点持有一个尚未完成的依赖计数，计数归零时启动该节点；
+ * 工作流持有一个尚未完成的节点计数，计数归零时执行destination
  */
 public class WorkflowGraph {
 
     private static final Logger logger = LoggerFactory.getLogger(WorkflowGraph.class);
 
-    private static final ScheduledExecutorService cleanupWorker = Executors.newSingleThreadScheduledExecutor(r -> {
-        Thread t = new Thread(r, "workflow-cleanup-worker");
-        t.setDaemon(true);
-        return t;
-    });
+    /**
+     * the precision of deadlines of graphs and nodes
+     */
+    private static final long DEADLINE_TICK_MILLIS = 5;
+    /**
+     * retry interval used when the timed out graph could not be finished at its deadline
+     */
+    private static final long DEADLINE_RETRY_INTERVAL = 1000;
+
+    private static final DeadlineWheel deadlineWheel = new DeadlineWheel("workflow-deadline-worker",
+        DEADLINE_TICK_MILLIS, TimeUnit.MILLISECONDS, 1024);
 
     public static void shutdown() {
-        cleanupWorker.shutdown();
+        deadlineWheel.shutdown();
     }
 
-    private static final ConcurrentHashMap<WorkflowGraph, WorkflowGraph> GRAPHS = new ConcurrentHashMap<>();
-
     public static final String ORIGIN_NODE_NAME = "@";
 
-    private final Map<String, Node> nodes = new HashMap<>();
+    private final ConcurrentHashMap<String, Node> nodes = new ConcurrentHashMap<>();
+    /**
+     * the number of nodes which have not completed, the destination will be executed when it reaches zero
+     */
+    private final AtomicInteger outstandingNodes = new AtomicInteger();
     private final WorkflowDestination destination;
     private final Object context;
     /**
@@ -36,11 +49,15 @@ public class WorkflowGraph {
      */
     private long expire;
     private CompletableFuture<Void> completeFuture;
+    /**
+     * the deadline registered in the deadline wheel, cancelled after the graph finished
+     */
+    private volatile DeadlineWheel.Deadline deadline;
 
     /**
      * if set to true, the workflow has completed all its tasks
      */
-    private AtomicBoolean completed = new AtomicBoolean();
+    private final AtomicBoolean completed = new AtomicBoolean();
 
     public WorkflowGraph(WorkflowExecution origin, WorkflowDestination destination) {
         this(origin, destination, null);
@@ -52,70 +69,20 @@ public class WorkflowGraph {
 
     public WorkflowGraph(WorkflowExecution origin, WorkflowDestination destination, Object context, Object originParam) {
         nodes.put(ORIGIN_NODE_NAME, new Node(ORIGIN_NODE_NAME, originParam, origin));
+        outstandingNodes.set(1);
         this.destination = destination;
         this.context = context;
     }
 
-    static {
-        cleanupWorker.scheduleAtFixedRate(WorkflowGraph::cleanup, 30, 30, TimeUnit.MINUTES);
-    }
-
-    private static void cleanup() {
-        try {
-            if (GRAPHS.isEmpty()) {
-                return;
-            }
-
-            logger.info("graphs.size = {}", GRAPHS.size());
-            long now = System.currentTimeMillis();
-            Iterator<WorkflowGraph> graphs = GRAPHS.keySet().iterator();
-            int count = 0;
-            while (graphs.hasNext()) {
-                WorkflowGraph graph;
-                try {
-                    graph = graphs.next();
-                } catch (NoSuchElementException e) {
-                    continue;
-                }
-
-                if (now <= graph.expire) {
-                    continue;
-                }
-
-                graph.performTimeoutCheck(now);
-                if (!graph.isCompleted()) {
-                    // next time we will retry it
-                    continue;
-                }
-
-                count++;
-                try {
-                    graphs.remove();
-                } catch (NoSuchElementException e) {
-                    // ignore
-                }
-            }
-            if (count > 0) {
-                logger.info("cleaned up {} timed out workflow graph[s]", count);
-            }
-        } catch (Throwable t) {
-            logger.warn("error occurred in workflow clean up loop", t);
-        }
-    }
-
     public CompletableFuture<Void> start(long timeout) {
         if (expire != 0 || completeFuture != null) {
             throw new IllegalStateException("the graph has already started");
         }
         expire = System.currentTimeMillis() + timeout;
         completeFuture = new CompletableFuture<>();
-        GRAPHS.put(this, this);
+        deadline = deadlineWheel.schedule(this::onDeadline, timeout);
 
-        Node node;
-        synchronized (nodes) {
-            node = nodes.get(ORIGIN_NODE_NAME);
-        }
-        node.start();
+        nodes.get(ORIGIN_NODE_NAME).start();
 
         return completeFuture;
     }
@@ -124,6 +91,14 @@ public class WorkflowGraph {
         return completed.get();
     }
 
+    private void onDeadline() {
+        performTimeoutCheck(System.currentTimeMillis());
+        if (!isCompleted()) {
+            // next time we will retry it
+            deadline = deadlineWheel.schedule(this::onDeadline, DEADLINE_RETRY_INTERVAL);
+        }
+    }
+
     private void performTimeoutCheck(long checkTime) {
         if (isCompleted()) {
             return;
@@ -132,11 +107,9 @@ public class WorkflowGraph {
         // try to force fail all uncompleted nodes (but started)
         // these timeout may be caused by too late callback
         List<Node> nodesToFail = new ArrayList<>(1);
-        synchronized (nodes) {
-            for (Node node : nodes.values()) {
-                if (node.isStarted() && !node.isCompleted()) {
-                    nodesToFail.add(node);
-                }
+        for (Node node : nodes.values()) {
+            if (node.isStarted() && !node.isCompleted()) {
+                nodesToFail.add(node);
             }
         }
 
@@ -152,11 +125,7 @@ public class WorkflowGraph {
     }
 
     private Node getNode(String name) {
-        Node node;
-        synchronized (nodes) {
-            node = nodes.get(name);
-        }
-
+        Node node = nodes.get(name);
         if (node == null) {
             throw new IllegalArgumentException("invalid node name " + name);
         }
@@ -170,9 +139,7 @@ public class WorkflowGraph {
      * @return true if the node exists
      */
     private boolean containsNode(String name) {
-        synchronized (nodes) {
-            return nodes.containsKey(name);
-        }
+        return nodes.containsKey(name);
     }
 
     /**
@@ -188,100 +155,52 @@ public class WorkflowGraph {
     private void pipeNode(String name, Node fromNode, Iterable<String> dependencies, Object param, WorkflowExecution[] executions) {
         Node node = new Node(name, param, executions);
 
-        synchronized (nodes) {
-            if (nodes.containsKey(name)) {
-                throw new IllegalArgumentException("node " + name + " is already defined");
-            }
-            nodes.put(name, node);
-
-            node.prev.addLast(fromNode);
-            fromNode.next.addLast(node);
-
-            for (String dep : dependencies) {
-                Node n = nodes.get(dep);
-                if (n == null) {
-                    throw new IllegalArgumentException("invalid dependency name " + dep);
-                }
-                n.next.addLast(node);
-                node.prev.addLast(n);
+        List<Node> prev = new ArrayList<>();
+        prev.add(fromNode);
+        for (String dep : dependencies) {
+            Node n = nodes.get(dep);
+            if (n == null) {
+                throw new IllegalArgumentException("invalid dependency name " + dep);
             }
+            prev.add(n);
         }
 
-        if (performDependencyCheck(node)) {
-            node.start();
+        // fromNode is still running (we are called by one of its stages),
+        // so the outstanding count cannot reach zero before the new node is counted
+        outstandingNodes.incrementAndGet();
+        if (nodes.putIfAbsent(name, node) != null) {
+            outstandingNodes.decrementAndGet();
+            throw new IllegalArgumentException("node " + name + " is already defined");
         }
-    }
 
-    private void onNodeComplete(Node node) {
-        List<Node> nodesNeedStart = null;
-        boolean shouldExecuteDestination;
-        synchronized (nodes) {
-            if (node.throwable == null) {
-                // collect all nodes that can start
-                for (Node n : node.next) {
-                    if (!n.isStarted() && !n.isCompleted() && performDependencyCheck(n)) {
-                        if (nodesNeedStart == null) {
-                            nodesNeedStart = new LinkedList<>();
-                        }
-                        nodesNeedStart.add(n);
-                    }
-                }
-            } else {
-                // let all its next fail
-                for (Node n : node.next) {
-                    n.dependencyFail(node.name, node.throwable);
+        for (Node n : prev) {
+            node.pendingDependencies.incrementAndGet();
+            if (!n.addSuccessor(node)) {
+                // the dependency has already completed, it will not notify us anymore
+                node.pendingDependencies.decrementAndGet();
+                if (n.throwable != null) {
+                    node.dependencyFail(n.name, n.throwable);
                 }
             }
-
-            shouldExecuteDestination = node.next.isEmpty() && shouldExecuteDestination();
         }
 
-        if (shouldExecuteDestination) {
-            // only the first thread which set the completed to true should execute destination
-            if (!completed.getAndSet(true)) {
-                executeDestination();
-            }
-        }
-
-        if (nodesNeedStart != null) {
-            for (Node n : nodesNeedStart) {
-                n.start();
-            }
-        }
+        node.releaseDependency();
     }
 
-    /**
-     * check if we should execute destination
-     * must be protected by nodes
-     * @return return true if we need
-     */
-    private boolean shouldExecuteDestination() {
-        if (completed.get()) {
-            return false;
-        }
-        for (Node n : nodes.values()) {
-            if (!n.isCompleted()) {
-                return false;
+    private void onNodeComplete(Node node) {
+        Successor successors = node.sealSuccessors();
+        for (Successor p = successors; p != null; p = p.next) {
+            if (node.throwable != null) {
+                // let all its next fail
+                p.node.dependencyFail(node.name, node.throwable);
             }
+            p.node.releaseDependency();
         }
-        return true;
-    }
 
-    /**
-     * check if all dependencies have completed and set dependency failure if at least one dependency failed
-     * @param n node n
-     * @return return true if all dependencies have completed
-     */
-    private boolean performDependencyCheck(Node n) {
-        for (Node m : n.prev) {
-            if (!m.isCompleted() || m.throwable != null) {
-                if (m.throwable != null) {
-                    n.dependencyFail(m.name, m.throwable);
-                }
-                return false;
-            }
+        // only the thread which completes the last node should execute destination
+        if (outstandingNodes.decrementAndGet() == 0 && !completed.getAndSet(true)) {
+            executeDestination();
         }
-        return true;
     }
 
     /**
@@ -315,8 +234,11 @@ public class WorkflowGraph {
     }
 
     private void onFinished() {
+        DeadlineWheel.Deadline d = deadline;
+        if (d != null) {
+            d.cancel();
+        }
         completeFuture.complete(null);
-        GRAPHS.remove(this);
     }
 
     private final ResultAccessor resultAccessor = new ResultAccessor() {
@@ -368,20 +290,34 @@ public class WorkflowGraph {
         }
     };
 
+    private static final Successor SEALED_SUCCESSORS = new Successor(null, null);
+
+    private static final class Successor {
+        final Node node;
+        /**
+         * only modified by sealSuccessors, after which the list is no longer shared with other threads
+         */
+        Successor next;
+
+        Successor(Node node, Successor next) {
+            this.node = node;
+            this.next = next;
+        }
+    }
+
     private class Node {
 
         private final String name;
         /**
-         * all dependencies of this node
-         * this field does not need any lock to protect,
-         * since there will be no modification after created.
+         * the number of dependencies which have not completed, plus one held by the creator of this node
+         * until all its dependencies are registered. the node starts when it reaches zero
          */
-        private final LinkedList<Node> prev = new LinkedList<>();
+        private final AtomicInteger pendingDependencies = new AtomicInteger(1);
         /**
-         * all nodes which depend on this node
-         * this field needs lock any time
+         * a lock-free stack of nodes which depend on this node,
+         * sealed by SEALED_SUCCESSORS after this node completed
          */
-        private final LinkedList<Node> next = new LinkedList<>();
+        private final AtomicReference<Successor> successors = new AtomicReference<>();
 
         /**
          * the head stage in the stage link list
@@ -398,6 +334,14 @@ public class WorkflowGraph {
          * this field is protected by field completed
          */
         private Throwable throwable;
+        /**
+         * the deadline of this node (if set), cancelled after the node completed
+         */
+        private volatile DeadlineWheel.Deadline deadline;
+        /**
+         * actions to run after this node completed, protected by the lock of this node
+         */
+        private List<Runnable> completionActions;
 
         Node(String name, Object param, WorkflowExecution... batch) {
             this.name = name;
@@ -438,10 +382,100 @@ public class WorkflowGraph {
             head.start();
         }
 
+        /**
+         * register a node which depends on this node
+         * @param node the successor
+         * @return false if this node has already completed and the successor will not be notified
+         */
+        boolean addSuccessor(Node node) {
+            while (true) {
+                Successor head = successors.get();
+                if (head == SEALED_SUCCESSORS) {
+                    return false;
+                }
+                if (successors.compareAndSet(head, new Successor(node, head))) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * prevent more successors to be added and return all the added successors
+         * @return the added successors, in the order they were added
+         */
+        Successor sealSuccessors() {
+            Successor p = successors.getAndSet(SEALED_SUCCESSORS);
+            // successors are pushed onto the head, reverse them to keep the order in which they were declared
+            Successor reversed = null;
+            while (p != null) {
+                Successor next = p.next;
+                p.next = reversed;
+                reversed = p;
+                p = next;
+            }
+            return reversed;
+        }
+
+        /**
+         * one of the dependencies of this node has completed
+         */
+        void releaseDependency() {
+            if (pendingDependencies.decrementAndGet() == 0) {
+                start();
+            }
+        }
+
         void forceFail(Throwable throwable) {
             completeNode(null, throwable);
         }
 
+        /**
+         * set the deadline of this node, the previous deadline (if exists) will be replaced
+         * @param timeout timeout in milliseconds from now
+         */
+        void setDeadline(long timeout) {
+            if (isCompleted()) {
+                return;
+            }
+
+            DeadlineWheel.Deadline d = deadlineWheel.schedule(() -> forceFail(
+                new NodeDeadlineException(name, timeout)), timeout);
+            DeadlineWheel.Deadline old = deadline;
+            deadline = d;
+            if (old != null) {
+                old.cancel();
+            }
+            if (isCompleted()) {
+                // the node completed while we are setting the deadline
+                d.cancel();
+            }
+        }
+
+        /**
+         * register an action to run after this node completed
+         * @param action the action, run immediately if this node has already completed
+         */
+        void whenCompleted(Runnable action) {
+            synchronized (this) {
+                if (!isCompleted()) {
+                    if (completionActions == null) {
+                        completionActions = new ArrayList<>(1);
+                    }
+                    completionActions.add(action);
+                    return;
+                }
+            }
+            runCompletionAction(action);
+        }
+
+        private void runCompletionAction(Runnable action) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                logger.error("failed to run the completion action of node " + name, e);
+            }
+        }
+
         /**
          * one of its dependencies has failed
          * @param throwable exception thrown by one of its dependency
@@ -468,6 +502,17 @@ public class WorkflowGraph {
                 started.set(true);
                 this.result = result;
                 this.throwable = throwable;
+                DeadlineWheel.Deadline d = deadline;
+                if (d != null) {
+                    d.cancel();
+                }
+                // run the completion actions before the successors and the destination see this node completed
+                if (completionActions != null) {
+                    for (Runnable action : completionActions) {
+                        runCompletionAction(action);
+                    }
+                    completionActions = null;
+                }
                 onNodeComplete(this);
             }
         }
@@ -621,6 +666,28 @@ public class WorkflowGraph {
                 pipeNode(name, Node.this, dependencies, param, batch);
             }
 
+            /**
+             * set the deadline of current node
+             *
+             * @param timeout timeout in milliseconds from now, non-positive value will be ignored
+             */
+            @Override
+            public void deadline(long timeout) {
+                if (timeout > 0) {
+                    setDeadline(timeout);
+                }
+            }
+
+            /**
+             * register an action which will be run exactly once after current node completed
+             *
+             * @param action the action to run
+             */
+            @Override
+            public void whenNodeCompleted(Runnable action) {
+                whenCompleted(action);
+            }
+
             /**
              * add a stage to current node
              *
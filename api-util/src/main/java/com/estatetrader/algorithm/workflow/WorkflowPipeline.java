@@ -66,6 +66,22 @@ public interface WorkflowPipeline {
         node(name, Collections.emptyList(), param, batch);
     }
 
+    /**
+     * set the deadline of current node
+     * the node will be failed by force with a NodeDeadlineException if it has not completed before the deadline,
+     * calling this method again will replace the previous deadline
+     * @param timeout timeout in milliseconds from now, non-positive value will be ignored
+     */
+    void deadline(long timeout);
+
+    /**
+     * register an action which will be run exactly once after current node completed,
+     * no matter it succeeded, failed or was failed by force (for example, by its deadline)
+     * the action will be run immediately in the calling thread if the node has already completed
+     * @param action the action to run, it should be short and must not throw any exception
+     */
+    void whenNodeCompleted(Runnable action);
+
     /**
      * add a stage to current node
      * @param param param used to execute the execution logic
@@ -0,0 +1,49 @@
+package com.estatetrader.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 为@ApiGroup所在的dubbo服务指定网关调用此服务时使用的独立配置，未指定的项使用网关的全局配置
+ * 网关配置（gateway.dubbo.service-configs）中为同一ApiGroup指定的项优先于此注解
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ApiDubboConsumer {
+    /**
+     * 消费者线程池的线程数，0表示使用全局配置
+     */
+    int threads() default 0;
+
+    /**
+     * 消费者线程池的类型，例如fixed、cached、limited，为空表示使用全局配置
+     */
+    String threadPool() default "";
+
+    /**
+     * 消费者线程池的排队数量，-1表示使用全局配置
+     */
+    int queues() default -1;
+
+    /**
+     * 调用超时时间（毫秒），0表示使用全局配置
+     */
+    int timeout() default 0;
+
+    /**
+     * 与每个服务提供者建立的独占连接数，0表示使用共享连接
+     */
+    int connections() default 0;
+
+    /**
+     * 负载均衡策略，例如random、roundrobin、leastactive、consistenthash，为空表示使用dubbo的默认策略
+     */
+    String loadBalance() default "";
+
+    /**
+     * 网关同时向此服务发起的调用数量上限，超过时直接拒绝调用，0表示使用全局配置
+     */
+    int maxConcurrent() default 0;
+}
@@ -12,4 +12,29 @@ public @interface ResponseInjectProvider {
      * inject-provider名称，InjectFromApi需要和这个名称匹配
      */
     String value();
+
+    /**
+     * 跨请求合并调用的时间窗口（毫秒），0表示不合并
+     * 启用后，在窗口内到达的、除复数datum-key参数以外其余参数均相同的注入调用会被合并为一次调用，
+     * 复数datum-key参数取所有调用的并集，各个consumer再按照datum key从返回值中筛选自己需要的datum。
+     * 仅适用于以复数形式声明了datum中定义的key、且没有autowired参数和用户相关安全级别的provider
+     */
+    int batchWindow() default 0;
+
+    /**
+     * 每次合并调用中复数datum-key参数最多包含的key数量，达到该数量时立即发起调用，0表示不限制
+     */
+    int batchMaxKeys() default 0;
+
+    /**
+     * 返回值的缓存时间（毫秒），0表示不缓存
+     * 启用后，网关以单个datum key为粒度缓存provider返回的datum，仅未命中缓存的key才会调用provider，
+     * 适用于变化缓慢的参考数据（例如城市名称、字典项）。适用范围与batchWindow相同
+     */
+    int cacheTtl() default 0;
+
+    /**
+     * 返回值缓存最多缓存的key数量，0表示使用网关的默认配置
+     */
+    int cacheMaxSize() default 0;
 }
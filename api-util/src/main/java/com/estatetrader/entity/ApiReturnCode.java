@@ -65,6 +65,12 @@ public class ApiReturnCode extends AbstractReturnCode {
     private static final int _C_DUBBO_SERVICE_ERROR = -109;
     public static final AbstractReturnCode DUBBO_SERVICE_ERROR = new ApiReturnCode(_C_DUBBO_SERVICE_ERROR, ApiReturnCode.UNKNOWN_ERROR);
 
+    /**
+     * 网关对dubbo服务的并发调用数量达到上限, 调用被直接拒绝, 对外显示为UNKNOWN_ERROR
+     */
+    private static final int _C_DUBBO_SERVICE_OVERLOADED = -110;
+    public static final AbstractReturnCode DUBBO_SERVICE_OVERLOADED = new ApiReturnCode(_C_DUBBO_SERVICE_OVERLOADED, UNKNOWN_ERROR);
+
     public static final int _C_UNKNOWN_METHOD = -120;
     public static final AbstractReturnCode UNKNOWN_METHOD = new ApiReturnCode("unknown method", _C_UNKNOWN_METHOD);
 
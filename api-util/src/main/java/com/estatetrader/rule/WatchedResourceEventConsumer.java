@@ -1,9 +1,20 @@
 package com.estatetrader.rule;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface WatchedResourceEventConsumer {
     void onChildrenChange(List<String> oldChildren, List<String> newChildren);
 
+    /**
+     * 子节点发生变化时被调用（在onChildrenChange之前），仅包含新增和删除的子节点，
+     * 用于以增量方式维护本地快照，多次调用之间顺序执行
+     *
+     * @param added 新增的子节点名称
+     * @param removed 删除的子节点名称
+     */
+    default void onChildrenDelta(Collection<String> added, Collection<String> removed) {
+    }
+
     void onChildDataChange(String key, Object oldValue, Object newValue);
 }
@@ -0,0 +1,95 @@
+package com.estatetrader.rule.authorizing;
+
+/**
+ * 根据权限树对一次API访问做出的授权决定
+ */
+public enum AuthorizationDecision {
+    /**
+     * 角色被授予了访问此API的权限
+     */
+    GRANTED(true),
+    /**
+     * 子系统未启用权限校验
+     */
+    SUBSYSTEM_AUTHORIZING_DISABLED(true),
+    /**
+     * API未启用权限校验
+     */
+    API_AUTHORIZING_DISABLED(true),
+    /**
+     * 子系统节点不存在
+     */
+    SUBSYSTEM_NOT_FOUND(false),
+    /**
+     * 子系统仅允许在可信赖网络中使用，而请求并非来自可信赖网络
+     */
+    CLIENT_IP_DENIED(false),
+    /**
+     * API未在子系统节点下挂载
+     */
+    PERMISSION_UNASSIGNED(false),
+    /**
+     * 角色未被授予访问此API的权限
+     */
+    PERMISSION_CHECK_FAILED(false);
+
+    private final boolean granted;
+
+    AuthorizationDecision(boolean granted) {
+        this.granted = granted;
+    }
+
+    /**
+     * @return 是否允许访问
+     */
+    public boolean isGranted() {
+        return granted;
+    }
+
+    /**
+     * 逐级查询权限树做出授权决定，即编译为AuthorizationTable之前的校验方式
+     *
+     * @param listener 权限树
+     * @param subsystemName 子系统名称
+     * @param apiName API名称
+     * @param role 调用者的角色
+     * @param fromTrustedNetwork 请求是否来自可信赖网络
+     * @return 授权决定
+     */
+    public static AuthorizationDecision decide(AuthorizationTreeListener listener,
+                                               String subsystemName,
+                                               String apiName,
+                                               String role,
+                                               boolean fromTrustedNetwork) {
+        SubsystemInfo subsystem = listener.getSubsystem(subsystemName);
+
+        // 【白名单授权机制】如果子系统节点不存在，则拒绝授权
+        if (subsystem == null) {
+            return SUBSYSTEM_NOT_FOUND;
+        }
+
+        // 指示该凭据中指示的角色仅在可信赖网络中使用
+        if (subsystem.isOnlyTrustedNetwork() && !fromTrustedNetwork) {
+            return CLIENT_IP_DENIED;
+        }
+
+        ApiInfo api = listener.getApi(subsystemName, apiName);
+
+        // 【白名单授权机制】如果API未在此子系统节点下挂载，则拒绝请求
+        if (api == null) {
+            return PERMISSION_UNASSIGNED;
+        }
+
+        // 如果子系统被配置不启用校验，则跳过权限校验
+        if (subsystem.isAuthorizingDisabled()) {
+            return SUBSYSTEM_AUTHORIZING_DISABLED;
+        }
+
+        // API可以选择是否启用API权限校验
+        if (api.isAuthorizingDisabled()) {
+            return API_AUTHORIZING_DISABLED;
+        }
+
+        return listener.containsApiRole(subsystemName, apiName, role) ? GRANTED : PERMISSION_CHECK_FAILED;
+    }
+}
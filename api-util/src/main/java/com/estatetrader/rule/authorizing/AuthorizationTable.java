@@ -0,0 +1,127 @@
+package com.estatetrader.rule.authorizing;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 由权限树编译而成的授权决策表（不可变），与AuthorizationDecision.decide的决定完全一致
+ *
+ * API使用其编号（即API在网关中的序号）表示，每个子系统预先计算出挂载的API集合和未启用权限校验的API集合，
+ * 子系统下的每个角色对应一个被授予的API集合，集合均以位图保存。
+ * 一次校验只需要查找子系统和角色各一次，再进行几次位测试，不再逐级查询权限树
+ */
+public final class AuthorizationTable {
+
+    public static final AuthorizationTable EMPTY = new AuthorizationTable(Collections.emptyMap());
+
+    private static final long[] NO_APIS = new long[0];
+
+    private final Map<String, Subsystem> subsystems;
+
+    private AuthorizationTable(Map<String, Subsystem> subsystems) {
+        this.subsystems = subsystems;
+    }
+
+    /**
+     * 编译权限树
+     *
+     * @param listener 权限树
+     * @param apiNames 各个API的名称，数组下标即API的编号
+     * @return 授权决策表
+     */
+    public static AuthorizationTable compile(AuthorizationTreeListener listener, String[] apiNames) {
+        Map<String, Integer> apiIds = new HashMap<>(apiNames.length * 4 / 3 + 1);
+        for (int i = 0; i < apiNames.length; i++) {
+            apiIds.putIfAbsent(apiNames[i], i);
+        }
+        int words = (apiNames.length + 63) >>> 6;
+
+        Map<String, Subsystem> subsystems = new HashMap<>();
+        for (String subsystemName : listener.getSubsystems()) {
+            SubsystemInfo info = listener.getSubsystem(subsystemName);
+            if (info == null) {
+                continue;
+            }
+            Subsystem subsystem = new Subsystem(info.isAuthorizingDisabled(), info.isOnlyTrustedNetwork(), words);
+            for (String apiName : listener.getApis(subsystemName)) {
+                Integer id = apiIds.get(apiName);
+                ApiInfo api = id != null ? listener.getApi(subsystemName, apiName) : null;
+                if (api == null) {
+                    // 网关中不存在的API不会被调用
+                    continue;
+                }
+                set(subsystem.assigned, id);
+                if (api.isAuthorizingDisabled()) {
+                    set(subsystem.unchecked, id);
+                }
+                for (String role : listener.getApiRoles(subsystemName, apiName)) {
+                    set(subsystem.roles.computeIfAbsent(role, r -> new long[words]), id);
+                }
+            }
+            subsystems.put(subsystemName, subsystem);
+        }
+        return new AuthorizationTable(subsystems);
+    }
+
+    /**
+     * 做出授权决定
+     *
+     * @param subsystemName 子系统名称
+     * @param apiId API的编号
+     * @param role 调用者的角色
+     * @param fromTrustedNetwork 请求是否来自可信赖网络
+     * @return 授权决定
+     */
+    public AuthorizationDecision decide(String subsystemName, int apiId, String role, boolean fromTrustedNetwork) {
+        Subsystem subsystem = subsystems.get(subsystemName);
+        if (subsystem == null) {
+            return AuthorizationDecision.SUBSYSTEM_NOT_FOUND;
+        }
+        if (subsystem.onlyTrustedNetwork && !fromTrustedNetwork) {
+            return AuthorizationDecision.CLIENT_IP_DENIED;
+        }
+        if (!test(subsystem.assigned, apiId)) {
+            return AuthorizationDecision.PERMISSION_UNASSIGNED;
+        }
+        if (subsystem.authorizingDisabled) {
+            return AuthorizationDecision.SUBSYSTEM_AUTHORIZING_DISABLED;
+        }
+        if (test(subsystem.unchecked, apiId)) {
+            return AuthorizationDecision.API_AUTHORIZING_DISABLED;
+        }
+        long[] granted = role != null ? subsystem.roles.getOrDefault(role, NO_APIS) : NO_APIS;
+        return test(granted, apiId) ? AuthorizationDecision.GRANTED : AuthorizationDecision.PERMISSION_CHECK_FAILED;
+    }
+
+    public int subsystemCount() {
+        return subsystems.size();
+    }
+
+    private static void set(long[] bits, int id) {
+        bits[id >>> 6] |= 1L << id;
+    }
+
+    private static boolean test(long[] bits, int id) {
+        int word = id >>> 6;
+        return id >= 0 && word < bits.length && (bits[word] & (1L << id)) != 0;
+    }
+
+    private static final class Subsystem {
+        final boolean authorizingDisabled;
+        final boolean onlyTrustedNetwork;
+        // 挂载在此子系统下的API
+        final long[] assigned;
+        // 未启用权限校验的API
+        final long[] unchecked;
+        // 角色 -> 被授予的API
+        final Map<String, long[]> roles = new HashMap<>();
+
+        Subsystem(boolean authorizingDisabled, boolean onlyTrustedNetwork, int words) {
+            this.authorizingDisabled = authorizingDisabled;
+            this.onlyTrustedNetwork = onlyTrustedNetwork;
+            this.assigned = new long[words];
+            this.unchecked = new long[words];
+        }
+    }
+}
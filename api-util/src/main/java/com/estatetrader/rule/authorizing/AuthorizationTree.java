@@ -1,12 +1,19 @@
 package com.estatetrader.rule.authorizing;
 
+import com.estatetrader.rule.WatchedResourceEventConsumer;
 import com.estatetrader.util.ZKOperator;
 import com.estatetrader.rule.WatchedResourceListener;
 import com.estatetrader.rule.WatchedResourceManager;
 import com.estatetrader.rule.zk.ZKWatchedResourceListener;
 import com.estatetrader.rule.zk.ZKWatchedResourceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class AuthorizationTree {
 
@@ -268,14 +275,17 @@ public class AuthorizationTree {
         return enabled ? new ListenerImpl(operator) : null;
     }
 
-    private static class ListenerImpl implements AuthorizationTreeListener {
+    private static class ListenerImpl implements AuthorizationTreeListener, WatchedResourceEventConsumer {
 
+        private static final Logger LOGGER = LoggerFactory.getLogger(ListenerImpl.class);
+
+        private final List<Runnable> callbacks = new CopyOnWriteArrayList<>();
         private final WatchedResourceListener<SubsystemInfo> listener;
 
         ListenerImpl(ZKOperator operator) {
             this.listener = new ZKWatchedResourceListener<>(ROOT_PATH,
                 operator,
-                null,
+                this,
                 false,
                 null, // 第一层，根节点，不监听数据
                 SubsystemInfo.class, // 第二层，子系统节点，监听数据
@@ -297,6 +307,28 @@ public class AuthorizationTree {
             return listener.child(subsystemName);
         }
 
+        /**
+         * 获取所有子系统的名称
+         *
+         * @return 子系统名称列表
+         */
+        @Override
+        public Iterable<String> getSubsystems() {
+            return listener.getKeys();
+        }
+
+        /**
+         * 获取子系统下挂载的API
+         *
+         * @param subsystemName 子系统名称
+         * @return API名称列表，子系统不存在时返回空列表
+         */
+        @Override
+        public Iterable<String> getApis(String subsystemName) {
+            WatchedResourceListener<ApiInfo> apiListener = getApiListener(subsystemName);
+            return apiListener != null ? apiListener.getKeys() : Collections.emptyList();
+        }
+
         /**
          * 获取子系统下的某个API的授权信息
          *
@@ -306,11 +338,13 @@ public class AuthorizationTree {
          */
         @Override
         public ApiInfo getApi(String subsystemName, String apiName) {
-            return getApiListener(subsystemName).get(apiName);
+            WatchedResourceListener<ApiInfo> apiListener = getApiListener(subsystemName);
+            return apiListener != null ? apiListener.get(apiName) : null;
         }
 
         private WatchedResourceListener<?> getRoleListener(String subsystemName, String apiName) {
-            return getApiListener(subsystemName).child(apiName);
+            WatchedResourceListener<ApiInfo> apiListener = getApiListener(subsystemName);
+            return apiListener != null ? apiListener.child(apiName) : null;
         }
 
         /**
@@ -324,7 +358,8 @@ public class AuthorizationTree {
          */
         @Override
         public boolean containsApiRole(String subsystemName, String apiName, String role) {
-            return getRoleListener(subsystemName, apiName).containsKey(role);
+            WatchedResourceListener<?> roleListener = getRoleListener(subsystemName, apiName);
+            return roleListener != null && roleListener.containsKey(role);
         }
 
         /**
@@ -336,7 +371,38 @@ public class AuthorizationTree {
          */
         @Override
         public Iterable<String> getApiRoles(String subsystemName, String apiName) {
-            return getRoleListener(subsystemName, apiName).getKeys();
+            WatchedResourceListener<?> roleListener = getRoleListener(subsystemName, apiName);
+            return roleListener != null ? roleListener.getKeys() : Collections.emptyList();
+        }
+
+        /**
+         * 注册一个回调，在权限树的任意节点发生变化时被调用
+         *
+         * @param callback 回调
+         */
+        @Override
+        public void addChangeCallback(Runnable callback) {
+            callbacks.add(Objects.requireNonNull(callback));
+        }
+
+        @Override
+        public void onChildrenChange(List<String> oldChildren, List<String> newChildren) {
+            notifyCallbacks();
+        }
+
+        @Override
+        public void onChildDataChange(String key, Object oldValue, Object newValue) {
+            notifyCallbacks();
+        }
+
+        private void notifyCallbacks() {
+            for (Runnable callback : callbacks) {
+                try {
+                    callback.run();
+                } catch (RuntimeException e) {
+                    LOGGER.error("failed to notify the change of authorization tree", e);
+                }
+            }
         }
 
         /**
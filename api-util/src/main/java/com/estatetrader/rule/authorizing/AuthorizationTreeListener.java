@@ -3,6 +3,19 @@ package com.estatetrader.rule.authorizing;
 import java.io.Closeable;
 
 public interface AuthorizationTreeListener extends Closeable {
+    /**
+     * 获取所有子系统的名称
+     * @return 子系统名称列表
+     */
+    Iterable<String> getSubsystems();
+
+    /**
+     * 获取子系统下挂载的API
+     * @param subsystemName 子系统名称
+     * @return API名称列表，子系统不存在时返回空列表
+     */
+    Iterable<String> getApis(String subsystemName);
+
     /**
      * 获取子系统授权信息，不包含子节点
      * @param name 子系统名称
@@ -35,4 +48,10 @@ public interface AuthorizationTreeListener extends Closeable {
      * @return 挂载的角色列表
      */
     Iterable<String> getApiRoles(String subsystemName, String apiName);
+
+    /**
+     * 注册一个回调，在权限树的任意节点发生变化时被调用（在zk的事件线程中执行，不应执行耗时操作）
+     * @param callback 回调
+     */
+    void addChangeCallback(Runnable callback);
 }
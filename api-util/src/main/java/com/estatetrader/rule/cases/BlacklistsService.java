@@ -1,11 +1,16 @@
 package com.estatetrader.rule.cases;
 
+import com.estatetrader.rule.snapshot.IpKeySet;
+import com.estatetrader.rule.snapshot.NumericKeySet;
+import com.estatetrader.rule.snapshot.PrefixKeySet;
 import com.estatetrader.rule.zk.SimpleZKWatchedResource;
+import com.estatetrader.rule.zk.ZKKeySetListener;
+import com.estatetrader.util.IpAddress;
 import com.estatetrader.util.ZKOperator;
 import com.estatetrader.rule.WatchedResourceManager;
-import com.estatetrader.rule.WatchedResourceListener;
 
 import java.io.Closeable;
+import java.util.function.UnaryOperator;
 
 public class BlacklistsService {
 
@@ -53,16 +58,41 @@ public class BlacklistsService {
     }
 
     public static class Listeners implements Closeable {
-        public final WatchedResourceListener<?> userBlacklist;
-        public final WatchedResourceListener<?> deviceBlacklist;
-        public final WatchedResourceListener<?> ipBlacklist;
-        public final WatchedResourceListener<?> phonePrefixBlacklist;
+        public final ZKKeySetListener<NumericKeySet> userBlacklist;
+        public final ZKKeySetListener<NumericKeySet> deviceBlacklist;
+        public final ZKKeySetListener<IpKeySet> ipBlacklist;
+        public final ZKKeySetListener<PrefixKeySet> phonePrefixBlacklist;
+
+        private final Object snapshotLock = new Object();
+        /**
+         * 所有黑名单的当前快照，任意一个黑名单发生变化时整体替换
+         */
+        private volatile Snapshot snapshot = Snapshot.EMPTY;
 
         private Listeners(BlacklistsService service) {
-            this.userBlacklist = service.userBlacklist.createListener();
-            this.deviceBlacklist = service.deviceBlacklist.createListener();
-            this.ipBlacklist = service.ipBlacklist.createListener();
-            this.phonePrefixBlacklist = service.phonePrefixBlacklist.createListener();
+            // 黑名单只关注子节点的名称，子节点集合直接保存在快照中，监听器不为每个子节点保存任何对象
+            this.userBlacklist = service.userBlacklist.createKeySetListener(NumericKeySet.EMPTY, users ->
+                updateSnapshot(s -> new Snapshot(users, s.devices, s.ips, s.phonePrefixes)));
+            this.deviceBlacklist = service.deviceBlacklist.createKeySetListener(NumericKeySet.EMPTY, devices ->
+                updateSnapshot(s -> new Snapshot(s.users, devices, s.ips, s.phonePrefixes)));
+            this.ipBlacklist = service.ipBlacklist.createKeySetListener(IpKeySet.EMPTY, ips ->
+                updateSnapshot(s -> new Snapshot(s.users, s.devices, ips, s.phonePrefixes)));
+            this.phonePrefixBlacklist = service.phonePrefixBlacklist.createKeySetListener(PrefixKeySet.EMPTY,
+                phonePrefixes -> updateSnapshot(s -> new Snapshot(s.users, s.devices, s.ips, phonePrefixes)));
+        }
+
+        /**
+         * 获取所有黑名单的当前快照，快照不可变，同一个请求中的多次检查应使用同一个快照
+         * @return 黑名单快照
+         */
+        public Snapshot snapshot() {
+            return snapshot;
+        }
+
+        private void updateSnapshot(UnaryOperator<Snapshot> operator) {
+            synchronized (snapshotLock) {
+                snapshot = operator.apply(snapshot);
+            }
         }
 
         /**
@@ -84,4 +114,45 @@ public class BlacklistsService {
             phonePrefixBlacklist.close();
         }
     }
+
+    /**
+     * 黑名单的不可变快照，用户和设备编号使用long集合，IP使用紧凑的有序数组，手机号前缀使用数字前缀树
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(NumericKeySet.EMPTY, NumericKeySet.EMPTY, IpKeySet.EMPTY,
+            PrefixKeySet.EMPTY);
+
+        private final NumericKeySet users;
+        private final NumericKeySet devices;
+        private final IpKeySet ips;
+        private final PrefixKeySet phonePrefixes;
+
+        Snapshot(NumericKeySet users, NumericKeySet devices, IpKeySet ips, PrefixKeySet phonePrefixes) {
+            this.users = users;
+            this.devices = devices;
+            this.ips = ips;
+            this.phonePrefixes = phonePrefixes;
+        }
+
+        public boolean containsUser(long userId) {
+            return users.contains(userId);
+        }
+
+        public boolean containsDevice(long deviceId) {
+            return devices.contains(deviceId);
+        }
+
+        /**
+         * @param address 已解析的客户端IP，可以为null
+         * @param text 客户端IP的原始字符串
+         * @return 客户端IP是否在黑名单中
+         */
+        public boolean containsIp(IpAddress address, String text) {
+            return ips.contains(address, text);
+        }
+
+        public boolean matchesPhonePrefix(String phoneNumber) {
+            return phonePrefixes.matchesPrefixOf(phoneNumber);
+        }
+    }
 }
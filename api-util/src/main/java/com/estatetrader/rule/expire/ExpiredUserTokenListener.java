@@ -2,6 +2,7 @@ package com.estatetrader.rule.expire;
 
 import java.io.Closeable;
 import java.util.List;
+import java.util.function.LongConsumer;
 
 /**
  * 用于监听user token的强制过期规则变化
@@ -19,4 +20,16 @@ public interface ExpiredUserTokenListener extends Closeable {
      * @return 强制过期规则列表
      */
     List<UserTokenExpireRule> getRulesForUser(long userId);
+
+    /**
+     * 注册一个回调，在强制过期规则发生变化时被调用，不支持变更通知的实现会忽略此回调
+     * @param callback 参数为规则发生变化的用户编号，针对所有用户的规则发生变化时参数为{@link #ALL_USERS}
+     */
+    default void addRuleChangeCallback(LongConsumer callback) {
+    }
+
+    /**
+     * 表示针对所有用户的规则发生了变化
+     */
+    long ALL_USERS = -1;
 }
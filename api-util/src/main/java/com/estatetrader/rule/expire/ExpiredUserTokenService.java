@@ -3,11 +3,15 @@ package com.estatetrader.rule.expire;
 import com.estatetrader.rule.zk.ZKWatchedResourceListener;
 import com.estatetrader.rule.zk.ZKWatchedResourceManager;
 import com.estatetrader.util.ZKOperator;
+import com.estatetrader.rule.WatchedResourceEventConsumer;
 import com.estatetrader.rule.WatchedResourceManager;
 import com.estatetrader.rule.WatchedResourceListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
 
 /**
  * 将需要强制注销
@@ -136,12 +140,74 @@ public class ExpiredUserTokenService {
         return new ListenerImpl(operator);
     }
 
-    private static class ListenerImpl implements ExpiredUserTokenListener {
+    private static class ListenerImpl implements ExpiredUserTokenListener, WatchedResourceEventConsumer {
 
+        private static final Logger LOGGER = LoggerFactory.getLogger(ListenerImpl.class);
+
+        private final List<LongConsumer> callbacks = new CopyOnWriteArrayList<>();
         private final WatchedResourceListener<UserTokenExpireRulesWrapper> listener;
 
         ListenerImpl(ZKOperator operator) {
-            this.listener = new ZKWatchedResourceListener<>(ROOT_PATH, operator, UserTokenExpireRulesWrapper.class);
+            this.listener = new ZKWatchedResourceListener<>(ROOT_PATH, operator, this, UserTokenExpireRulesWrapper.class);
+        }
+
+        /**
+         * 注册一个回调，在强制过期规则发生变化时被调用
+         *
+         * @param callback 参数为规则发生变化的用户编号，针对所有用户的规则发生变化时参数为{@link #ALL_USERS}
+         */
+        @Override
+        public void addRuleChangeCallback(LongConsumer callback) {
+            callbacks.add(Objects.requireNonNull(callback));
+        }
+
+        @Override
+        public void onChildrenChange(List<String> oldChildren, List<String> newChildren) {
+            // 只有新增或删除的子节点才意味着规则发生了变化，数据变化由onChildDataChange通知
+            for (String key : symmetricDifference(oldChildren, newChildren)) {
+                notifyCallbacks(key);
+            }
+        }
+
+        @Override
+        public void onChildDataChange(String key, Object oldValue, Object newValue) {
+            notifyCallbacks(key);
+        }
+
+        private static Set<String> symmetricDifference(List<String> a, List<String> b) {
+            Set<String> result = new HashSet<>(a);
+            for (String key : b) {
+                if (!result.remove(key)) {
+                    result.add(key);
+                }
+            }
+            return result;
+        }
+
+        private void notifyCallbacks(String key) {
+            if (callbacks.isEmpty() || key == null) {
+                return;
+            }
+
+            long userId;
+            if (KEY_OF_ALL_USERS.equals(key)) {
+                userId = ALL_USERS;
+            } else {
+                try {
+                    userId = Long.parseLong(key);
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("unrecognized user token expire rule key {}", key);
+                    return;
+                }
+            }
+
+            for (LongConsumer callback : callbacks) {
+                try {
+                    callback.accept(userId);
+                } catch (Exception e) {
+                    LOGGER.error("failed to notify user token expire rule change of " + key, e);
+                }
+            }
         }
 
         /**
@@ -0,0 +1,264 @@
+package com.estatetrader.rule.snapshot;
+
+import com.estatetrader.util.IpAddress;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * IP地址key集合的不可变快照
+ *
+ * 1. 规范形式（即与IpAddress.toString()一致）的IPv4地址以有序的int数组保存，IPv6地址以有序的long数组（每个地址两项）保存，
+ *    查找使用二分法，每个地址只占用4或16字节
+ * 2. 其余的key（非规范形式的地址或者无法解析的字符串）仍以字符串保存并按照原样匹配，
+ *    因此规范形式的key与地址一一对应，增删时不会互相影响
+ */
+public final class IpKeySet implements KeySet<IpKeySet> {
+
+    public static final IpKeySet EMPTY = new IpKeySet(new int[0], new long[0], Collections.emptySet());
+
+    private final int[] ipv4;
+    private final long[] ipv6;
+    private final Set<String> others;
+
+    private IpKeySet(int[] ipv4, long[] ipv6, Set<String> others) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+        this.others = others;
+    }
+
+    /**
+     * 判断客户端IP是否在集合中
+     * @param address 已解析的客户端IP，可以为null
+     * @param text 客户端IP的原始字符串，用于匹配非规范形式的key
+     * @return 是否在集合中
+     */
+    public boolean contains(IpAddress address, String text) {
+        if (address != null) {
+            if (address.isIpv4() ? Arrays.binarySearch(ipv4, address.ipv4()) >= 0 :
+                indexOfIpv6(ipv6, address.high(), address.low()) >= 0) {
+                return true;
+            }
+        }
+        return text != null && !others.isEmpty() && others.contains(text);
+    }
+
+    public boolean contains(String key) {
+        return key != null && contains(IpAddress.parse(key), key);
+    }
+
+    /**
+     * 与contains(String)不同，非规范形式的key只与其自身匹配，不与同一地址的规范形式匹配
+     */
+    @Override
+    public boolean containsKey(String key) {
+        if (key == null) {
+            return false;
+        }
+        IpAddress address = canonical(key);
+        if (address == null) {
+            return others.contains(key);
+        }
+        return address.isIpv4() ? Arrays.binarySearch(ipv4, address.ipv4()) >= 0 :
+            indexOfIpv6(ipv6, address.high(), address.low()) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return ipv4.length + ipv6.length / 2 + others.size();
+    }
+
+    /**
+     * 应用一次增量变化，返回新的快照，本快照保持不变
+     * @param added 新增的key
+     * @param removed 删除的key
+     * @return 新的快照
+     */
+    @Override
+    public IpKeySet apply(Collection<String> added, Collection<String> removed) {
+        Delta delta = new Delta();
+        Set<String> newOthers = null;
+        for (String key : removed) {
+            IpAddress address = canonical(key);
+            if (address != null) {
+                delta.remove(address);
+            } else {
+                newOthers = newOthers != null ? newOthers : new HashSet<>(others);
+                newOthers.remove(key);
+            }
+        }
+        for (String key : added) {
+            IpAddress address = canonical(key);
+            if (address != null) {
+                delta.add(address);
+            } else {
+                newOthers = newOthers != null ? newOthers : new HashSet<>(others);
+                newOthers.add(key);
+            }
+        }
+        return new IpKeySet(
+            mergeIpv4(ipv4, delta.addedIpv4.toArray(), delta.removedIpv4.toArray()),
+            mergeIpv6(ipv6, delta.addedIpv6.toArray(), delta.removedIpv6.toArray()),
+            newOthers != null ? newOthers : others);
+    }
+
+    private static IpAddress canonical(String key) {
+        IpAddress address = IpAddress.parse(key);
+        return address != null && address.toString().equals(key) ? address : null;
+    }
+
+    private static int compareIpv6(long high1, long low1, long high2, long low2) {
+        int c = Long.compareUnsigned(high1, high2);
+        return c != 0 ? c : Long.compareUnsigned(low1, low2);
+    }
+
+    private static int indexOfIpv6(long[] array, long high, long low) {
+        int lo = 0;
+        int hi = array.length / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareIpv6(array[mid * 2], array[mid * 2 + 1], high, low);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] mergeIpv4(int[] current, int[] added, int[] removed) {
+        if (added.length == 0 && removed.length == 0) {
+            return current;
+        }
+        Arrays.sort(added);
+        Arrays.sort(removed);
+        int[] result = new int[current.length + added.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < current.length || j < added.length) {
+            int v;
+            if (j == added.length || (i < current.length && current[i] <= added[j])) {
+                v = current[i++];
+            } else {
+                v = added[j++];
+            }
+            if ((n == 0 || result[n - 1] != v) && Arrays.binarySearch(removed, v) < 0) {
+                result[n++] = v;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    private static long[] mergeIpv6(long[] current, long[] added, long[] removed) {
+        if (added.length == 0 && removed.length == 0) {
+            return current;
+        }
+        added = sortIpv6(added);
+        removed = sortIpv6(removed);
+        long[] result = new long[current.length + added.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < current.length || j < added.length) {
+            long high;
+            long low;
+            if (j == added.length || (i < current.length &&
+                compareIpv6(current[i], current[i + 1], added[j], added[j + 1]) <= 0)) {
+                high = current[i];
+                low = current[i + 1];
+                i += 2;
+            } else {
+                high = added[j];
+                low = added[j + 1];
+                j += 2;
+            }
+            boolean duplicated = n > 0 && result[n - 2] == high && result[n - 1] == low;
+            if (!duplicated && indexOfIpv6(removed, high, low) < 0) {
+                result[n++] = high;
+                result[n++] = low;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    private static long[] sortIpv6(long[] array) {
+        int count = array.length / 2;
+        Integer[] order = new Integer[count];
+        for (int k = 0; k < count; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> compareIpv6(array[a * 2], array[a * 2 + 1], array[b * 2], array[b * 2 + 1]));
+        long[] sorted = new long[array.length];
+        for (int k = 0; k < count; k++) {
+            sorted[k * 2] = array[order[k] * 2];
+            sorted[k * 2 + 1] = array[order[k] * 2 + 1];
+        }
+        return sorted;
+    }
+
+    /**
+     * 一次增量变化中新增和删除的地址
+     */
+    private static final class Delta {
+        final Ipv4List addedIpv4 = new Ipv4List();
+        final Ipv4List removedIpv4 = new Ipv4List();
+        final Ipv6List addedIpv6 = new Ipv6List();
+        final Ipv6List removedIpv6 = new Ipv6List();
+
+        void add(IpAddress address) {
+            if (address.isIpv4()) {
+                addedIpv4.add(address);
+            } else {
+                addedIpv6.add(address);
+            }
+        }
+
+        void remove(IpAddress address) {
+            if (address.isIpv4()) {
+                removedIpv4.add(address);
+            } else {
+                removedIpv6.add(address);
+            }
+        }
+    }
+
+    private static final class Ipv4List {
+        int[] values = new int[8];
+        int count;
+
+        void add(IpAddress address) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = address.ipv4();
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, count);
+        }
+    }
+
+    private static final class Ipv6List {
+        long[] values = new long[8];
+        int count;
+
+        void add(IpAddress address) {
+            if (count + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[count++] = address.high();
+            values[count++] = address.low();
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, count);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.estatetrader.rule.snapshot;
+
+import java.util.Collection;
+
+/**
+ * 由zk子节点名称组成的不可变key集合，每次变化产生一个新的集合，原有的集合保持不变
+ *
+ * @param <S> 具体的集合类型
+ */
+public interface KeySet<S extends KeySet<S>> {
+
+    /**
+     * 判断集合中是否存在与key完全相同的项，不做任何规范化，用于计算子节点列表的变化
+     * @param key 子节点名称
+     * @return 是否存在
+     */
+    boolean containsKey(String key);
+
+    int size();
+
+    /**
+     * 应用一次增量变化，返回新的集合，本集合保持不变
+     * @param added 新增的key
+     * @param removed 删除的key
+     * @return 新的集合
+     */
+    S apply(Collection<String> added, Collection<String> removed);
+}
@@ -0,0 +1,188 @@
+package com.estatetrader.rule.snapshot;
+
+/**
+ * 不可变的long集合，使用开放寻址（线性探测）的哈希表存储，没有装箱开销
+ *
+ * 修改时使用toBuilder()，在第一次修改时拷贝一份哈希表（一次数组拷贝），在拷贝上应用增删后再build()得到新的集合，
+ * 原有集合保持不变，因此可以在不加锁的情况下被并发读取
+ */
+public final class LongHashSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    public static final LongHashSet EMPTY = new LongHashSet(new long[MIN_CAPACITY], 0, false);
+
+    /**
+     * 0作为空槽位的标记，集合中的0单独使用hasZero记录
+     */
+    private final long[] table;
+    private final int size;
+    private final boolean hasZero;
+
+    private LongHashSet(long[] table, int size, boolean hasZero) {
+        this.table = table;
+        this.size = size;
+        this.hasZero = hasZero;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0) {
+            return hasZero;
+        }
+        long[] t = table;
+        int mask = t.length - 1;
+        int i = slot(key, mask);
+        while (true) {
+            long v = t[i];
+            if (v == key) {
+                return true;
+            }
+            if (v == 0) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 哈希表占用的字节数（不包括对象头）
+     */
+    public long tableBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    public Builder toBuilder() {
+        return new Builder(table, size, hasZero);
+    }
+
+    public static Builder builder() {
+        return EMPTY.toBuilder();
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    public static final class Builder {
+        private long[] table;
+        private int size;
+        private boolean hasZero;
+        /**
+         * 哈希表是否已经被build()生成的集合引用，此时须在下一次修改之前拷贝
+         */
+        private boolean shared;
+
+        private Builder(long[] table, int size, boolean hasZero) {
+            this.table = table;
+            this.size = size;
+            this.hasZero = hasZero;
+            this.shared = true;
+        }
+
+        public Builder add(long key) {
+            if (key == 0) {
+                if (!hasZero) {
+                    hasZero = true;
+                    size++;
+                }
+                return this;
+            }
+            if ((size + 1) * 2 > table.length) {
+                rehash(table.length * 2);
+            } else {
+                ensureExclusive();
+            }
+            int mask = table.length - 1;
+            int i = slot(key, mask);
+            while (table[i] != 0) {
+                if (table[i] == key) {
+                    return this;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = key;
+            size++;
+            return this;
+        }
+
+        public Builder remove(long key) {
+            if (key == 0) {
+                if (hasZero) {
+                    hasZero = false;
+                    size--;
+                }
+                return this;
+            }
+            int mask = table.length - 1;
+            int i = slot(key, mask);
+            while (table[i] != key) {
+                if (table[i] == 0) {
+                    return this;
+                }
+                i = (i + 1) & mask;
+            }
+            ensureExclusive();
+
+            // 向前移动同一探测链上的后续元素，避免使用删除标记
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                long v = table[j];
+                if (v == 0) {
+                    break;
+                }
+                int k = slot(v, mask);
+                boolean movable = i <= j ? (k <= i || k > j) : (k <= i && k > j);
+                if (movable) {
+                    table[i] = v;
+                    i = j;
+                }
+            }
+            table[i] = 0;
+            size--;
+            return this;
+        }
+
+        private void ensureExclusive() {
+            if (shared) {
+                table = table.clone();
+                shared = false;
+            }
+        }
+
+        private void rehash(int capacity) {
+            long[] old = table;
+            table = new long[capacity];
+            shared = false;
+            int mask = capacity - 1;
+            for (long v : old) {
+                if (v != 0) {
+                    int i = slot(v, mask);
+                    while (table[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    table[i] = v;
+                }
+            }
+        }
+
+        public LongHashSet build() {
+            // 大量删除之后收缩哈希表，使其保持在25%~50%的装载率
+            int capacity = table.length;
+            while (capacity > MIN_CAPACITY && size * 4 < capacity) {
+                capacity >>>= 1;
+            }
+            if (capacity != table.length) {
+                rehash(capacity);
+            }
+            // 构建后的哈希表不可变，builder继续修改时须先拷贝
+            shared = true;
+            return new LongHashSet(table, size, hasZero);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.estatetrader.rule.snapshot;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 以数字编号（例如用户编号、设备编号）为主的key集合的不可变快照
+ *
+ * 形如String.valueOf(long)的key保存在LongHashSet中，其余的key（例如带有前导零的字符串）仍以字符串保存，
+ * 因此contains(long id)与原先的containsKey(String.valueOf(id))完全等价
+ */
+public final class NumericKeySet implements KeySet<NumericKeySet> {
+
+    public static final NumericKeySet EMPTY = new NumericKeySet(LongHashSet.EMPTY, Collections.emptySet());
+
+    private final LongHashSet ids;
+    private final Set<String> others;
+
+    private NumericKeySet(LongHashSet ids, Set<String> others) {
+        this.ids = ids;
+        this.others = others;
+    }
+
+    public boolean contains(long id) {
+        return ids.contains(id);
+    }
+
+    public boolean contains(String key) {
+        if (key == null) {
+            return false;
+        }
+        Long id = parseId(key);
+        return id != null ? ids.contains(id) : others.contains(key);
+    }
+
+    /**
+     * 与contains(String)一致，规范的十进制编号和其他字符串不会互相匹配
+     */
+    @Override
+    public boolean containsKey(String key) {
+        return contains(key);
+    }
+
+    @Override
+    public int size() {
+        return ids.size() + others.size();
+    }
+
+    /**
+     * 应用一次增量变化，返回新的快照，本快照保持不变
+     * @param added 新增的key
+     * @param removed 删除的key
+     * @return 新的快照
+     */
+    @Override
+    public NumericKeySet apply(Collection<String> added, Collection<String> removed) {
+        LongHashSet.Builder builder = ids.toBuilder();
+        Set<String> newOthers = null;
+        for (String key : removed) {
+            Long id = parseId(key);
+            if (id != null) {
+                builder.remove(id);
+            } else {
+                newOthers = newOthers != null ? newOthers : new HashSet<>(others);
+                newOthers.remove(key);
+            }
+        }
+        for (String key : added) {
+            Long id = parseId(key);
+            if (id != null) {
+                builder.add(id);
+            } else {
+                newOthers = newOthers != null ? newOthers : new HashSet<>(others);
+                newOthers.add(key);
+            }
+        }
+        return new NumericKeySet(builder.build(), newOthers != null ? newOthers : others);
+    }
+
+    /**
+     * @return key为规范的十进制long时返回其值，否则返回null
+     */
+    private static Long parseId(String key) {
+        int length = key.length();
+        if (length == 0 || length > 20) {
+            return null;
+        }
+        int start = key.charAt(0) == '-' ? 1 : 0;
+        if (start == length || (key.charAt(start) == '0' && length > start + 1) || "-0".equals(key)) {
+            return null;
+        }
+        for (int i = start; i < length; i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+        }
+        try {
+            return Long.parseLong(key);
+        } catch (NumberFormatException e) {
+            // 超出long的范围
+            return null;
+        }
+    }
+}
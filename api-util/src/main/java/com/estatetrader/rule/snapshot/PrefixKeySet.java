@@ -0,0 +1,178 @@
+package com.estatetrader.rule.snapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 前缀集合（例如手机号前缀）的不可变快照，用于判断一个key是否以集合中的任意一个前缀开头
+ *
+ * 1. 纯数字的前缀保存在一棵数字前缀树中，查找时间只与key的长度有关，与前缀的数量无关
+ * 2. 增删时只复制从根节点到被修改节点的路径，其余节点在新旧快照之间共享
+ * 3. 含有非数字字符的前缀数量很少，仍然逐一比较
+ */
+public final class PrefixKeySet implements KeySet<PrefixKeySet> {
+
+    public static final PrefixKeySet EMPTY = new PrefixKeySet(null, new String[0], 0);
+
+    private final Node root;
+    private final String[] others;
+    private final int size;
+
+    private PrefixKeySet(Node root, String[] others, int size) {
+        this.root = root;
+        this.others = others;
+        this.size = size;
+    }
+
+    /**
+     * 判断key是否以集合中的任意一个前缀开头，与原先的prefixContainsKey一致
+     * @param key 要检查的key，例如手机号
+     * @return 是否匹配
+     */
+    public boolean matchesPrefixOf(String key) {
+        if (key == null) {
+            return false;
+        }
+        Node node = root;
+        for (int i = 0, length = key.length(); node != null && i < length; i++) {
+            int digit = key.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            node = node.children[digit];
+            if (node != null && node.terminal) {
+                return true;
+            }
+        }
+        for (String prefix : others) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 集合中是否存在与key完全相同的前缀
+     */
+    @Override
+    public boolean containsKey(String key) {
+        if (key == null) {
+            return false;
+        }
+        if (isDigits(key)) {
+            return find(root, key);
+        }
+        for (String prefix : others) {
+            if (prefix.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 应用一次增量变化，返回新的快照，本快照保持不变
+     * @param added 新增的前缀
+     * @param removed 删除的前缀
+     * @return 新的快照
+     */
+    @Override
+    public PrefixKeySet apply(Collection<String> added, Collection<String> removed) {
+        Node newRoot = root;
+        List<String> newOthers = null;
+        int newSize = size;
+        for (String prefix : removed) {
+            if (isDigits(prefix)) {
+                if (find(newRoot, prefix)) {
+                    newRoot = update(newRoot, prefix, 0, false);
+                    newSize--;
+                }
+            } else {
+                newOthers = newOthers != null ? newOthers : new ArrayList<>(Arrays.asList(others));
+                if (newOthers.remove(prefix)) {
+                    newSize--;
+                }
+            }
+        }
+        for (String prefix : added) {
+            if (isDigits(prefix)) {
+                if (!find(newRoot, prefix)) {
+                    newRoot = update(newRoot, prefix, 0, true);
+                    newSize++;
+                }
+            } else {
+                newOthers = newOthers != null ? newOthers : new ArrayList<>(Arrays.asList(others));
+                if (!newOthers.contains(prefix)) {
+                    newOthers.add(prefix);
+                    newSize++;
+                }
+            }
+        }
+        return new PrefixKeySet(newRoot, newOthers != null ? newOthers.toArray(new String[0]) : others, newSize);
+    }
+
+    private static boolean isDigits(String key) {
+        if (key.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean find(Node node, String prefix) {
+        for (int i = 0; node != null && i < prefix.length(); i++) {
+            node = node.children[prefix.charAt(i) - '0'];
+        }
+        return node != null && node.terminal;
+    }
+
+    /**
+     * 复制从node开始的路径，并设置prefix对应节点的terminal
+     * @return 新的节点，节点不再包含任何前缀时返回null
+     */
+    private static Node update(Node node, String prefix, int index, boolean terminal) {
+        Node copy = node != null ? new Node(node.children.clone(), node.terminal) : new Node(new Node[10], false);
+        if (index == prefix.length()) {
+            copy.terminal = terminal;
+        } else {
+            int digit = prefix.charAt(index) - '0';
+            copy.children[digit] = update(copy.children[digit], prefix, index + 1, terminal);
+        }
+        return copy.isEmpty() ? null : copy;
+    }
+
+    private static final class Node {
+        final Node[] children;
+        boolean terminal;
+
+        Node(Node[] children, boolean terminal) {
+            this.children = children;
+            this.terminal = terminal;
+        }
+
+        boolean isEmpty() {
+            if (terminal) {
+                return false;
+            }
+            for (Node child : children) {
+                if (child != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.estatetrader.rule.zk;
+
+import com.estatetrader.rule.snapshot.LongHashSet;
+
+/**
+ * 子节点过期时间的索引，只保存设置了TTL的子节点
+ *
+ * 索引不保存子节点名称，而是以名称的64位哈希值为key，使用开放寻址的基本类型数组保存过期时间和节点版本，
+ * 每项占用20字节（负载因子不超过0.5）。清理时遍历zk中的子节点列表，按照名称的哈希值查找其过期时间。
+ * 哈希冲突的概率可以忽略，即使发生也只会推迟其中一个子节点的清理，删除子节点时使用的版本号保证不会误删
+ */
+final class ExpiryIndex {
+
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * 子节点名称的哈希值，0表示空槽
+     */
+    private long[] hashes = new long[MIN_CAPACITY];
+    private long[] expireAts = new long[MIN_CAPACITY];
+    private int[] versions = new int[MIN_CAPACITY];
+    private int size;
+
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, length = key.length(); i < length; i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h != 0 ? h : 1;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 设置子节点的过期时间
+     * @param key 子节点名称
+     * @param expireAt 过期时间
+     * @param version 读取到过期时间时子节点的版本号
+     */
+    synchronized void put(String key, long expireAt, int version) {
+        long hash = hash(key);
+        int index = indexOf(hash);
+        if (index >= 0) {
+            expireAts[index] = expireAt;
+            versions[index] = version;
+            return;
+        }
+        if ((size + 1) * 2 > hashes.length) {
+            resize(hashes.length * 2);
+        }
+        insert(hash, expireAt, version);
+        size++;
+    }
+
+    synchronized void remove(String key) {
+        int index = indexOf(hash(key));
+        if (index >= 0) {
+            removeAt(index);
+        }
+    }
+
+    /**
+     * 仅在版本号一致时删除子节点的过期时间，以免删除并发更新之后的过期时间
+     */
+    synchronized void remove(String key, int version) {
+        int index = indexOf(hash(key));
+        if (index >= 0 && versions[index] == version) {
+            removeAt(index);
+        }
+    }
+
+    /**
+     * @return 子节点已经过期时返回其版本号，否则返回-1
+     */
+    synchronized int expiredVersion(String key, long now) {
+        int index = indexOf(hash(key));
+        return index >= 0 && expireAts[index] < now ? versions[index] : -1;
+    }
+
+    /**
+     * @return 是否存在已经过期的子节点
+     */
+    synchronized boolean hasExpired(long now) {
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] != 0 && expireAts[i] < now) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 删除已经过期并且不在keep中的子节点的过期时间，例如已经从zk中删除的子节点，
+     * now为Long.MAX_VALUE时删除所有不在keep中的项
+     * @return 删除的数量
+     */
+    synchronized int removeExpired(long now, LongHashSet keep) {
+        long[] expired = new long[size];
+        int count = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] != 0 && expireAts[i] < now && !keep.contains(hashes[i])) {
+                expired[count++] = hashes[i];
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            removeAt(indexOf(expired[i]));
+        }
+        return count;
+    }
+
+    private static int slot(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private int indexOf(long hash) {
+        int mask = hashes.length - 1;
+        for (int i = slot(hash, mask); hashes[i] != 0; i = (i + 1) & mask) {
+            if (hashes[i] == hash) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long hash, long expireAt, int version) {
+        int mask = hashes.length - 1;
+        int i = slot(hash, mask);
+        while (hashes[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        hashes[i] = hash;
+        expireAts[i] = expireAt;
+        versions[i] = version;
+    }
+
+    /**
+     * 删除index处的项，并将同一探测链上的后续项前移（线性探测的删除方式，不使用墓碑）
+     */
+    private void removeAt(int index) {
+        int mask = hashes.length - 1;
+        int hole = index;
+        for (int i = (hole + 1) & mask; hashes[i] != 0; i = (i + 1) & mask) {
+            int home = slot(hashes[i], mask);
+            // home不在(hole, i]之间时，该项可以移动到hole处
+            boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                hashes[hole] = hashes[i];
+                expireAts[hole] = expireAts[i];
+                versions[hole] = versions[i];
+                hole = i;
+            }
+        }
+        hashes[hole] = 0;
+        size--;
+        if (hashes.length > MIN_CAPACITY && size * 8 < hashes.length) {
+            resize(hashes.length / 2);
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldHashes = hashes;
+        long[] oldExpireAts = expireAts;
+        int[] oldVersions = versions;
+        hashes = new long[capacity];
+        expireAts = new long[capacity];
+        versions = new int[capacity];
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] != 0) {
+                insert(oldHashes[i], oldExpireAts[i], oldVersions[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.estatetrader.rule.zk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 两层资源监听器的本地快照，用于在进程启动时先行使用上一次保存的数据（热启动），不必等待zk中的数据全部加载完成
+ *
+ * 文件格式：魔数、格式版本、被监听节点的路径、根节点的版本号和数据、子节点的数量以及各个子节点的名称、版本号和数据，
+ * 节点数据与zk中保存的原始数据格式一致，文件先写入临时文件再原子地替换，避免读到写了一半的快照
+ */
+final class ResourceSnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceSnapshot.class);
+
+    private static final int MAGIC = 0x5a4b534e;
+    private static final int FORMAT_VERSION = 1;
+
+    final Entry root;
+    final Map<String, Entry> children;
+
+    ResourceSnapshot(Entry root, Map<String, Entry> children) {
+        this.root = root;
+        this.children = children;
+    }
+
+    /**
+     * 节点的数据及其版本号
+     */
+    static final class Entry {
+        final byte[] data;
+        final int version;
+
+        Entry(byte[] data, int version) {
+            this.data = data;
+            this.version = version;
+        }
+    }
+
+    /**
+     * @param directory 快照目录
+     * @param path 被监听节点的路径
+     * @return 该节点对应的快照文件
+     */
+    static Path fileOf(String directory, String path) {
+        try {
+            return Paths.get(directory, URLEncoder.encode(path, StandardCharsets.UTF_8.name()) + ".snapshot");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * 读取快照文件
+     * @param file 快照文件
+     * @param path 被监听节点的路径，须与快照中记录的路径一致
+     * @return 快照，文件不存在或者无法识别时返回null
+     */
+    static ResourceSnapshot read(Path file, String path) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !path.equals(in.readUTF())) {
+                LOGGER.warn("ignored unrecognized snapshot file {}", file);
+                return null;
+            }
+            Entry root = readEntry(in);
+            int count = in.readInt();
+            Map<String, Entry> children = new LinkedHashMap<>(Math.max(16, count * 4 / 3 + 1));
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                children.put(key, readEntry(in));
+            }
+            return new ResourceSnapshot(root, Collections.unmodifiableMap(children));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("failed to read snapshot file " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * 将快照写入文件
+     * @param file 快照文件
+     * @param path 被监听节点的路径
+     * @throws IOException 写入失败
+     */
+    void write(Path file, String path) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(path);
+                writeEntry(out, root);
+                out.writeInt(children.size());
+                for (Map.Entry<String, Entry> entry : children.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    writeEntry(out, entry.getValue());
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        int length = in.readInt();
+        if (length < 0) {
+            return new Entry(null, version);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new Entry(data, version);
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeInt(entry.version);
+        if (entry.data == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(entry.data.length);
+            out.write(entry.data);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.estatetrader.rule.zk;
+
+import com.estatetrader.rule.snapshot.KeySet;
+import com.estatetrader.rule.snapshot.LongHashSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ZKKeySetListener在本地保存的全部数据：
+ * 1. 子节点名称组成的不可变KeySet，子节点发生变化时整体替换
+ * 2. 设置了TTL的子节点的过期时间索引，用于清理过期的子节点
+ *
+ * 不为每个子节点保存任何对象（包括子节点名称本身），内存占用只取决于KeySet的实现和设置了TTL的子节点数量
+ *
+ * @param <S> KeySet的类型
+ */
+public final class WatchedKeySet<S extends KeySet<S>> {
+
+    private final S empty;
+    private volatile S keys;
+    private final ExpiryIndex expiry = new ExpiryIndex();
+
+    /**
+     * @param empty 空集合，同时作为重新构建集合时的起点
+     */
+    public WatchedKeySet(S empty) {
+        this.empty = empty;
+        this.keys = empty;
+    }
+
+    /**
+     * @return 当前的子节点集合
+     */
+    public S keys() {
+        return keys;
+    }
+
+    /**
+     * 使用zk返回的最新子节点列表替换当前集合，多次调用之间须顺序执行
+     *
+     * @param children 最新的子节点名称（已解码），不包含重复项
+     * @return 新增的子节点名称
+     */
+    public List<String> update(List<String> children) {
+        S old = keys;
+        List<String> added = new ArrayList<>();
+        for (String key : children) {
+            if (!old.containsKey(key)) {
+                added.add(key);
+            }
+        }
+
+        if (children.size() - added.size() == old.size()) {
+            // 原有的子节点都还在，只应用新增的子节点
+            if (!added.isEmpty()) {
+                keys = old.apply(added, Collections.emptyList());
+            }
+        } else {
+            // 有子节点被删除时根据最新的子节点列表重新构建，这样就不需要保存原有的子节点名称来找出被删除的子节点
+            keys = empty.apply(children, Collections.emptyList());
+            if (expiry.size() > 0) {
+                // 同时丢弃被删除的子节点的过期时间
+                LongHashSet.Builder remaining = LongHashSet.builder();
+                for (String key : children) {
+                    remaining.add(ExpiryIndex.hash(key));
+                }
+                expiry.removeExpired(Long.MAX_VALUE, remaining.build());
+            }
+        }
+        return added;
+    }
+
+    /**
+     * 子节点数据加载或者发生变化之后更新其过期时间
+     *
+     * @param key 子节点名称
+     * @param timestamp 子节点数据的写入时间
+     * @param timeToLive 子节点的存活时间，0表示永不过期
+     * @param version 子节点数据的版本号
+     */
+    public void updateExpiry(String key, long timestamp, long timeToLive, int version) {
+        if (timeToLive > 0) {
+            expiry.put(key, timestamp + timeToLive, version);
+        } else {
+            expiry.remove(key);
+        }
+    }
+
+    /**
+     * @return 设置了TTL的子节点数量（包括已经从zk中删除但还未被清理的子节点）
+     */
+    public int expirySize() {
+        return expiry.size();
+    }
+
+    ExpiryIndex expiry() {
+        return expiry;
+    }
+}
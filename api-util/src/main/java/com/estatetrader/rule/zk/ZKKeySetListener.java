@@ -0,0 +1,204 @@
+package com.estatetrader.rule.zk;
+
+import com.estatetrader.functions.Pair;
+import com.estatetrader.rule.snapshot.KeySet;
+import com.estatetrader.rule.snapshot.LongHashSet;
+import com.estatetrader.util.Lambda;
+import com.estatetrader.util.ZKOperator;
+import com.estatetrader.util.ZNodeChildrenMonitor;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * 只关注子节点名称的两层资源监听器，适用于子节点数量很大的资源，例如黑名单
+ *
+ * 与ZKWatchedResourceListener不同，本监听器不为每个子节点创建监听对象，也不保存子节点名称，
+ * 子节点的集合保存在紧凑的KeySet中（见WatchedKeySet），子节点发生变化时只生成新的KeySet，而不再拷贝整个子节点map。
+ * 子节点的数据只用于清理过期的子节点，所有子节点共用同一个数据监听器，数据中的过期时间保存在基本类型数组实现的索引中。
+ *
+ * 监听器在子节点列表加载完成之后即可使用，子节点的数据在后台加载
+ *
+ * @param <S> 子节点集合的类型
+ */
+public class ZKKeySetListener<S extends KeySet<S>> extends ZNodeChildrenMonitor
+    implements ZKWatchedResourceListener.Cleanable, Closeable, ResourceKeySupport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ZKKeySetListener.class);
+
+    private final WatchedKeySet<S> keySet;
+    private final Consumer<S> onChange;
+    // 所有子节点共用，不为每个子节点创建对象
+    private final Watcher dataWatcher = this::processDataEvent;
+
+    /**
+     * 创建监听器，并等待子节点列表加载完成
+     *
+     * @param path 要监听的节点的路径
+     * @param operator ZK连接
+     * @param empty 空的子节点集合
+     * @param onChange 子节点集合发生变化时以最新的集合调用，多次调用之间顺序执行
+     */
+    public ZKKeySetListener(String path, ZKOperator operator, S empty, Consumer<S> onChange) {
+        super(path, operator);
+        long timestamp = System.currentTimeMillis();
+
+        try {
+            operator.recursiveCreateNode(path);
+        } catch (KeeperException e) {
+            throw new IllegalStateException("create node " + path + " failed!", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+
+        this.keySet = new WatchedKeySet<>(empty);
+        this.onChange = onChange;
+
+        CompletableFuture<?> readyFuture = new CompletableFuture<>();
+        watchChildren(readyFuture);
+        try {
+            readyFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        ZKWatchedResourceListener.cleaner.register(this);
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("KeySetListener[{}] has initialized with {} children in {}ms",
+                path, keySet.keys().size(), System.currentTimeMillis() - timestamp);
+        }
+    }
+
+    /**
+     * @return 当前的子节点集合
+     */
+    public S keys() {
+        return keySet.keys();
+    }
+
+    /**
+     * 子节点发生变化时被调用，多次onChange之间顺序调用，没有并发问题
+     *
+     * @param path           发生变化的节点的路径
+     * @param childNodeNames 节点最新的子节点名称列表
+     * @param sessionChanged 指示连接回话是否发生改变。发生改变意味着我们可能错过了某些通知，因此应重新加载子节点的数据
+     */
+    @Override
+    protected void onChange(String path, List<String> childNodeNames, boolean sessionChanged) {
+        List<String> keys = Lambda.map(childNodeNames, this::decodeKey);
+
+        S old = keySet.keys();
+        List<String> added = keySet.update(keys);
+        S current = keySet.keys();
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("children of {} has changed from {} to {} keys", path, old.size(), current.size());
+        }
+
+        for (String key : sessionChanged ? keys : added) {
+            watchData(key);
+        }
+
+        if (current != old) {
+            onChange.accept(current);
+        }
+    }
+
+    private void watchData(String key) {
+        getOperator().getData(getPath() + "/" + encodeKey(key), dataWatcher, this::processData, null);
+    }
+
+    private void processDataEvent(WatchedEvent event) {
+        if (event.getType() == Watcher.Event.EventType.NodeDataChanged) {
+            getOperator().getData(event.getPath(), dataWatcher, this::processData, null);
+        }
+    }
+
+    private void processData(int rc, String path, Object ctx, byte[] data, Stat stat) {
+        KeeperException.Code code = KeeperException.Code.get(rc);
+        if (code == KeeperException.Code.NONODE) {
+            return;
+        }
+        if (code != KeeperException.Code.OK) {
+            LOGGER.warn("failed to load data of {}: {}", path, code);
+            return;
+        }
+
+        String key = decodeKey(path.substring(path.lastIndexOf('/') + 1));
+        try {
+            // 只需要其中的过期时间，数据本身不会被使用
+            ItemData<?> item = ItemData.deserialize(data, Object.class);
+            keySet.updateExpiry(key, item.timestamp, item.timeToLive, stat.getVersion());
+        } catch (RuntimeException e) {
+            LOGGER.error("failed to handle the data change of path " + path, e);
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        ExpiryIndex expiry = keySet.expiry();
+        long now = System.currentTimeMillis();
+        // 大部分时候没有过期的子节点，此时无需访问zk
+        if (!expiry.hasExpired(now)) {
+            return;
+        }
+
+        List<String> childNodeNames;
+        try {
+            childNodeNames = getOperator().getConn().getChildren(getPath(), false);
+        } catch (KeeperException e) {
+            LOGGER.error("failed to list children of {} for cleaning up. retry at next time", getPath());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        // [{node path, node version}]
+        List<Pair<String, Integer>> nodesToRemove = new ArrayList<>();
+        LongHashSet.Builder matched = LongHashSet.builder();
+        for (String name : childNodeNames) {
+            String key = decodeKey(name);
+            int version = expiry.expiredVersion(key, now);
+            if (version >= 0) {
+                nodesToRemove.add(new Pair<>(getPath() + "/" + name, version));
+                matched.add(ExpiryIndex.hash(key));
+            }
+        }
+        // 已经不在zk中的子节点的过期时间不再需要
+        int stale = expiry.removeExpired(now, matched.build());
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("cleaning up loop was triggered to clean {} out of {} children, {} stale expirations dropped",
+                nodesToRemove.size(), childNodeNames.size(), stale);
+        }
+
+        ZKWatchedResourceListener.removeExpiredNodes(getOperator(), nodesToRemove, pair -> {
+            String path = pair.first;
+            expiry.remove(decodeKey(path.substring(path.lastIndexOf('/') + 1)), pair.second);
+        });
+    }
+
+    /**
+     * Closes this stream and releases any system resources associated
+     * with it. If the stream is already closed then invoking this
+     * method has no effect.
+     */
+    @Override
+    public void close() {
+        ZKWatchedResourceListener.cleaner.unregister(this);
+    }
+}
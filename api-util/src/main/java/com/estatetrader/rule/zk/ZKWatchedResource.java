@@ -1,9 +1,13 @@
 package com.estatetrader.rule.zk;
 
+import com.estatetrader.rule.WatchedResourceEventConsumer;
+import com.estatetrader.rule.snapshot.KeySet;
 import com.estatetrader.util.ZKOperator;
 import com.estatetrader.rule.WatchedResourceListener;
 import com.estatetrader.rule.WatchedResourceManager;
 
+import java.util.function.Consumer;
+
 public class ZKWatchedResource<T> {
     private final String rootPath;
     private final ZKOperator operator;
@@ -35,7 +39,30 @@ public class ZKWatchedResource<T> {
     }
 
     public WatchedResourceListener<T> createListener() {
-        return new ZKWatchedResourceListener<>(rootPath, operator, null,
+        return createListener(null);
+    }
+
+    /**
+     * 创建资源监听器
+     * @param eventConsumer 可选的事件监听器，用于在zk发生变化时维护本地快照等
+     * @return 资源监听器
+     */
+    public WatchedResourceListener<T> createListener(WatchedResourceEventConsumer eventConsumer) {
+        return new ZKWatchedResourceListener<>(rootPath, operator, eventConsumer,
             dataType, childDataType, grandChildTypes);
     }
+
+    /**
+     * 创建只关注子节点名称的监听器，不为每个子节点保存任何对象，适用于子节点数量很大的资源
+     * @param empty 空的子节点集合
+     * @param onChange 子节点集合发生变化时以最新的集合调用
+     * @param <S> 子节点集合的类型
+     * @return 子节点集合监听器
+     */
+    public <S extends KeySet<S>> ZKKeySetListener<S> createKeySetListener(S empty, Consumer<S> onChange) {
+        if (childDataType != null || grandChildTypes != null && grandChildTypes.length > 0) {
+            throw new IllegalStateException("key set listener does not support child data or grand children: " + rootPath);
+        }
+        return new ZKKeySetListener<>(rootPath, operator, empty, onChange);
+    }
 }
@@ -13,10 +13,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * 基于Zookeeper的资源监听器，用于监听zk节点及其子节点（数据）的变化，并维护本地缓存
@@ -37,14 +41,23 @@ import java.util.concurrent.*;
  * 2. 分布式集合（可以更新集合中的部分数据），例如超级管理员名单
  * 3. 多级分布式集合（可以仅更新某个层级中的部分数据），例如权限树（子系统-API-角色）
  *
+ * 子节点的数据通过ZKOperator的异步请求流水线加载，同时等待响应的请求数量受其窗口限制。
+ * 如果ZKOperator设置了快照目录，两层的资源监听器会定期将数据保存到本地快照文件，
+ * 并在下一次启动时先使用快照中的数据（热启动），zk中的数据在后台加载完成之后再替换快照中的数据
+ *
  * @param <T> 子节点的数据类型，如果不关注子节点数据，则使用Void作为其类型
  */
 public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ZKWatchedResourceListener.class);
-    private static final Cleaner cleaner = new Cleaner();
+    static final Cleaner cleaner = new Cleaner();
+    private static final int SNAPSHOT_PERIOD_SECONDS = 30;
 
     private final NodeListener root;
+    // 自上一次保存快照以来数据是否发生了变化
+    private final AtomicBoolean modified;
+    private final Path snapshotFile;
+    private final ScheduledFuture<?> snapshotTask;
 
     /**
      * 创建一个类似于分布式集合（Set）的两层资源监听器，其中Set的各元素为子节点的名称
@@ -139,17 +152,63 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
         dataTypes[1] = childDataType;
         System.arraycopy(grandChildDataTypes, 0, dataTypes, 2, grandChildDataTypes.length);
 
-        this.root = new NodeListener(path, operator, dataTypes, eventConsumer);
-        if (waitForReady) {
+        // 本地快照只支持两层的资源监听器
+        String snapshotDirectory = operator.getSnapshotDirectory();
+        this.snapshotFile = snapshotDirectory != null && dataTypes.length == 2 ?
+            ResourceSnapshot.fileOf(snapshotDirectory, path) : null;
+        ResourceSnapshot snapshot = snapshotFile != null ? ResourceSnapshot.read(snapshotFile, path) : null;
+
+        this.modified = new AtomicBoolean();
+        this.root = new NodeListener(path, operator, dataTypes, eventConsumer, modified, snapshot);
+
+        if (snapshot != null) {
+            // 使用快照初始化时不设置modified，zk中的数据加载完成之后快照会被更新
+            LOGGER.info("ResourceListener[{}] has warm started from snapshot {} with {} children in {}ms",
+                path, snapshotFile, snapshot.children.size(), System.currentTimeMillis() - timestamp);
+        } else if (waitForReady) {
             this.root.waitForReady();
             if (LOGGER.isInfoEnabled()) {
                 LOGGER.info("ResourceListener[{}] has initialized in {}ms", path, System.currentTimeMillis() - timestamp);
             }
         }
+
+        this.snapshotTask = snapshotFile != null ? Cleaner.executor.scheduleWithFixedDelay(this::saveSnapshot,
+            SNAPSHOT_PERIOD_SECONDS, SNAPSHOT_PERIOD_SECONDS, TimeUnit.SECONDS) : null;
     }
 
     private ZKWatchedResourceListener(NodeListener root) {
         this.root = root;
+        this.modified = null;
+        this.snapshotFile = null;
+        this.snapshotTask = null;
+    }
+
+    /**
+     * 在数据全部从zk加载完成并且发生变化之后将其保存到快照文件
+     *
+     * @return 是否保存了快照
+     */
+    boolean saveSnapshot() {
+        if (!modified.get() || !root.isLoaded()) {
+            return false;
+        }
+        // 先清除标记再收集数据，收集期间发生的变化会在下一次保存
+        modified.set(false);
+
+        Map<String, NodeListener> copy = root.children.children;
+        Map<String, ResourceSnapshot.Entry> children = new LinkedHashMap<>(copy.size() * 4 / 3 + 1);
+        for (Map.Entry<String, NodeListener> entry : copy.entrySet()) {
+            children.put(entry.getKey(), entry.getValue().toSnapshotEntry());
+        }
+        try {
+            new ResourceSnapshot(root.toSnapshotEntry(), children).write(snapshotFile, root.getPath());
+            LOGGER.debug("saved snapshot of {} with {} children", root.getPath(), children.size());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            modified.set(true);
+            LOGGER.warn("failed to save snapshot of " + root.getPath() + " to " + snapshotFile, e);
+            return false;
+        }
     }
 
     /**
@@ -199,7 +258,7 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
     @Override
     public Iterable<String> filter(Iterable<String> keys) {
         List<String> list = new ArrayList<>();
-        for (String key : root.children.children.keySet()) {
+        for (String key : keys) {
             if (containsKey(key)) {
                 list.add(key);
             }
@@ -306,9 +365,65 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
      */
     @Override
     public void close() {
+        if (snapshotTask != null) {
+            snapshotTask.cancel(false);
+        }
         root.close();
     }
 
+    /**
+     * 删除已经过期的节点，删除时检查节点的版本号，节点在读取之后被更新过则不会被删除
+     *
+     * @param nodesToRemove [{node path, node version}]
+     * @param onRemoved 可选，节点被删除（或者已经不存在）之后调用
+     */
+    static void removeExpiredNodes(ZKOperator operator,
+                                   List<Pair<String, Integer>> nodesToRemove,
+                                   Consumer<Pair<String, Integer>> onRemoved) {
+        int count = 0;
+        for (Pair<String, Integer> pair : nodesToRemove) {
+            ZooKeeper zk = operator.getConn();
+            String path = pair.first;
+            try {
+                zk.delete(pair.first, pair.second);
+                LOGGER.info("Node {} is cleaned up due to expiration", path);
+                if (onRemoved != null) {
+                    onRemoved.accept(pair);
+                }
+            } catch (KeeperException.NoNodeException e) {
+                LOGGER.warn("Node is already removed. It may be because another process deleted the znode {} " +
+                    "at the same time.", path);
+                if (onRemoved != null) {
+                    onRemoved.accept(pair);
+                }
+            } catch (KeeperException.NotEmptyException e) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Node is not empty. It may be because there is one of the child nodes whose ttl is " +
+                        "more than the node {} itself", path);
+                }
+            } catch (KeeperException.BadVersionException e) {
+                LOGGER.warn("Node version is not match. It may be because the node {} have been updated " +
+                    "after we git it, skipping cleaning up", path);
+            } catch (KeeperException e) {
+                LOGGER.error("failed to clean up node {}. retry at next time", path);
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (++count > 10000) {
+                LOGGER.warn("there are too many timed out keys ({}) so that we cannot clean up at the same time. " +
+                    "next time it will continue", nodesToRemove.size() - 10000);
+                break;
+            }
+        }
+    }
+
+    private static boolean isCompletedNormally(CompletableFuture<?> future) {
+        return future.isDone() && !future.isCompletedExceptionally();
+    }
+
     private static void waitForFuture(Future<?> future) {
         try {
             future.get();
@@ -327,6 +442,7 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
         private final Class<?> dataType;
         private final ChildrenListener children;
         private final WatchedResourceEventConsumer eventConsumer;
+        private final AtomicBoolean modified;
 
         /**
          * 创建一个节点监听器
@@ -342,11 +458,26 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
          * @param path 要监听的节点的路径
          * @param dataTypes 用于控制监听深度和各个深度上的节点数据类型
          * @param eventConsumer 可选的监听器
+         * @param modified 数据发生变化时设置的标记
+         * @param snapshot 可选的本地快照，用于在zk数据加载完成之前初始化此节点及其子节点
          */
         NodeListener(String path,
                      ZKOperator operator,
                      Class<?>[] dataTypes,
-                     WatchedResourceEventConsumer eventConsumer) {
+                     WatchedResourceEventConsumer eventConsumer,
+                     AtomicBoolean modified,
+                     ResourceSnapshot snapshot) {
+            this(path, operator, dataTypes, eventConsumer, modified, snapshot,
+                snapshot != null ? snapshot.root : null);
+        }
+
+        private NodeListener(String path,
+                             ZKOperator operator,
+                             Class<?>[] dataTypes,
+                             WatchedResourceEventConsumer eventConsumer,
+                             AtomicBoolean modified,
+                             ResourceSnapshot snapshot,
+                             ResourceSnapshot.Entry seed) {
             super(path, operator);
 
             int slashIndex = path.lastIndexOf('/');
@@ -355,6 +486,7 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
             }
             this.key = decodeKey(path.substring(slashIndex + 1));
             this.eventConsumer = eventConsumer;
+            this.modified = modified;
 
             if (dataTypes == null || dataTypes.length == 0) {
                 this.dataType = null;
@@ -362,12 +494,17 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
                 this.readyFuture = null;
             } else {
                 this.dataType = dataTypes[0];
+                if (seed != null) {
+                    // 须在发出zk请求之前设置，以免覆盖zk返回的最新数据
+                    this.info = new NodeInfo<>(ItemData.deserialize(seed.data, dataType), seed.version);
+                }
                 this.readyFuture = new CompletableFuture<>();
                 watchData(this.readyFuture);
 
                 if (dataTypes.length > 1) {
                     Class<?>[] nextDataTypes = Arrays.copyOfRange(dataTypes, 1, dataTypes.length);
-                    this.children = new ChildrenListener(path, operator, nextDataTypes, eventConsumer);
+                    this.children = new ChildrenListener(path, operator, nextDataTypes, eventConsumer,
+                        modified, snapshot);
                     LOGGER.debug("register cleaner for {}", path);
                     cleaner.register(this.children);
                 } else {
@@ -393,6 +530,22 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
             }
         }
 
+        /**
+         * @return 此节点及其子节点的数据是否已经全部从zk加载完成
+         */
+        boolean isLoaded() {
+            return (readyFuture == null || isCompletedNormally(readyFuture)) &&
+                (children == null || children.isLoaded());
+        }
+
+        ResourceSnapshot.Entry toSnapshotEntry() {
+            NodeInfo<?> copy = this.info;
+            if (copy == null) {
+                return new ResourceSnapshot.Entry(null, -1);
+            }
+            return new ResourceSnapshot.Entry(copy.data != null ? copy.data.serialize() : null, copy.version);
+        }
+
         Object getValue() {
             if (dataType == null) {
                 throw new IllegalStateException("data type of " + getPath() + " is not set");
@@ -421,6 +574,7 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
             Object oldValue = oldInfo != null && oldInfo.data != null ? oldInfo.data.value : null;
 
             this.info = new NodeInfo<>(newData, version);
+            modified.set(true);
 
             if (eventConsumer != null) {
                 eventConsumer.onChildDataChange(key, oldValue, newData.value);
@@ -448,19 +602,44 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
         // 使用volatile实现并发读写方案，应注意每次访问此字段的值都将不同，但是map本身应只读，不允许修改
         private volatile Map<String, NodeListener> children;
         private final WatchedResourceEventConsumer eventConsumer;
+        private final AtomicBoolean modified;
 
         ChildrenListener(String path,
                          ZKOperator operator,
                          Class<?>[] dataTypes,
-                         WatchedResourceEventConsumer eventConsumer) {
+                         WatchedResourceEventConsumer eventConsumer,
+                         AtomicBoolean modified,
+                         ResourceSnapshot snapshot) {
             super(path, operator);
             this.dataTypes = dataTypes;
             this.readyFuture = new CompletableFuture<>();
             this.children = Collections.emptyMap();
             this.eventConsumer = eventConsumer;
+            this.modified = modified;
+            if (snapshot != null && !snapshot.children.isEmpty()) {
+                seed(snapshot.children);
+            }
             watchChildren(this.readyFuture);
         }
 
+        /**
+         * 使用快照中的子节点初始化本地缓存，各个子节点的数据请求在后台进行，
+         * 之后zk返回的子节点列表与快照之间的差异按照正常的子节点变化处理
+         */
+        private void seed(Map<String, ResourceSnapshot.Entry> snapshot) {
+            Map<String, NodeListener> seeded = new HashMap<>(snapshot.size() * 4 / 3 + 1);
+            for (Map.Entry<String, ResourceSnapshot.Entry> entry : snapshot.entrySet()) {
+                seeded.put(entry.getKey(), createChild(entry.getKey(), entry.getValue()));
+            }
+            this.children = seeded;
+
+            if (eventConsumer != null) {
+                List<String> keys = new ArrayList<>(seeded.keySet());
+                eventConsumer.onChildrenDelta(keys, Collections.emptyList());
+                eventConsumer.onChildrenChange(Collections.emptyList(), keys);
+            }
+        }
+
         void waitForReady() {
             waitForFuture(readyFuture);
             for (NodeListener child : children.values()) {
@@ -472,6 +651,18 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
             watchChildren();
         }
 
+        boolean isLoaded() {
+            if (!isCompletedNormally(readyFuture)) {
+                return false;
+            }
+            for (NodeListener child : children.values()) {
+                if (!child.isLoaded()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         /**
          * 子节点发生变化时被调用，用于同步本地缓存，多次onChange之间顺序调用，没有并发问题
          *
@@ -489,6 +680,8 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
 
             Map<String, NodeListener> oldChildren = this.children; // 内存屏障点
             Map<String, NodeListener> newChildren = new HashMap<>(decodedChildrenName.size());
+            List<String> added = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
 
             // 拷贝、创建新增的节点或者在会话变化后强制刷新节点数据
             for (String key : decodedChildrenName) {
@@ -499,7 +692,8 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
                         child.forceUpdate();
                     }
                 } else {
-                    newChildren.put(key, createChild(key));
+                    newChildren.put(key, createChild(key, null));
+                    added.add(key);
                 }
             }
 
@@ -507,20 +701,27 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
             for (Map.Entry<String, NodeListener> entry : oldChildren.entrySet()) {
                 if (!newChildren.containsKey(entry.getKey())) {
                     entry.getValue().close();
+                    removed.add(entry.getKey());
                 }
             }
 
             this.children = newChildren; // 内存屏障点
+            if (!added.isEmpty() || !removed.isEmpty()) {
+                modified.set(true);
+            }
 
             if (eventConsumer != null) {
+                if (!added.isEmpty() || !removed.isEmpty()) {
+                    eventConsumer.onChildrenDelta(added, removed);
+                }
                 eventConsumer.onChildrenChange(new ArrayList<>(oldChildren.keySet()),
                     new ArrayList<>(newChildren.keySet()));
             }
         }
 
-        private NodeListener createChild(String key) {
+        private NodeListener createChild(String key, ResourceSnapshot.Entry seed) {
             String childPath = getPath() + "/" + encodeKey(key);
-            return new NodeListener(childPath, getOperator(), dataTypes, eventConsumer);
+            return new NodeListener(childPath, getOperator(), dataTypes, eventConsumer, modified, null, seed);
         }
 
         @Override
@@ -543,38 +744,7 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
                 LOGGER.debug("cleaning up loop was triggered to clean {} out of {} children", nodesToRemove.size(), copy.size());
             }
 
-            int count = 0;
-            for (Pair<String, Integer> pair : nodesToRemove) {
-                ZooKeeper zk = getOperator().getConn();
-                String path = pair.first;
-                try {
-                    zk.delete(pair.first, pair.second);
-                    LOGGER.info("Node {} is cleaned up due to expiration", path);
-                } catch (KeeperException.NoNodeException e) {
-                    LOGGER.warn("Node is already removed. It may be because another process deleted the znode {} " +
-                        "at the same time.", path);
-                } catch (KeeperException.NotEmptyException e) {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("Node is not empty. It may be because there is one of the child nodes whose ttl is " +
-                            "more than the node {} itself", path);
-                    }
-                } catch (KeeperException.BadVersionException e) {
-                    LOGGER.warn("Node version is not match. It may be because the node {} have been updated " +
-                        "after we git it, skipping cleaning up", path);
-                } catch (KeeperException e) {
-                    LOGGER.error("failed to clean up node {}. retry at next time", path);
-                    break;
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-
-                if (++count > 10000) {
-                    LOGGER.warn("there are too many timed out keys ({}) so that we cannot clean up at the same time. " +
-                        "next time it will continue", nodesToRemove.size() - 10000);
-                    break;
-                }
-            }
+            removeExpiredNodes(getOperator(), nodesToRemove, null);
         }
 
         /**
@@ -591,11 +761,11 @@ public class ZKWatchedResourceListener<T> implements WatchedResourceListener<T>
         }
     }
 
-    private interface Cleanable {
+    interface Cleanable {
         void cleanup();
     }
 
-    private static class Cleaner implements AutoCloseable {
+    static class Cleaner implements AutoCloseable {
 
         private static final ScheduledExecutorService executor =
             Executors.newSingleThreadScheduledExecutor(Cleaner::newThread);
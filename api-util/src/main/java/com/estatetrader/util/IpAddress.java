@@ -0,0 +1,286 @@
+package com.estatetrader.util;
+
+/**
+ * 已解析的IP地址，IPv4和IPv6统一使用128位表示
+ *
+ * 1. IPv4地址按照IPv4-mapped IPv6（::ffff:a.b.c.d）的形式存储，因此IPv4与其mapped形式视为同一个地址
+ * 2. 解析过程不进行任何DNS查询，无法解析的字符串（包括主机名、带端口号的地址）返回null
+ * 3. 对象不可变，可以在线程之间共享，也可以作为哈希表的key
+ */
+public final class IpAddress {
+
+    /**
+     * IPv4-mapped IPv6地址中低64位的前缀（0000:ffff）
+     */
+    private static final long IPV4_MAPPED_PREFIX = 0xffffL << 32;
+
+    private final long high;
+    private final long low;
+
+    private IpAddress(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * 使用128位的值构建地址
+     * @param high 高64位
+     * @param low 低64位
+     * @return IP地址
+     */
+    public static IpAddress of(long high, long low) {
+        return new IpAddress(high, low);
+    }
+
+    /**
+     * 使用32位的IPv4地址构建地址
+     * @param ipv4 IPv4地址
+     * @return IP地址
+     */
+    public static IpAddress ofIpv4(int ipv4) {
+        return new IpAddress(0, IPV4_MAPPED_PREFIX | (ipv4 & 0xffffffffL));
+    }
+
+    /**
+     * 解析IPv4或IPv6地址，IPv6地址可以带有方括号和zone id（例如[fe80::1%eth0]）
+     * @param text 要解析的字符串
+     * @return 解析后的地址，字符串为空或者不是合法的IP地址时返回null
+     */
+    public static IpAddress parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        int start = 0;
+        int end = text.length();
+        if (end == 0) {
+            return null;
+        }
+        if (text.charAt(0) == '[') {
+            if (text.charAt(end - 1) != ']') {
+                return null;
+            }
+            start++;
+            end--;
+        }
+        int zone = text.indexOf('%', start);
+        if (zone >= 0 && zone < end) {
+            end = zone;
+        }
+
+        if (text.indexOf(':', start) < 0) {
+            long ipv4 = parseIpv4(text, start, end);
+            return ipv4 < 0 ? null : ofIpv4((int) ipv4);
+        }
+        return parseIpv6(text, start, end);
+    }
+
+    /**
+     * @return 本地址是否为IPv4地址（包括IPv4-mapped IPv6地址）
+     */
+    public boolean isIpv4() {
+        return high == 0 && (low & 0xffffffff00000000L) == IPV4_MAPPED_PREFIX;
+    }
+
+    /**
+     * @return 本地址为IPv4地址时对应的32位值
+     */
+    public int ipv4() {
+        return (int) low;
+    }
+
+    public long high() {
+        return high;
+    }
+
+    public long low() {
+        return low;
+    }
+
+    /**
+     * 解析点分十进制的IPv4地址
+     * @return 32位的地址，解析失败时返回-1
+     */
+    private static long parseIpv4(String text, int start, int end) {
+        long result = 0;
+        int parts = 0;
+        int i = start;
+        while (true) {
+            int value = 0;
+            int digits = 0;
+            while (i < end && digits < 4) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+                digits++;
+                i++;
+            }
+            if (digits == 0 || digits > 3 || value > 255) {
+                return -1;
+            }
+            result = (result << 8) | value;
+            parts++;
+            if (i == end) {
+                return parts == 4 ? result : -1;
+            }
+            if (parts == 4 || text.charAt(i) != '.') {
+                return -1;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * 解析IPv6地址，支持'::'缩写以及以IPv4形式结尾的地址（例如::ffff:10.0.0.1）
+     */
+    private static IpAddress parseIpv6(String text, int start, int end) {
+        int[] groups = new int[8];
+        int count = 0;
+        int compressAt = -1;
+        int i = start;
+
+        if (end - start >= 2 && text.charAt(start) == ':' && text.charAt(start + 1) == ':') {
+            compressAt = 0;
+            i += 2;
+            if (i == end) {
+                return of(0, 0);
+            }
+        } else if (i < end && text.charAt(i) == ':') {
+            return null;
+        }
+
+        while (i < end) {
+            if (count == 8) {
+                return null;
+            }
+            int groupStart = i;
+            int value = 0;
+            while (i < end && i - groupStart < 5) {
+                int digit = Character.digit(text.charAt(i), 16);
+                if (digit < 0) {
+                    break;
+                }
+                value = (value << 4) | digit;
+                i++;
+            }
+            if (i < end && text.charAt(i) == '.') {
+                // 以IPv4形式结尾，占用两个分组
+                long ipv4 = count <= 6 ? parseIpv4(text, groupStart, end) : -1;
+                if (ipv4 < 0) {
+                    return null;
+                }
+                groups[count++] = (int) (ipv4 >>> 16);
+                groups[count++] = (int) (ipv4 & 0xffff);
+                i = end;
+                break;
+            }
+            int length = i - groupStart;
+            if (length == 0 || length > 4) {
+                return null;
+            }
+            groups[count++] = value;
+            if (i == end) {
+                break;
+            }
+            if (text.charAt(i) != ':') {
+                return null;
+            }
+            i++;
+            if (i < end && text.charAt(i) == ':') {
+                if (compressAt >= 0) {
+                    return null;
+                }
+                compressAt = count;
+                i++;
+            } else if (i == end) {
+                // 以单个':'结尾
+                return null;
+            }
+        }
+
+        if (compressAt >= 0) {
+            if (count == 8) {
+                return null;
+            }
+            int shift = 8 - count;
+            System.arraycopy(groups, compressAt, groups, compressAt + shift, count - compressAt);
+            for (int k = compressAt; k < compressAt + shift; k++) {
+                groups[k] = 0;
+            }
+        } else if (count != 8) {
+            return null;
+        }
+
+        long high = 0;
+        long low = 0;
+        for (int k = 0; k < 4; k++) {
+            high = (high << 16) | groups[k];
+            low = (low << 16) | groups[k + 4];
+        }
+        return of(high, low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IpAddress)) {
+            return false;
+        }
+        IpAddress that = (IpAddress) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high) * 31 + Long.hashCode(low);
+    }
+
+    @Override
+    public String toString() {
+        if (isIpv4()) {
+            int v = ipv4();
+            return (v >>> 24) + "." + ((v >>> 16) & 0xff) + "." + ((v >>> 8) & 0xff) + "." + (v & 0xff);
+        }
+        int[] groups = new int[8];
+        for (int k = 0; k < 8; k++) {
+            long word = k < 4 ? high : low;
+            groups[k] = (int) ((word >>> (48 - 16 * (k % 4))) & 0xffff);
+        }
+
+        // 按照RFC 5952，将最长的（至少两个）连续为0的分组缩写为'::'
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int k = 0; k < 8; ) {
+            if (groups[k] != 0) {
+                k++;
+                continue;
+            }
+            int end = k;
+            while (end < 8 && groups[end] == 0) {
+                end++;
+            }
+            if (end - k > bestLength) {
+                bestStart = k;
+                bestLength = end - k;
+            }
+            k = end;
+        }
+
+        StringBuilder sb = new StringBuilder(39);
+        for (int k = 0; k < 8; k++) {
+            if (k == bestStart) {
+                sb.append("::");
+                k += bestLength - 1;
+                continue;
+            }
+            if (k > 0 && k != bestStart + bestLength) {
+                sb.append(':');
+            }
+            sb.append(Integer.toHexString(groups[k]));
+        }
+        return sb.toString();
+    }
+}
@@ -7,13 +7,17 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ZKOperator implements Watcher, Closeable, AutoCloseable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ZKOperator.class);
     private static final int RETRY_PERIOD_SECONDS = 3;
+    private static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 1000;
 
     private volatile ZooKeeper conn;
     private final CountDownLatch connectedSemaphore;
@@ -21,6 +25,14 @@ public class ZKOperator implements Watcher, Closeable, AutoCloseable {
     private final String connectString;
     private final int sessionTimeout;
 
+    // 异步请求的流水线窗口：最多同时有maxInFlightRequests个请求等待zk的响应，其余请求在队列中排队，
+    // 每收到一个响应就发出一个排队中的请求，避免启动或者会话重建时瞬间向zk发出数以万计的请求
+    private volatile int maxInFlightRequests = DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final Queue<Runnable> pendingRequests = new ConcurrentLinkedQueue<>();
+
+    private volatile String snapshotDirectory;
+
     public ZKOperator(String connectString, int sessionTimeout) {
         this.connectString = connectString;
         this.sessionTimeout = sessionTimeout;
@@ -111,6 +123,110 @@ public class ZKOperator implements Watcher, Closeable, AutoCloseable {
         return conn;
     }
 
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * 设置同时等待zk响应的异步请求的最大数量
+     * @param maxInFlightRequests 最大数量，须大于0
+     */
+    public void setMaxInFlightRequests(int maxInFlightRequests) {
+        if (maxInFlightRequests <= 0) {
+            throw new IllegalArgumentException("maxInFlightRequests must be positive");
+        }
+        this.maxInFlightRequests = maxInFlightRequests;
+        dispatchPendingRequests();
+    }
+
+    public String getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+
+    /**
+     * 设置资源监听器本地快照文件所在的目录，设置之后监听器在启动时可以先使用本地快照，不必等待zk数据全部加载完成
+     * @param snapshotDirectory 目录路径，为空表示不使用本地快照
+     */
+    public void setSnapshotDirectory(String snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory != null && !snapshotDirectory.trim().isEmpty() ?
+            snapshotDirectory.trim() : null;
+    }
+
+    /**
+     * 异步获取节点数据并设置监听，与ZooKeeper.getData一致，但受到流水线窗口的限制
+     */
+    public void getData(String path, Watcher watcher, AsyncCallback.DataCallback cb, Object ctx) {
+        submitRequest(() -> {
+            AsyncCallback.DataCallback callback = (rc, p, c, data, stat) -> {
+                try {
+                    cb.processResult(rc, p, c, data, stat);
+                } finally {
+                    completeRequest();
+                }
+            };
+            try {
+                conn.getData(path, watcher, callback, ctx);
+            } catch (RuntimeException e) {
+                LOGGER.error("failed to send getData request of " + path, e);
+                callback.processResult(KeeperException.Code.SYSTEMERROR.intValue(), path, ctx, null, null);
+            }
+        });
+    }
+
+    /**
+     * 异步获取子节点列表并设置监听，与ZooKeeper.getChildren一致，但受到流水线窗口的限制
+     */
+    public void getChildren(String path, Watcher watcher, AsyncCallback.ChildrenCallback cb, Object ctx) {
+        submitRequest(() -> {
+            AsyncCallback.ChildrenCallback callback = (rc, p, c, children) -> {
+                try {
+                    cb.processResult(rc, p, c, children);
+                } finally {
+                    completeRequest();
+                }
+            };
+            try {
+                conn.getChildren(path, watcher, callback, ctx);
+            } catch (RuntimeException e) {
+                LOGGER.error("failed to send getChildren request of " + path, e);
+                callback.processResult(KeeperException.Code.SYSTEMERROR.intValue(), path, ctx, null);
+            }
+        });
+    }
+
+    private void submitRequest(Runnable request) {
+        pendingRequests.add(request);
+        dispatchPendingRequests();
+    }
+
+    private void completeRequest() {
+        inFlightRequests.decrementAndGet();
+        dispatchPendingRequests();
+    }
+
+    /**
+     * 在窗口允许的范围内发出排队中的请求。请求在发出时才读取conn，因此会话重建之后排队的请求会发往新的连接
+     * 入队和完成时都会调用此方法，二者分别先修改队列和计数再检查对方，因此不会遗漏排队中的请求
+     */
+    private void dispatchPendingRequests() {
+        while (!pendingRequests.isEmpty()) {
+            int current = inFlightRequests.get();
+            if (current >= maxInFlightRequests) {
+                return;
+            }
+            if (!inFlightRequests.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable request = pendingRequests.poll();
+            if (request == null) {
+                // 请求已经被其他线程发出
+                inFlightRequests.decrementAndGet();
+                continue;
+            }
+            request.run();
+        }
+    }
+
     @Override
     public void process(WatchedEvent event) {
         Event.KeeperState state = event.getState();
@@ -28,7 +28,7 @@ public abstract class ZNodeChildrenMonitor implements AsyncCallback.ChildrenCall
     }
 
     public void watchChildren(CompletableFuture<?> future) {
-        operator.getConn().getChildren(path, this::processEvent, this, future);
+        operator.getChildren(path, this::processEvent, this, future);
     }
 
     public String getPath() {
@@ -30,7 +30,7 @@ public abstract class ZNodeDataMonitor implements AsyncCallback.DataCallback{
     }
 
     protected void watchData(CompletableFuture<?> future) {
-        operator.getConn().getData(path, this::processEvent, this, future);
+        operator.getData(path, this::processEvent, this, future);
     }
 
     private void processEvent(WatchedEvent event) {
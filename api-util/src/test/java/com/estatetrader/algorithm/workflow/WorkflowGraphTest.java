@@ -0,0 +1,203 @@
+package com.estatetrader.algorithm.workflow;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class WorkflowGraphTest {
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterClass
+    public static void shutdown() {
+        executor.shutdown();
+    }
+
+    private static WorkflowExecution asyncValue(Object value) {
+        return pipeline -> {
+            ExecutionResult.Async result = new ExecutionResult.Async();
+            executor.execute(() -> result.success(value));
+            return result;
+        };
+    }
+
+    private static WorkflowExecution asyncFailure(Throwable throwable) {
+        return pipeline -> {
+            ExecutionResult.Async result = new ExecutionResult.Async();
+            executor.execute(() -> result.fail(throwable));
+            return result;
+        };
+    }
+
+    @Test
+    public void testFanOutCompletedConcurrently() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            int nodeCount = 100;
+            AtomicInteger finishCount = new AtomicInteger();
+            AtomicInteger sum = new AtomicInteger();
+
+            WorkflowGraph graph = new WorkflowGraph(pipeline -> {
+                for (int i = 0; i < nodeCount; i++) {
+                    pipeline.node("n" + i, (Object) null, asyncValue(i));
+                }
+                return null;
+            }, (originFailed, nodesFailed, result, context) -> {
+                finishCount.incrementAndGet();
+                Assert.assertNull(originFailed);
+                Assert.assertTrue(nodesFailed.isEmpty());
+                for (int i = 0; i < nodeCount; i++) {
+                    try {
+                        sum.addAndGet((Integer) result.getResult("n" + i));
+                    } catch (Throwable t) {
+                        throw new AssertionError(t);
+                    }
+                }
+            });
+
+            graph.start(10000).get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(1, finishCount.get());
+            Assert.assertEquals(nodeCount * (nodeCount - 1) / 2, sum.get());
+        }
+    }
+
+    @Test
+    public void testChainDependencies() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        WorkflowGraph graph = new WorkflowGraph(pipeline -> {
+            pipeline.node("a", (Object) null, (WorkflowExecution.Sync) p -> order.add("a"), asyncValue(null));
+            pipeline.node("b", "a", (Object) null, (WorkflowExecution.Sync) p -> order.add("b"), asyncValue(null));
+            pipeline.node("c", (Iterable<String>) Arrays.asList("a", "b"), (Object) null,
+                (WorkflowExecution.Sync) p -> order.add("c"));
+            return null;
+        }, (originFailed, nodesFailed, result, context) -> order.add("destination"));
+
+        graph.start(10000).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(Arrays.asList("a", "b", "c", "destination"), order);
+    }
+
+    @Test
+    public void testSuccessorsStartInDeclarationOrder() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<String> expected = new ArrayList<>();
+
+        WorkflowGraph graph = new WorkflowGraph(pipeline -> {
+            pipeline.node("root", (Object) null, asyncValue(null));
+            for (int i = 0; i < 10; i++) {
+                String name = "s" + i;
+                expected.add(name);
+                pipeline.node(name, "root", (Object) null, (WorkflowExecution.Sync) p -> order.add(name));
+            }
+            return null;
+        }, (originFailed, nodesFailed, result, context) -> {});
+
+        graph.start(10000).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(expected, order);
+    }
+
+    @Test
+    public void testDependencyFailurePropagates() throws Exception {
+        IllegalStateException error = new IllegalStateException("failed");
+        AtomicReference<List<Throwable>> failures = new AtomicReference<>();
+        AtomicReference<Throwable> dependentFailure = new AtomicReference<>();
+
+        WorkflowGraph graph = new WorkflowGraph(pipeline -> {
+            pipeline.node("a", (Object) null, asyncFailure(error));
+            pipeline.node("b", "a", (Object) null, asyncValue(1));
+            return null;
+        }, (originFailed, nodesFailed, result, context) -> {
+            failures.set(nodesFailed);
+            dependentFailure.set(result.hasFailed("b"));
+        });
+
+        graph.start(10000).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(Collections.singletonList(error), failures.get());
+        Assert.assertTrue(dependentFailure.get() instanceof DependentFailureException);
+        Assert.assertSame(error, dependentFailure.get().getCause());
+    }
+
+    @Test
+    public void testNodeDeadline() throws Exception {
+        AtomicReference<List<Throwable>> failures = new AtomicReference<>();
+
+        WorkflowGraph graph = new WorkflowGraph(pipeline -> {
+            pipeline.node("hang", (Object) null, p -> {
+                p.deadline(50);
+                return new ExecutionResult.Async();
+            });
+            return null;
+        }, (originFailed, nodesFailed, result, context) -> failures.set(nodesFailed));
+
+        long start = System.currentTimeMillis();
+        graph.start(60000).get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(1, failures.get().size());
+        Assert.assertTrue(failures.get().get(0) instanceof NodeDeadlineException);
+    }
+
+    @Test
+    public void testGraphDeadline() throws Exception {
+        AtomicReference<List<Throwable>> failures = new AtomicReference<>();
+
+        WorkflowGraph graph = new WorkflowGraph(pipeline -> {
+            pipeline.node("hang", (Object) null, p -> new ExecutionResult.Async());
+            return null;
+        }, (originFailed, nodesFailed, result, context) -> failures.set(nodesFailed));
+
+        graph.start(50).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1, failures.get().size());
+        Assert.assertTrue(failures.get().get(0) instanceof TimeoutException);
+        // 请求整体超时不是节点的截止时间，不应被当作dubbo超时
+        Assert.assertFalse(failures.get().get(0) instanceof NodeDeadlineException);
+    }
+
+    @Test
+    public void testCompletionActionRunsOnDeadline() throws Exception {
+        AtomicInteger completed = new AtomicInteger();
+        AtomicReference<ExecutionResult.Async> pending = new AtomicReference<>();
+
+        WorkflowGraph graph = new WorkflowGraph(pipeline -> {
+            pipeline.node("hang", (Object) null, p -> {
+                p.deadline(50);
+                p.whenNodeCompleted(completed::incrementAndGet);
+                ExecutionResult.Async result = new ExecutionResult.Async();
+                pending.set(result);
+                return result;
+            });
+            return null;
+        }, (originFailed, nodesFailed, result, context) -> {});
+
+        graph.start(60000).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1, completed.get());
+
+        // 节点被强制结束后迟到的结果不会再次触发
+        pending.get().success(null);
+        Assert.assertEquals(1, completed.get());
+    }
+
+    @Test
+    public void testCompletionActionRegisteredAfterCompleted() throws Exception {
+        AtomicReference<WorkflowPipeline> stage = new AtomicReference<>();
+        AtomicInteger completed = new AtomicInteger();
+
+        WorkflowGraph graph = new WorkflowGraph(pipeline -> {
+            pipeline.node("a", (Object) null, (WorkflowExecution.Sync) stage::set);
+            return null;
+        }, (originFailed, nodesFailed, result, context) -> {});
+
+        graph.start(10000).get(10, TimeUnit.SECONDS);
+        stage.get().whenNodeCompleted(completed::incrementAndGet);
+        Assert.assertEquals(1, completed.get());
+    }
+}
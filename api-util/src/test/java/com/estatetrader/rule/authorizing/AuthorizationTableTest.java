@@ -0,0 +1,153 @@
+package com.estatetrader.rule.authorizing;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * 使用随机生成的权限树验证授权决策表与逐级查询权限树的决定一致
+ */
+public class AuthorizationTableTest {
+
+    /**
+     * 基于内存的权限树
+     */
+    private static class MemoryTree implements AuthorizationTreeListener {
+        // 子系统 -> 子系统信息（可以为null，表示节点存在但没有数据）
+        final Map<String, SubsystemInfo> subsystems = new HashMap<>();
+        // 子系统 -> API -> API信息（可以为null）
+        final Map<String, Map<String, ApiInfo>> apis = new HashMap<>();
+        // 子系统 -> API -> 角色
+        final Map<String, Map<String, Set<String>>> roles = new HashMap<>();
+
+        @Override
+        public Iterable<String> getSubsystems() {
+            return subsystems.keySet();
+        }
+
+        @Override
+        public Iterable<String> getApis(String subsystemName) {
+            return apis.getOrDefault(subsystemName, Collections.emptyMap()).keySet();
+        }
+
+        @Override
+        public SubsystemInfo getSubsystem(String name) {
+            return subsystems.get(name);
+        }
+
+        @Override
+        public ApiInfo getApi(String subsystemName, String apiName) {
+            return apis.getOrDefault(subsystemName, Collections.emptyMap()).get(apiName);
+        }
+
+        @Override
+        public boolean containsApiRole(String subsystemName, String apiName, String role) {
+            return getApiRoles(subsystemName, apiName).contains(role);
+        }
+
+        @Override
+        public Set<String> getApiRoles(String subsystemName, String apiName) {
+            return roles.getOrDefault(subsystemName, Collections.emptyMap())
+                .getOrDefault(apiName, Collections.emptySet());
+        }
+
+        @Override
+        public void addChangeCallback(Runnable callback) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static MemoryTree randomTree(Random random, List<String> apiNames) {
+        MemoryTree tree = new MemoryTree();
+        int subsystemCount = 1 + random.nextInt(6);
+        for (int i = 0; i < subsystemCount; i++) {
+            String subsystemName = "S" + i;
+            SubsystemInfo info = null;
+            if (random.nextInt(8) != 0) {
+                info = new SubsystemInfo();
+                info.setAuthorizingDisabled(random.nextInt(5) == 0);
+                info.setOnlyTrustedNetwork(random.nextInt(3) == 0);
+            }
+            tree.subsystems.put(subsystemName, info);
+
+            Map<String, ApiInfo> apis = new HashMap<>();
+            Map<String, Set<String>> roles = new HashMap<>();
+            for (String apiName : apiNames) {
+                if (random.nextInt(3) == 0) {
+                    continue;
+                }
+                ApiInfo api = null;
+                if (random.nextInt(10) != 0) {
+                    api = new ApiInfo();
+                    api.setAuthorizingDisabled(random.nextInt(6) == 0);
+                }
+                apis.put(apiName, api);
+                Set<String> apiRoles = new HashSet<>();
+                for (int r = 0; r < 6; r++) {
+                    if (random.nextBoolean()) {
+                        apiRoles.add("r" + r);
+                    }
+                }
+                roles.put(apiName, apiRoles);
+            }
+            // 权限树中存在而网关中不存在的API
+            apis.put("ghost.api", new ApiInfo());
+            roles.put("ghost.api", Collections.singleton("r0"));
+
+            tree.apis.put(subsystemName, apis);
+            tree.roles.put(subsystemName, roles);
+        }
+        return tree;
+    }
+
+    @Test
+    public void testDecisionsMatchTree() {
+        Random random = new Random(20);
+        List<String> subsystemNames = Arrays.asList("S0", "S1", "S2", "S3", "S4", "S5", "UNKNOWN");
+        List<String> roleNames = Arrays.asList("r0", "r1", "r2", "r3", "r4", "r5", "unknown", null);
+
+        for (int round = 0; round < 200; round++) {
+            // API数量跨越位图的字边界
+            int apiCount = 1 + random.nextInt(150);
+            List<String> apiNames = new ArrayList<>();
+            for (int i = 0; i < apiCount; i++) {
+                apiNames.add("module.api" + i);
+            }
+            MemoryTree tree = randomTree(random, apiNames);
+            AuthorizationTable table = AuthorizationTable.compile(tree, apiNames.toArray(new String[0]));
+
+            for (String subsystemName : subsystemNames) {
+                for (int id = 0; id < apiCount; id++) {
+                    for (String role : roleNames) {
+                        for (boolean trusted : new boolean[]{true, false}) {
+                            AuthorizationDecision expected = AuthorizationDecision.decide(tree, subsystemName,
+                                apiNames.get(id), role, trusted);
+                            AuthorizationDecision actual = table.decide(subsystemName, id, role, trusted);
+                            Assert.assertEquals(subsystemName + "/" + id + "/" + role + "/" + trusted,
+                                expected, actual);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownApiId() {
+        MemoryTree tree = new MemoryTree();
+        tree.subsystems.put("S", new SubsystemInfo());
+        tree.apis.put("S", Collections.singletonMap("a", new ApiInfo()));
+        tree.roles.put("S", Collections.singletonMap("a", Collections.singleton("r")));
+
+        AuthorizationTable table = AuthorizationTable.compile(tree, new String[]{"a"});
+        Assert.assertEquals(AuthorizationDecision.GRANTED, table.decide("S", 0, "r", false));
+        Assert.assertEquals(AuthorizationDecision.PERMISSION_UNASSIGNED, table.decide("S", 1, "r", false));
+        Assert.assertEquals(AuthorizationDecision.PERMISSION_UNASSIGNED, table.decide("S", -1, "r", false));
+        Assert.assertEquals(AuthorizationDecision.SUBSYSTEM_NOT_FOUND,
+            AuthorizationTable.EMPTY.decide("S", 0, "r", false));
+    }
+}
@@ -0,0 +1,196 @@
+package com.estatetrader.rule.snapshot;
+
+import com.estatetrader.util.IpAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 使用随机的增量变化验证各个快照与原先基于字符串哈希表的实现结果一致
+ */
+public class KeySetSnapshotTest {
+
+    /**
+     * 随机生成一次增量变化，并同步应用到参考集合上
+     */
+    private static List<List<String>> randomDelta(Random random, Set<String> reference, List<String> universe) {
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        int changes = 1 + random.nextInt(50);
+        for (int i = 0; i < changes; i++) {
+            String key = universe.get(random.nextInt(universe.size()));
+            if (added.contains(key) || removed.contains(key)) {
+                continue;
+            }
+            if (reference.contains(key)) {
+                removed.add(key);
+            } else {
+                added.add(key);
+            }
+        }
+        reference.removeAll(removed);
+        reference.addAll(added);
+        return Arrays.asList(added, removed);
+    }
+
+    @Test
+    public void testLongHashSet() {
+        Random random = new Random(1);
+        Set<Long> reference = new HashSet<>();
+        LongHashSet set = LongHashSet.EMPTY;
+        for (int round = 0; round < 200; round++) {
+            LongHashSet before = set;
+            Set<Long> beforeReference = new HashSet<>(reference);
+
+            LongHashSet.Builder builder = set.toBuilder();
+            for (int i = 0; i < 100; i++) {
+                // 取值范围较小，使插入和删除频繁地落在同一条探测链上
+                long key = random.nextInt(500) - 250;
+                if (round > 120 || random.nextBoolean()) {
+                    builder.remove(key);
+                    reference.remove(key);
+                } else {
+                    builder.add(key);
+                    reference.add(key);
+                }
+            }
+            set = builder.build();
+
+            Assert.assertEquals(reference.size(), set.size());
+            for (long key = -260; key < 260; key++) {
+                Assert.assertEquals(reference.contains(key), set.contains(key));
+                // 原有的快照不受影响
+                Assert.assertEquals(beforeReference.contains(key), before.contains(key));
+            }
+        }
+        // 全部删除之后哈希表收缩到最小容量
+        Assert.assertTrue(reference.isEmpty());
+        Assert.assertEquals(16 * Long.BYTES, set.tableBytes());
+    }
+
+    @Test
+    public void testNumericKeySet() {
+        Random random = new Random(2);
+        List<String> universe = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            universe.add(String.valueOf(random.nextInt(200) - 20));
+        }
+        universe.addAll(Arrays.asList("007", "-0", "abc", "", "9223372036854775807", "-9223372036854775808",
+            "9223372036854775808", "+1", "1.0"));
+
+        Set<String> reference = new HashSet<>();
+        NumericKeySet set = NumericKeySet.EMPTY;
+        for (int round = 0; round < 300; round++) {
+            List<List<String>> delta = randomDelta(random, reference, universe);
+            set = set.apply(delta.get(0), delta.get(1));
+
+            Assert.assertEquals(reference.size(), set.size());
+            for (String key : universe) {
+                Assert.assertEquals(key, reference.contains(key), set.contains(key));
+                Assert.assertEquals(key, reference.contains(key), set.containsKey(key));
+            }
+            for (long id = -30; id < 200; id++) {
+                Assert.assertEquals(reference.contains(String.valueOf(id)), set.contains(id));
+            }
+            Assert.assertEquals(reference.contains("9223372036854775807"), set.contains(Long.MAX_VALUE));
+            Assert.assertEquals(reference.contains("-9223372036854775808"), set.contains(Long.MIN_VALUE));
+            Assert.assertFalse(set.contains(7) && !reference.contains("7"));
+        }
+    }
+
+    @Test
+    public void testIpKeySet() {
+        Random random = new Random(3);
+        List<String> universe = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            universe.add("10.0." + random.nextInt(3) + "." + random.nextInt(50));
+        }
+        for (int i = 0; i < 50; i++) {
+            universe.add("2001:db8::" + Integer.toHexString(random.nextInt(40)));
+        }
+        universe.addAll(Arrays.asList("255.255.255.255", "0.0.0.0", "128.0.0.1", "::", "ffff::1",
+            "010.0.0.1", "2001:DB8::1", "::ffff:10.0.0.1", "unknown", "1.2.3.4:80"));
+
+        Set<String> reference = new HashSet<>();
+        IpKeySet set = IpKeySet.EMPTY;
+        for (int round = 0; round < 300; round++) {
+            List<List<String>> delta = randomDelta(random, reference, universe);
+            set = set.apply(delta.get(0), delta.get(1));
+
+            Assert.assertEquals(reference.size(), set.size());
+            for (String key : universe) {
+                // 原有的key按照原样匹配，此外同一地址的规范形式在集合中时也匹配
+                IpAddress address = IpAddress.parse(key);
+                boolean expected = reference.contains(key) ||
+                    (address != null && reference.contains(address.toString()));
+                Assert.assertEquals(key, expected, set.contains(key));
+                Assert.assertEquals(key, expected, set.contains(address, key));
+                // containsKey不做规范化，只有完全相同的key才匹配
+                Assert.assertEquals(key, reference.contains(key), set.containsKey(key));
+            }
+        }
+
+        set = IpKeySet.EMPTY.apply(Arrays.asList("10.0.0.1", "2001:db8::1"), Collections.emptyList());
+        // 同一地址的其他写法也被识别
+        Assert.assertTrue(set.contains("::ffff:10.0.0.1"));
+        Assert.assertTrue(set.contains("2001:0DB8:0:0:0:0:0:1"));
+        Assert.assertFalse(set.contains("10.0.0.2"));
+        Assert.assertFalse(set.contains((IpAddress) null, null));
+    }
+
+    @Test
+    public void testPrefixKeySet() {
+        Random random = new Random(4);
+        List<String> universe = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            universe.add(String.valueOf(1000 + random.nextInt(9000)).substring(0, 1 + random.nextInt(3)));
+        }
+        universe.addAll(Arrays.asList("+86", "+8613", "1a", "", "0", "00"));
+
+        List<String> phones = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            phones.add(String.valueOf(10000000000L + (random.nextLong() & 0xffffffffL)).substring(random.nextInt(6)));
+        }
+        phones.addAll(Arrays.asList("+8613800000000", "1a2", "", "0", "001"));
+
+        Set<String> reference = new HashSet<>();
+        PrefixKeySet set = PrefixKeySet.EMPTY;
+        for (int round = 0; round < 300; round++) {
+            PrefixKeySet before = set;
+            Set<String> beforeReference = new HashSet<>(reference);
+
+            List<List<String>> delta = randomDelta(random, reference, universe);
+            set = set.apply(delta.get(0), delta.get(1));
+
+            Assert.assertEquals(reference.size(), set.size());
+            for (String key : universe) {
+                Assert.assertEquals(key, reference.contains(key), set.containsKey(key));
+            }
+            for (String phone : phones) {
+                Assert.assertEquals(phone, linearPrefixContains(reference, phone), set.matchesPrefixOf(phone));
+                // 路径复制不影响原有的快照
+                Assert.assertEquals(phone, linearPrefixContains(beforeReference, phone), before.matchesPrefixOf(phone));
+            }
+        }
+        Assert.assertFalse(set.matchesPrefixOf(null));
+    }
+
+    /**
+     * 原有的prefixContainsKey实现
+     */
+    private static boolean linearPrefixContains(Set<String> prefixes, String key) {
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,165 @@
+package com.estatetrader.rule.zk;
+
+import com.estatetrader.rule.snapshot.LongHashSet;
+import com.estatetrader.rule.snapshot.NumericKeySet;
+import com.estatetrader.rule.snapshot.PrefixKeySet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 验证ZKKeySetListener在本地保存的子节点集合和过期时间索引
+ */
+public class WatchedKeySetTest {
+
+    @Test
+    public void testUpdateWithChildrenList() {
+        Random random = new Random(1);
+        List<String> universe = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            universe.add(String.valueOf(random.nextInt(400)));
+        }
+        universe.addAll(Arrays.asList("007", "abc", "-0"));
+
+        WatchedKeySet<NumericKeySet> watched = new WatchedKeySet<>(NumericKeySet.EMPTY);
+        Set<String> reference = new HashSet<>();
+        for (int round = 0; round < 300; round++) {
+            // 模拟zk返回的最新子节点列表，多数时候只有新增
+            Set<String> next = new HashSet<>(reference);
+            for (int i = 0; i < 1 + random.nextInt(20); i++) {
+                next.add(universe.get(random.nextInt(universe.size())));
+            }
+            if (round % 3 == 0) {
+                next.removeIf(key -> random.nextInt(10) == 0);
+            }
+
+            NumericKeySet before = watched.keys();
+            List<String> added = watched.update(new ArrayList<>(next));
+
+            Set<String> expectedAdded = new HashSet<>(next);
+            expectedAdded.removeAll(reference);
+            Assert.assertEquals(expectedAdded, new HashSet<>(added));
+            if (next.equals(reference)) {
+                // 没有变化时不产生新的集合
+                Assert.assertSame(before, watched.keys());
+            }
+
+            reference = next;
+            Assert.assertEquals(reference.size(), watched.keys().size());
+            for (String key : universe) {
+                Assert.assertEquals(key, reference.contains(key), watched.keys().containsKey(key));
+            }
+        }
+    }
+
+    @Test
+    public void testPrefixUpdate() {
+        WatchedKeySet<PrefixKeySet> watched = new WatchedKeySet<>(PrefixKeySet.EMPTY);
+        Assert.assertEquals(Arrays.asList("138", "+86"), watched.update(Arrays.asList("138", "+86")));
+        Assert.assertEquals(Collections.singletonList("1"), watched.update(Arrays.asList("138", "+86", "1")));
+        Assert.assertTrue(watched.keys().matchesPrefixOf("13900000000"));
+
+        Assert.assertEquals(Collections.emptyList(), watched.update(Collections.singletonList("138")));
+        Assert.assertEquals(1, watched.keys().size());
+        Assert.assertFalse(watched.keys().matchesPrefixOf("13900000000"));
+        Assert.assertFalse(watched.keys().matchesPrefixOf("+8613800000000"));
+        Assert.assertTrue(watched.keys().matchesPrefixOf("13800000000"));
+    }
+
+    @Test
+    public void testExpiry() {
+        WatchedKeySet<NumericKeySet> watched = new WatchedKeySet<>(NumericKeySet.EMPTY);
+        watched.update(Arrays.asList("1", "2", "3"));
+        ExpiryIndex expiry = watched.expiry();
+
+        watched.updateExpiry("1", 1000, 100, 3);
+        watched.updateExpiry("2", 1000, 5000, 1);
+        watched.updateExpiry("3", 1000, 0, 1);
+        Assert.assertEquals(2, watched.expirySize());
+
+        Assert.assertFalse(expiry.hasExpired(1100));
+        Assert.assertTrue(expiry.hasExpired(1101));
+        Assert.assertEquals(3, expiry.expiredVersion("1", 1101));
+        Assert.assertEquals(-1, expiry.expiredVersion("2", 1101));
+        Assert.assertEquals(-1, expiry.expiredVersion("3", 1101));
+
+        // 节点数据更新后使用新的过期时间和版本号
+        watched.updateExpiry("1", 2000, 100, 4);
+        Assert.assertEquals(-1, expiry.expiredVersion("1", 1101));
+        // 版本号不一致时不删除
+        expiry.remove("1", 3);
+        Assert.assertEquals(2, watched.expirySize());
+        expiry.remove("1", 4);
+        Assert.assertEquals(1, watched.expirySize());
+
+        // 取消TTL
+        watched.updateExpiry("2", 1000, 0, 2);
+        Assert.assertEquals(0, watched.expirySize());
+        Assert.assertFalse(expiry.hasExpired(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testRemovedChildrenDropExpiry() {
+        WatchedKeySet<NumericKeySet> watched = new WatchedKeySet<>(NumericKeySet.EMPTY);
+        watched.update(Arrays.asList("1", "2", "3"));
+        watched.updateExpiry("1", 1000, 100, 0);
+        watched.updateExpiry("2", 1000, 100, 0);
+
+        watched.update(Arrays.asList("1", "3"));
+        Assert.assertEquals(1, watched.expirySize());
+        Assert.assertEquals(0, watched.expiry().expiredVersion("1", 2000));
+        Assert.assertEquals(-1, watched.expiry().expiredVersion("2", 2000));
+
+        // 清理时只保留仍在zk中的子节点
+        watched.updateExpiry("4", 1000, 100, 0);
+        watched.updateExpiry("5", 1000, 100000, 0);
+        LongHashSet keep = LongHashSet.builder().add(ExpiryIndex.hash("1")).build();
+        Assert.assertEquals(1, watched.expiry().removeExpired(2000, keep));
+        Assert.assertEquals(2, watched.expirySize());
+        Assert.assertEquals(0, watched.expiry().expiredVersion("1", 2000));
+        Assert.assertEquals(-1, watched.expiry().expiredVersion("5", 2000));
+    }
+
+    @Test
+    public void testExpiryIndexAgainstReference() {
+        Random random = new Random(2);
+        ExpiryIndex expiry = new ExpiryIndex();
+        Map<String, Long> reference = new HashMap<>();
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 200; i++) {
+                // 取值范围较小，使插入和删除频繁地落在同一条探测链上
+                String key = String.valueOf(random.nextInt(3000));
+                if (random.nextInt(3) == 0) {
+                    expiry.remove(key);
+                    reference.remove(key);
+                } else {
+                    long expireAt = random.nextInt(1000);
+                    expiry.put(key, expireAt, (int) expireAt);
+                    reference.put(key, expireAt);
+                }
+            }
+
+            Assert.assertEquals(reference.size(), expiry.size());
+            for (int i = 0; i < 3000; i++) {
+                String key = String.valueOf(i);
+                Long expireAt = reference.get(key);
+                int expected = expireAt != null && expireAt < 500 ? expireAt.intValue() : -1;
+                Assert.assertEquals(key, expected, expiry.expiredVersion(key, 500));
+            }
+        }
+        for (String key : reference.keySet()) {
+            expiry.remove(key);
+        }
+        Assert.assertEquals(0, expiry.size());
+        Assert.assertFalse(expiry.hasExpired(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,153 @@
+package com.estatetrader.rule.zk;
+
+import com.estatetrader.rule.WatchedResourceEventConsumer;
+import com.estatetrader.util.ZKOperator;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 使用进程内的zk验证资源监听器的流水线加载和本地快照热启动
+ */
+public class ZKWatchedResourceListenerTest {
+
+    private static final String PATH = "/test/watched-resource";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestingServer server;
+    private ZKOperator operator;
+    private ZKWatchedResourceManager<String> manager;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestingServer(true);
+        operator = new ZKOperator(server.getConnectString(), 10000);
+        // 使用较小的窗口，使大部分请求需要排队
+        operator.setMaxInFlightRequests(8);
+        manager = new ZKWatchedResourceManager<>(PATH, operator, String.class);
+        manager.createRoot();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        operator.close();
+        server.close();
+    }
+
+    private static List<String> keys(int count) {
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add("k" + i);
+        }
+        return keys;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("condition is not satisfied in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testBootstrap() throws Exception {
+        List<String> keys = keys(1000);
+        manager.putAll(keys, key -> 0, key -> "v" + key);
+
+        ZKWatchedResourceListener<String> listener = new ZKWatchedResourceListener<>(PATH, operator, String.class);
+        try {
+            for (String key : keys) {
+                Assert.assertTrue(key, listener.containsKey(key));
+                Assert.assertEquals("v" + key, listener.get(key));
+            }
+            Assert.assertEquals(Arrays.asList("k1", "k999"),
+                listener.filter(Arrays.asList("k1", "missing", "k999")));
+
+            manager.put("new", "x");
+            manager.remove("k0");
+            await(() -> "x".equals(listener.get("new")) && !listener.containsKey("k0"));
+        } finally {
+            listener.close();
+        }
+    }
+
+    @Test
+    public void testWarmStartFromSnapshot() throws Exception {
+        operator.setSnapshotDirectory(folder.getRoot().getPath());
+        manager.putAll(keys(100), key -> 0, key -> "v" + key);
+
+        ZKWatchedResourceListener<String> first = new ZKWatchedResourceListener<>(PATH, operator, String.class);
+        Assert.assertTrue(first.saveSnapshot());
+        first.close();
+        Path file = ResourceSnapshot.fileOf(folder.getRoot().getPath(), PATH);
+        Assert.assertTrue(Files.isRegularFile(file));
+
+        // 快照保存之后zk中的数据发生了变化
+        manager.remove("k0");
+        manager.put("k1", "changed");
+        manager.put("late", "x");
+
+        Set<String> delivered = new HashSet<>();
+        WatchedResourceEventConsumer consumer = new WatchedResourceEventConsumer() {
+            @Override
+            public synchronized void onChildrenDelta(Collection<String> added, Collection<String> removed) {
+                delivered.removeAll(removed);
+                delivered.addAll(added);
+            }
+
+            @Override
+            public void onChildrenChange(List<String> oldChildren, List<String> newChildren) {
+            }
+
+            @Override
+            public void onChildDataChange(String key, Object oldValue, Object newValue) {
+            }
+        };
+        ZKWatchedResourceListener<String> second = new ZKWatchedResourceListener<>(PATH, operator, consumer,
+            String.class);
+        try {
+            // 快照中的数据在构造完成时即可使用
+            Assert.assertTrue(second.containsKey("k99"));
+            Assert.assertEquals("vk99", second.get("k99"));
+
+            // zk中的数据加载完成之后替换快照中的数据，事件监听器收到的增量与zk中的子节点一致
+            Set<String> expected = new HashSet<>();
+            manager.getKeys().forEach(expected::add);
+            await(() -> second.containsKey("late") && !second.containsKey("k0") &&
+                "changed".equals(second.get("k1")));
+            await(() -> {
+                synchronized (consumer) {
+                    return expected.equals(delivered);
+                }
+            });
+
+            // 所有子节点的数据加载完成之后才会保存快照
+            await(second::saveSnapshot);
+            ResourceSnapshot snapshot = ResourceSnapshot.read(file, PATH);
+            Assert.assertNotNull(snapshot);
+            Assert.assertEquals(100, snapshot.children.size());
+            Assert.assertTrue(snapshot.children.containsKey("late"));
+            Assert.assertFalse(snapshot.children.containsKey("k0"));
+        } finally {
+            second.close();
+        }
+
+        // 无法识别的快照文件被忽略
+        Files.write(file, "broken".getBytes(StandardCharsets.UTF_8));
+        Assert.assertNull(ResourceSnapshot.read(file, PATH));
+        Assert.assertNull(ResourceSnapshot.read(file, "/another/path"));
+    }
+}
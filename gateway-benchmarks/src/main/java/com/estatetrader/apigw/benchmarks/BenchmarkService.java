@@ -0,0 +1,107 @@
+package com.estatetrader.apigw.benchmarks;
+
+import com.estatetrader.annotation.ApiGroup;
+import com.estatetrader.annotation.ApiParameter;
+import com.estatetrader.annotation.Description;
+import com.estatetrader.annotation.HttpApi;
+import com.estatetrader.annotation.ResponseInjectFromApi;
+import com.estatetrader.annotation.ResponseInjectProvider;
+import com.estatetrader.annotation.inject.DatumKey;
+import com.estatetrader.annotation.inject.DefineDatum;
+import com.estatetrader.annotation.inject.ExportDatumKey;
+import com.estatetrader.annotation.inject.ImportDatumKey;
+import com.estatetrader.annotation.inject.InjectDatum;
+import com.estatetrader.define.Datum;
+import com.estatetrader.define.SecurityType;
+import com.estatetrader.entity.AbstractReturnCode;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 基准测试使用的API定义，其实现见{@link CannedBenchmarkService}
+ */
+@ApiGroup(name = "bench", minCode = 0, maxCode = 100, codeDefine = BenchmarkService.RC.class, owner = "benchmark")
+public interface BenchmarkService {
+
+    class RC extends AbstractReturnCode {
+        protected RC(String desc, int code) {
+            super(desc, code);
+        }
+    }
+
+    @Description("商品信息")
+    class ProductInfo implements Serializable {
+        @Description("商品id")
+        public long productId;
+        @Description("标题")
+        public String title;
+        @Description("价格")
+        public PriceInfo price;
+        @Description("标签")
+        public List<String> tags;
+    }
+
+    @Description("价格信息")
+    class PriceInfo implements Serializable {
+        @Description("最高价")
+        public int maxPrice;
+        @Description("最低价")
+        public int minPrice;
+    }
+
+    @Description("文章列表")
+    class ArticleList implements Serializable {
+        @Description("文章")
+        public List<ArticleInfo> articles;
+    }
+
+    @Description("文章信息")
+    class ArticleInfo implements Serializable {
+        @Description("文章id")
+        public long articleId;
+        @Description("标题")
+        public String title;
+        @Description("作者id")
+        @ExportDatumKey(keyName = "authorId", datumType = "BenchAuthor")
+        public long authorId;
+        @Description("作者信息")
+        @InjectDatum(datumType = "BenchAuthor")
+        public Datum author;
+    }
+
+    @Description("作者信息")
+    @DefineDatum("BenchAuthor")
+    class AuthorInfo implements Datum {
+        @Description("作者id")
+        @DatumKey("authorId")
+        public long authorId;
+        @Description("昵称")
+        public String nickname;
+        @Description("头像")
+        public String avatar;
+    }
+
+    @HttpApi(name = "bench.getProduct", desc = "获取单个商品", security = SecurityType.Anonym, owner = "benchmark")
+    ProductInfo getProduct(
+        @ApiParameter(name = "productId", required = true, desc = "商品id") long productId
+    );
+
+    @HttpApi(name = "bench.getProductList", desc = "获取商品列表", security = SecurityType.Anonym, owner = "benchmark")
+    List<ProductInfo> getProductList(
+        @ApiParameter(name = "size", required = true, desc = "列表大小") int size
+    );
+
+    @HttpApi(name = "bench.getAuthors", desc = "批量获取作者信息", security = SecurityType.Anonym, owner = "benchmark")
+    @ResponseInjectProvider("bench.getAuthors")
+    List<AuthorInfo> getAuthors(
+        @ImportDatumKey(keyName = "authorId")
+        @ApiParameter(name = "authorIds", required = true, desc = "作者id列表") List<Long> authorIds
+    );
+
+    @HttpApi(name = "bench.getArticleList", desc = "获取文章列表，并注入作者信息", security = SecurityType.Anonym, owner = "benchmark")
+    @ResponseInjectFromApi("bench.getAuthors")
+    ArticleList getArticleList(
+        @ApiParameter(name = "size", required = true, desc = "列表大小") int size
+    );
+}
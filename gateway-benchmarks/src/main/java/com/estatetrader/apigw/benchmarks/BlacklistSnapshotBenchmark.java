@@ -0,0 +1,257 @@
+package com.estatetrader.apigw.benchmarks;
+
+import com.estatetrader.rule.snapshot.NumericKeySet;
+import com.estatetrader.rule.snapshot.PrefixKeySet;
+import com.estatetrader.rule.zk.ItemData;
+import com.estatetrader.rule.zk.NodeInfo;
+import com.estatetrader.rule.zk.WatchedKeySet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 黑名单监听器的性能测试，size表示黑名单中用户编号的数量，手机号前缀的数量为size / 100
+ *
+ * legacy: 网关原有的方式，监听器为每个子节点保存一个监听对象（节点路径、key、节点数据等），
+ *         每次子节点变化都根据zk返回的子节点列表重新构建整个map，手机号前缀逐一比较
+ * snapshot: 监听器只保存紧凑的KeySet和设置了TTL的子节点的过期时间索引（见WatchedKeySet），
+ *           子节点只有新增时只应用新增的部分，有删除时重新构建KeySet
+ *
+ * 两种方式的子节点变化都以zk返回的完整子节点列表作为输入，与线上一致；
+ * 两种方式都会在zk客户端中为每个子节点注册数据监听，这部分内存不在本测试的统计范围内
+ *
+ * 运行main方法时会先打印两种方式的监听器的全部内存占用，再运行JMH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class BlacklistSnapshotBenchmark {
+
+    private static final int QUERY_COUNT = 1024;
+    private static final String USER_PATH = "/api/blacklist/user";
+
+    @Param({"10000", "100000", "500000"})
+    public int size;
+
+    @Param({"legacy", "snapshot"})
+    public String impl;
+
+    private Map<String, LegacyChild> legacyUsers;
+    private Map<String, LegacyChild> legacyPrefixes;
+    private WatchedKeySet<NumericKeySet> users;
+    private PrefixKeySet prefixes;
+
+    /**
+     * zk返回的用户黑名单子节点列表
+     */
+    private List<String> userChildren;
+    private long[] userIds;
+    private String[] phones;
+    private int index;
+    private long nextUserId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(size);
+        userChildren = userKeys(size, random);
+        List<String> prefixKeys = prefixKeys(Math.max(1, size / 100), random);
+
+        legacyUsers = legacyUpdate(Collections.emptyMap(), USER_PATH, userChildren);
+        legacyPrefixes = legacyUpdate(Collections.emptyMap(), "/api/blacklist/phone-prefix", prefixKeys);
+        users = new WatchedKeySet<>(NumericKeySet.EMPTY);
+        users.update(userChildren);
+        prefixes = PrefixKeySet.EMPTY.apply(prefixKeys, Collections.emptyList());
+
+        // 一半的查询命中黑名单
+        userIds = new long[QUERY_COUNT];
+        phones = new String[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            userIds[i] = i % 2 == 0 ? Long.parseLong(userChildren.get(random.nextInt(size))) : random.nextInt(1 << 30);
+            phones[i] = "1" + (3000000000L + (random.nextLong() & 0x7fffffffL));
+        }
+        nextUserId = 1L << 40;
+    }
+
+    private static List<String> userKeys(int count, Random random) {
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(String.valueOf(100000000L + random.nextInt(1 << 30)));
+        }
+        return keys;
+    }
+
+    private static List<String> prefixKeys(int count, Random random) {
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add("1" + (30 + random.nextInt(70)) + random.nextInt(10000));
+        }
+        return keys;
+    }
+
+    /**
+     * 原有监听器中每个子节点对应的监听对象（ZKWatchedResourceListener.NodeListener）所持有的数据
+     */
+    private static final class LegacyChild {
+        final String path;
+        final String key;
+        volatile NodeInfo<?> info;
+        final CompletableFuture<?> readyFuture;
+
+        LegacyChild(String path, String key) {
+            this.path = path;
+            this.key = key;
+            this.info = new NodeInfo<>(new ItemData<>(), 0);
+            CompletableFuture<?> future = new CompletableFuture<>();
+            future.complete(null);
+            this.readyFuture = future;
+        }
+    }
+
+    /**
+     * 与原有监听器的onChange一致：根据zk返回的子节点列表构建新的map，复用已有的子节点，为新增的子节点创建监听对象
+     */
+    private static Map<String, LegacyChild> legacyUpdate(Map<String, LegacyChild> old,
+                                                         String parent,
+                                                         List<String> children) {
+        Map<String, LegacyChild> map = new HashMap<>(children.size());
+        for (String key : children) {
+            LegacyChild child = old.get(key);
+            map.put(key, child != null ? child : new LegacyChild(parent + "/" + key, key));
+        }
+        return map;
+    }
+
+    @Benchmark
+    public boolean lookupUser() {
+        long userId = userIds[index++ & (QUERY_COUNT - 1)];
+        if ("legacy".equals(impl)) {
+            return legacyUsers.containsKey(String.valueOf(userId));
+        } else {
+            return users.keys().contains(userId);
+        }
+    }
+
+    @Benchmark
+    public boolean lookupPhonePrefix() {
+        String phone = phones[index++ & (QUERY_COUNT - 1)];
+        if ("legacy".equals(impl)) {
+            for (String prefix : legacyPrefixes.keySet()) {
+                if (phone.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        } else {
+            return prefixes.matchesPrefixOf(phone);
+        }
+    }
+
+    private Object childrenChanged() {
+        if ("legacy".equals(impl)) {
+            legacyUsers = legacyUpdate(legacyUsers, USER_PATH, userChildren);
+            return legacyUsers;
+        } else {
+            users.update(userChildren);
+            return users.keys();
+        }
+    }
+
+    /**
+     * 黑名单中新增一个用户，监听器收到zk返回的完整子节点列表
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Measurement(iterations = 20, batchSize = 1)
+    @Warmup(iterations = 5, batchSize = 1)
+    public Object addUser() {
+        userChildren.add(String.valueOf(nextUserId++));
+        return childrenChanged();
+    }
+
+    /**
+     * 黑名单中删除一个用户，新的方式此时需要重新构建KeySet
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Measurement(iterations = 20, batchSize = 1)
+    @Warmup(iterations = 5, batchSize = 1)
+    public Object removeUser() {
+        userChildren.remove(userChildren.size() - 1);
+        return childrenChanged();
+    }
+
+    /**
+     * 测量对象构建之后增加的堆内存
+     */
+    private static long retainedBytes(Supplier<Object> factory, Object[] holder) {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        holder[0] = factory.get();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory() - before;
+    }
+
+    private static void printFootprint() {
+        Object[] holder = new Object[1];
+        for (int count : new int[]{100000, 500000}) {
+            // zk每次返回新的子节点名称字符串，监听器之外不再持有
+            List<String> keys = userKeys(count, new Random(count));
+            Supplier<List<String>> children = () -> {
+                List<String> copy = new ArrayList<>(keys.size());
+                for (String key : keys) {
+                    copy.add(new String(key));
+                }
+                return copy;
+            };
+
+            holder[0] = null;
+            long legacy = retainedBytes(() -> legacyUpdate(Collections.emptyMap(), USER_PATH, children.get()),
+                holder);
+            holder[0] = null;
+            long snapshot = retainedBytes(() -> {
+                WatchedKeySet<NumericKeySet> watched = new WatchedKeySet<>(NumericKeySet.EMPTY);
+                watched.update(children.get());
+                return watched;
+            }, holder);
+            holder[0] = null;
+            long now = System.currentTimeMillis();
+            long snapshotWithTtl = retainedBytes(() -> {
+                WatchedKeySet<NumericKeySet> watched = new WatchedKeySet<>(NumericKeySet.EMPTY);
+                watched.update(children.get());
+                for (String key : keys) {
+                    watched.updateExpiry(key, now, 3600000, 0);
+                }
+                return watched;
+            }, holder);
+            holder[0] = null;
+            System.out.printf("user blacklist listener of %d ids: legacy %.1f MB (%d B/id), " +
+                    "snapshot %.1f MB (%d B/id), snapshot with ttl on every id %.1f MB (%d B/id)%n",
+                count, legacy / 1048576.0, legacy / count, snapshot / 1048576.0, snapshot / count,
+                snapshotWithTtl / 1048576.0, snapshotWithTtl / count);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        printFootprint();
+        Options options = new OptionsBuilder()
+            .include(BlacklistSnapshotBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,86 @@
+package com.estatetrader.apigw.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 返回预先构造好的结果的服务实现，用于代替dubbo服务，使测试结果只反映网关自身的开销
+ */
+public class CannedBenchmarkService implements BenchmarkService {
+
+    /**
+     * 文章的作者id在[0, AUTHOR_COUNT)范围内循环
+     */
+    private static final int AUTHOR_COUNT = 50;
+
+    private final List<ProductInfo> products;
+    private final List<AuthorInfo> authors;
+
+    public CannedBenchmarkService(int maxListSize) {
+        products = new ArrayList<>(maxListSize);
+        for (int i = 0; i < maxListSize; i++) {
+            products.add(product(i));
+        }
+
+        authors = new ArrayList<>(AUTHOR_COUNT);
+        for (int i = 0; i < AUTHOR_COUNT; i++) {
+            AuthorInfo author = new AuthorInfo();
+            author.authorId = i;
+            author.nickname = "author-" + i;
+            author.avatar = "https://img.example.com/avatar/" + i + ".png";
+            authors.add(author);
+        }
+    }
+
+    private static ProductInfo product(long productId) {
+        ProductInfo info = new ProductInfo();
+        info.productId = productId;
+        info.title = "商品#" + productId;
+        info.price = new PriceInfo();
+        info.price.maxPrice = 500;
+        info.price.minPrice = 300;
+        info.tags = Arrays.asList("new", "hot", "discount");
+        return info;
+    }
+
+    private static ArticleInfo article(long articleId) {
+        ArticleInfo info = new ArticleInfo();
+        info.articleId = articleId;
+        info.title = "文章#" + articleId;
+        info.authorId = articleId % AUTHOR_COUNT;
+        return info;
+    }
+
+    @Override
+    public ProductInfo getProduct(long productId) {
+        return product(productId);
+    }
+
+    @Override
+    public List<ProductInfo> getProductList(int size) {
+        return new ArrayList<>(products.subList(0, Math.min(size, products.size())));
+    }
+
+    @Override
+    public List<AuthorInfo> getAuthors(List<Long> authorIds) {
+        List<AuthorInfo> result = new ArrayList<>(authorIds.size());
+        for (Long id : authorIds) {
+            if (id != null && id >= 0 && id < authors.size()) {
+                result.add(authors.get(id.intValue()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ArticleList getArticleList(int size) {
+        // 注入过程会修改文章对象，因此每次都需要返回新的对象
+        ArticleList list = new ArticleList();
+        list.articles = new ArrayList<>(Math.max(size, 0));
+        for (int i = 0; i < size; i++) {
+            list.articles.add(article(i));
+        }
+        return list;
+    }
+}
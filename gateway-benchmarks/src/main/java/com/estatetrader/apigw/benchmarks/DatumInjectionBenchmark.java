@@ -0,0 +1,111 @@
+package com.estatetrader.apigw.benchmarks;
+
+import com.estatetrader.apigw.core.models.inject.DatumKeyIndex;
+import com.estatetrader.apigw.core.models.inject.DatumKeyInfo;
+import com.estatetrader.apigw.core.models.inject.DatumKeyMatcher;
+import com.estatetrader.apigw.core.models.inject.DatumKeyTypeMatched;
+import com.estatetrader.generic.GenericTypes;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 返回值注入中datum匹配的性能测试，每次调用模拟一次完整的注入：
+ * consumer返回的列表中的每个元素都从provider返回的列表中找出与其key匹配的datum
+ *
+ * scan: 网关原有的方式，每个元素都与所有datum逐一比较
+ * index: 先以datum key建立哈希索引，每个元素只做一次查找
+ *
+ * keyType表示consumer导出的key的类型，datum key的类型固定为long，
+ * int需要经过数字类型的提升，String则需要经过字符串比较
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class DatumInjectionBenchmark {
+
+    @Param({"10", "100", "500", "2000"})
+    public int size;
+
+    @Param({"int", "String"})
+    public String keyType;
+
+    @Param({"scan", "index"})
+    public String impl;
+
+    private DatumKeyMatcher matcher;
+    private List<Object> datums;
+    private Object[] targetKeys;
+
+    /**
+     * 模拟provider返回的datum
+     */
+    private static class Item {
+        final long id;
+
+        Item(long id) {
+            this.id = id;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        DatumKeyInfo keyInfo = new DatumKeyInfo("id", GenericTypes.of(long.class), datum -> ((Item) datum).id);
+        Class<?> targetClass = "int".equals(keyType) ? int.class : String.class;
+        DatumKeyTypeMatched matched = keyInfo.tryMatchType(GenericTypes.of(targetClass));
+        matcher = matched.datumKeyMatcher;
+
+        Random random = new Random(42);
+        datums = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            datums.add(new Item(i));
+        }
+        Collections.shuffle(datums, random);
+
+        targetKeys = new Object[size];
+        for (int i = 0; i < size; i++) {
+            // 约十分之一的元素找不到对应的datum
+            int id = random.nextInt(size + size / 10);
+            targetKeys[i] = "int".equals(keyType) ? (Object) id : String.valueOf(id);
+        }
+    }
+
+    @Benchmark
+    public void inject(Blackhole blackhole) {
+        if ("scan".equals(impl)) {
+            for (Object targetKey : targetKeys) {
+                for (Object datum : datums) {
+                    if (matcher.matches(datum, targetKey)) {
+                        blackhole.consume(datum);
+                    }
+                }
+            }
+        } else {
+            DatumKeyIndex index = new DatumKeyIndex(datums, matcher.indexer());
+            for (Object targetKey : targetKeys) {
+                for (int position : index.lookup(targetKey)) {
+                    blackhole.consume(index.datum(position));
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(DatumInjectionBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,71 @@
+package com.estatetrader.apigw.benchmarks;
+
+import com.estatetrader.apigw.core.models.ApiSchema;
+import com.estatetrader.apigw.core.models.SimpleServiceInstance;
+import com.estatetrader.apigw.core.phases.executing.RequestExecutor;
+import com.estatetrader.apigw.core.phases.parsing.ApiParser;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.PropertiesPropertySource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * 在进程内启动网关核心（不包括netty和dubbo），供基准测试使用
+ */
+public class GatewayBenchmarkSupport implements AutoCloseable {
+
+    private final AnnotationConfigApplicationContext context;
+    private final PhaseLatencyRecorder phaseLatencyRecorder = new PhaseLatencyRecorder();
+
+    public GatewayBenchmarkSupport() {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources()
+            .addLast(new PropertiesPropertySource("benchmark", loadProperties("benchmark.properties")));
+        context.registerBean("propertyConfigurer",
+            PropertySourcesPlaceholderConfigurer.class, PropertySourcesPlaceholderConfigurer::new);
+        context.getBeanFactory().addBeanPostProcessor(phaseLatencyRecorder);
+        context.scan("com.estatetrader.apigw.core");
+        context.refresh();
+    }
+
+    private static Properties loadProperties(String name) {
+        Properties properties = new Properties();
+        try (InputStream is = GatewayBenchmarkSupport.class.getClassLoader().getResourceAsStream(name)) {
+            if (is == null) {
+                throw new IllegalStateException("could not find " + name);
+            }
+            properties.load(is);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return properties;
+    }
+
+    /**
+     * 解析基准测试API，所有API都由同一个预置结果的服务实例提供服务
+     * @param service 服务实例
+     * @return API schema
+     */
+    public ApiSchema parseSchema(CannedBenchmarkService service) {
+        ApiSchema schema = new ApiSchema();
+        context.getBean(ApiParser.class).parseClasses(schema, "benchmark.jar",
+            clazz -> new SimpleServiceInstance(service), BenchmarkService.class);
+        return schema;
+    }
+
+    public RequestExecutor requestExecutor() {
+        return context.getBean(RequestExecutor.class);
+    }
+
+    public PhaseLatencyRecorder phaseLatencyRecorder() {
+        return phaseLatencyRecorder;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,86 @@
+package com.estatetrader.apigw.benchmarks;
+
+import com.estatetrader.apigw.core.contracts.GatewayCookie;
+import com.estatetrader.apigw.core.contracts.GatewayRequest;
+import com.estatetrader.util.Lambda;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于内存的网关请求，不依赖netty等网络层实现
+ */
+public class InMemoryGatewayRequest implements GatewayRequest {
+
+    private final Map<String, String> params;
+    private final Map<String, String> headers;
+
+    public InMemoryGatewayRequest(Map<String, String> params, Map<String, String> headers) {
+        // 请求处理过程中可能会修改请求参数，因此每个请求都需要一份独立的参数
+        this.params = new HashMap<>(params);
+        this.headers = headers;
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        return "127.0.0.1";
+    }
+
+    @Override
+    public String getPath() {
+        return "/m.api";
+    }
+
+    @Override
+    public String getMethod() {
+        return "POST";
+    }
+
+    @Override
+    public String getHeader(String headerName) {
+        return headers.get(headerName);
+    }
+
+    @Override
+    public Iterable<String> getParameterNames() {
+        return params.keySet();
+    }
+
+    @Override
+    public Map<String, List<String>> getParameters() {
+        return Lambda.mapValues(params, Collections::singletonList);
+    }
+
+    @Override
+    public String getParameter(String parameterName) {
+        return params.get(parameterName);
+    }
+
+    @Override
+    public void setParameter(String parameterName, String parameterValue) {
+        params.put(parameterName, parameterValue);
+    }
+
+    @Override
+    public void extendFormToParameters() {
+        // 参数已经全部位于params中
+    }
+
+    @Override
+    public Iterable<GatewayCookie> getCookies() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getCookieValue(String cookieName) {
+        return null;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return null;
+    }
+}
@@ -0,0 +1,70 @@
+package com.estatetrader.apigw.benchmarks;
+
+import com.estatetrader.apigw.core.contracts.GatewayCookie;
+import com.estatetrader.apigw.core.contracts.GatewayResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * 基于内存的网关响应，响应体写入到内存缓冲区中
+ */
+public class InMemoryGatewayResponse implements GatewayResponse {
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+    private int status = 200;
+
+    public int getStatus() {
+        return status;
+    }
+
+    public int getBodySize() {
+        return body.size();
+    }
+
+    public String getBody() {
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void setStatus(int code, String reasonPhrase) {
+        this.status = code;
+    }
+
+    @Override
+    public void sendError(String errorMessage) {
+        this.status = 500;
+    }
+
+    @Override
+    public void sendRedirect(String location) {
+        this.status = 302;
+    }
+
+    @Override
+    public void setHeader(String headerName, String headerValue) {
+    }
+
+    @Override
+    public void addHeader(String headerName, String headerValue) {
+    }
+
+    @Override
+    public void setContentType(String contentType) {
+    }
+
+    @Override
+    public void setContentEncoding(String encoding) {
+    }
+
+    @Override
+    public void setCookie(String cookieName, String cookieValue, Consumer<GatewayCookie> settings) {
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return body;
+    }
+}
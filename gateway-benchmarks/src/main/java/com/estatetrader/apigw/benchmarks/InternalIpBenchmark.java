@@ -0,0 +1,112 @@
+package com.estatetrader.apigw.benchmarks;
+
+import com.estatetrader.apigw.core.utils.CidrTrie;
+import com.estatetrader.util.IpAddress;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内网IP判断的性能测试，prefixes表示配置的网段数量
+ *
+ * linear: 网关原有的方式，每次请求都解析客户端IP字符串并逐一与每个网段字符串比较
+ * trie: 解析一次客户端IP，然后在网段前缀树中查找
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class InternalIpBenchmark {
+
+    private static final int ADDRESS_COUNT = 1024;
+
+    @Param({"10", "1000", "10000"})
+    public int prefixes;
+
+    @Param({"linear", "trie"})
+    public String impl;
+
+    private List<String> segments;
+    private CidrTrie trie;
+    private String[] addresses;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(prefixes);
+        segments = new ArrayList<>(prefixes);
+        CidrTrie.Builder builder = CidrTrie.builder();
+        for (int i = 0; i < prefixes; i++) {
+            int length = 16 + random.nextInt(17);
+            String segment = ipv4Text(random.nextInt()) + "/" + length;
+            segments.add(segment);
+            builder.add(segment);
+        }
+        trie = builder.build();
+
+        // 绝大多数请求来自外网，需要检查全部网段后才能得出结论
+        addresses = new String[ADDRESS_COUNT];
+        for (int i = 0; i < ADDRESS_COUNT; i++) {
+            addresses[i] = ipv4Text(random.nextInt());
+        }
+    }
+
+    private static String ipv4Text(int v) {
+        return (v >>> 24) + "." + ((v >>> 16) & 0xff) + "." + ((v >>> 8) & 0xff) + "." + (v & 0xff);
+    }
+
+    @Benchmark
+    public boolean isInternalIp() {
+        String ip = addresses[index++ & (ADDRESS_COUNT - 1)];
+        if ("linear".equals(impl)) {
+            for (String segment : segments) {
+                if (isInSubNet(ip, segment)) {
+                    return true;
+                }
+            }
+            return false;
+        } else {
+            return trie.contains(IpAddress.parse(ip));
+        }
+    }
+
+    /**
+     * 网关原有的网段判断实现
+     */
+    private static boolean isInSubNet(String network, String seg) {
+        if (seg.indexOf('/') < 0) { // ignore non-subnet address
+            return false;
+        }
+        String[] networkips = network.split("\\.");
+        int ipAddr = (Integer.parseInt(networkips[0]) << 24)
+            | (Integer.parseInt(networkips[1]) << 16)
+            | (Integer.parseInt(networkips[2]) << 8)
+            | Integer.parseInt(networkips[3]);
+        int type = Integer.parseInt(seg.replaceAll(".*/", ""));
+        int mask1 = 0xFFFFFFFF << (32 - type);
+        String maskIp = seg.replaceAll("/.*", "");
+        String[] maskIps = maskIp.split("\\.");
+        int cidrIpAddr = (Integer.parseInt(maskIps[0]) << 24)
+            | (Integer.parseInt(maskIps[1]) << 16)
+            | (Integer.parseInt(maskIps[2]) << 8)
+            | Integer.parseInt(maskIps[3]);
+
+        return (ipAddr & mask1) == (cidrIpAddr & mask1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(InternalIpBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,91 @@
+package com.estatetrader.apigw.benchmarks;
+
+import com.estatetrader.apigw.core.phases.executing.access.CallFinished;
+import com.estatetrader.apigw.core.phases.executing.access.CallResultReceived;
+import com.estatetrader.apigw.core.phases.executing.access.CallStarted;
+import com.estatetrader.apigw.core.phases.executing.request.RequestFinished;
+import com.estatetrader.apigw.core.phases.executing.request.RequestStarted;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 记录网关各个执行阶段的耗时
+ *
+ * 通过对阶段执行器（WorkflowExecution.start和WorkflowDestination.finish）进行代理实现，
+ * 只记录阶段的同步执行部分，对于异步启动的API调用（CallStarted），记录的是API启动的耗时
+ */
+public class PhaseLatencyRecorder implements BeanPostProcessor {
+
+    private static final Map<Class<?>, String> PHASES = new LinkedHashMap<>();
+
+    static {
+        PHASES.put(RequestStarted.ParseRequestExecution.class, "RequestStarted.parseRequest");
+        PHASES.put(RequestStarted.ProcessContextExecution.class, "RequestStarted.processContext");
+        PHASES.put(RequestStarted.VerifyRequestExecution.class, "RequestStarted.verifyRequest");
+        PHASES.put(RequestStarted.ProcessRequestExecution.class, "RequestStarted.processRequest");
+        PHASES.put(CallStarted.Execution.class, "CallStarted");
+        PHASES.put(CallResultReceived.Execution.class, "CallResultReceived");
+        PHASES.put(CallFinished.Execution.class, "CallFinished");
+        PHASES.put(RequestFinished.Execution.class, "RequestFinished");
+    }
+
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+
+    public PhaseLatencyRecorder() {
+        for (String phase : PHASES.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        String phase = PHASES.get(bean.getClass());
+        if (phase == null) {
+            return bean;
+        }
+
+        LatencyHistogram histogram = histograms.get(phase);
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.setProxyTargetClass(true);
+        factory.addAdvice((MethodInterceptor) invocation -> {
+            String name = invocation.getMethod().getName();
+            if (!"start".equals(name) && !"finish".equals(name)) {
+                return invocation.proceed();
+            }
+
+            long start = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } finally {
+                histogram.record(System.nanoTime() - start);
+            }
+        });
+        return factory.getProxy();
+    }
+
+    public void reset() {
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+
+    public void report(String title, PrintStream out) {
+        out.println();
+        out.println("phase latency of " + title + " (us)");
+        out.println(String.format("%-32s %12s %10s %10s %10s %10s",
+            "phase", "count", "mean", "p50", "p99", "p99.9"));
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            out.println(String.format("%-32s %12d %10.2f %10.2f %10.2f %10.2f",
+                entry.getKey(),
+                h.count(),
+                h.meanNanos() / 1000,
+                h.percentileNanos(50) / 1000.0,
+                h.percentileNanos(99) / 1000.0,
+                h.percentileNanos(99.9) / 1000.0));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.estatetrader.apigw.benchmarks;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.estatetrader.apigw.core.models.ApiSchema;
+import com.estatetrader.apigw.core.phases.executing.RequestExecutor;
+import org.apache.http.HttpHeaders;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网关端到端请求处理流程（RequestExecutor.execute）的性能测试
+ *
+ * 请求和响应均在内存中完成，API由预置结果的服务实例提供，因此测试结果只包含网关自身的开销，
+ * Throughput模式测试吞吐量，SampleTime模式给出请求的p99延迟，配合-prof gc可以得到内存分配速率，
+ * 每个执行阶段的延迟分布会在测试结束时输出
+ *
+ * single: 单个API调用
+ * calls5/calls20: 一个请求中包含5/20个相互独立的API调用
+ * chained: 一个请求中包含5个API调用，每个调用依赖它之前的所有调用（a:b/c形式）
+ * injection: 返回20篇文章的列表，并从另一个API中为每篇文章注入作者信息
+ * list: 返回包含100个商品的列表
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RequestPipelineBenchmark {
+
+    private static final String PRODUCT_API = "bench.getProduct";
+
+    @Param({"single", "calls5", "calls20", "chained", "injection", "list"})
+    public String scenario;
+
+    private GatewayBenchmarkSupport support;
+    private RequestExecutor executor;
+    private ApiSchema apiSchema;
+    private Map<String, String> params;
+    private Map<String, String> headers;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        support = new GatewayBenchmarkSupport();
+        executor = support.requestExecutor();
+        apiSchema = support.parseSchema(new CannedBenchmarkService(100));
+        params = createParams(scenario);
+
+        headers = new HashMap<>();
+        headers.put("host", "127.0.0.1");
+        headers.put(HttpHeaders.USER_AGENT, "gateway.benchmark");
+
+        // 确保请求能够成功执行，避免测试错误路径
+        InMemoryGatewayResponse response = execute();
+        JSONObject stat = JSON.parseObject(response.getBody()).getJSONObject("stat");
+        if (stat == null || stat.getIntValue("code") != 0) {
+            throw new IllegalStateException("benchmark request failed: " + response.getBody());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPhaseLatency() {
+        // 只保留最后一轮迭代的阶段延迟，排除预热的影响
+        support.phaseLatencyRecorder().reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        support.phaseLatencyRecorder().report(scenario, System.out);
+        support.close();
+    }
+
+    @Benchmark
+    public int execute_request() throws Exception {
+        return execute().getBodySize();
+    }
+
+    private InMemoryGatewayResponse execute() throws Exception {
+        InMemoryGatewayRequest request = new InMemoryGatewayRequest(params, headers);
+        InMemoryGatewayResponse response = new InMemoryGatewayResponse();
+        executor.execute(request, response, apiSchema).get(10, TimeUnit.SECONDS);
+        return response;
+    }
+
+    private static Map<String, String> createParams(String scenario) {
+        Map<String, String> params = new HashMap<>();
+        params.put("_aid", "1");
+        switch (scenario) {
+            case "single":
+                params.put("_mt", PRODUCT_API);
+                params.put("productId", "1");
+                break;
+            case "calls5":
+                independentCalls(params, 5);
+                break;
+            case "calls20":
+                independentCalls(params, 20);
+                break;
+            case "chained":
+                chainedCalls(params, 5);
+                break;
+            case "injection":
+                params.put("_mt", "bench.getArticleList");
+                params.put("size", "20");
+                break;
+            case "list":
+                params.put("_mt", "bench.getProductList");
+                params.put("size", "100");
+                break;
+            default:
+                throw new IllegalArgumentException("unknown scenario " + scenario);
+        }
+        return Collections.unmodifiableMap(params);
+    }
+
+    private static void independentCalls(Map<String, String> params, int count) {
+        StringBuilder mt = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) mt.append(',');
+            mt.append(PRODUCT_API).append('@').append(i);
+            params.put(i + "_productId", String.valueOf(i));
+        }
+        params.put("_mt", mt.toString());
+    }
+
+    /**
+     * 生成形如 a@0,a@1:a@0,a@2:a@0/a@1 的依赖链
+     */
+    private static void chainedCalls(Map<String, String> params, int count) {
+        StringBuilder mt = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) mt.append(',');
+            mt.append(PRODUCT_API).append('@').append(i);
+            for (int j = 0; j < i; j++) {
+                mt.append(j == 0 ? ':' : '/').append(PRODUCT_API).append('@').append(j);
+            }
+            params.put(i + "_productId", String.valueOf(i));
+        }
+        params.put("_mt", mt.toString());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(RequestPipelineBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
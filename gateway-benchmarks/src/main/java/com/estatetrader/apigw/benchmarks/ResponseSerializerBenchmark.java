@@ -0,0 +1,132 @@
+package com.estatetrader.apigw.benchmarks;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.serializer.SerializeFilter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.alibaba.fastjson.util.IOUtils;
+import com.estatetrader.apigw.core.extensions.Extensions;
+import com.estatetrader.apigw.core.features.DynamicTypeFeature;
+import com.estatetrader.apigw.core.features.ResponseFilterFeature;
+import com.estatetrader.apigw.core.models.ApiMethodCall;
+import com.estatetrader.apigw.core.models.ApiMethodInfo;
+import com.estatetrader.apigw.core.phases.executing.serialize.ResponseSerializer;
+import com.estatetrader.apigw.core.phases.executing.serialize.SerializingConfigurer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.alibaba.fastjson.JSON.DEFAULT_GENERATE_FEATURE;
+
+/**
+ * API返回值序列化的性能测试，size表示返回的列表中元素的数量
+ *
+ * legacy: 网关原有的方式，每次序列化时重新收集所有SerializingConfigurer的filters和features并转换为数组
+ * plan: 使用API加载时生成的序列化计划
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ResponseSerializerBenchmark {
+
+    @Param({"1", "20", "200"})
+    public int size;
+
+    @Param({"legacy", "plan"})
+    public String impl;
+
+    private Extensions<SerializingConfigurer> configurers;
+    private ResponseSerializer serializer;
+    private ApiMethodCall call;
+    private Object result;
+    private ByteArrayOutputStream output;
+
+    public static class Listing {
+        private final long id;
+        private final String title;
+        private final int price;
+        private final List<String> tags;
+
+        Listing(long id) {
+            this.id = id;
+            this.title = "listing-" + id;
+            this.price = (int) (id * 37 % 10000);
+            this.tags = Arrays.asList("sea-view", "south");
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public int getPrice() {
+            return price;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        configurers = new Extensions.ExtensionsImpl<>(Arrays.asList(
+            new SerializingConfigurer.DefaultSerializingConfigurer(),
+            new DynamicTypeFeature.SerializingConfigurerImpl(),
+            new ResponseFilterFeature.ApiResultSerializingConfigurer()
+        ));
+        serializer = new ResponseSerializer.DefaultResponseSerializer(configurers);
+
+        ApiMethodInfo method = new ApiMethodInfo();
+        method.methodName = "benchmark.listings";
+        call = new ApiMethodCall(method);
+
+        List<Listing> listings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            listings.add(new Listing(i));
+        }
+        result = listings;
+        output = new ByteArrayOutputStream(64 * 1024);
+    }
+
+    @Benchmark
+    public int serialize() throws IOException {
+        output.reset();
+        if ("legacy".equals(impl)) {
+            List<SerializeFilter> filters = new ArrayList<>(configurers.size());
+            List<SerializerFeature> features = new ArrayList<>(configurers.size());
+            for (SerializingConfigurer configurer : configurers) {
+                filters.addAll(configurer.filters(result, call, null));
+                features.addAll(configurer.features(call, null));
+            }
+            JSON.writeJSONString(output, IOUtils.UTF8, result, SerializeConfig.globalInstance,
+                filters.toArray(new SerializeFilter[0]), null, DEFAULT_GENERATE_FEATURE,
+                features.toArray(new SerializerFeature[0]));
+        } else {
+            serializer.toJson(output, result, call, null);
+        }
+        return output.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(ResponseSerializerBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
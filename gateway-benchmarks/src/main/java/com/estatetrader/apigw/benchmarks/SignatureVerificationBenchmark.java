@@ -0,0 +1,199 @@
+package com.estatetrader.apigw.benchmarks;
+
+import com.estatetrader.apigw.core.utils.DynamicSaltVerifier;
+import com.estatetrader.apigw.core.utils.EccHelper;
+import com.estatetrader.apigw.core.utils.RequestSignatureText;
+import com.estatetrader.apigw.core.utils.RsaHelper;
+import com.estatetrader.define.CommonParameter;
+import com.estatetrader.util.HexStringUtil;
+import com.estatetrader.util.Md5Util;
+import com.estatetrader.util.SHAUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 动态盐签名校验的性能测试
+ *
+ * uncached: 网关原有的校验方式，每次校验都拼接请求文本字符串、重新解析公钥并创建Signature/MessageDigest
+ * cached: 网关当前的校验方式，与RequestSignatureFeature相同，使用RequestSignatureText编码请求文本，
+ *         并通过DynamicSaltVerifier按key缓存公钥及其十六进制表示
+ *
+ * 两种方式都从请求参数开始计算，因此结果包含了构建请求文本的开销
+ *
+ * keys表示参与测试的不同key的数量，请求按顺序轮流使用这些key，用于模拟多用户场景下的缓存命中情况
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SignatureVerificationBenchmark {
+
+    private static final Map<String, String> PARAMETERS = new LinkedHashMap<>();
+
+    static {
+        PARAMETERS.put("productId", "1");
+        PARAMETERS.put(CommonParameter.method, "bench.getProduct");
+        PARAMETERS.put(CommonParameter.applicationId, "1");
+        PARAMETERS.put(CommonParameter.deviceId, "4d7d5c7b-7f1a-4d43-8d8d-2ef7f1f0c8a1");
+        PARAMETERS.put(CommonParameter.signatureMethod, "rsa");
+        PARAMETERS.put("_tm", "1571234567890");
+        PARAMETERS.put(CommonParameter.signature, "ignored");
+    }
+
+    @Param({"rsa", "ecc", "sha1", "md5"})
+    public String method;
+
+    @Param({"uncached", "cached"})
+    public String impl;
+
+    @Param({"1", "256"})
+    public int keys;
+
+    private DynamicSaltVerifier verifier;
+    private byte[] content;
+    private byte[][] publicKeys;
+    private byte[][] signatures;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        verifier = new DynamicSaltVerifier(100_000, 16, 600_000);
+        content = originalRequestText().getBytes(StandardCharsets.UTF_8);
+        publicKeys = new byte[keys][];
+        signatures = new byte[keys][];
+
+        SecureRandom random = new SecureRandom();
+        KeyPairGenerator generator = null;
+        if ("rsa".equals(method)) {
+            generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(1024, random);
+        } else if ("ecc".equals(method)) {
+            // EccHelper的静态初始化块会注册BouncyCastle
+            EccHelper.class.getName();
+            generator = KeyPairGenerator.getInstance("EC", "BC");
+            generator.initialize(256, random);
+        }
+
+        for (int i = 0; i < keys; i++) {
+            switch (method) {
+                case "rsa": {
+                    KeyPair pair = generator.generateKeyPair();
+                    publicKeys[i] = pair.getPublic().getEncoded();
+                    signatures[i] = RsaHelper.sign(content, pair.getPrivate().getEncoded());
+                    break;
+                }
+                case "ecc": {
+                    KeyPair pair = generator.generateKeyPair();
+                    publicKeys[i] = pair.getPublic().getEncoded();
+                    signatures[i] = EccHelper.sign(content, pair.getPrivate().getEncoded());
+                    break;
+                }
+                case "sha1":
+                case "md5": {
+                    byte[] key = new byte[16];
+                    random.nextBytes(key);
+                    publicKeys[i] = key;
+                    signatures[i] = saltedDigest(originalRequestText(), key);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("unknown method " + method);
+            }
+        }
+
+        for (int i = 0; i < keys; i++) {
+            if (!verify(i)) {
+                throw new IllegalStateException("signature verification failed for key " + i);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public boolean verify(Cursor cursor) {
+        int i = cursor.next;
+        cursor.next = i + 1 == keys ? 0 : i + 1;
+        return verify(i);
+    }
+
+    private boolean verify(int i) {
+        byte[] key = publicKeys[i];
+        byte[] sign = signatures[i];
+
+        if ("uncached".equals(impl)) {
+            String requestText = originalRequestText();
+            switch (method) {
+                case "rsa":
+                    return RsaHelper.verify(sign, requestText.getBytes(StandardCharsets.UTF_8), key);
+                case "ecc":
+                    return EccHelper.verify(sign, requestText.getBytes(StandardCharsets.UTF_8), key);
+                default:
+                    return Arrays.equals(sign, saltedDigest(requestText, key));
+            }
+        }
+
+        RequestSignatureText requestText = RequestSignatureText.of(
+            PARAMETERS.keySet(), PARAMETERS::get, CommonParameter.signature);
+        switch (method) {
+            case "rsa":
+                return verifier.verifyRsa(sign, requestText, key);
+            case "ecc":
+                return verifier.verifyEcc(sign, requestText, key);
+            case "sha1":
+                return requestText.matchesSaltedDigest(RequestSignatureText.SHA1, verifier.hexSalt(key), sign);
+            default:
+                return requestText.matchesSaltedDigest(RequestSignatureText.MD5, verifier.hexSalt(key), sign);
+        }
+    }
+
+    /**
+     * 网关原有的请求文本计算方式
+     */
+    private static String originalRequestText() {
+        List<String> names = new ArrayList<>(PARAMETERS.keySet());
+        names.sort(String::compareTo);
+        StringBuilder sb = new StringBuilder(128);
+        for (String name : names) {
+            if (CommonParameter.signature.equals(name)) {
+                continue;
+            }
+            sb.append(name).append('=').append(PARAMETERS.get(name));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 网关原有的md5/sha1动态盐签名计算方式
+     */
+    private byte[] saltedDigest(String requestText, byte[] key) {
+        String text = requestText + HexStringUtil.toHexString(key);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return "md5".equals(method) ? Md5Util.compute(bytes) : SHAUtil.computeSHA1(bytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(SignatureVerificationBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
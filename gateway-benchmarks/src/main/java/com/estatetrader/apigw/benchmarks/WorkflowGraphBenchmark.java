@@ -0,0 +1,88 @@
+package com.estatetrader.apigw.benchmarks;
+
+import com.estatetrader.algorithm.workflow.ExecutionResult;
+import com.estatetrader.algorithm.workflow.WorkflowExecution;
+import com.estatetrader.algorithm.workflow.WorkflowGraph;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工作流图的性能测试，节点的完成回调在多个线程中并发执行，用于模拟dubbo回调线程
+ *
+ * fanOut: 所有节点都只依赖origin节点（对应一个请求中的多个API）
+ * diamond: 一半节点依赖origin节点，另一半节点各自依赖前一半中的所有节点（对应大量注入子调用）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkflowGraphBenchmark {
+
+    @Param({"1", "10", "50", "100", "500"})
+    public int nodeCount;
+
+    @Param({"fanOut", "diamond"})
+    public String shape;
+
+    private ExecutorService callbackExecutor;
+    private WorkflowExecution origin;
+
+    @Setup
+    public void setup() {
+        callbackExecutor = Executors.newFixedThreadPool(8);
+
+        WorkflowExecution asyncNode = pipeline -> {
+            ExecutionResult.Async result = new ExecutionResult.Async();
+            callbackExecutor.execute(() -> result.success(pipeline.getParam()));
+            return result;
+        };
+
+        List<String> firstHalf = new ArrayList<>();
+        for (int i = 0; i < nodeCount / 2; i++) {
+            firstHalf.add("n" + i);
+        }
+
+        origin = pipeline -> {
+            if ("fanOut".equals(shape)) {
+                for (int i = 0; i < nodeCount; i++) {
+                    pipeline.node("n" + i, (Object) i, asyncNode);
+                }
+            } else {
+                for (int i = 0; i < nodeCount; i++) {
+                    Iterable<String> deps = i < firstHalf.size() ? new ArrayList<>() : firstHalf;
+                    pipeline.node("n" + i, deps, i, asyncNode);
+                }
+            }
+            return null;
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        callbackExecutor.shutdown();
+    }
+
+    @Benchmark
+    public void executeGraph() throws Exception {
+        WorkflowGraph graph = new WorkflowGraph(origin, (originFailed, nodesFailed, result, context) -> {});
+        graph.start(60000).get();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(WorkflowGraphBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -21,6 +21,15 @@ public interface GatewayRequest {
      */
     String getPath();
 
+    /**
+     * 获取请求路径按照'/'拆分后的各个部分，与getPath().split("/")的结果一致
+     * 注意：调用方不得修改返回的数组
+     * @return 请求路径的各个部分
+     */
+    default String[] getPathSegments() {
+        return getPath().split("/");
+    }
+
     /**
      * 获取请求使用的谓词
      * @return 请求谓词
@@ -1,5 +1,6 @@
 package com.estatetrader.apigw.core.contracts;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.util.function.Consumer;
 
@@ -98,4 +99,30 @@ public interface GatewayResponse {
      * @return 响应体输出流
      */
     OutputStream getOutputStream();
+
+    /**
+     * 申请一块用于存放API序列化结果的缓冲区，该缓冲区可以通过write(ResponseBuffer)以零复制的方式写入响应体
+     * @return 响应缓冲区，返回null表示不提供自己的缓冲区，由网关使用默认的堆内存缓冲区
+     */
+    default ResponseBuffer allocateBuffer() {
+        return null;
+    }
+
+    /**
+     * 将缓冲区中的内容追加到响应体中，调用方仍然需要在使用完毕后释放缓冲区
+     * @param buffer 响应缓冲区
+     * @throws IOException 写入失败
+     */
+    default void write(ResponseBuffer buffer) throws IOException {
+        buffer.writeTo(getOutputStream());
+    }
+
+    /**
+     * 将一段共享的常量字节追加到响应体中，调用方保证bytes的内容永远不会被修改，因此实现可以直接引用而不是复制它
+     * @param bytes 常量字节
+     * @throws IOException 写入失败
+     */
+    default void writeShared(byte[] bytes) throws IOException {
+        getOutputStream().write(bytes);
+    }
 }
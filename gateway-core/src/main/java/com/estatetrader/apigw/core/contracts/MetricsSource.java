@@ -0,0 +1,21 @@
+package com.estatetrader.apigw.core.contracts;
+
+import java.util.Map;
+
+/**
+ * 可以对外报告运行指标的组件，所有实现了此接口的bean都会出现在网关的指标接口中
+ */
+public interface MetricsSource {
+
+    /**
+     * 指标分组的名称，在所有的指标源中应唯一
+     * @return 分组名称
+     */
+    String metricsName();
+
+    /**
+     * 获取当前的指标快照
+     * @return 指标名 -> 指标值
+     */
+    Map<String, Object> metrics();
+}
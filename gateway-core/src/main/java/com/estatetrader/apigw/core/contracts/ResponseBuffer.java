@@ -0,0 +1,44 @@
+package com.estatetrader.apigw.core.contracts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * 用于存放API序列化结果的缓冲区，由GatewayResponse提供，可以不经复制直接成为响应体的一部分
+ *
+ * 缓冲区在使用完毕后必须调用release释放，通过GatewayResponse.write写入响应体并不会转移调用方对缓冲区的所有权
+ */
+public interface ResponseBuffer {
+
+    /**
+     * 获取用于向缓冲区写入数据的输出流
+     * @return 输出流
+     */
+    OutputStream getOutputStream();
+
+    /**
+     * 已写入的字节数
+     * @return 字节数
+     */
+    int size();
+
+    /**
+     * 将缓冲区中的内容复制到输出流中
+     * @param output 输出流
+     * @throws IOException 写入失败
+     */
+    void writeTo(OutputStream output) throws IOException;
+
+    /**
+     * 使用指定的字符集将缓冲区中的内容解码为字符串
+     * @param charset 字符集
+     * @return 解码后的字符串
+     */
+    String toString(Charset charset);
+
+    /**
+     * 释放缓冲区
+     */
+    void release();
+}
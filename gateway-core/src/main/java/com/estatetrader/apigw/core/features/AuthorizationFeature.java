@@ -4,15 +4,17 @@ import com.alibaba.fastjson.JSON;
 import com.estatetrader.annotation.ApiSubSystem;
 import com.estatetrader.apigw.core.contracts.ServiceInstance;
 import com.estatetrader.apigw.core.extensions.Extension;
+import com.estatetrader.apigw.core.models.ApiSchema;
 import com.estatetrader.apigw.core.phases.executing.request.RequestStarted;
 import com.estatetrader.apigw.core.phases.parsing.ParsingClass;
+import com.estatetrader.apigw.core.phases.parsing.SchemaProcessor;
 import com.estatetrader.core.GatewayException;
 import com.estatetrader.define.SecurityType;
 import com.estatetrader.entity.ApiReturnCode;
 import com.estatetrader.rule.WatchedResourceListener;
-import com.estatetrader.rule.authorizing.ApiInfo;
+import com.estatetrader.rule.authorizing.AuthorizationDecision;
+import com.estatetrader.rule.authorizing.AuthorizationTable;
 import com.estatetrader.rule.authorizing.AuthorizationTreeListener;
-import com.estatetrader.rule.authorizing.SubsystemInfo;
 import com.estatetrader.apigw.core.models.ApiContext;
 import com.estatetrader.apigw.core.models.ApiMethodCall;
 import com.estatetrader.apigw.core.models.ApiMethodInfo;
@@ -23,10 +25,15 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 授权树相关功能
@@ -69,6 +76,100 @@ public interface AuthorizationFeature {
         }
     }
 
+    /**
+     * 授权决策表，API按照其在ApiSchema中的序号编号，权限树被编译为以位图表示的决策表。
+     * API加载完成以及权限树发生任何变化时，在后台线程中重新编译，编译完成后整体替换，多次变化合并为一次编译
+     */
+    @Extension
+    class DecisionTable implements SchemaProcessor {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(DecisionTable.class);
+
+        private final AuthorizationTreeListener listener;
+        private final ExecutorService executor;
+        private final AtomicBoolean compileScheduled = new AtomicBoolean();
+
+        private volatile String[] apiNames = new String[0];
+        private volatile Compiled compiled;
+
+        public DecisionTable(@Autowired(required = false) AuthorizationTreeListener listener) {
+            this.listener = listener;
+            if (listener != null) {
+                this.executor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "authorization-table-compiler");
+                    t.setDaemon(true);
+                    return t;
+                });
+                listener.addChangeCallback(this::scheduleCompile);
+            } else {
+                this.executor = null;
+            }
+        }
+
+        @Override
+        public void process(ApiSchema schema) {
+            List<String> names = new ArrayList<>();
+            for (ApiMethodInfo method : schema.getApiInfoList()) {
+                method.authorizationId = names.size();
+                names.add(method.methodName);
+            }
+            this.apiNames = names.toArray(new String[0]);
+            scheduleCompile();
+        }
+
+        /**
+         * 做出授权决定，决策表尚未编译完成或者API未编号时逐级查询权限树
+         *
+         * @param subsystemName 子系统名称
+         * @param method 要访问的API
+         * @param role 调用者的角色
+         * @param fromTrustedNetwork 请求是否来自可信赖网络
+         * @return 授权决定
+         */
+        AuthorizationDecision decide(String subsystemName, ApiMethodInfo method, String role, boolean fromTrustedNetwork) {
+            Compiled copy = this.compiled;
+            int id = method.authorizationId;
+            // 决策表须与API的编号对应，重新加载API之后旧的决策表不再可用
+            if (copy != null && id >= 0 && id < copy.apiNames.length && copy.apiNames[id].equals(method.methodName)) {
+                return copy.table.decide(subsystemName, id, role, fromTrustedNetwork);
+            }
+            return AuthorizationDecision.decide(listener, subsystemName, method.methodName, role, fromTrustedNetwork);
+        }
+
+        private void scheduleCompile() {
+            if (executor != null && compileScheduled.compareAndSet(false, true)) {
+                executor.execute(this::compile);
+            }
+        }
+
+        private void compile() {
+            // 先清除标记再读取权限树，编译期间发生的变化会触发下一次编译
+            compileScheduled.set(false);
+            long start = System.currentTimeMillis();
+            String[] names = this.apiNames;
+            try {
+                AuthorizationTable table = AuthorizationTable.compile(listener, names);
+                this.compiled = new Compiled(names, table);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("authorization table of {} subsystems and {} apis is compiled in {}ms",
+                        table.subsystemCount(), names.length, System.currentTimeMillis() - start);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("failed to compile authorization table, will retry on the next change", e);
+            }
+        }
+
+        private static class Compiled {
+            final String[] apiNames;
+            final AuthorizationTable table;
+
+            Compiled(String[] apiNames, AuthorizationTable table) {
+                this.apiNames = apiNames;
+                this.table = table;
+            }
+        }
+    }
+
     @Extension(after = SecurityFeature.class)
     class RequestVerifierImpl implements RequestStarted.RequestVerifier {
 
@@ -76,13 +177,16 @@ public interface AuthorizationFeature {
 
         private final AuthorizationTreeListener authorizationTreeListener;
         private final WatchedResourceListener<?> superUserListener;
+        private final DecisionTable decisionTable;
         private final Config config;
 
         public RequestVerifierImpl(@Autowired(required = false) AuthorizationTreeListener authorizationTreeListener,
                                    @Autowired(required = false) WatchedResourceListener<?> superUserListener,
+                                   DecisionTable decisionTable,
                                    Config config) {
             this.superUserListener = superUserListener;
             this.authorizationTreeListener = authorizationTreeListener;
+            this.decisionTable = decisionTable;
             this.config = config;
         }
 
@@ -152,52 +256,42 @@ public interface AuthorizationFeature {
             // context.caller.subsystem is not null or empty, confirmed by the method's caller
             String subsystemName = context.caller.subsystem.toUpperCase();
 
-            SubsystemInfo subsystem = listener.getSubsystem(subsystemName);
-
-            // 【白名单授权机制】如果子系统节点不存在，则拒绝授权
-            // 为了防止因为凭据签发相关bug（因拼写错误导致签发了一个不存在的子系统的凭据），我们采用了白名单机制，即默认所有子系统
-            // 的凭据都被拒绝访问，除非显式在权限树中有相应配置
-            if (subsystem == null) {
-                throw new GatewayException(ApiReturnCode.SUBSYSTEM_NOT_FOUND);
-            }
-
-            // 指示该凭据中指示的角色仅在可信赖网络中使用
-            if (subsystem.isOnlyTrustedNetwork() && !context.fromTrustedNetwork) {
-                LOGGER.debug("authorizing is rejected since the subsystem {} is only allowed from trusted network",
-                    subsystemName);
-
-                throw new GatewayException(ApiReturnCode.CLIENT_IP_DENIED);
-            }
-
             // 要访问的API的名字，是权限校验的基本单元
             String apiName = method.methodName;
 
-            ApiInfo api = listener.getApi(subsystemName, apiName);
-
-            // 【白名单授权机制】如果API未在此子系统节点下挂载，则拒绝请求
-            if (api == null) {
-                throw new GatewayException(ApiReturnCode.PERMISSION_UNASSIGNED);
-            }
-
-            // 如果子系统被配置不启用校验，则跳过权限校验
-            if (subsystem.isAuthorizingDisabled()) {
-                LOGGER.debug("authorizing check skipped because authorizing is not enabled for subsystem {}",
-                    subsystemName);
-
-                return;
-            }
-
-            // API可以选择是否启用API权限校验
-            if (api.isAuthorizingDisabled()) {
-                LOGGER.debug("authorizing check skipped because the authorizing of the target api {} " +
-                    "in subsystem {} authorizing tree is disabled", apiName, subsystemName);
-
-                return;
-            }
-
-            if (listener.containsApiRole(subsystemName, apiName, role)) {
-                LOGGER.debug("access to api {} in subsystem {} by role {} is granted", apiName, subsystemName, role);
-                return;
+            AuthorizationDecision decision = decisionTable.decide(subsystemName, method, role,
+                context.fromTrustedNetwork);
+
+            switch (decision) {
+                case GRANTED:
+                    LOGGER.debug("access to api {} in subsystem {} by role {} is granted",
+                        apiName, subsystemName, role);
+                    return;
+                case SUBSYSTEM_AUTHORIZING_DISABLED:
+                    // 如果子系统被配置不启用校验，则跳过权限校验
+                    LOGGER.debug("authorizing check skipped because authorizing is not enabled for subsystem {}",
+                        subsystemName);
+                    return;
+                case API_AUTHORIZING_DISABLED:
+                    // API可以选择是否启用API权限校验
+                    LOGGER.debug("authorizing check skipped because the authorizing of the target api {} " +
+                        "in subsystem {} authorizing tree is disabled", apiName, subsystemName);
+                    return;
+                case SUBSYSTEM_NOT_FOUND:
+                    // 【白名单授权机制】如果子系统节点不存在，则拒绝授权
+                    // 为了防止因为凭据签发相关bug（因拼写错误导致签发了一个不存在的子系统的凭据），我们采用了白名单机制，即默认所有子系统
+                    // 的凭据都被拒绝访问，除非显式在权限树中有相应配置
+                    throw new GatewayException(ApiReturnCode.SUBSYSTEM_NOT_FOUND);
+                case CLIENT_IP_DENIED:
+                    // 指示该凭据中指示的角色仅在可信赖网络中使用
+                    LOGGER.debug("authorizing is rejected since the subsystem {} is only allowed from trusted network",
+                        subsystemName);
+                    throw new GatewayException(ApiReturnCode.CLIENT_IP_DENIED);
+                case PERMISSION_UNASSIGNED:
+                    // 【白名单授权机制】如果API未在此子系统节点下挂载，则拒绝请求
+                    throw new GatewayException(ApiReturnCode.PERMISSION_UNASSIGNED);
+                default:
+                    break;
             }
 
             if (LOGGER.isDebugEnabled()) {
@@ -43,22 +43,24 @@ public interface BlacklistFeature {
                 return;
             }
 
-            if (blacklistsListeners.userBlacklist.containsKey(String.valueOf(context.caller.uid))) {
+            BlacklistsService.Snapshot blacklists = blacklistsListeners.snapshot();
+
+            if (blacklists.containsUser(context.caller.uid)) {
                 throw new GatewayException(ApiReturnCode.USER_BLACKLIST_DENIED);
             }
 
-            if (blacklistsListeners.deviceBlacklist.containsKey(String.valueOf(context.caller.deviceId))) {
+            if (blacklists.containsDevice(context.caller.deviceId)) {
                 throw new GatewayException(ApiReturnCode.DEVICE_BLACKLIST_DENIED);
             }
 
             if (context.clientIP != null &&
-                blacklistsListeners.ipBlacklist.containsKey(context.clientIP)) {
+                blacklists.containsIp(context.clientAddress, context.clientIP)) {
 
                 throw new GatewayException(ApiReturnCode.IP_BLACKLIST_DENIED);
             }
 
             if (context.caller.phoneNumber != null &&
-                blacklistsListeners.phonePrefixBlacklist.prefixContainsKey(context.caller.phoneNumber)) {
+                blacklists.matchesPhonePrefix(context.caller.phoneNumber)) {
 
                 throw new GatewayException(ApiReturnCode.PHONE_PREFIX_BLACKLIST_DENIED);
             }
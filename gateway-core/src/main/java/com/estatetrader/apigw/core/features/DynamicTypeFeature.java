@@ -2,6 +2,7 @@ package com.estatetrader.apigw.core.features;
 
 import com.alibaba.fastjson.serializer.AfterFilter;
 import com.alibaba.fastjson.serializer.SerializeFilter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.estatetrader.apigw.core.extensions.Extension;
 import com.estatetrader.gateway.StructTypeResolver;
 import com.estatetrader.objtree.*;
@@ -118,5 +119,16 @@ public interface DynamicTypeFeature {
             TypeNameWriter filter = new TypeNameWriter(dynamicTypeObjectMap);
             return Collections.singletonList(filter);
         }
+
+        @Override
+        public List<SerializeFilter> precomputedFilters(ApiMethodInfo method) {
+            // 仅当返回值中含有动态类型时才需要针对每个返回值生成filter
+            return method == null || method.dynamicTypeObjectTree == null ? Collections.emptyList() : null;
+        }
+
+        @Override
+        public List<SerializerFeature> precomputedFeatures(ApiMethodInfo method) {
+            return Collections.emptyList();
+        }
     }
 }
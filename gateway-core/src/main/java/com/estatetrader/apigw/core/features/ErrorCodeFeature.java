@@ -1,5 +1,6 @@
 package com.estatetrader.apigw.core.features;
 
+import com.estatetrader.algorithm.workflow.NodeDeadlineException;
 import com.estatetrader.annotation.DesignedErrorCode;
 import com.estatetrader.apigw.core.contracts.ServiceInstance;
 import com.estatetrader.apigw.core.extensions.Extension;
@@ -269,6 +270,12 @@ public interface ErrorCodeFeature {
                 return ApiReturnCode.DUBBO_SERVICE_TIMEOUT_ERROR;
             }
 
+            // dubbo回调丢失，API对应的工作流节点超过截止时间被强制结束
+            if (throwable instanceof NodeDeadlineException) {
+                logger.warn("api call deadline exceeded.", throwable);
+                return ApiReturnCode.DUBBO_SERVICE_TIMEOUT_ERROR;
+            }
+
             if (throwable instanceof RpcException ||
                 throwable.getCause() instanceof RpcException) {
                 // TODO: refine this code, change dubbo source to add error code when this RpcException init
@@ -1,12 +1,13 @@
 package com.estatetrader.apigw.core.features;
 
 import com.estatetrader.apigw.core.contracts.GatewayRequest;
+import com.estatetrader.apigw.core.contracts.MetricsSource;
 import com.estatetrader.apigw.core.extensions.Extension;
 import com.estatetrader.apigw.core.extensions.Extensions;
 import com.estatetrader.apigw.core.extensions.Next;
 import com.estatetrader.apigw.core.phases.executing.request.RequestStarted;
-import com.estatetrader.apigw.core.utils.EccHelper;
-import com.estatetrader.apigw.core.utils.RsaHelper;
+import com.estatetrader.apigw.core.utils.DynamicSaltVerifier;
+import com.estatetrader.apigw.core.utils.RequestSignatureText;
 import com.estatetrader.core.GatewayException;
 import com.estatetrader.define.CommonParameter;
 import com.estatetrader.define.SecurityType;
@@ -15,8 +16,6 @@ import com.estatetrader.entity.CallerInfo;
 import com.estatetrader.responseEntity.RenewTokenResult;
 import com.estatetrader.util.Base64Util;
 import com.estatetrader.util.HexStringUtil;
-import com.estatetrader.util.Md5Util;
-import com.estatetrader.util.SHAUtil;
 import com.estatetrader.apigw.core.models.SignatureType;
 import com.estatetrader.apigw.core.models.ApiContext;
 import org.slf4j.Logger;
@@ -25,9 +24,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
 /**
@@ -36,10 +33,31 @@ import java.util.function.Function;
 public interface RequestSignatureFeature {
 
     @Component
-    class Config {
+    class Config implements MetricsSource {
         @SuppressWarnings("FieldMayBeFinal")
         @Value("${gateway.enable.request-signature:true}")
         private boolean enableRequestSignature = true;
+
+        /**
+         * 缓存了动态盐对应公钥的签名校验器
+         */
+        private final DynamicSaltVerifier dynamicSaltVerifier;
+
+        public Config(@Value("${gateway.signature.key-cache.capacity:100000}") int keyCacheCapacity,
+                      @Value("${gateway.signature.key-cache.shards:16}") int keyCacheShards,
+                      @Value("${gateway.signature.key-cache.max-idle:600000}") long keyCacheMaxIdle) {
+            this.dynamicSaltVerifier = new DynamicSaltVerifier(keyCacheCapacity, keyCacheShards, keyCacheMaxIdle);
+        }
+
+        @Override
+        public String metricsName() {
+            return "signature-key-cache";
+        }
+
+        @Override
+        public Map<String, Object> metrics() {
+            return dynamicSaltVerifier.metrics();
+        }
     }
 
     // 签名验证要早于基础权限验证，但是由于客户端代码没有完全准备好，不能很好维护tk的状态，所以此处临时要求签名晚于基础权限验证
@@ -65,7 +83,7 @@ public interface RequestSignatureFeature {
             }
             GatewayRequest request = context.request;
             // 拼装被签名参数列表
-            String requestText = processor.getRequestText(request.getParameterNames(), request::getParameter);
+            RequestSignatureText requestText = processor.getRequestText(request.getParameterNames(), request::getParameter);
             // 客户端传入的签名
             String signature = request.getParameter(CommonParameter.signature);
             SignatureType signatureType = verifiers
@@ -89,7 +107,7 @@ public interface RequestSignatureFeature {
          * @return 在校验成功后返回此次校验使用的签名类型
          */
         SignatureType verify(ApiContext context,
-                             String requestText,
+                             RequestSignatureText requestText,
                              String signature,
                              Next<SignatureType, GatewayException> next) throws GatewayException;
     }
@@ -117,7 +135,7 @@ public interface RequestSignatureFeature {
          */
         @Override
         public SignatureType verify(ApiContext context,
-                                    String requestText,
+                                    RequestSignatureText requestText,
                                     String signature,
                                     Next<SignatureType, GatewayException> next) throws GatewayException {
             if (debugAgentEnabled &&
@@ -172,7 +190,7 @@ public interface RequestSignatureFeature {
          */
         @Override
         public SignatureType verify(ApiContext context,
-                                    String requestText,
+                                    RequestSignatureText requestText,
                                     String signature,
                                     Next<SignatureType, GatewayException> next) throws GatewayException {
             String sm = context.getRequest().getParameter(CommonParameter.signatureMethod);
@@ -231,7 +249,7 @@ public interface RequestSignatureFeature {
          * @param parameterValues 请求中每个参数对应的参数值
          * @return 返回用于请求签名的请求文本
          */
-        String getRequestText(Iterable<String> parameterNames, Function<String, String> parameterValues);
+        RequestSignatureText getRequestText(Iterable<String> parameterNames, Function<String, String> parameterValues);
 
         /**
          * 验证请求中携带的签名是否合法，并在不合法时抛出签名错误相关的异常
@@ -245,7 +263,7 @@ public interface RequestSignatureFeature {
          *
          * @throws GatewayException 在签名不匹配时抛出相应的错误码
          */
-        SignatureType verifySignature(String requestText,
+        SignatureType verifySignature(RequestSignatureText requestText,
                            String signature,
                            String signatureMethod,
                            boolean allowStaticSalt,
@@ -257,14 +275,17 @@ public interface RequestSignatureFeature {
 
         private final Logger logger = LoggerFactory.getLogger(RequestSignatureFeature.class);
 
-        private final String staticSignPwd;
+        private final byte[] staticSalt;
         private final SecurityFeature.Config securityConfig;
+        private final DynamicSaltVerifier dynamicSaltVerifier;
 
         public VerificationProcessorImpl(@Value("${gateway.static-signature-password}")
                                                              String staticSignPwd,
-                                         SecurityFeature.Config securityConfig) {
-            this.staticSignPwd = staticSignPwd;
+                                         SecurityFeature.Config securityConfig,
+                                         Config config) {
+            this.staticSalt = staticSignPwd.getBytes(StandardCharsets.UTF_8);
             this.securityConfig = securityConfig;
+            this.dynamicSaltVerifier = config.dynamicSaltVerifier;
         }
 
         /**
@@ -272,30 +293,12 @@ public interface RequestSignatureFeature {
          *
          * @param parameterNames 请求中包含的参数列表
          * @param parameterValues 请求中每个参数对应的参数值
-         * @return 返回用于请求签名的请求文本
+         * @return 返回用于请求签名的请求文本，该对象由当前线程复用，只能在本次校验中使用
          */
         @Override
-        public String getRequestText(Iterable<String> parameterNames, Function<String, String> parameterValues) {
-            StringBuilder sb = new StringBuilder(128);
-
-            List<String> list = new ArrayList<>(10);
-            for (String key : parameterNames) {
-                list.add(key);
-            }
-
-            // 参数排序
-            list.sort(String::compareTo);
-
-            // 拼装被签名参数列表
-            for (String key : list) {
-                if (CommonParameter.signature.equals(key)) {
-                    continue;
-                }
-                sb.append(key);
-                sb.append("=" );
-                sb.append(parameterValues.apply(key));
-            }
-            return sb.toString();
+        public RequestSignatureText getRequestText(Iterable<String> parameterNames,
+                                                   Function<String, String> parameterValues) {
+            return RequestSignatureText.of(parameterNames, parameterValues, CommonParameter.signature);
         }
 
         /**
@@ -309,7 +312,7 @@ public interface RequestSignatureFeature {
          * @throws GatewayException 在签名不匹配时抛出相应的错误码
          */
         @Override
-        public SignatureType verifySignature(String requestText,
+        public SignatureType verifySignature(RequestSignatureText requestText,
                            String signature,
                            String signatureMethod,
                            boolean allowStaticSalt,
@@ -321,9 +324,12 @@ public interface RequestSignatureFeature {
                 throw new GatewayException(ApiReturnCode.UNKNOWN_SIGNATURE_ERROR);
             }
 
+            // 所有的签名候选使用同样的编码方式（md5为hex，其他为base64），因此只需要解码一次
+            byte[] sig = decodeSignature(signature, signatureMethod);
+
             // 1. 优先使用动态盐
             if (context.caller != null &&
-                checkSignatureByDynamicSalt(requestText, signature, signatureMethod, context.caller.key)) {
+                checkSignatureByDynamicSalt(requestText, sig, signatureMethod, context.caller.key)) {
                 // 使用动态盐校验成功
                 // 这里要求：客户端如果请求中传递了token，则其应该使用动态盐进行签名
                 return SignatureType.DYNAMIC_SALT;
@@ -332,7 +338,7 @@ public interface RequestSignatureFeature {
             // TODO 删除此兼容性代码（和iOS确认后删除该兼容性代码）
             // 1.1 使用设备凭据中的动态盐
             if (context.deviceCaller != null && context.appId == 3 &&
-                checkSignatureByDynamicSalt(requestText, signature, signatureMethod, context.deviceCaller.key)) {
+                checkSignatureByDynamicSalt(requestText, sig, signatureMethod, context.deviceCaller.key)) {
                 // 兼容某些客户端app，它们由于特殊原因导致了user token和device secret不一致，所以尝试使用device token验证
                 logger.warn("invalid utk key found, currently we use dtk to pass the request signature");
 
@@ -355,7 +361,9 @@ public interface RequestSignatureFeature {
             }
 
             // 2. 对于全匿名API的请求，可以降级为静态盐
-            if (allowStaticSalt && checkSignatureByStaticSalt(requestText, signature, signatureMethod)) {
+            // 静态盐与动态盐共享请求文本的摘要，只需计算一次
+            boolean staticSaltMatched = checkSignatureByStaticSalt(requestText, sig, signatureMethod);
+            if (allowStaticSalt && staticSaltMatched) {
                 /*
                  * 使用静态盐校验成功
                  * 当切仅当客户端没有可用的token（包括dtk和utk）并且本次请求的所有API均为匿名时，才应该使用静态盐
@@ -376,7 +384,7 @@ public interface RequestSignatureFeature {
             }
 
             // 3. 分析、推测验签出错的原因
-            if (checkSignatureByStaticSalt(requestText, signature, signatureMethod)) {
+            if (staticSaltMatched) {
                 // 静态盐校验通过，但是由于非匿名API的存在，所有最终仍然是签名不匹配
                 throw new GatewayException(ApiReturnCode.DYNAMIC_SALT_SIGNATURE_ERROR);
             } else if (context.caller != null || context.token != null) {
@@ -412,59 +420,45 @@ public interface RequestSignatureFeature {
             }
         }
 
-        private boolean checkSignatureByStaticSalt(String requestText, String sig, String sm) {
-            byte[] bytes = (requestText + staticSignPwd).getBytes(StandardCharsets.UTF_8);
-
+        private byte[] decodeSignature(String signature, String sm) {
             if ("md5".equalsIgnoreCase(sm)) {
-                byte[] expect = HexStringUtil.toByteArray(sig);
-                byte[] actual = Md5Util.compute(bytes);
-                return Arrays.equals(expect, actual);
-            } else {// 默认使用sha1
-                byte[] expect;
-                try {
-                    expect = Base64Util.decode(sig);
-                } catch (IllegalArgumentException e) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("failed to base64 decode " + sig, e);
-                    }
-
-                    return false;
+                return HexStringUtil.toByteArray(signature);
+            }
+            try {
+                return Base64Util.decode(signature);
+            } catch (IllegalArgumentException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("failed to base64 decode " + signature, e);
                 }
-
-                byte[] actual = SHAUtil.computeSHA1(bytes);
-                return Arrays.equals(expect, actual);
+                return null;
             }
         }
 
-        private boolean checkSignatureByDynamicSalt(String requestText, String sig, String sm, byte[] key) {
+        private boolean checkSignatureByStaticSalt(RequestSignatureText requestText, byte[] sig, String sm) {
+            // 默认使用sha1
+            String algorithm = "md5".equalsIgnoreCase(sm) ? RequestSignatureText.MD5 : RequestSignatureText.SHA1;
+            return requestText.matchesSaltedDigest(algorithm, staticSalt, sig);
+        }
 
+        private boolean checkSignatureByDynamicSalt(RequestSignatureText requestText, byte[] sig, String sm, byte[] key) {
             if ("rsa".equalsIgnoreCase(sm)) {
                 // RSA 配合 base64 编码的签名 用于app端
-
-                byte[] bytes = requestText.getBytes(StandardCharsets.UTF_8);
-                return RsaHelper.verify(Base64Util.decode(sig), bytes, key);
+                return dynamicSaltVerifier.verifyRsa(sig, requestText, key);
             }
 
             if ("md5".equalsIgnoreCase(sm)) {
                 // MD5 配合 hex 编码的签名 用于web端
-
-                String text = requestText + HexStringUtil.toHexString(key);
-                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
-                return Arrays.equals(HexStringUtil.toByteArray(sig), Md5Util.compute(bytes));
+                return requestText.matchesSaltedDigest(RequestSignatureText.MD5, dynamicSaltVerifier.hexSalt(key), sig);
             }
 
             if ("sha1".equalsIgnoreCase(sm)) {
                 // SHA1 配合 base64 编码的签名 用于app端
-
-                String text = requestText + HexStringUtil.toHexString(key);
-                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
-
-                return Arrays.equals(Base64Util.decode(sig), SHAUtil.computeSHA1(bytes));
+                return requestText.matchesSaltedDigest(RequestSignatureText.SHA1, dynamicSaltVerifier.hexSalt(key), sig);
             }
 
             // ECC 配合 base64 编码的签名 用于app端
             // 默认ECC
-            return EccHelper.verify(Base64Util.decode(sig), requestText.getBytes(StandardCharsets.UTF_8), key);
+            return dynamicSaltVerifier.verifyEcc(sig, requestText, key);
         }
     }
 }
@@ -2,37 +2,186 @@ package com.estatetrader.apigw.core.features;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.serializer.SerializeFilter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.alibaba.fastjson.serializer.ValueFilter;
 import com.estatetrader.annotation.*;
+import com.estatetrader.apigw.core.contracts.MetricsSource;
 import com.estatetrader.apigw.core.contracts.ServiceInstance;
 import com.estatetrader.apigw.core.extensions.Extension;
 import com.estatetrader.apigw.core.models.*;
 import com.estatetrader.apigw.core.models.inject.DatumConsumerSpec;
 import com.estatetrader.apigw.core.models.inject.DatumProvidedValue;
+import com.estatetrader.apigw.core.models.inject.DatumProviderBatcher;
+import com.estatetrader.apigw.core.models.inject.DatumProviderCache;
 import com.estatetrader.apigw.core.models.inject.DatumProviderSpec;
 import com.estatetrader.apigw.core.models.inject.DatumWrapper;
 import com.estatetrader.apigw.core.phases.executing.access.CallResultReceived;
+import com.estatetrader.apigw.core.phases.executing.access.CallStarted;
 import com.estatetrader.apigw.core.phases.executing.serialize.SerializingConfigurer;
 import com.estatetrader.apigw.core.phases.parsing.ApiRegister;
 import com.estatetrader.apigw.core.phases.parsing.ParsingClass;
 import com.estatetrader.core.GatewayException;
+import com.estatetrader.core.ParameterConverter;
+import com.estatetrader.define.ApiCallCallback;
 import com.estatetrader.define.IllegalApiDefinitionException;
 import com.estatetrader.define.ResponseFilter;
+import com.estatetrader.define.SecurityType;
 import com.estatetrader.define.ServiceInjectable;
 import com.estatetrader.entity.ApiReturnCode;
 import com.estatetrader.gateway.StructTypeResolver;
 import com.estatetrader.util.Lambda;
+import com.estatetrader.algorithm.workflow.WorkflowExecution;
 import com.estatetrader.algorithm.workflow.WorkflowPipeline;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
 
+import java.io.Closeable;
+import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * 返回值拦截器，主要用于API注入
  */
 public interface ResponseFilterFeature {
 
+    @Component
+    class Config implements MetricsSource, Closeable {
+        /**
+         * 合并provider调用的批处理器，为null表示禁用了跨请求合并
+         */
+        private final DatumProviderBatcher batcher;
+        /**
+         * follower等待合并调用返回值的最长时间（毫秒），不大于0表示使用provider自身的调用截止时间
+         */
+        private final long batchMaxWait;
+        /**
+         * 整个请求的处理时限（毫秒），provider的超时时间未知时follower最多等待这么久
+         */
+        private final long requestProcessingTimeout;
+
+        private final boolean cacheEnabled;
+        private final int cacheDefaultMaxSize;
+        private final int cacheShards;
+
+        /**
+         * provider名称 -> provider返回值缓存
+         */
+        private final ConcurrentHashMap<String, ProviderCache> caches = new ConcurrentHashMap<>();
+
+        public Config(@Value("${gateway.inject-batching.enabled:true}") boolean batchingEnabled,
+                      @Value("${gateway.inject-batching.max-wait:0}") long batchMaxWait,
+                      @Value("${com.estatetrader.apigw.requestProcessingTimeout:60000}") long requestProcessingTimeout,
+                      @Value("${gateway.inject-cache.enabled:true}") boolean cacheEnabled,
+                      @Value("${gateway.inject-cache.default-max-size:10000}") int cacheDefaultMaxSize,
+                      @Value("${gateway.inject-cache.shards:8}") int cacheShards) {
+            this.batcher = batchingEnabled ? new DatumProviderBatcher(ForkJoinPool.commonPool()) : null;
+            this.batchMaxWait = batchMaxWait;
+            this.requestProcessingTimeout = requestProcessingTimeout;
+            this.cacheEnabled = cacheEnabled;
+            this.cacheDefaultMaxSize = cacheDefaultMaxSize;
+            this.cacheShards = cacheShards;
+        }
+
+        /**
+         * follower等待合并调用返回值的最长时间
+         * @param method provider
+         * @return 未配置时为leader发起的provider调用的截止时间，超过该时间后leader一定已经分发了结果；
+         * provider的超时时间未知时（由dubbo使用服务提供者发布的超时时间）为整个请求的处理时限
+         */
+        long batchMaxWait(ApiMethodInfo method) {
+            if (batchMaxWait > 0) {
+                return batchMaxWait;
+            }
+            int deadline = CallStarted.Execution.callDeadline(method);
+            return deadline > 0 ? deadline : requestProcessingTimeout;
+        }
+
+        /**
+         * 获取provider的返回值缓存
+         * @param method provider
+         * @return 返回值缓存，为null表示该provider不使用缓存
+         */
+        DatumProviderCache cacheOf(ApiMethodInfo method) {
+            if (!cacheEnabled || method.injectCacheTtl <= 0 || method.injectKeysParamIndex < 0) {
+                return null;
+            }
+            String providerName = method.responseInjectProviderName;
+            ProviderCache cache = caches.get(providerName);
+            if (cache == null || cache.method != method) {
+                // API定义被重新加载后原有的缓存随之失效
+                cache = caches.compute(providerName, (name, old) -> old != null && old.method == method ? old
+                    : new ProviderCache(method, new DatumProviderCache(method.datumProviderSpec.keysParamIndexer(),
+                    ParameterConverter.getConverter(method.datumProviderSpec.keysParamElementType()),
+                    method.injectCacheMaxSize > 0 ? method.injectCacheMaxSize : cacheDefaultMaxSize,
+                    cacheShards, method.injectCacheTtl)));
+            }
+            return cache.cache;
+        }
+
+        /**
+         * 删除provider返回值缓存
+         * @param providerName provider名称，为null表示所有的provider
+         * @param keys 需要删除的datum key（文本形式），为空表示删除所有的key
+         * @return provider名称 -> 删除的缓存项数量
+         */
+        public Map<String, Integer> invalidateCache(String providerName, Collection<String> keys) {
+            Map<String, Integer> result = new TreeMap<>();
+            caches.forEach((name, cache) -> {
+                if (providerName != null && !providerName.equals(name)) {
+                    return;
+                }
+                int count = 0;
+                if (keys == null || keys.isEmpty()) {
+                    count = cache.cache.invalidateAll();
+                } else {
+                    for (String key : keys) {
+                        count += cache.cache.invalidate(key);
+                    }
+                }
+                result.put(name, count);
+            });
+            return result;
+        }
+
+        @Override
+        public String metricsName() {
+            return "response-inject";
+        }
+
+        @Override
+        public Map<String, Object> metrics() {
+            Map<String, Object> cacheMetrics = new TreeMap<>();
+            caches.forEach((name, cache) -> cacheMetrics.put(name, cache.cache.metrics()));
+
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("batching", batcher != null ? batcher.metrics() : Collections.singletonMap("enabled", false));
+            metrics.put("cache", cacheEnabled ? cacheMetrics : Collections.singletonMap("enabled", false));
+            return metrics;
+        }
+
+        @Override
+        public void close() {
+            if (batcher != null) {
+                batcher.close();
+            }
+        }
+
+        private static class ProviderCache {
+            final ApiMethodInfo method;
+            final DatumProviderCache cache;
+
+            ProviderCache(ApiMethodInfo method, DatumProviderCache cache) {
+                this.method = method;
+                this.cache = cache;
+            }
+        }
+    }
+
     @Extension
     class ParseMethodHandlerImpl implements ParsingClass.ParseMethodHandler {
 
@@ -77,6 +226,14 @@ public interface ResponseFilterFeature {
                     throw new IllegalApiDefinitionException("在指定@ResponseInjectProvider(" +
                         info.responseInjectProviderName + ")时须同时使用@DefineDatum将其返回值声明为Datum定义");
                 }
+                if (responseInjectProvider.batchWindow() > 0) {
+                    info.injectBatchWindow = responseInjectProvider.batchWindow();
+                    info.injectBatchMaxKeys = Math.max(0, responseInjectProvider.batchMaxKeys());
+                }
+                if (responseInjectProvider.cacheTtl() > 0) {
+                    info.injectCacheTtl = responseInjectProvider.cacheTtl();
+                    info.injectCacheMaxSize = Math.max(0, responseInjectProvider.cacheMaxSize());
+                }
             }
         }
     }
@@ -92,7 +249,42 @@ public interface ResponseFilterFeature {
                             ". It is already defined in method " + schema.responseInjectProviderMap.get(providerName).methodName);
                 }
                 schema.responseInjectProviderMap.put(providerName, info);
+                if (info.injectBatchWindow > 0 || info.injectCacheTtl > 0) {
+                    info.injectKeysParamIndex = keysParamIndex(info);
+                }
+            }
+        }
+
+        private static int keysParamIndex(ApiMethodInfo info) {
+            String providerName = info.responseInjectProviderName;
+            String paramName = info.datumProviderSpec.keysParamName();
+            if (paramName == null) {
+                throw new IllegalApiDefinitionException("inject-provider " + providerName + "启用了合并调用或缓存，" +
+                    "须有且仅有一个直接声明为复数形式的datum-key参数，且该key须在datum中定义");
             }
+            if (info.injectCacheTtl > 0 && info.datumProviderSpec.keysParamIndexer() == null) {
+                throw new IllegalApiDefinitionException("inject-provider " + providerName + "启用了缓存，" +
+                    "但其datum-key参数" + paramName + "的类型不支持缓存");
+            }
+            if (SecurityType.requireToken(info.securityLevel.getCode())) {
+                throw new IllegalApiDefinitionException("inject-provider " + providerName + "启用了合并调用或缓存，" +
+                    "其安全级别不得与用户相关");
+            }
+            int index = -1;
+            for (int i = 0; i < info.parameterInfos.length; i++) {
+                ApiParameterInfo p = info.parameterInfos[i];
+                if (p.isAutowired) {
+                    throw new IllegalApiDefinitionException("inject-provider " + providerName + "启用了合并调用或缓存，" +
+                        "不得声明autowired参数" + p.name);
+                }
+                if (paramName.equals(p.nativeName)) {
+                    index = i;
+                }
+            }
+            if (index < 0) {
+                throw new IllegalStateException("bug, could not find parameter " + paramName + " of " + info.methodName);
+            }
+            return index;
         }
     }
 
@@ -126,6 +318,13 @@ public interface ResponseFilterFeature {
 
     @Extension(after = ServerInjectionFeature.class)
     class AfterApiCallResultReceivedImpl implements CallResultReceived.AfterApiCallResultReceived {
+
+        private final Config config;
+
+        public AfterApiCallResultReceivedImpl(Config config) {
+            this.config = config;
+        }
+
         @Override
         public void receive(ApiMethodCall call, ApiContext context, WorkflowPipeline pipeline) throws Exception {
             Object result = call.result;
@@ -163,7 +362,11 @@ public interface ResponseFilterFeature {
                         }
                     }
 
-                    new ApiCallExecutorImpl(pipeline, context.executeApiCall).start(method, args, dependentResult -> {
+                    if (startCachedCall(call, context, pipeline, inject, method, args)) {
+                        continue;
+                    }
+
+                    startProviderCall(context, pipeline, method, args, dependentResult -> {
                         synchronized (result) {
                             inject.inject(call.method, result, method, dependentResult);
                         }
@@ -176,6 +379,148 @@ public interface ResponseFilterFeature {
             }
         }
 
+        /**
+         * 尝试使用provider的返回值缓存，仅未命中缓存的key才会调用provider
+         * @return 是否使用了缓存，返回false表示应直接调用provider
+         */
+        private boolean startCachedCall(ApiMethodCall call,
+                                        ApiContext context,
+                                        WorkflowPipeline pipeline,
+                                        InjectFromApi inject,
+                                        ApiMethodInfo method,
+                                        Object[] args) throws GatewayException {
+            DatumProviderCache cache = config.cacheOf(method);
+            if (cache == null) {
+                return false;
+            }
+            int index = method.injectKeysParamIndex;
+            List<Object> keys = providerKeys(args[index]);
+            if (keys == null) {
+                return false;
+            }
+
+            String[] parameters = ApiCallExecutorImpl.toParameters(method, args);
+            parameters[index] = null;
+            DatumProviderCache.Lookup lookup = cache.lookup(parameters, keys);
+
+            Object result = call.result;
+            List<Object> cachedDatums = lookup.getCachedDatums();
+            if (lookup.getMissingKeys().isEmpty()) {
+                synchronized (result) {
+                    inject.injectDatums(call.method, result, method, cachedDatums);
+                }
+                return true;
+            }
+
+            Object[] missingArgs = args.clone();
+            missingArgs[index] = lookup.getMissingKeys();
+            startProviderCall(context, pipeline, method, missingArgs, dependentResult -> {
+                List<Object> fetched = cache.store(lookup, dependentResult == null ? Stream.empty()
+                    : method.datumProviderSpec.provideValue(dependentResult).stream());
+                List<Object> datums;
+                if (cachedDatums.isEmpty()) {
+                    datums = fetched;
+                } else {
+                    datums = new ArrayList<>(cachedDatums.size() + fetched.size());
+                    datums.addAll(cachedDatums);
+                    datums.addAll(fetched);
+                }
+                synchronized (result) {
+                    inject.injectDatums(call.method, result, method, datums);
+                }
+            });
+            return true;
+        }
+
+        /**
+         * 调用provider，在可能的情况下与其他请求中的相同provider调用合并
+         */
+        private void startProviderCall(ApiContext context,
+                                       WorkflowPipeline pipeline,
+                                       ApiMethodInfo method,
+                                       Object[] args,
+                                       ApiCallCallback.Simple<Object> callback) {
+            if (!startBatchedCall(context, pipeline, method, args, callback)) {
+                new ApiCallExecutorImpl(pipeline, context.executeApiCall).start(method, args, callback);
+            }
+        }
+
+        /**
+         * 尝试将本次provider调用与其他请求中的相同provider调用合并
+         * @return 是否已经加入合并调用，返回false表示应单独发起调用
+         */
+        private boolean startBatchedCall(ApiContext context,
+                                         WorkflowPipeline pipeline,
+                                         ApiMethodInfo method,
+                                         Object[] args,
+                                         ApiCallCallback.Simple<Object> callback) {
+            int index = method.injectKeysParamIndex;
+            if (index < 0 || method.injectBatchWindow <= 0 || config.batcher == null) {
+                return false;
+            }
+            List<Object> keys = providerKeys(args[index]);
+            if (keys == null) {
+                return false;
+            }
+
+            String[] parameters = ApiCallExecutorImpl.toParameters(method, args);
+            parameters[index] = null;
+            DatumProviderBatcher.Ticket ticket = config.batcher.join(new BatchGroup(method, parameters), keys,
+                method.injectBatchWindow, method.injectBatchMaxKeys, config.batchMaxWait(method));
+            if (ticket == null) {
+                return false;
+            }
+
+            if (ticket.isLeader()) {
+                WorkflowExecution.Sync publish = new WorkflowExecution.Sync() {
+                    @Override
+                    public void run(WorkflowPipeline p) throws Throwable {
+                        ApiMethodCall c = (ApiMethodCall) p.getParam();
+                        Throwable failure = p.hasPreviousFailed();
+                        if (failure == null && c.getReturnCode() != 0) {
+                            failure = new GatewayException(ApiReturnCode.DEPENDENT_API_FAILURE);
+                        }
+                        ticket.publish(failure == null ? c.result : null, failure);
+                        if (failure != null) {
+                            throw failure;
+                        }
+                        callback.onCompleted(c.result);
+                    }
+
+                    @Override
+                    public boolean acceptPreviousFailure() {
+                        // 即使合并调用失败也要通知其他等待的请求
+                        return true;
+                    }
+                };
+                // 等待窗口结束后使用所有请求的key的并集发起调用
+                pipeline.stage(p -> ticket.sealed(), (WorkflowExecution.Sync) p -> {
+                    Object[] batchArgs = args.clone();
+                    batchArgs[index] = p.previousValue();
+                    new ApiCallExecutorImpl(p, context.executeApiCall).startThen(new ApiMethodCall(method), batchArgs, publish);
+                });
+            } else {
+                pipeline.stage(p -> ticket.result(), (WorkflowExecution.Sync) p -> callback.onCompleted(p.previousValue()));
+            }
+            return true;
+        }
+
+        private static List<Object> providerKeys(Object value) {
+            List<Object> keys;
+            if (value instanceof Collection) {
+                keys = new ArrayList<>((Collection<?>) value);
+            } else if (value != null && value.getClass().isArray()) {
+                int length = Array.getLength(value);
+                keys = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) {
+                    keys.add(Array.get(value, i));
+                }
+            } else {
+                return null;
+            }
+            return keys.isEmpty() ? null : keys;
+        }
+
         private Object getExportedParameter(ApiMethodCall call, ServiceInjectable injectable) {
             if (call.exportParams == null) {
                 return null;
@@ -186,6 +531,34 @@ public interface ResponseFilterFeature {
             }
             return JSON.parseObject(text, injectable.getDataType()).getValue();
         }
+
+        /**
+         * 合并调用的分组依据：同一个provider，且除复数datum-key参数外的其余参数均相同
+         */
+        private static final class BatchGroup {
+            private final ApiMethodInfo method;
+            private final String[] parameters;
+            private final int hash;
+
+            BatchGroup(ApiMethodInfo method, String[] parameters) {
+                this.method = method;
+                this.parameters = parameters;
+                this.hash = System.identityHashCode(method) * 31 + Arrays.hashCode(parameters);
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (!(o instanceof BatchGroup)) return false;
+                BatchGroup that = (BatchGroup) o;
+                return method == that.method && Arrays.equals(parameters, that.parameters);
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+        }
     }
 
     @Extension
@@ -211,6 +584,16 @@ public interface ResponseFilterFeature {
             }
         }
 
+        @Override
+        public List<SerializeFilter> precomputedFilters(ApiMethodInfo method) {
+            return method == null || method.datumConsumerSpec == null ? Collections.emptyList() : datumWrapperFilters;
+        }
+
+        @Override
+        public List<SerializerFeature> precomputedFeatures(ApiMethodInfo method) {
+            return Collections.emptyList();
+        }
+
         /**
          * 去除DatumWrapper，使其内部包装的实际值直接暴露给客户端
          */
@@ -281,6 +664,15 @@ public interface ResponseFilterFeature {
          */
         void inject(ApiMethodInfo consumer, Object response, ApiMethodInfo provider, Object dependentResponse) throws GatewayException;
 
+        /**
+         * 使用已经拆分为datum列表的provider返回值（例如部分或全部来自缓存）执行注入
+         * @param consumer 返回值注入的消费方
+         * @param response 当前要拦截的接口的返回值
+         * @param provider  返回值注入的提供方
+         * @param datums provider提供的datum
+         */
+        void injectDatums(ApiMethodInfo consumer, Object response, ApiMethodInfo provider, List<Object> datums) throws GatewayException;
+
         /**
          * 无需实现该函数，网关会调用 void filter(Map<String, Object> options, Object response, Object dependentResponse)
          * @param response      被拦截的接口的返回值
@@ -339,5 +731,23 @@ public interface ResponseFilterFeature {
             DatumProvidedValue providedValue = provider.datumProviderSpec.provideValue(dependentResponse);
             consumer.datumConsumerSpec.inject(datumType, response, providedValue);
         }
+
+        /**
+         * 使用已经拆分为datum列表的provider返回值（例如部分或全部来自缓存）执行注入
+         *
+         * @param consumer 返回值注入的消费方
+         * @param response 当前要拦截的接口的返回值
+         * @param provider 返回值注入的提供方
+         * @param datums   provider提供的datum
+         */
+        @Override
+        public void injectDatums(ApiMethodInfo consumer, Object response, ApiMethodInfo provider, List<Object> datums) {
+            if (response == null || datums.isEmpty()) {
+                return;
+            }
+            String datumType = provider.datumProviderSpec.getDatumType();
+            DatumProvidedValue providedValue = provider.datumProviderSpec.provideDatums(datums);
+            consumer.datumConsumerSpec.inject(datumType, response, providedValue);
+        }
     }
 }
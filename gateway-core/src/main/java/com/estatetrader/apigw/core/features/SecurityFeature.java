@@ -3,6 +3,7 @@ package com.estatetrader.apigw.core.features;
 import com.alibaba.fastjson.JSON;
 import com.estatetrader.apigw.core.contracts.GatewayRequest;
 import com.estatetrader.apigw.core.contracts.GatewayResponse;
+import com.estatetrader.apigw.core.contracts.MetricsSource;
 import com.estatetrader.apigw.core.contracts.ServiceInstance;
 import com.estatetrader.apigw.core.extensions.Extension;
 import com.estatetrader.apigw.core.extensions.Extensions;
@@ -22,6 +23,7 @@ import com.estatetrader.define.SecurityType;
 import com.estatetrader.entity.ApiReturnCode;
 import com.estatetrader.entity.CallerInfo;
 import com.estatetrader.util.AESTokenHelper;
+import com.estatetrader.util.IpAddress;
 import com.estatetrader.util.Lambda;
 import com.estatetrader.util.RawString;
 import com.estatetrader.algorithm.workflow.WorkflowExecution;
@@ -31,10 +33,14 @@ import com.estatetrader.apigw.core.phases.executing.access.CallStarted;
 import com.estatetrader.apigw.core.phases.executing.request.RequestFinished;
 import com.estatetrader.apigw.core.support.ApiMDCSupport;
 import com.estatetrader.apigw.core.support.CookieSupport;
+import com.estatetrader.apigw.core.utils.CidrTrie;
+import com.estatetrader.apigw.core.utils.VerifiedTokenCache;
+import com.estatetrader.rule.expire.ExpiredUserTokenListener;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -52,21 +58,64 @@ import java.util.*;
 public interface SecurityFeature {
 
     @Component
-    class Config {
+    class Config implements MetricsSource {
         @SuppressWarnings("FieldMayBeFinal")
         @Value("${com.estatetrader.internal.ip.check.enabled:true}")
         private boolean internalIPCheckEnabled = true;
 
         private final AESTokenHelper aesTokenHelper;
 
-        public Config(@Value("${com.estatetrader.apigw.tokenAes}") String apiTokenAes) {
+        /**
+         * 已验证token的缓存，容量配置为0时不启用
+         */
+        private final VerifiedTokenCache tokenCache;
+
+        public Config(@Value("${com.estatetrader.apigw.tokenAes}") String apiTokenAes,
+                      @Value("${gateway.token-cache.capacity:100000}") int tokenCacheCapacity,
+                      @Value("${gateway.token-cache.shards:16}") int tokenCacheShards,
+                      @Value("${gateway.token-cache.max-ttl:600000}") long tokenCacheMaxTtl,
+                      @Autowired(required = false) ExpiredUserTokenListener expiredUserTokenListener) {
             this.aesTokenHelper = new AESTokenHelper(apiTokenAes);
+            this.tokenCache = tokenCacheCapacity > 0 ?
+                new VerifiedTokenCache(tokenCacheCapacity, tokenCacheShards, tokenCacheMaxTtl) : null;
+
+            if (tokenCache != null && expiredUserTokenListener != null) {
+                // 强制过期规则变化时丢弃相关用户的缓存，使其token在下次请求时被重新解析
+                expiredUserTokenListener.addRuleChangeCallback(userId -> {
+                    if (userId == ExpiredUserTokenListener.ALL_USERS) {
+                        tokenCache.invalidateAll();
+                    } else {
+                        tokenCache.invalidateUser(userId);
+                    }
+                });
+            }
         }
 
         AESTokenHelper getAesTokenHelper() {
             return aesTokenHelper;
         }
 
+        /**
+         * 解析token得到调用者信息，优先使用已验证token的缓存
+         * @param token 原始token
+         * @return 调用者信息，每次调用都返回一个新的对象，token非法时返回null
+         */
+        CallerInfo parseToken(String token) {
+            return tokenCache != null ?
+                tokenCache.get(token, aesTokenHelper::parseToken) :
+                aesTokenHelper.parseToken(token);
+        }
+
+        @Override
+        public String metricsName() {
+            return "verified-token-cache";
+        }
+
+        @Override
+        public Map<String, Object> metrics() {
+            return tokenCache != null ? tokenCache.metrics() : Collections.emptyMap();
+        }
+
         private volatile Map<String, String> originWhiteList = Collections.emptyMap();
 
         @Value("${com.estatetrader.originWhiteList:}")
@@ -115,71 +164,45 @@ public interface SecurityFeature {
         @Value("${com.estatetrader.apigw.trustedNetworkToken:}")
         private String trustedNetworkToken;
 
-        private Set<String> internalIpList = new HashSet<>();
-        private Set<String> internalNetSegmentList = new HashSet<>();
-        private Set<String> companyIPList = new HashSet<>();
+        private static final Logger logger = LoggerFactory.getLogger(SecurityFeature.class);
 
-        boolean isInternalIp(String ip) {
-            if (ip == null || ip.isEmpty()) {
-                return false;
-            }
+        private String internalIpText = "";
+        private String companyIpText = "";
 
-            if (internalIpList.contains(ip)) {
-                return true;
-            } else if (companyIPList.contains(ip)) {
-                return true;
-            } else if (!internalNetSegmentList.isEmpty()){
-                for (String seg : internalNetSegmentList) {
-                    if (isInSubNet(ip, seg)) {
-                        return true;
-                    }
-                }
-            }
+        /**
+         * 由内网IP列表和公司IP列表构建的网段前缀树，配置变化时整体替换
+         */
+        private volatile CidrTrie trustedNetworks = CidrTrie.EMPTY;
 
-            return false;
+        boolean isInternalIp(IpAddress address) {
+            return trustedNetworks.contains(address);
         }
 
+        /**
+         * 内网IP列表，以逗号分隔，支持单个IP以及网段（CIDR），IPv4和IPv6均可
+         */
         @Value("${com.estatetrader.apigw.internalIpList:}")
         public void setInternalIpList(String internalIpText) {
-            Set<String> internalIps = new HashSet<>();
-            Set<String> internalNetSegments = new HashSet<>();
-            String[] list = StringUtils.split(internalIpText, ',');
-            for (String item : list) {
-                if (item.contains("/")) {
-                    internalNetSegments.add(item);
-                } else {
-                    internalIps.add(item);
-                }
-            }
-
-            this.internalIpList = internalIps;
-            this.internalNetSegmentList = internalNetSegments;
+            this.internalIpText = internalIpText;
+            rebuildTrustedNetworks();
         }
 
         @Value("${com.estatetrader.apigw.companyIPList:}")
         public void setCompanyIPList(String companyIPList) {
-            this.companyIPList = new HashSet<>(Arrays.asList(StringUtils.split(companyIPList, ',')));
+            this.companyIpText = companyIPList;
+            rebuildTrustedNetworks();
         }
 
-        private static boolean isInSubNet(String network, String seg) {
-            if (seg.indexOf('/') < 0) { // ignore non-subnet address
-                return false;
+        private synchronized void rebuildTrustedNetworks() {
+            CidrTrie.Builder builder = CidrTrie.builder();
+            for (String text : new String[]{internalIpText, companyIpText}) {
+                for (String item : StringUtils.split(text, ',')) {
+                    if (!item.trim().isEmpty() && !builder.add(item)) {
+                        logger.warn("ignored invalid internal IP or subnet {}", item);
+                    }
+                }
             }
-            String[] networkips = network.split("\\.");
-            int ipAddr = (Integer.parseInt(networkips[0]) << 24)
-                | (Integer.parseInt(networkips[1]) << 16)
-                | (Integer.parseInt(networkips[2]) << 8)
-                | Integer.parseInt(networkips[3]);
-            int type = Integer.parseInt(seg.replaceAll(".*/", ""));
-            int mask1 = 0xFFFFFFFF << (32 - type);
-            String maskIp = seg.replaceAll("/.*", "");
-            String[] maskIps = maskIp.split("\\.");
-            int cidrIpAddr = (Integer.parseInt(maskIps[0]) << 24)
-                | (Integer.parseInt(maskIps[1]) << 16)
-                | (Integer.parseInt(maskIps[2]) << 8)
-                | Integer.parseInt(maskIps[3]);
-
-            return (ipAddr & mask1) == (cidrIpAddr & mask1);
+            this.trustedNetworks = builder.build();
         }
     }
 
@@ -217,7 +240,7 @@ public interface SecurityFeature {
             context.fromInternalEnvironment = hasInternalEnvironmentToken(context.getRequest());
 
             context.fromTrustedNetwork = hasTrustedNetworkToken(context.getRequest()) ||
-                config.isInternalIp(context.clientIP);
+                config.isInternalIp(context.clientAddress);
         }
 
         private boolean hasInternalEnvironmentToken(GatewayRequest request) {
@@ -380,7 +403,7 @@ public interface SecurityFeature {
         private CallerInfo parseCallerInfo(String token) {
             CallerInfo caller = null;
             if (token != null && !token.isEmpty()) {
-                caller = config.aesTokenHelper.parseToken(token);
+                caller = config.parseToken(token);
             }
             return caller;
         }
@@ -0,0 +1,306 @@
+package com.estatetrader.apigw.core.features;
+
+import com.estatetrader.algorithm.workflow.ExecutionResult;
+import com.estatetrader.algorithm.workflow.WorkflowPipeline;
+import com.estatetrader.annotation.ApiDubboConsumer;
+import com.estatetrader.annotation.ApiGroup;
+import com.estatetrader.apigw.core.contracts.MetricsSource;
+import com.estatetrader.apigw.core.contracts.ServiceInstance;
+import com.estatetrader.apigw.core.extensions.Extension;
+import com.estatetrader.apigw.core.extensions.Next;
+import com.estatetrader.apigw.core.models.ApiContext;
+import com.estatetrader.apigw.core.models.ApiMethodCall;
+import com.estatetrader.apigw.core.models.ApiMethodInfo;
+import com.estatetrader.apigw.core.phases.executing.access.CallStarted;
+import com.estatetrader.apigw.core.phases.parsing.ParsingClass;
+import com.estatetrader.apigw.core.utils.Bulkhead;
+import com.estatetrader.core.GatewayException;
+import com.estatetrader.entity.ApiReturnCode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * dubbo服务之间的隔离
+ *
+ * 每个ApiGroup所在的dubbo服务可以通过@ApiDubboConsumer或者网关配置（gateway.dubbo.service-configs）指定独立的消费者配置，
+ * 并通过隔离舱限制网关同时向该服务发起的调用数量，超过上限的调用被直接拒绝（DUBBO_SERVICE_OVERLOADED），
+ * 避免一个响应缓慢的服务耗尽网关的资源从而影响其他服务的API
+ */
+public interface ServiceIsolationFeature {
+
+    /**
+     * 一个dubbo服务的独立配置，未指定的项使用网关的全局配置
+     */
+    class ConsumerSettings {
+        /**
+         * 消费者线程池的线程数，0表示未指定
+         */
+        public int threads;
+        /**
+         * 消费者线程池的类型，null表示未指定
+         */
+        public String threadPool;
+        /**
+         * 消费者线程池的排队数量，-1表示未指定
+         */
+        public int queues = -1;
+        /**
+         * 调用超时时间（毫秒），0表示未指定
+         */
+        public int timeout;
+        /**
+         * 与每个服务提供者建立的独占连接数，0表示使用共享连接
+         */
+        public int connections;
+        /**
+         * 负载均衡策略，null表示未指定
+         */
+        public String loadBalance;
+        /**
+         * 同时进行的调用数量上限，0表示不限制
+         */
+        public int maxConcurrent;
+
+        /**
+         * @return 是否指定了消费者线程池相关的配置
+         */
+        public boolean hasThreadPoolSettings() {
+            return threads > 0 || threadPool != null || queues >= 0;
+        }
+
+        static ConsumerSettings of(ApiDubboConsumer annotation) {
+            ConsumerSettings settings = new ConsumerSettings();
+            if (annotation != null) {
+                settings.threads = annotation.threads();
+                settings.threadPool = annotation.threadPool().isEmpty() ? null : annotation.threadPool();
+                settings.queues = annotation.queues();
+                settings.timeout = annotation.timeout();
+                settings.connections = annotation.connections();
+                settings.loadBalance = annotation.loadBalance().isEmpty() ? null : annotation.loadBalance();
+                settings.maxConcurrent = annotation.maxConcurrent();
+            }
+            return settings;
+        }
+
+        /**
+         * 使用other中指定的项覆盖当前配置
+         */
+        void overrideWith(ConsumerSettings other) {
+            if (other.threads > 0) threads = other.threads;
+            if (other.threadPool != null) threadPool = other.threadPool;
+            if (other.queues >= 0) queues = other.queues;
+            if (other.timeout > 0) timeout = other.timeout;
+            if (other.connections > 0) connections = other.connections;
+            if (other.loadBalance != null) loadBalance = other.loadBalance;
+            if (other.maxConcurrent > 0) maxConcurrent = other.maxConcurrent;
+        }
+
+        /**
+         * 解析网关配置中的一个服务的配置，格式：threads=20,queues=100,timeout=3000,max-concurrent=50
+         */
+        public static ConsumerSettings parse(String text) {
+            ConsumerSettings settings = new ConsumerSettings();
+            for (String item : text.split(",")) {
+                item = item.trim();
+                if (item.isEmpty()) {
+                    continue;
+                }
+                int index = item.indexOf('=');
+                if (index <= 0) {
+                    throw new IllegalArgumentException("invalid dubbo service config item " + item);
+                }
+                String key = item.substring(0, index).trim();
+                String value = item.substring(index + 1).trim();
+                switch (key) {
+                    case "threads":
+                        settings.threads = Integer.parseInt(value);
+                        break;
+                    case "threadpool":
+                        settings.threadPool = value;
+                        break;
+                    case "queues":
+                        settings.queues = Integer.parseInt(value);
+                        break;
+                    case "timeout":
+                        settings.timeout = Integer.parseInt(value);
+                        break;
+                    case "connections":
+                        settings.connections = Integer.parseInt(value);
+                        break;
+                    case "loadbalance":
+                        settings.loadBalance = value;
+                        break;
+                    case "max-concurrent":
+                        settings.maxConcurrent = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown dubbo service config item " + key);
+                }
+            }
+            return settings;
+        }
+    }
+
+    @Component
+    class Config implements MetricsSource {
+
+        /**
+         * ApiGroup名称 -> 网关配置中指定的服务配置
+         */
+        private final Map<String, ConsumerSettings> serviceConfigs = new HashMap<>();
+        private final int defaultMaxConcurrent;
+
+        /**
+         * ApiGroup名称 -> 隔离舱，重新加载API时复用，使新旧两代API的调用受同一个上限约束
+         */
+        private final ConcurrentHashMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+        public Config(@Value("${gateway.dubbo.service-configs:}") String serviceConfigs,
+                      @Value("${gateway.dubbo.bulkhead.max-concurrent:0}") int defaultMaxConcurrent) {
+            // 格式：group1:threads=20,timeout=3000;group2:max-concurrent=50
+            for (String item : serviceConfigs.split(";")) {
+                item = item.trim();
+                if (item.isEmpty()) {
+                    continue;
+                }
+                int index = item.indexOf(':');
+                if (index <= 0) {
+                    throw new IllegalArgumentException("invalid dubbo service config " + item);
+                }
+                this.serviceConfigs.put(item.substring(0, index).trim(), ConsumerSettings.parse(item.substring(index + 1)));
+            }
+            this.defaultMaxConcurrent = defaultMaxConcurrent;
+        }
+
+        /**
+         * 获取dubbo服务的独立配置，网关配置中的项优先于@ApiDubboConsumer注解
+         *
+         * @param clazz 标记了@ApiGroup的dubbo服务接口
+         * @return 服务的配置，未指定的项为默认值
+         */
+        public ConsumerSettings consumerSettings(Class<?> clazz) {
+            ConsumerSettings settings = ConsumerSettings.of(clazz.getAnnotation(ApiDubboConsumer.class));
+            ApiGroup group = clazz.getAnnotation(ApiGroup.class);
+            ConsumerSettings configured = group != null ? serviceConfigs.get(group.name()) : null;
+            if (configured != null) {
+                settings.overrideWith(configured);
+            }
+            if (settings.maxConcurrent <= 0) {
+                settings.maxConcurrent = defaultMaxConcurrent;
+            }
+            return settings;
+        }
+
+        /**
+         * 获取服务的隔离舱
+         *
+         * @param groupName ApiGroup名称
+         * @param maxConcurrent 同时进行的调用数量上限
+         * @return 隔离舱，上限不大于0时返回null表示不限制
+         */
+        public Bulkhead bulkhead(String groupName, int maxConcurrent) {
+            if (maxConcurrent <= 0) {
+                bulkheads.remove(groupName);
+                return null;
+            }
+            Bulkhead bulkhead = bulkheads.computeIfAbsent(groupName, name -> new Bulkhead(name, maxConcurrent));
+            bulkhead.setMaxConcurrent(maxConcurrent);
+            return bulkhead;
+        }
+
+        @Override
+        public String metricsName() {
+            return "dubbo-bulkhead";
+        }
+
+        @Override
+        public Map<String, Object> metrics() {
+            Map<String, Object> metrics = new TreeMap<>();
+            bulkheads.forEach((name, bulkhead) -> metrics.put(name, bulkhead.metrics()));
+            return metrics;
+        }
+    }
+
+    @Extension
+    class ParseMethodHandlerImpl implements ParsingClass.ParseMethodHandler {
+
+        private final Config config;
+
+        public ParseMethodHandlerImpl(Config config) {
+            this.config = config;
+        }
+
+        @Override
+        public void parseMethodBrief(Class<?> clazz, Method method, ApiMethodInfo apiInfo, ServiceInstance serviceInstance) {
+            ConsumerSettings settings = config.consumerSettings(clazz);
+            if (settings.timeout > 0) {
+                apiInfo.timeout = settings.timeout;
+            }
+            apiInfo.bulkhead = config.bulkhead(apiInfo.groupName, settings.maxConcurrent);
+        }
+    }
+
+    @Extension(after = MockServiceFeature.class) // mock的API不会调用实际的服务
+    class ApiCallLauncherImpl implements CallStarted.ApiCallLauncher {
+
+        /**
+         * 启动API的执行过程
+         *
+         * @param call     需要执行的API call
+         * @param context  请求上下文
+         * @param pipeline 用于异步调度的pipeline对象
+         * @param next     如果当前launcher无法启动该API，则调用next.go()让后续启动器去启动
+         * @return 异步启动的执行结果，可以包含异步状态
+         * @throws GatewayException 服务的并发调用数量达到上限时抛出DUBBO_SERVICE_OVERLOADED
+         */
+        @Override
+        public ExecutionResult launch(ApiMethodCall call,
+                                      ApiContext context,
+                                      WorkflowPipeline pipeline,
+                                      Next<ExecutionResult, GatewayException> next) throws GatewayException {
+            Bulkhead bulkhead = call.method.bulkhead;
+            if (bulkhead == null || call.method.staticMockValue != null) {
+                return next.go();
+            }
+
+            if (!bulkhead.tryAcquire()) {
+                throw new GatewayException(ApiReturnCode.DUBBO_SERVICE_OVERLOADED);
+            }
+
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    bulkhead.release();
+                }
+            };
+            // dubbo的回调可能丢失，节点结束（包括超过截止时间被强制结束）时同样释放许可
+            pipeline.whenNodeCompleted(release);
+
+            ExecutionResult result;
+            try {
+                result = next.go();
+            } catch (GatewayException | RuntimeException e) {
+                release.run();
+                throw e;
+            }
+            if (result == null) {
+                release.run();
+                return null;
+            }
+
+            ExecutionResult.Async async = new ExecutionResult.Async();
+            result.setCallback((value, throwable) -> {
+                release.run();
+                async.complete(value, throwable);
+            });
+            return async;
+        }
+    }
+}
@@ -29,23 +29,46 @@ public class ApiCallExecutorImpl implements ApiCallExecutor {
      */
     @Override
     public void start(ApiMethodCall call, Object[] args, ApiCallCallback.Complex<Object> callback) {
-        call.parameters = new String[call.method.parameterInfos.length];
+        WorkflowExecution.Sync stage = p -> {
+            ApiMethodCall c = (ApiMethodCall) p.getParam();
+            callback.onCompleted(c.result, c.getReturnCode(), c);
+        };
+        startThen(call, args, stage);
+    }
+
+    /**
+     * execute an api method call (async)
+     *
+     * @param call api method call to execute
+     * @param args args used to execute that api
+     * @param then the execution appended to the stage of the api call, the api call is passed as its param.
+     *             it will be started even if the api call failed only if it accepts previous failure
+     */
+    public void startThen(ApiMethodCall call, Object[] args, WorkflowExecution then) {
+        call.parameters = toParameters(call.method, args);
+        pipeline.stage(call, executeApiCall, then);
+    }
+
+    /**
+     * convert the args to the text form parameters of the api
+     *
+     * @param method the api to execute
+     * @param args args used to execute that api
+     * @return parameters in text
+     */
+    public static String[] toParameters(ApiMethodInfo method, Object[] args) {
+        String[] parameters = new String[method.parameterInfos.length];
 
         for (int i = 0; i < args.length; i++) {
             if (args[i] != null) {
                 Object arg = args[i];
                 if (arg instanceof String) {
-                    call.parameters[i] = (String) arg;
+                    parameters[i] = (String) arg;
                 } else if (arg != null) {
-                    call.parameters[i] = JSONObject.toJSONString(arg);
+                    parameters[i] = JSONObject.toJSONString(arg);
                 }
             }
         }
-
-        WorkflowExecution.Sync stage = p -> {
-            ApiMethodCall c = (ApiMethodCall) p.getParam();
-            callback.onCompleted(c.result, c.getReturnCode(), c);
-        };
-        pipeline.stage(call, executeApiCall, stage);
+        return parameters;
     }
 }
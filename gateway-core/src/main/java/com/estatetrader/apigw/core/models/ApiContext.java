@@ -2,6 +2,7 @@ package com.estatetrader.apigw.core.models;
 
 import com.estatetrader.apigw.core.contracts.GatewayRequest;
 import com.estatetrader.apigw.core.contracts.GatewayResponse;
+import com.estatetrader.util.IpAddress;
 import com.estatetrader.define.ApiCallCallback;
 import com.estatetrader.define.MockApiConfigInfo;
 import com.estatetrader.entity.AbstractReturnCode;
@@ -163,6 +164,11 @@ public class ApiContext {
      */
     public String clientIP;
 
+    /**
+     * 解析后的客户端IP，无法解析时为null
+     */
+    public IpAddress clientAddress;
+
     /**
      * Token
      */
@@ -278,6 +284,11 @@ public class ApiContext {
      */
     public boolean parameterDecryptionFailure;
 
+    /**
+     * 表示请求已经结束（响应已经写出或请求超时），此后完成的API调用必须自行释放其序列化结果的缓冲区
+     */
+    public boolean responseFinished;
+
     public Map<String, String> utm;
 
     public GatewayRequest getRequest() {
@@ -1,10 +1,10 @@
 package com.estatetrader.apigw.core.models;
 
+import com.estatetrader.apigw.core.contracts.ResponseBuffer;
 import com.estatetrader.define.ApiCallInfo;
 import com.estatetrader.entity.AbstractReturnCode;
 import com.estatetrader.entity.ApiReturnCode;
 
-import java.io.ByteArrayOutputStream;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
@@ -54,7 +54,7 @@ public class ApiMethodCall implements ApiCallInfo {
     /**
      * API的序列化结果
      */
-    public ByteArrayOutputStream buffer;
+    public ResponseBuffer buffer;
 
     /**
      * 返回值长度(未压缩前的byte数组长度)
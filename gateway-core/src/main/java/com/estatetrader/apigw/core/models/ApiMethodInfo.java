@@ -8,6 +8,8 @@ import com.estatetrader.apigw.core.models.inject.DatumProviderSpec;
 import com.estatetrader.define.*;
 import com.estatetrader.entity.AbstractReturnCode;
 import com.estatetrader.apigw.core.models.inject.DatumConsumerSpec;
+import com.estatetrader.apigw.core.phases.executing.serialize.SerializerPlan;
+import com.estatetrader.apigw.core.utils.Bulkhead;
 import com.estatetrader.generic.GenericType;
 import com.estatetrader.objtree.ObjectTree;
 
@@ -134,6 +136,16 @@ public class ApiMethodInfo {
      */
     public ServiceInstance serviceInstance;
 
+    /**
+     * dubbo调用的超时时间（毫秒），同时作为该API对应工作流节点的截止时间，0表示未设置
+     */
+    public int timeout;
+
+    /**
+     * 限制此API所属服务同时进行的dubbo调用数量，为null表示不限制
+     */
+    public Bulkhead bulkhead;
+
     /**
      * 资源负责人
      */
@@ -184,6 +196,31 @@ public class ApiMethodInfo {
      */
     public DatumProviderSpec datumProviderSpec;
 
+    /**
+     * 跨请求合并本provider调用的时间窗口（毫秒），0表示不合并
+     */
+    public int injectBatchWindow;
+
+    /**
+     * 每次合并调用最多包含的key数量，0表示不限制
+     */
+    public int injectBatchMaxKeys;
+
+    /**
+     * 本provider返回值的缓存时间（毫秒），0表示不缓存
+     */
+    public int injectCacheTtl;
+
+    /**
+     * 本provider返回值缓存最多缓存的key数量，0表示使用网关的默认配置
+     */
+    public int injectCacheMaxSize;
+
+    /**
+     * 可以按照单个key拆分的复数datum-key参数的位置，用于合并调用和返回值缓存，-1表示不支持拆分
+     */
+    public int injectKeysParamIndex = -1;
+
     /**
      * 本API定义的datum消费者格式，用于实现对返回值进行API注入
      */
@@ -231,4 +268,14 @@ public class ApiMethodInfo {
      * 返回值结构的对象树，用于实现动态数据类型
      */
     public ObjectTree<DynamicTypeObjectMap> dynamicTypeObjectTree;
+
+    /**
+     * 本API返回值的序列化计划，在API加载时生成
+     */
+    public SerializerPlan serializerPlan;
+
+    /**
+     * 本API在授权决策表中的编号（即其在ApiSchema中的序号），在API加载时设置，-1表示未编号
+     */
+    public int authorizationId = -1;
 }
\ No newline at end of file
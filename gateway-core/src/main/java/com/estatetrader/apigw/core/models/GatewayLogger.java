@@ -1,6 +1,8 @@
 package com.estatetrader.apigw.core.models;
 
 import com.alibaba.fastjson.JSON;
+import com.estatetrader.apigw.core.contracts.MetricsSource;
+import com.estatetrader.apigw.core.utils.AsyncLogQueue;
 import com.estatetrader.entity.AbstractReturnCode;
 import com.estatetrader.gateway.log.AccessLogEntry;
 import com.estatetrader.gateway.log.RequestLogEntry;
@@ -9,6 +11,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.io.Closeable;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -16,9 +21,12 @@ import java.util.stream.Collectors;
 
 /**
  * api访问日志
+ *
+ * 默认情况下请求线程只负责收集日志所需的字段，日志的截断、序列化和输出都在独立的日志线程中完成，
+ * 两者之间通过有界的环形队列传递，队列已满时按照配置的溢出策略处理
  */
 @Component
-public final class GatewayLogger {
+public final class GatewayLogger implements MetricsSource, Closeable {
     private static final Logger       requestLogger = LoggerFactory.getLogger("request-logger");
     private static final Logger       accessLogger  = LoggerFactory.getLogger("access-logger");
 
@@ -38,6 +46,58 @@ public final class GatewayLogger {
         this.accessLogEnabled = accessLogEnabled;
     }
 
+    private boolean asyncEnabled = true;
+
+    @Value("${gateway.log.async.enabled:true}")
+    public void setAsyncEnabled(boolean asyncEnabled) {
+        this.asyncEnabled = asyncEnabled;
+    }
+
+    private int asyncCapacity = 8192;
+
+    @Value("${gateway.log.async.capacity:8192}")
+    public void setAsyncCapacity(int asyncCapacity) {
+        this.asyncCapacity = asyncCapacity;
+    }
+
+    private AsyncLogQueue.OverflowPolicy overflowPolicy = AsyncLogQueue.OverflowPolicy.DROP;
+
+    @Value("${gateway.log.async.overflow-policy:drop}")
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicy = AsyncLogQueue.OverflowPolicy.valueOf(overflowPolicy.toUpperCase());
+    }
+
+    private long blockTimeout = 10;
+
+    @Value("${gateway.log.async.block-timeout:10}")
+    public void setBlockTimeout(long blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    private static final int BATCH_SIZE = 256;
+
+    private AsyncLogQueue<Runnable> queue;
+
+    @PostConstruct
+    public void start() {
+        if (asyncEnabled && queue == null) {
+            queue = new AsyncLogQueue<>("gateway-logger", asyncCapacity, overflowPolicy,
+                blockTimeout, BATCH_SIZE, Runnable::run);
+        }
+    }
+
+    /**
+     * 输出日志，未启用异步日志时直接在当前线程中输出
+     */
+    private void submit(Runnable log) {
+        AsyncLogQueue<Runnable> q = queue;
+        if (q != null) {
+            q.offer(log);
+        } else {
+            log.run();
+        }
+    }
+
     /**
      * no error
      */
@@ -77,9 +137,7 @@ public final class GatewayLogger {
                 .collect(Collectors.joining(","));
         }
 
-        if (requestLogger.isInfoEnabled()) {
-            requestLogger.info(JSON.toJSONString(entry));
-        }
+        submit(() -> requestLogger.info(JSON.toJSONString(entry)));
     }
 
     public void logAccess(ApiContext context, ApiMethodCall call) {
@@ -107,24 +165,27 @@ public final class GatewayLogger {
         entry.api_jar = call.method.jarFileSimpleName;
 
         entry.result_length = String.valueOf(call.resultLen);
-        entry.result = truncate(call.serializedResult);
-
         entry.client_version = context.versionName;
-        if (call.parameters != null) {
-        Map<String, String> parameters = new LinkedHashMap<>(call.parameters.length);
-            for (int i = 0; i < call.parameters.length; i++) {
-                ApiParameterInfo pInfo = call.method.parameterInfos[i];
-                String value = call.parameters[i] != null ? call.parameters[i] : pInfo.defaultValueInText;
-                parameters.put(pInfo.name, truncate(value));
-            }
-            entry.parameters = JSON.toJSONString(parameters);
-        }
-
         entry.third_party_bind_id = context.caller != null ? context.caller.partnerBindId : 0;
 
-        if (accessLogger.isInfoEnabled()) {
+        // 返回值和参数可能很大，截断和序列化都推迟到日志线程中进行
+        String result = call.serializedResult;
+        String[] parameterValues = call.parameters;
+        ApiParameterInfo[] parameterInfos = call.method.parameterInfos;
+
+        submit(() -> {
+            entry.result = truncate(result);
+            if (parameterValues != null) {
+                Map<String, String> parameters = new LinkedHashMap<>(parameterValues.length);
+                for (int i = 0; i < parameterValues.length; i++) {
+                    ApiParameterInfo pInfo = parameterInfos[i];
+                    String value = parameterValues[i] != null ? parameterValues[i] : pInfo.defaultValueInText;
+                    parameters.put(pInfo.name, truncate(value));
+                }
+                entry.parameters = JSON.toJSONString(parameters);
+            }
             accessLogger.info(JSON.toJSONString(entry));
-        }
+        });
     }
 
     private static String truncate(String text) {
@@ -136,4 +197,32 @@ public final class GatewayLogger {
         }
         return text;
     }
+
+    @Override
+    public String metricsName() {
+        return "gateway-logger";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        AsyncLogQueue<Runnable> q = queue;
+        if (q == null) {
+            return Collections.singletonMap("async", false);
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("async", true);
+        metrics.putAll(q.metrics());
+        return metrics;
+    }
+
+    /**
+     * 停止异步日志线程，队列中尚未输出的日志会在返回前输出完毕
+     */
+    @Override
+    public void close() {
+        AsyncLogQueue<Runnable> q = queue;
+        if (q != null) {
+            q.close();
+        }
+    }
 }
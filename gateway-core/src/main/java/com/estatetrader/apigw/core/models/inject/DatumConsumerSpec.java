@@ -22,11 +22,13 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class DatumConsumerSpec {
@@ -145,12 +147,20 @@ public class DatumConsumerSpec {
         private final String datumType;
         private final List<ExportedKeyDescriptor> keyDescriptors;
         private final List<DatumAcceptorInfo> acceptorInfos;
+        /**
+         * 用于建立datum索引的key，为null表示没有可以建立索引的key，只能逐一比较
+         */
+        private final ExportedKeyDescriptor indexedKey;
 
         public InjectionBundle(String datumType, List<ExportedKeyDescriptor> keyDescriptors,
                                List<DatumAcceptorInfo> acceptorInfos) {
             this.datumType = datumType;
             this.keyDescriptors = keyDescriptors;
             this.acceptorInfos = acceptorInfos;
+            this.indexedKey = keyDescriptors.stream()
+                .filter(d -> d.indexer != null)
+                .findFirst()
+                .orElse(null);
         }
 
         DatumExportedKeySchema exportedKeySchema() {
@@ -178,16 +188,35 @@ public class DatumConsumerSpec {
             }
         }
 
-        void inject(Object container, DatumProvidedValue providedValue) {
+        void inject(Object container, ProvidedDatums providedDatums) {
+            if (indexedKey == null) {
+                for (DatumAcceptorInfo acceptorInfo : acceptorInfos) {
+                    Stream<Object> stream = providedDatums.list().stream()
+                        .filter(datum -> datumMatched(container, datum, null));
+                    acceptorInfo.write(container, stream, datumType);
+                }
+                return;
+            }
+
+            // 通过索引找出候选的datum，再使用其他的key进行过滤
+            DatumKeyIndex index = providedDatums.index(this);
+            int[] positions = index.lookup(indexedKey.accessor.read(container, datumType));
+            List<Object> matched = new ArrayList<>(positions.length);
+            for (int position : positions) {
+                Object datum = index.datum(position);
+                if (datumMatched(container, datum, indexedKey)) {
+                    matched.add(datum);
+                }
+            }
+
             for (DatumAcceptorInfo acceptorInfo : acceptorInfos) {
-                Stream<Object> stream = providedValue.stream().filter(datum -> datumMatched(container, datum));
-                acceptorInfo.write(container, stream, datumType);
+                acceptorInfo.write(container, matched.stream(), datumType);
             }
         }
 
-        boolean datumMatched(Object container, Object datum) {
+        boolean datumMatched(Object container, Object datum, ExportedKeyDescriptor skippedKey) {
             for (ExportedKeyDescriptor keyInfo : keyDescriptors) {
-                if (!keyInfo.matchesDatum(container, datum, datumType)) {
+                if (keyInfo != skippedKey && !keyInfo.matchesDatum(container, datum, datumType)) {
                     return false;
                 }
             }
@@ -200,6 +229,7 @@ public class DatumConsumerSpec {
         private final boolean plural;
         private final DatumExportedKeyReader accessor;
         private final DatumKeyMatcher datumKeyMatcher;
+        private final DatumKeyIndexer indexer;
         private final ElementReader elementReader;
 
         private ExportedKeyDescriptor(String name,
@@ -211,6 +241,7 @@ public class DatumConsumerSpec {
             this.plural = plural;
             this.accessor = accessor;
             this.datumKeyMatcher = datumKeyMatcher;
+            this.indexer = datumKeyMatcher != null ? datumKeyMatcher.indexer() : null;
             if (plural) {
                 elementReader = ElementReader.forType((CollectionLikeType) type);
             } else {
@@ -526,19 +557,47 @@ public class DatumConsumerSpec {
 
     private static class InjectDatumHandler implements InjectionHandler {
         private final String datumType;
-        private final DatumProvidedValue providedValue;
+        private final ProvidedDatums providedDatums;
 
         public InjectDatumHandler(String datumType, DatumProvidedValue providedValue) {
             this.datumType = datumType;
-            this.providedValue = providedValue;
+            this.providedDatums = new ProvidedDatums(providedValue);
         }
 
         @Override
         public void handle(Object container, InjectionBundleMap bundleMap) {
             InjectionBundle bundle = bundleMap.find(datumType);
             if (bundle != null) {
-                bundle.inject(container, providedValue);
+                bundle.inject(container, providedDatums);
+            }
+        }
+    }
+
+    /**
+     * 一次注入过程中provider提供的所有datum，以及为各个bundle建立的索引，
+     * 使得每个datum在一次注入中只被读取和索引一次
+     */
+    private static class ProvidedDatums {
+        private final DatumProvidedValue providedValue;
+        private List<Object> datums;
+        private Map<InjectionBundle, DatumKeyIndex> indexes;
+
+        ProvidedDatums(DatumProvidedValue providedValue) {
+            this.providedValue = providedValue;
+        }
+
+        List<Object> list() {
+            if (datums == null) {
+                datums = providedValue.stream().collect(Collectors.toList());
+            }
+            return datums;
+        }
+
+        DatumKeyIndex index(InjectionBundle bundle) {
+            if (indexes == null) {
+                indexes = new IdentityHashMap<>();
             }
+            return indexes.computeIfAbsent(bundle, b -> new DatumKeyIndex(list(), b.indexedKey.indexer));
         }
     }
 }
@@ -6,12 +6,24 @@ import java.lang.reflect.Array;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Objects;
+import java.util.function.UnaryOperator;
 
 @FunctionalInterface
 public interface DatumKeyEqualityChecker {
 
     boolean keyEquals(Object datumKey, Object targetKey);
 
+    /**
+     * 获取key的归一化函数，用于以哈希表代替逐一比较
+     * 对于任意两个key，keyEquals(a, b)当且仅当它们归一化后的结果相等（equals），
+     * 归一化的结果为null时表示该key不与任何key相等
+     *
+     * @return 归一化函数，不支持归一化时返回null
+     */
+    default UnaryOperator<Object> keyNormalizer() {
+        return null;
+    }
+
     static DatumKeyEqualityChecker forType(GenericType datumKeyType, GenericType targetType) {
         // 两个类型相等，或有赋值兼容关系
         if (datumKeyType.isAssignableFrom(targetType)) {
@@ -89,6 +101,11 @@ public interface DatumKeyEqualityChecker {
         public boolean keyEquals(Object datumKey, Object targetKey) {
             return Objects.equals(datumKey, targetKey);
         }
+
+        @Override
+        public UnaryOperator<Object> keyNormalizer() {
+            return key -> key == null ? DatumKeyIndex.NULL_KEY : key;
+        }
     }
 
     class ToLongEqualityChecker implements DatumKeyEqualityChecker {
@@ -104,6 +121,11 @@ public interface DatumKeyEqualityChecker {
                 return ((Number) datumKey).longValue() == ((Number) targetKey).longValue();
             }
         }
+
+        @Override
+        public UnaryOperator<Object> keyNormalizer() {
+            return key -> key == null ? DatumKeyIndex.NULL_KEY : (Object) ((Number) key).longValue();
+        }
     }
 
     class ToDoubleEqualityChecker implements DatumKeyEqualityChecker {
@@ -119,6 +141,22 @@ public interface DatumKeyEqualityChecker {
                 return ((Number) datumKey).doubleValue() == ((Number) targetKey).doubleValue();
             }
         }
+
+        @Override
+        public UnaryOperator<Object> keyNormalizer() {
+            return key -> {
+                if (key == null) {
+                    return DatumKeyIndex.NULL_KEY;
+                }
+                double value = ((Number) key).doubleValue();
+                if (Double.isNaN(value)) {
+                    // NaN与任何值都不相等
+                    return null;
+                }
+                // 0.0 == -0.0，但Double.equals认为它们不相等
+                return value == 0 ? 0.0 : value;
+            };
+        }
     }
 
     class ToStringEqualityChecker implements DatumKeyEqualityChecker {
@@ -135,6 +173,11 @@ public interface DatumKeyEqualityChecker {
                 return datumKey.toString().equals(targetKey.toString());
             }
         }
+
+        @Override
+        public UnaryOperator<Object> keyNormalizer() {
+            return key -> key == null ? DatumKeyIndex.NULL_KEY : key.toString();
+        }
     }
 
     abstract class AbstractCollectionLikeEqualityChecker implements DatumKeyEqualityChecker {
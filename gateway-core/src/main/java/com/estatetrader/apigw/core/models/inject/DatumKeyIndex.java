@@ -0,0 +1,114 @@
+package com.estatetrader.apigw.core.models.inject;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以datum key为索引的datum哈希表，使每个consumer只需一次查找即可找到与其匹配的datum，
+ * 而无需与所有的datum逐一比较
+ */
+public class DatumKeyIndex {
+
+    /**
+     * 表示key为null的索引key（null与null相等）
+     */
+    public static final Object NULL_KEY = new Object() {
+        @Override
+        public String toString() {
+            return "NULL_KEY";
+        }
+    };
+
+    private static final int[] EMPTY = new int[0];
+
+    private final List<Object> datums;
+    private final DatumKeyIndexer indexer;
+    private final Map<Object, Positions> positionsMap;
+
+    /**
+     * @param datums 所有的datum
+     * @param indexer 索引规则
+     */
+    public DatumKeyIndex(List<Object> datums, DatumKeyIndexer indexer) {
+        this.datums = datums;
+        this.indexer = indexer;
+        this.positionsMap = new HashMap<>(Math.max(16, datums.size() * 4 / 3 + 1));
+        for (int i = 0; i < datums.size(); i++) {
+            Object key = indexer.datumKey(datums.get(i));
+            if (key != null) {
+                positionsMap.computeIfAbsent(key, k -> new Positions()).add(i);
+            }
+        }
+    }
+
+    /**
+     * 查找与目标key匹配的datum
+     * @param targetKey 目标key
+     * @return 匹配的datum在原始列表中的位置，升序且不重复
+     */
+    public int[] lookup(Object targetKey) {
+        if (positionsMap.isEmpty()) {
+            return EMPTY;
+        }
+
+        Positions[] found = new Positions[1];
+        int[][] merged = new int[1][];
+        indexer.forEachTargetKey(targetKey, key -> {
+            Positions p = positionsMap.get(key);
+            if (p == null) {
+                return;
+            }
+            if (found[0] == null) {
+                found[0] = p;
+            } else if (found[0] != p) {
+                // 复数的目标key可能对应多组datum，需要合并
+                int[] a = merged[0] != null ? merged[0] : found[0].toArray();
+                int[] r = Arrays.copyOf(a, a.length + p.size);
+                System.arraycopy(p.items, 0, r, a.length, p.size);
+                merged[0] = r;
+            }
+        });
+
+        if (merged[0] != null) {
+            return distinct(merged[0]);
+        }
+        return found[0] != null ? found[0].toArray() : EMPTY;
+    }
+
+    /**
+     * @param position datum的位置
+     * @return 指定位置的datum
+     */
+    public Object datum(int position) {
+        return datums.get(position);
+    }
+
+    private static int[] distinct(int[] array) {
+        Arrays.sort(array);
+        int n = 0;
+        for (int i = 0; i < array.length; i++) {
+            if (i == 0 || array[i] != array[i - 1]) {
+                array[n++] = array[i];
+            }
+        }
+        return n == array.length ? array : Arrays.copyOf(array, n);
+    }
+
+    private static class Positions {
+        int[] items = new int[1];
+        int size;
+
+        void add(int position) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = position;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+}
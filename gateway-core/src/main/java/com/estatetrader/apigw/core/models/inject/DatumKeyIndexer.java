@@ -0,0 +1,24 @@
+package com.estatetrader.apigw.core.models.inject;
+
+import java.util.function.Consumer;
+
+/**
+ * 将datum key的匹配规则转换为哈希索引的查找规则
+ * datum与目标key匹配，当且仅当datum的索引key与目标key的某个索引key相等（equals）
+ */
+public interface DatumKeyIndexer {
+
+    /**
+     * 计算datum的索引key
+     * @param datum datum
+     * @return 索引key，为null表示该datum不与任何目标key匹配
+     */
+    Object datumKey(Object datum);
+
+    /**
+     * 计算目标key的所有索引key
+     * @param targetKey 目标key，即consumer导出的key
+     * @param action 接收每个索引key
+     */
+    void forEachTargetKey(Object targetKey, Consumer<Object> action);
+}
@@ -3,6 +3,9 @@ package com.estatetrader.apigw.core.models.inject;
 import com.estatetrader.generic.CollectionLikeType;
 import com.estatetrader.generic.GenericType;
 
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
 public class DatumKeyInfo {
     private final String name;
     private final GenericType type;
@@ -61,6 +64,28 @@ public class DatumKeyInfo {
             Object datumKey = readKey(datum);
             return equalityChecker.keyEquals(datumKey, targetKey);
         }
+
+        @Override
+        public DatumKeyIndexer indexer() {
+            UnaryOperator<Object> normalizer = equalityChecker.keyNormalizer();
+            if (normalizer == null) {
+                return null;
+            }
+            return new DatumKeyIndexer() {
+                @Override
+                public Object datumKey(Object datum) {
+                    return normalizer.apply(readKey(datum));
+                }
+
+                @Override
+                public void forEachTargetKey(Object targetKey, Consumer<Object> action) {
+                    Object key = normalizer.apply(targetKey);
+                    if (key != null) {
+                        action.accept(key);
+                    }
+                }
+            };
+        }
     }
 
     private class PluralDatumKeyMatcher implements DatumKeyMatcher {
@@ -80,5 +105,31 @@ public class DatumKeyInfo {
             }
             return elementReader.stream(targetKey).anyMatch(x -> equalityChecker.keyEquals(datumKey, x));
         }
+
+        @Override
+        public DatumKeyIndexer indexer() {
+            UnaryOperator<Object> normalizer = equalityChecker.keyNormalizer();
+            if (normalizer == null) {
+                return null;
+            }
+            return new DatumKeyIndexer() {
+                @Override
+                public Object datumKey(Object datum) {
+                    Object datumKey = readKey(datum);
+                    // key为null的datum不与任何元素匹配
+                    return datumKey == null ? null : normalizer.apply(datumKey);
+                }
+
+                @Override
+                public void forEachTargetKey(Object targetKey, Consumer<Object> action) {
+                    elementReader.stream(targetKey).forEach(x -> {
+                        Object key = normalizer.apply(x);
+                        if (key != null) {
+                            action.accept(key);
+                        }
+                    });
+                }
+            };
+        }
     }
 }
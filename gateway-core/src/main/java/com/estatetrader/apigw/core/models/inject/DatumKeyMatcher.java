@@ -3,4 +3,12 @@ package com.estatetrader.apigw.core.models.inject;
 @FunctionalInterface
 public interface DatumKeyMatcher {
     boolean matches(Object datum, Object targetKey);
+
+    /**
+     * 获取与本匹配规则等价的索引规则
+     * @return 索引规则，不支持建立索引时返回null
+     */
+    default DatumKeyIndexer indexer() {
+        return null;
+    }
 }
@@ -0,0 +1,284 @@
+package com.estatetrader.apigw.core.models.inject;
+
+import com.estatetrader.algorithm.workflow.DeadlineWheel;
+import com.estatetrader.algorithm.workflow.ExecutionResult;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 跨请求合并datum provider调用的微批处理器
+ *
+ * 1. 参数（复数datum-key参数除外）完全相同的provider调用属于同一组，同一组中在时间窗口内到达的调用会被合并为一批
+ * 2. 每一批中第一个到达的调用为leader，其余为follower。窗口结束（或key数量达到上限）后，leader使用所有调用的
+ *    key的并集发起一次provider调用，并通过publish将返回值分发给所有的follower
+ * 3. 合并后的返回值可能包含其他调用所需的datum，consumer在注入时会按照datum key筛选，因此不会注入多余的datum
+ * 4. 如果leader在maxWait时间内仍未分发返回值（例如leader所在的请求已经失败），follower会以TimeoutException失败，
+ *    而不会无限等待。maxWait由leader加入时指定，通常为provider自身的调用超时时间
+ */
+public class DatumProviderBatcher implements Closeable {
+
+    private final DeadlineWheel wheel;
+    private final Executor dispatcher;
+
+    private final ConcurrentHashMap<Object, Batch> openBatches = new ConcurrentHashMap<>();
+
+    private final LongAdder joined = new LongAdder();
+    private final LongAdder followed = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder sealedByWindow = new LongAdder();
+    private final LongAdder sealedByMaxKeys = new LongAdder();
+    private final LongAdder batchedKeys = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * @param dispatcher 窗口结束后用于启动leader后续流程的线程池，避免在时间轮线程中执行provider调用
+     */
+    public DatumProviderBatcher(Executor dispatcher) {
+        this.dispatcher = dispatcher;
+        this.wheel = new DeadlineWheel("datum-provider-batcher", 1, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * 加入一次provider调用
+     *
+     * @param groupKey 分组依据，仅同一组的调用会被合并，须正确实现equals和hashCode
+     * @param keys 本次调用需要的key，不得为空
+     * @param window 合并的时间窗口（毫秒），必须为正数
+     * @param maxKeys 每批最多的key数量，0表示不限制
+     * @param maxWait follower等待返回值的最长时间（毫秒，从窗口结束时开始计算），仅在开启新的批次时生效，必须为正数
+     * @return 本次调用在批次中的身份，返回null表示本次调用无法合并（key数量已超过上限），调用方应直接发起调用
+     */
+    public Ticket join(Object groupKey, Collection<?> keys, int window, int maxKeys, long maxWait) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        if (maxWait <= 0) {
+            throw new IllegalArgumentException("maxWait must be positive");
+        }
+        if (keys.isEmpty() || maxKeys > 0 && keys.size() >= maxKeys) {
+            bypassed.increment();
+            return null;
+        }
+
+        while (true) {
+            Batch batch = openBatches.get(groupKey);
+            if (batch == null) {
+                Batch created = new Batch(groupKey, keys, maxWait);
+                if (openBatches.putIfAbsent(groupKey, created) == null) {
+                    joined.increment();
+                    created.windowDeadline = wheel.schedule(() -> seal(created, false), window);
+                    return created.leader;
+                }
+                continue;
+            }
+
+            Ticket follower;
+            boolean full;
+            synchronized (batch) {
+                if (batch.sealed) {
+                    follower = null;
+                    full = false;
+                } else if (maxKeys > 0 && unionSize(batch.keys, keys) > maxKeys) {
+                    // 超出上限的调用不再加入当前批次，当前批次立即发起调用，本次调用开启新的批次
+                    follower = null;
+                    full = true;
+                } else {
+                    batch.keys.addAll(keys);
+                    follower = new Ticket(batch, false);
+                    batch.followers.add(follower);
+                    full = maxKeys > 0 && batch.keys.size() >= maxKeys;
+                }
+            }
+
+            if (follower != null) {
+                joined.increment();
+                followed.increment();
+                if (full) {
+                    seal(batch, true);
+                }
+                return follower;
+            }
+            if (full) {
+                seal(batch, true);
+            } else {
+                openBatches.remove(groupKey, batch);
+            }
+        }
+    }
+
+    private static int unionSize(Set<Object> keys, Collection<?> more) {
+        int size = keys.size();
+        for (Object key : more) {
+            if (!keys.contains(key)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private void seal(Batch batch, boolean byMaxKeys) {
+        List<Object> keys;
+        synchronized (batch) {
+            if (batch.sealed) {
+                return;
+            }
+            batch.sealed = true;
+            keys = new ArrayList<>(batch.keys);
+        }
+        openBatches.remove(batch.groupKey, batch);
+        if (batch.windowDeadline != null) {
+            batch.windowDeadline.cancel();
+        }
+
+        batches.increment();
+        batchedKeys.add(keys.size());
+        (byMaxKeys ? sealedByMaxKeys : sealedByWindow).increment();
+
+        batch.expireDeadline = wheel.schedule(() -> expire(batch), batch.maxWait);
+        // leader的后续流程（发起provider调用）在dispatcher中执行，不占用时间轮线程或者follower的线程
+        dispatcher.execute(() -> batch.sealedResult.success(keys));
+    }
+
+    private void expire(Batch batch) {
+        publish(batch, null, new TimeoutException("the batched call of datum provider did not complete in "
+            + batch.maxWait + "ms"), true);
+    }
+
+    private void publish(Batch batch, Object result, Throwable throwable, boolean expiring) {
+        List<Ticket> followers;
+        synchronized (batch) {
+            if (batch.published) {
+                return;
+            }
+            batch.published = true;
+            followers = batch.followers;
+        }
+        if (batch.expireDeadline != null) {
+            batch.expireDeadline.cancel();
+        }
+        if (expiring) {
+            expired.increment();
+        } else if (throwable != null) {
+            failed.increment();
+        }
+        for (Ticket follower : followers) {
+            follower.result.complete(result, throwable);
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        long batchCount = batches.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("joined", joined.sum());
+        metrics.put("bypassed", bypassed.sum());
+        metrics.put("batches", batchCount);
+        // 每个follower都节省了一次provider调用
+        metrics.put("savedCalls", followed.sum());
+        metrics.put("sealedByWindow", sealedByWindow.sum());
+        metrics.put("sealedByMaxKeys", sealedByMaxKeys.sum());
+        metrics.put("avgKeysPerBatch", batchCount == 0 ? 0 : batchedKeys.sum() / (double) batchCount);
+        metrics.put("failed", failed.sum());
+        metrics.put("expired", expired.sum());
+        metrics.put("open", openBatches.size());
+        return metrics;
+    }
+
+    /**
+     * 停止时间轮线程，尚未结束的窗口将不再被处理
+     */
+    @Override
+    public void close() {
+        wheel.shutdown();
+    }
+
+    private class Batch {
+        final Object groupKey;
+        final long maxWait;
+        final Set<Object> keys;
+        final List<Ticket> followers = new ArrayList<>();
+        final Ticket leader;
+        final ExecutionResult.Async sealedResult = new ExecutionResult.Async();
+
+        boolean sealed;
+        boolean published;
+        volatile DeadlineWheel.Deadline windowDeadline;
+        volatile DeadlineWheel.Deadline expireDeadline;
+
+        Batch(Object groupKey, Collection<?> keys, long maxWait) {
+            this.groupKey = groupKey;
+            this.maxWait = maxWait;
+            this.keys = new LinkedHashSet<>(keys);
+            this.leader = new Ticket(this, true);
+        }
+    }
+
+    /**
+     * 一次provider调用在批次中的身份
+     */
+    public final class Ticket {
+        private final Batch batch;
+        private final boolean leader;
+        private final ExecutionResult.Async result;
+
+        private Ticket(Batch batch, boolean leader) {
+            this.batch = batch;
+            this.leader = leader;
+            this.result = leader ? null : new ExecutionResult.Async();
+        }
+
+        /**
+         * @return 是否为leader，leader负责发起合并后的provider调用并分发其返回值
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * 仅限leader使用
+         * @return 在窗口结束时完成，其值为该批次所有key的并集（List）
+         */
+        public ExecutionResult sealed() {
+            if (!leader) {
+                throw new IllegalStateException("only the leader can wait for the batch to be sealed");
+            }
+            return batch.sealedResult;
+        }
+
+        /**
+         * 仅限leader使用，将合并后的provider调用的结果分发给所有的follower
+         * @param result provider的返回值
+         * @param throwable provider调用失败时的异常
+         */
+        public void publish(Object result, Throwable throwable) {
+            if (!leader) {
+                throw new IllegalStateException("only the leader can publish the result");
+            }
+            DatumProviderBatcher.this.publish(batch, result, throwable, false);
+        }
+
+        /**
+         * 仅限follower使用
+         * @return 在leader分发返回值后完成，其值为provider的返回值
+         */
+        public ExecutionResult result() {
+            if (leader) {
+                throw new IllegalStateException("the leader should execute the provider call by itself");
+            }
+            return result;
+        }
+    }
+}
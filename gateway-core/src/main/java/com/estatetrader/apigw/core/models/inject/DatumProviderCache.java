@@ -0,0 +1,231 @@
+package com.estatetrader.apigw.core.models.inject;
+
+import com.estatetrader.apigw.core.utils.TinyLfuCache;
+import com.estatetrader.core.ParameterConverter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * datum provider的返回值缓存，以单个datum key为粒度缓存provider返回的datum
+ *
+ * 1. 一次provider调用的复数datum-key参数被拆分为单个的key，每个key单独查询缓存，
+ *    仅未命中的key需要调用provider，命中的datum与provider返回的datum合并后再注入
+ * 2. provider返回的datum按照datum key（经过与注入时相同的归一化处理）分组后写入缓存，
+ *    没有返回任何datum的key同样会被缓存为空列表，避免不存在的key反复穿透到provider
+ * 3. provider的其余参数同样作为缓存key的一部分，参数不同的调用不会共享缓存项
+ * 4. 每个key（按哈希值分组）都有一个代数，删除缓存时代数加一。查询时记录未命中的key的代数，
+ *    写入时代数已经变化的key不再写入，避免删除前发起的provider调用在删除后写回旧的datum
+ */
+public class DatumProviderCache {
+
+    private static final int GENERATION_SLOTS = 256;
+
+    private final DatumKeyIndexer indexer;
+    private final ParameterConverter keyParser;
+    private final TinyLfuCache<CacheKey, List<Object>> cache;
+
+    /**
+     * 归一化后的key的哈希值 -> 代数，哈希冲突的key共用代数，仅会导致个别写入被放弃
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_SLOTS);
+    /**
+     * 删除所有缓存项时加一
+     */
+    private final AtomicLong epoch = new AtomicLong();
+
+    /**
+     * @param indexer 单个datum key的归一化规则，参见DatumProviderSpec.keysParamIndexer
+     * @param keyParser 将文本形式的单个datum key转换为复数datum-key参数的元素类型，参见DatumProviderSpec.keysParamElementType
+     * @param capacity 最多缓存的key数量
+     * @param shardCount 缓存的分片数量
+     * @param ttl 缓存项的存活时间（毫秒）
+     */
+    public DatumProviderCache(DatumKeyIndexer indexer, ParameterConverter keyParser, int capacity, int shardCount, long ttl) {
+        this.indexer = indexer;
+        this.keyParser = keyParser;
+        this.cache = new TinyLfuCache<>(capacity, shardCount, ttl);
+    }
+
+    /**
+     * 查询缓存
+     * @param parameters provider的其余参数（复数datum-key参数除外）
+     * @param keys 本次调用需要的key
+     * @return 查询结果
+     */
+    public Lookup lookup(String[] parameters, List<Object> keys) {
+        Lookup lookup = new Lookup(parameters, epoch.get());
+        Set<Object> visited = new LinkedHashSet<>();
+        for (Object key : keys) {
+            Object normalized = normalize(key);
+            if (normalized == null) {
+                // 无法归一化的key不参与缓存
+                lookup.missingKeys.add(key);
+                continue;
+            }
+            if (!visited.add(normalized)) {
+                continue;
+            }
+            List<Object> datums = cache.get(new CacheKey(parameters, normalized));
+            if (datums != null) {
+                lookup.cachedDatums.addAll(datums);
+            } else {
+                lookup.missingKeys.add(key);
+                lookup.missingNormalizedKeys.put(normalized, generations.get(slotOf(normalized)));
+            }
+        }
+        return lookup;
+    }
+
+    /**
+     * 将provider针对未命中的key返回的datum写入缓存
+     * @param lookup 查询结果
+     * @param datums provider返回的datum
+     * @return provider返回的所有datum
+     */
+    public List<Object> store(Lookup lookup, Stream<Object> datums) {
+        Map<Object, List<Object>> grouped = new HashMap<>();
+        for (Object key : lookup.missingNormalizedKeys.keySet()) {
+            grouped.put(key, new ArrayList<>(1));
+        }
+
+        List<Object> fetched = new ArrayList<>();
+        datums.forEach(datum -> {
+            fetched.add(datum);
+            List<Object> group = grouped.get(indexer.datumKey(datum));
+            if (group != null) {
+                group.add(datum);
+            }
+        });
+
+        for (Map.Entry<Object, List<Object>> entry : grouped.entrySet()) {
+            Object key = entry.getKey();
+            List<Object> group = entry.getValue();
+            long generation = lookup.missingNormalizedKeys.get(key);
+            int slot = slotOf(key);
+            // 在缓存分片的锁内判断，与invalidate中的删除互斥
+            cache.put(new CacheKey(lookup.parameters, key),
+                group.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(group),
+                () -> epoch.get() == lookup.epoch && generations.get(slot) == generation);
+        }
+        return fetched;
+    }
+
+    /**
+     * 删除指定key的所有缓存项（不区分provider的其余参数）
+     * @param key datum key的文本形式，按照复数datum-key参数的元素类型解析后再归一化
+     * @return 删除的缓存项数量
+     */
+    public int invalidate(String key) {
+        Object parsed;
+        try {
+            parsed = keyParser.convert(key);
+        } catch (RuntimeException e) {
+            // 无法解析为key的类型，缓存中不可能存在该key（未指定provider时其他provider的key类型可能不同）
+            return 0;
+        }
+        Object normalized = normalize(parsed);
+        if (normalized == null) {
+            // 无法归一化的key不参与缓存
+            return 0;
+        }
+        // 先增加代数再删除，删除前发起的provider调用无法再写入
+        generations.incrementAndGet(slotOf(normalized));
+        return cache.invalidateIf(k -> k.key.equals(normalized));
+    }
+
+    /**
+     * 删除所有缓存项
+     * @return 删除的缓存项数量
+     */
+    public int invalidateAll() {
+        epoch.incrementAndGet();
+        return cache.invalidateAll();
+    }
+
+    public Map<String, Object> metrics() {
+        return cache.metrics();
+    }
+
+    private static int slotOf(Object normalizedKey) {
+        int h = normalizedKey.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_SLOTS - 1);
+    }
+
+    private Object normalize(Object key) {
+        Object[] holder = new Object[1];
+        indexer.forEachTargetKey(key, k -> {
+            if (holder[0] == null) {
+                holder[0] = k;
+            }
+        });
+        return holder[0];
+    }
+
+    /**
+     * 一次缓存查询的结果
+     */
+    public static class Lookup {
+        private final String[] parameters;
+        private final long epoch;
+        private final List<Object> cachedDatums = new ArrayList<>();
+        private final List<Object> missingKeys = new ArrayList<>();
+        /**
+         * 未命中的key（归一化后） -> 查询时该key的代数
+         */
+        private final Map<Object, Long> missingNormalizedKeys = new HashMap<>();
+
+        private Lookup(String[] parameters, long epoch) {
+            this.parameters = parameters;
+            this.epoch = epoch;
+        }
+
+        /**
+         * @return 缓存中命中的datum
+         */
+        public List<Object> getCachedDatums() {
+            return cachedDatums;
+        }
+
+        /**
+         * @return 未命中、需要调用provider获取的key（原始形式）
+         */
+        public List<Object> getMissingKeys() {
+            return missingKeys;
+        }
+    }
+
+    private static final class CacheKey {
+        private final String[] parameters;
+        private final Object key;
+        private final int hash;
+
+        CacheKey(String[] parameters, Object key) {
+            this.parameters = parameters;
+            this.key = key;
+            this.hash = Arrays.hashCode(parameters) * 31 + key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey that = (CacheKey) o;
+            return key.equals(that.key) && Arrays.equals(parameters, that.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -87,6 +87,44 @@ public class DatumProviderSpec {
         return definition.getImplType();
     }
 
+    /**
+     * 获取可以按照单个key拆分的参数（用于跨请求合并调用和返回值缓存）：唯一一个直接声明为复数datum-key的参数，
+     * 且该key在datum中有定义。consumer在注入时会按照该key筛选datum，因此使用多个调用的key的并集（或者部分key）
+     * 调用provider不会影响注入结果
+     * @return 参数名称，不支持拆分时返回null
+     */
+    public String keysParamName() {
+        if (pluralParam == null || !(pluralParam.node instanceof LeafNode)) {
+            return null;
+        }
+        String keyName = pluralParam.pluralKeyInfo().getName();
+        return definition.keyInfoOf(keyName) != null ? pluralParam.name : null;
+    }
+
+    /**
+     * 获取keysParamName对应参数中单个key与datum之间的索引规则，用于将provider返回的datum与各个key对应起来
+     * @return 索引规则，不支持拆分或者key的类型无法建立索引时返回null
+     */
+    public DatumKeyIndexer keysParamIndexer() {
+        GenericType elementType = keysParamElementType();
+        if (elementType == null) {
+            return null;
+        }
+        DatumKeyTypeMatched matched = definition.keyInfoOf(pluralParam.pluralKeyInfo().getName()).tryMatchType(elementType);
+        return matched != null && !matched.plural ? matched.datumKeyMatcher.indexer() : null;
+    }
+
+    /**
+     * 获取keysParamName对应参数中单个key的类型
+     * @return key的类型，不支持拆分时返回null
+     */
+    public GenericType keysParamElementType() {
+        if (keysParamName() == null) {
+            return null;
+        }
+        return ((CollectionLikeType) pluralParam.pluralKeyInfo().getType()).getElementType();
+    }
+
     public DatumKeyTypeMatched matchKeyType(String keyName, GenericType keyType) {
         DatumKeyInfo keyInfo = definition.keyInfoOf(keyName);
         if (keyInfo != null) {
@@ -306,6 +344,16 @@ public class DatumProviderSpec {
         return new DatumProvidedValue(result, definition.getDatumReader());
     }
 
+    /**
+     * 使用已经从返回值中拆分出的datum构造provided value
+     * @param datums datum列表
+     * @return provided value
+     */
+    @SuppressWarnings("unchecked")
+    public DatumProvidedValue provideDatums(List<Object> datums) {
+        return new DatumProvidedValue(datums, list -> ((List<Object>) list).stream());
+    }
+
     static DatumDefinition parseDefinitionForReturnType(GenericType returnType, String injectProviderName, StructTypeResolver typeResolver) {
         GenericType datumClass = GenericTypes.of(Datum.class);
         // 1. 确定是否为复数形式，并提取元素类型，我们支持Datum的集合
@@ -1,12 +1,14 @@
 package com.estatetrader.apigw.core.phases.executing.access;
 
 import com.estatetrader.algorithm.ObjectCache;
+import com.estatetrader.apigw.core.contracts.ResponseBuffer;
 import com.estatetrader.apigw.core.extensions.Extension;
 import com.estatetrader.apigw.core.extensions.Extensions;
 import com.estatetrader.apigw.core.extensions.Next;
 import com.estatetrader.apigw.core.models.ApiContext;
 import com.estatetrader.apigw.core.models.GatewayLogger;
 import com.estatetrader.apigw.core.support.ApiMDCSupport;
+import com.estatetrader.apigw.core.utils.HeapResponseBuffer;
 import com.estatetrader.apigw.core.phases.executing.serialize.ResponseSerializer;
 import com.estatetrader.core.GatewayException;
 import com.estatetrader.entity.ApiReturnCode;
@@ -19,7 +21,7 @@ import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -84,48 +86,62 @@ public interface CallFinished {
             call.resultLen = call.buffer.size();
 
             if (call.method.recordResult) {
-                try {
-                    call.serializedResult = call.buffer.toString(Charsets.UTF_8.name());
-                } catch (UnsupportedEncodingException e) {
-                    throw new IllegalStateException(e);
-                }
+                call.serializedResult = call.buffer.toString(StandardCharsets.UTF_8);
             }
 
             if (!call.fromClient) {
                 // if the call is not from client, it is the request-processor's responsibility
-                // to return the buffer to buffer cache
-                bufferCache.release(call.buffer);
+                // to release the buffer
+                call.buffer.release();
                 call.buffer = null;
+            } else {
+                synchronized (call) {
+                    // 请求已经超时结束时，没有人会再回收此buffer
+                    if (apiContext.responseFinished && call.buffer != null) {
+                        call.buffer.release();
+                        call.buffer = null;
+                    }
+                }
             }
 
             gatewayLogger.logAccess(apiContext, call);
         }
 
-        private ByteArrayOutputStream serializeResult(ApiMethodCall call, ApiContext context)
+        private ResponseBuffer serializeResult(ApiMethodCall call, ApiContext context)
             throws GatewayException {
 
-            ByteArrayOutputStream buffer = bufferCache.acquire();
+            // 客户端请求的API直接序列化到响应提供的缓冲区中，使得结果可以不经复制成为响应体的一部分
+            ResponseBuffer buffer = call.fromClient ?
+                context.response.allocateBuffer() : null;
+            if (buffer == null) {
+                buffer = new HeapResponseBuffer(bufferCache);
+            }
+
             Object result = getResultForSerialize(call);
             try {
+                OutputStream output = buffer.getOutputStream();
                 if (result == null) {
                     if (!call.method.returnType.equals(RawString.class)) {
-                        buffer.write(JSON_EMPTY);
+                        output.write(JSON_EMPTY);
                     }
                 } else if (result instanceof RawString) {
                     RawString rs = (RawString) result;
                     if (rs.value != null) {
-                        buffer.write(rs.value.getBytes(StandardCharsets.UTF_8));
+                        output.write(rs.value.getBytes(StandardCharsets.UTF_8));
                     }
                 } else {
-                    responseSerializer.toJson(buffer, result, call, context);
+                    responseSerializer.toJson(output, result, call, context);
                 }
 
-                // 一切正常，主调函数应在恰当的时机通过 bufferCache.release 回收此buffer，以减少内存压力
+                // 一切正常，主调函数应在恰当的时机通过 buffer.release 回收此buffer，以减少内存压力
                 return buffer;
             } catch (IOException e) {
                 // 在出现异常时回收刚刚申请的buffer，因此此时主调函数已经无法拿到这个buffer
-                bufferCache.release(buffer);
+                buffer.release();
                 throw new GatewayException(ApiReturnCode.SERIALIZE_FAILED, e);
+            } catch (RuntimeException e) {
+                buffer.release();
+                throw e;
             }
         }
 
@@ -5,6 +5,7 @@ import com.estatetrader.apigw.core.contracts.GatewayRequest;
 import com.estatetrader.apigw.core.extensions.Extension;
 import com.estatetrader.apigw.core.extensions.Extensions;
 import com.estatetrader.apigw.core.extensions.Next;
+import com.estatetrader.apigw.core.models.ApiMethodInfo;
 import com.estatetrader.apigw.core.models.ApiMethodType;
 import com.estatetrader.apigw.core.support.ApiMDCSupport;
 import com.estatetrader.apigw.core.models.ApiContext;
@@ -49,6 +50,11 @@ public interface CallStarted {
     @Service
     class Execution implements WorkflowExecution {
 
+        /**
+         * 节点截止时间相对于dubbo超时时间的宽限，优先让dubbo自身的超时机制生效
+         */
+        private static final int DEADLINE_GRACE_MILLIS = 100;
+
         private final Extensions<BeforeApiExecuted> beforeApiExecutedList;
         private final Extensions<ApiCallLauncher> apiCallLaunchers;
 
@@ -76,8 +82,28 @@ public interface CallStarted {
 
             call.startTime = System.currentTimeMillis();
 
+            int deadline = callDeadline(call.method);
+            if (deadline > 0) {
+                // 防止dubbo回调丢失导致节点（以及整个请求）一直无法完成
+                pipeline.deadline(deadline);
+            }
+
             return apiCallLaunchers.chain(ApiCallLauncher::launch, call, context, pipeline).go();
         }
+
+        /**
+         * dubbo API调用节点的截止时间
+         *
+         * @param method API
+         * @return 从调用开始计算，节点最迟被结束的时间（毫秒），0表示网关不知道实际生效的超时时间
+         * （未指定超时时间时dubbo使用服务提供者发布的超时时间），此时仅受整个请求的截止时间约束
+         */
+        public static int callDeadline(ApiMethodInfo method) {
+            if (method.apiMethodType != ApiMethodType.DUBBO || method.timeout <= 0) {
+                return 0;
+            }
+            return method.timeout + DEADLINE_GRACE_MILLIS;
+        }
     }
 
     /**
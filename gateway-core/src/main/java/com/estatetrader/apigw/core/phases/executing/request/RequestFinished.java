@@ -2,7 +2,6 @@ package com.estatetrader.apigw.core.phases.executing.request;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.serializer.SerializerFeature;
-import com.estatetrader.algorithm.ObjectCache;
 import com.estatetrader.algorithm.workflow.WorkflowDestination;
 import com.estatetrader.apigw.core.contracts.GatewayResponse;
 import com.estatetrader.apigw.core.extensions.Extension;
@@ -27,9 +26,7 @@ import org.slf4j.MarkerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -58,16 +55,12 @@ public interface RequestFinished {
 
         private final Extensions<ResponseGenerator> responseGenerators;
 
-        private final ObjectCache<ByteArrayOutputStream> bufferCache;
-
         private final GatewayLogger gatewayLogger;
 
-        public Execution(ObjectCache<ByteArrayOutputStream> bufferCache,
-                         Extensions<CookieDispatcher> cookieDispatchers,
+        public Execution(Extensions<CookieDispatcher> cookieDispatchers,
                          Extensions<ResponseGenerator> responseGenerators,
                          GatewayLogger gatewayLogger) {
 
-            this.bufferCache = bufferCache;
             this.cookieDispatchers = cookieDispatchers;
             this.responseGenerators = responseGenerators;
             this.gatewayLogger = gatewayLogger;
@@ -102,9 +95,12 @@ public interface RequestFinished {
                 gatewayLogger.logRequest(apiContext, returnCode);
             } finally {
                 for (ApiMethodCall call : apiContext.apiCalls) {
-                    if (call.buffer != null) {
-                        bufferCache.release(call.buffer);
-                        call.buffer = null;
+                    synchronized (call) {
+                        apiContext.responseFinished = true;
+                        if (call.buffer != null) {
+                            call.buffer.release();
+                            call.buffer = null;
+                        }
                     }
                 }
 
@@ -191,16 +187,16 @@ public interface RequestFinished {
                                     Response apiResponse) throws IOException {
 
             int len = 0;
-            OutputStream output = response.getOutputStream();
 
-            output.write(JSON_START);
+            // 框架部分使用共享的常量，各API的序列化结果直接引用其缓冲区，均不需要复制
+            response.writeShared(JSON_START);
             len += JSON_START.length;
 
             byte[] serializedApiResponse = serializeApiResponse(apiResponse);
-            output.write(serializedApiResponse);
+            response.getOutputStream().write(serializedApiResponse);
             len += serializedApiResponse.length;
 
-            output.write(JSON_CONTENT);
+            response.writeShared(JSON_CONTENT);
             len += JSON_CONTENT.length;
 
             boolean first = true;
@@ -208,15 +204,15 @@ public interface RequestFinished {
                 if (first) {
                     first = false;
                 } else {
-                    output.write(JSON_SPLIT);
+                    response.writeShared(JSON_SPLIT);
                     len += JSON_SPLIT.length;
                 }
 
-                call.buffer.writeTo(output);
+                response.write(call.buffer);
                 len += call.buffer.size();
             }
 
-            output.write(JSON_END);
+            response.writeShared(JSON_END);
             len += JSON_END.length;
 
             return len;
@@ -235,9 +231,8 @@ public interface RequestFinished {
                                      GatewayResponse response) throws IOException {
 
             // rawString的处理，将dubbo service返回的结果直接输出
-            OutputStream output = response.getOutputStream();
             if (code == ApiReturnCode.SUCCESS && call.success()) {
-                call.buffer.writeTo(output);
+                response.write(call.buffer);
                 return call.buffer.size();
             }
 
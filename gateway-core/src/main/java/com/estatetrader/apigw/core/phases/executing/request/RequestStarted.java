@@ -17,6 +17,7 @@ import com.estatetrader.util.Lambda;
 import com.estatetrader.algorithm.workflow.WorkflowExecution;
 import com.estatetrader.algorithm.workflow.WorkflowPipeline;
 import com.estatetrader.apigw.core.support.ApiMDCSupport;
+import com.estatetrader.util.IpAddress;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpHeaders;
 import org.slf4j.Logger;
@@ -434,6 +435,7 @@ public interface RequestStarted {
             }
 
             context.clientIP = clientIP;
+            context.clientAddress = IpAddress.parse(clientIP);
             MDC.put(CommonParameter.clientIp, clientIP);
         }
 
@@ -2,20 +2,28 @@ package com.estatetrader.apigw.core.phases.executing.serialize;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.serializer.SerializeConfig;
-import com.alibaba.fastjson.serializer.SerializeFilter;
-import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.alibaba.fastjson.util.FieldInfo;
 import com.alibaba.fastjson.util.IOUtils;
+import com.alibaba.fastjson.util.TypeUtils;
 import com.estatetrader.apigw.core.extensions.Extension;
 import com.estatetrader.apigw.core.extensions.Extensions;
 import com.estatetrader.apigw.core.models.ApiContext;
 import com.estatetrader.apigw.core.models.ApiMethodCall;
+import com.estatetrader.apigw.core.models.ApiMethodInfo;
+import com.estatetrader.apigw.core.models.ApiSchema;
+import com.estatetrader.apigw.core.phases.parsing.SchemaProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.List;
-
-import static com.alibaba.fastjson.JSON.DEFAULT_GENERATE_FEATURE;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * API返回值和请求返回值的序列化器
@@ -45,6 +53,11 @@ public interface ResponseSerializer {
 
         private final Extensions<SerializingConfigurer> serializingConfigurers;
 
+        /**
+         * 非API返回值（例如后端消息）使用的序列化计划
+         */
+        private volatile SerializerPlan defaultPlan;
+
         public DefaultResponseSerializer(Extensions<SerializingConfigurer> serializingConfigurers) {
             this.serializingConfigurers = serializingConfigurers;
         }
@@ -60,16 +73,15 @@ public interface ResponseSerializer {
          */
         @Override
         public void toJson(OutputStream stream, Object object, ApiMethodCall methodCall, ApiContext context) throws IOException {
-            FilterFeatures ff = getFilterFeatures(object, methodCall, context);
+            SerializerPlan plan = planOf(methodCall);
             JSON.writeJSONString(
                 stream,
                 IOUtils.UTF8,
                 object,
                 SerializeConfig.globalInstance,
-                ff.filters,
+                plan.filters(object, methodCall, context),
                 null,
-                DEFAULT_GENERATE_FEATURE,
-                ff.features
+                plan.features(methodCall, context)
             );
         }
 
@@ -83,36 +95,98 @@ public interface ResponseSerializer {
          */
         @Override
         public String toJsonString(Object object, ApiMethodCall methodCall, ApiContext context) {
-            FilterFeatures ff = getFilterFeatures(object, methodCall, context);
+            SerializerPlan plan = planOf(methodCall);
             return JSON.toJSONString(
                 object,
                 SerializeConfig.globalInstance,
-                ff.filters,
+                plan.filters(object, methodCall, context),
                 null,
-                DEFAULT_GENERATE_FEATURE,
-                ff.features
+                plan.features(methodCall, context)
             );
         }
 
-        private FilterFeatures getFilterFeatures(Object object, ApiMethodCall methodCall, ApiContext context) {
-            List<SerializeFilter> filters = new ArrayList<>(serializingConfigurers.size());
-            List<SerializerFeature> features = new ArrayList<>(serializingConfigurers.size());
+        private SerializerPlan planOf(ApiMethodCall methodCall) {
+            if (methodCall == null) {
+                SerializerPlan plan = defaultPlan;
+                if (plan == null) {
+                    defaultPlan = plan = SerializerPlan.build(serializingConfigurers, null);
+                }
+                return plan;
+            }
 
-            for (SerializingConfigurer configurer : serializingConfigurers) {
-                filters.addAll(configurer.filters(object, methodCall, context));
-                features.addAll(configurer.features(methodCall, context));
+            ApiMethodInfo method = methodCall.method;
+            SerializerPlan plan = method.serializerPlan;
+            if (plan == null) {
+                // 未经过ApiSchemaLoader加载的API（例如测试中直接构造的API），在首次序列化时生成计划
+                method.serializerPlan = plan = SerializerPlan.build(serializingConfigurers, method);
             }
+            return plan;
+        }
+    }
+
+    /**
+     * 在API加载完成后为每个API生成序列化计划，并预先生成其返回值类型树中各个类型的fastjson序列化器（ASM），
+     * 避免在处理请求时生成
+     */
+    @Extension(last = true) // 须在其他SchemaProcessor设置完序列化相关的信息之后执行
+    class SerializerPlanBuilder implements SchemaProcessor {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(SerializerPlanBuilder.class);
 
-            return new FilterFeatures(filters, features);
+        private final Extensions<SerializingConfigurer> serializingConfigurers;
+        private final boolean warmUp;
+
+        public SerializerPlanBuilder(Extensions<SerializingConfigurer> serializingConfigurers,
+                                     @Value("${gateway.serializer.warm-up:true}") boolean warmUp) {
+            this.serializingConfigurers = serializingConfigurers;
+            this.warmUp = warmUp;
         }
 
-        private static class FilterFeatures {
-            final SerializeFilter[] filters;
-            final SerializerFeature[] features;
+        @Override
+        public void process(ApiSchema schema) {
+            Set<Class<?>> visited = new HashSet<>();
+            for (ApiMethodInfo method : schema.getApiInfoList()) {
+                method.serializerPlan = SerializerPlan.build(serializingConfigurers, method);
+                if (warmUp && method.returnType != null) {
+                    warmUp(method.returnType.toReflectType(), visited);
+                }
+            }
+            if (warmUp) {
+                LOGGER.info("fastjson serializers of {} types are prepared", visited.size());
+            }
+        }
 
-            public FilterFeatures(List<SerializeFilter> filters, List<SerializerFeature> features) {
-                this.filters = filters.toArray(new SerializeFilter[0]);
-                this.features = features.toArray(new SerializerFeature[0]);
+        private static void warmUp(Type type, Set<Class<?>> visited) {
+            if (type instanceof ParameterizedType) {
+                ParameterizedType pt = (ParameterizedType) type;
+                warmUp(pt.getRawType(), visited);
+                for (Type arg : pt.getActualTypeArguments()) {
+                    warmUp(arg, visited);
+                }
+            } else if (type instanceof GenericArrayType) {
+                warmUp(((GenericArrayType) type).getGenericComponentType(), visited);
+            } else if (type instanceof Class) {
+                Class<?> clazz = (Class<?>) type;
+                if (clazz.isArray()) {
+                    warmUp(clazz.getComponentType(), visited);
+                    return;
+                }
+                // JDK中的类型由fastjson内置的序列化器处理，接口和抽象类只有在运行时才能确定实际类型
+                if (clazz.isPrimitive() || clazz.isEnum() || clazz.isInterface() ||
+                    Modifier.isAbstract(clazz.getModifiers()) ||
+                    clazz.getName().startsWith("java.") || clazz.getName().startsWith("javax.") ||
+                    !visited.add(clazz)) {
+                    return;
+                }
+                try {
+                    SerializeConfig.globalInstance.getObjectWriter(clazz);
+                    for (FieldInfo field : TypeUtils.computeGetters(clazz, null)) {
+                        warmUp(field.fieldType, visited);
+                    }
+                } catch (RuntimeException e) {
+                    // 预热失败不影响API加载，序列化器会在首次使用时再次生成
+                    LOGGER.warn("failed to prepare fastjson serializer for " + clazz.getName(), e);
+                }
             }
         }
     }
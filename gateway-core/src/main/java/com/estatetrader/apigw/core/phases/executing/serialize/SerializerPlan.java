@@ -0,0 +1,145 @@
+package com.estatetrader.apigw.core.phases.executing.serialize;
+
+import com.alibaba.fastjson.serializer.SerializeFilter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.estatetrader.apigw.core.models.ApiContext;
+import com.estatetrader.apigw.core.models.ApiMethodCall;
+import com.estatetrader.apigw.core.models.ApiMethodInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.alibaba.fastjson.JSON.DEFAULT_GENERATE_FEATURE;
+
+/**
+ * 某个API的序列化计划，在API加载时预先计算好该API序列化时使用的filters和features
+ *
+ * 1. 结果仅与API定义有关的SerializingConfigurer（参见precomputedFilters/precomputedFeatures）在构建计划时只调用一次，
+ *    其filters被展开为数组，features被合并为fastjson的特性掩码
+ * 2. 结果与请求或返回值相关的SerializingConfigurer仍在每次序列化时调用，并按照原有的顺序与预先计算的filters合并，
+ *    因此序列化结果与每次重新计算完全一致
+ */
+public final class SerializerPlan {
+
+    private static final SerializeFilter[] EMPTY_FILTERS = new SerializeFilter[0];
+
+    /**
+     * 所有的filters均可预先计算时的filters，否则为null
+     */
+    private final SerializeFilter[] filters;
+
+    /**
+     * 存在需要在每次序列化时计算的filters时使用，每一项为预先计算的SerializeFilter[]或者SerializingConfigurer
+     */
+    private final Object[] filterSlots;
+
+    /**
+     * 预先计算的fastjson特性掩码（包括DEFAULT_GENERATE_FEATURE）
+     */
+    private final int features;
+
+    /**
+     * 需要在每次序列化时提供features的configurer
+     */
+    private final SerializingConfigurer[] dynamicFeatureConfigurers;
+
+    private SerializerPlan(SerializeFilter[] filters,
+                           Object[] filterSlots,
+                           int features,
+                           SerializingConfigurer[] dynamicFeatureConfigurers) {
+        this.filters = filters;
+        this.filterSlots = filterSlots;
+        this.features = features;
+        this.dynamicFeatureConfigurers = dynamicFeatureConfigurers;
+    }
+
+    /**
+     * 为指定的API构建序列化计划
+     * @param configurers 所有的序列化配置器（按照执行顺序）
+     * @param method 要进行序列化的API，为null表示非API返回值（例如后端消息）
+     * @return 序列化计划
+     */
+    public static SerializerPlan build(Iterable<SerializingConfigurer> configurers, ApiMethodInfo method) {
+        List<Object> slots = new ArrayList<>();
+        List<SerializeFilter> pending = new ArrayList<>();
+        boolean dynamicFilters = false;
+        int features = DEFAULT_GENERATE_FEATURE;
+        List<SerializingConfigurer> dynamicFeatureConfigurers = new ArrayList<>();
+
+        for (SerializingConfigurer configurer : configurers) {
+            List<SerializeFilter> staticFilters = configurer.precomputedFilters(method);
+            if (staticFilters != null) {
+                pending.addAll(staticFilters);
+            } else {
+                dynamicFilters = true;
+                if (!pending.isEmpty()) {
+                    slots.add(pending.toArray(EMPTY_FILTERS));
+                    pending.clear();
+                }
+                slots.add(configurer);
+            }
+
+            List<SerializerFeature> staticFeatures = configurer.precomputedFeatures(method);
+            if (staticFeatures != null) {
+                for (SerializerFeature feature : staticFeatures) {
+                    features |= feature.getMask();
+                }
+            } else {
+                dynamicFeatureConfigurers.add(configurer);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            slots.add(pending.toArray(EMPTY_FILTERS));
+        }
+
+        SerializingConfigurer[] featureConfigurers = dynamicFeatureConfigurers.toArray(new SerializingConfigurer[0]);
+        if (dynamicFilters) {
+            return new SerializerPlan(null, slots.toArray(), features, featureConfigurers);
+        } else {
+            // 此时所有的filters都已合并为一项
+            SerializeFilter[] filters = slots.isEmpty() ? EMPTY_FILTERS : (SerializeFilter[]) slots.get(0);
+            return new SerializerPlan(filters, null, features, featureConfigurers);
+        }
+    }
+
+    /**
+     * 获取本次序列化使用的filters
+     * @param object 要进行序列化的对象
+     * @param methodCall 当前进行序列化的API
+     * @param context 当前请求上下文
+     * @return serialize filters
+     */
+    public SerializeFilter[] filters(Object object, ApiMethodCall methodCall, ApiContext context) {
+        if (filters != null) {
+            return filters;
+        }
+
+        List<SerializeFilter> result = new ArrayList<>();
+        for (Object slot : filterSlots) {
+            if (slot instanceof SerializeFilter[]) {
+                Collections.addAll(result, (SerializeFilter[]) slot);
+            } else {
+                result.addAll(((SerializingConfigurer) slot).filters(object, methodCall, context));
+            }
+        }
+        return result.toArray(EMPTY_FILTERS);
+    }
+
+    /**
+     * 获取本次序列化使用的fastjson特性掩码
+     * @param methodCall 当前进行序列化的API
+     * @param context 当前请求上下文
+     * @return 特性掩码
+     */
+    public int features(ApiMethodCall methodCall, ApiContext context) {
+        int result = features;
+        for (SerializingConfigurer configurer : dynamicFeatureConfigurers) {
+            for (SerializerFeature feature : configurer.features(methodCall, context)) {
+                result |= feature.getMask();
+            }
+        }
+        return result;
+    }
+}
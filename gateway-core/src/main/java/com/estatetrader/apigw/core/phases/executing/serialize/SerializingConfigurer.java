@@ -5,6 +5,7 @@ import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.estatetrader.apigw.core.extensions.Extension;
 import com.estatetrader.apigw.core.models.ApiContext;
 import com.estatetrader.apigw.core.models.ApiMethodCall;
+import com.estatetrader.apigw.core.models.ApiMethodInfo;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -37,6 +38,28 @@ public interface SerializingConfigurer {
         return Collections.emptyList();
     }
 
+    /**
+     * serialize filters which only depend on the api definition, computed once when the api schema is loaded
+     *
+     * @param method the api to serialize, null for values not returned by any api (backend messages, etc.)
+     * @return serialize filters (FastJson), or null if the filters depend on the request or the object to be
+     * serialized, in which case filters(object, methodCall, context) will be called for each serialization
+     */
+    default List<SerializeFilter> precomputedFilters(ApiMethodInfo method) {
+        return null;
+    }
+
+    /**
+     * serialize features which only depend on the api definition, computed once when the api schema is loaded
+     *
+     * @param method the api to serialize, null for values not returned by any api (backend messages, etc.)
+     * @return serialize features (FastJson), or null if the features depend on the request,
+     * in which case features(methodCall, context) will be called for each serialization
+     */
+    default List<SerializerFeature> precomputedFeatures(ApiMethodInfo method) {
+        return null;
+    }
+
     @Extension
     class DefaultSerializingConfigurer implements SerializingConfigurer {
 
@@ -64,5 +87,15 @@ public interface SerializingConfigurer {
         public List<SerializerFeature> features(ApiMethodCall methodCall, ApiContext context) {
             return FEATURES;
         }
+
+        @Override
+        public List<SerializeFilter> precomputedFilters(ApiMethodInfo method) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<SerializerFeature> precomputedFeatures(ApiMethodInfo method) {
+            return FEATURES;
+        }
     }
 }
@@ -14,6 +14,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Function;
 import java.util.jar.JarFile;
 
@@ -89,34 +91,92 @@ public class ApiParser {
     public List<ApiMethodInfo> parseJars(Function<Class<?>, ServiceInstance> serviceInstanceGetter,
                                          List<String> jarFilePaths,
                                          ClassLoader classLoader) {
+        return parseJars(serviceInstanceGetter, jarFilePaths, classLoader, 1);
+    }
 
-        List<ApiMethodInfo> list = new ArrayList<>();
-        List<String> errors = new LinkedList<>();
-
-        for (String jarFilePath : jarFilePaths) {
+    /**
+     * 解析jar包中的API
+     *
+     * 各个jar包在fork-join线程池中并行解析，解析结果和错误信息均按照jarFilePaths中的顺序合并，与顺序解析的结果一致。
+     * 并行解析时serviceInstanceGetter会被并发调用
+     *
+     * @param serviceInstanceGetter 获取API接口对应的服务实例
+     * @param jarFilePaths 需要解析的jar包
+     * @param classLoader 用于加载jar包中的类，须能够加载所有jar包中的类
+     * @param parallelism 并行解析的线程数，小于等于1表示在当前线程中顺序解析
+     * @return 所有jar包中的API
+     */
+    public List<ApiMethodInfo> parseJars(Function<Class<?>, ServiceInstance> serviceInstanceGetter,
+                                         List<String> jarFilePaths,
+                                         ClassLoader classLoader,
+                                         int parallelism) {
+
+        long start = System.currentTimeMillis();
+        int count = jarFilePaths.size();
+        @SuppressWarnings("unchecked")
+        List<ApiMethodInfo>[] results = new List[count];
+        String[] errors = new String[count];
+
+        if (parallelism <= 1 || count <= 1) {
+            for (int i = 0; i < count; i++) {
+                parseJar(i, jarFilePaths.get(i), classLoader, serviceInstanceGetter, results, errors);
+            }
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, count));
             try {
-                try(JarFile jf = new JarFile(jarFilePath)) {
-                    prepareJarHandlers.forEach(h -> h.prepareJarForParse(jf, jarFilePath));
-                    List<ApiMethodInfo> infoListInJar = new LinkedList<>();
-
-                    parseJarHandlers.forEach(h ->
-                        h.parseApiFromJar(jf, jarFilePath, classLoader, serviceInstanceGetter, infoListInJar));
-                    list.addAll(infoListInJar);
+                List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int index = i;
+                    tasks.add(pool.submit(() ->
+                        parseJar(index, jarFilePaths.get(index), classLoader, serviceInstanceGetter, results, errors)));
                 }
-            } catch (Exception e) {
-                String error = "Failed to load jar " + new File(jarFilePath).getName() + ": " + e.getMessage();
-                logger.error(error, e);
-                errors.add(error);
+                tasks.forEach(ForkJoinTask::join);
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        List<ApiMethodInfo> list = new ArrayList<>();
+        List<String> errorList = new LinkedList<>();
+        for (int i = 0; i < count; i++) {
+            if (errors[i] != null) {
+                errorList.add(errors[i]);
+            } else {
+                list.addAll(results[i]);
             }
         }
 
-        if (!errors.isEmpty()) {
-            throw new IllegalApiDefinitionException(String.join("\n", errors));
+        if (!errorList.isEmpty()) {
+            throw new IllegalApiDefinitionException(String.join("\n", errorList));
         }
 
+        logger.info("parsed {} apis from {} jars in {}ms with parallelism {}",
+            list.size(), count, System.currentTimeMillis() - start, parallelism);
         return list;
     }
 
+    private void parseJar(int index,
+                          String jarFilePath,
+                          ClassLoader classLoader,
+                          Function<Class<?>, ServiceInstance> serviceInstanceGetter,
+                          List<ApiMethodInfo>[] results,
+                          String[] errors) {
+        try {
+            try(JarFile jf = new JarFile(jarFilePath)) {
+                prepareJarHandlers.forEach(h -> h.prepareJarForParse(jf, jarFilePath));
+                List<ApiMethodInfo> infoListInJar = new LinkedList<>();
+
+                parseJarHandlers.forEach(h ->
+                    h.parseApiFromJar(jf, jarFilePath, classLoader, serviceInstanceGetter, infoListInJar));
+                results[index] = infoListInJar;
+            }
+        } catch (Exception e) {
+            String error = "Failed to load jar " + new File(jarFilePath).getName() + ": " + e.getMessage();
+            logger.error(error, e);
+            errors[index] = error;
+        }
+    }
+
     public List<ApiMethodInfo> parseClasses(String jarFile,
                                             Function<Class<?>, ServiceInstance> serviceInstanceGetter,
                                             List<Class<?>> classes) {
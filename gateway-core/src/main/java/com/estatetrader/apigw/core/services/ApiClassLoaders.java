@@ -0,0 +1,148 @@
+package com.estatetrader.apigw.core.services;
+
+import com.alibaba.com.caucho.hessian.io.SerializerFactory;
+import org.apache.dubbo.common.serialize.hessian2.Hessian2SerializerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 热加载API jar包时各代类加载器的管理
+ *
+ * 热加载时API中的类只存在于各代的子类加载器中，而dubbo的hessian2反序列化通过线程上下文类加载器按照名称查找类，
+ * List&lt;Entity&gt;中的元素、map的值以及多态字段等在找不到类时会被反序列化为HashMap。
+ * 因此新的一代发布后，将上下文类加载器为网关类加载器或者某一代类加载器的线程（包括dubbo的客户端和解码线程）
+ * 的上下文类加载器切换为新的一代的类加载器，与未启用热加载时API jar包加入网关类加载器的效果一致。
+ *
+ * 每一代使用各自的类加载器而不是一个固定的委托类加载器，因为JVM会将Class.forName的结果记录在发起加载的类加载器中，
+ * 固定的类加载器在第一次加载之后就无法再返回新的一代中的类。
+ * hessian2的SerializerFactory是全局共享的，并且按照类名缓存了反序列化器，因此每次切换时同时清空其缓存
+ */
+public class ApiClassLoaders {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ApiClassLoaders.class);
+
+    private final ClassLoader base;
+    /**
+     * 尚未关闭的各代的类加载器，按照加载的顺序排列
+     */
+    private final List<ClassLoader> generations = new ArrayList<>();
+    private ClassLoader current;
+
+    /**
+     * @param base 网关本身的类加载器，各代的类加载器均以其为父类加载器
+     */
+    public ApiClassLoaders(ClassLoader base) {
+        this.base = base;
+        this.current = base;
+    }
+
+    /**
+     * 加载新的一代时调用
+     *
+     * @param generation 新的一代的类加载器
+     * @return 在这一代关闭时（关闭其类加载器之前）关闭，将仍然使用这一代的类加载器的线程切换到当前的一代
+     */
+    public synchronized AutoCloseable add(ClassLoader generation) {
+        generations.add(generation);
+        return () -> retire(generation);
+    }
+
+    /**
+     * 新的一代发布后调用，之后dubbo反序列化时使用最近加载的一代中的类
+     */
+    public synchronized void activateLatest() {
+        if (generations.isEmpty()) {
+            throw new IllegalStateException("no api class loader is added");
+        }
+        current = generations.get(generations.size() - 1);
+        switchThreads();
+    }
+
+    /**
+     * @return 当前的一代的类加载器，尚未发布任何一代时为网关的类加载器
+     */
+    public synchronized ClassLoader current() {
+        return current;
+    }
+
+    private synchronized void retire(ClassLoader generation) {
+        // 发布过的一代只会在被替换之后关闭，当前的一代只在网关关闭时关闭，此时无需切换
+        if (generation != current) {
+            // 切换时仍然需要识别出使用这一代的类加载器的线程，因此在切换之后再移除
+            switchThreads();
+        }
+        generations.remove(generation);
+    }
+
+    private void switchThreads() {
+        int switched = 0;
+        for (Thread thread : allThreads()) {
+            ClassLoader loader = thread.getContextClassLoader();
+            if (loader != current && (loader == base || generations.contains(loader))) {
+                thread.setContextClassLoader(current);
+                switched++;
+            }
+        }
+        HessianCaches.clear();
+        LOGGER.info("context class loader of {} threads is switched to {}", switched, current);
+    }
+
+    private static Thread[] allThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] threads = new Thread[root.activeCount() * 2 + 16];
+        int count;
+        while ((count = root.enumerate(threads, true)) == threads.length) {
+            threads = new Thread[threads.length * 2];
+        }
+        return Arrays.copyOf(threads, count);
+    }
+
+    /**
+     * dubbo中hessian2的全局SerializerFactory的缓存，这些缓存以类或者类名为key，会引用旧的一代中的类
+     */
+    private static class HessianCaches {
+        private static final String[] FIELD_NAMES = {
+            "_cachedSerializerMap", "_cachedDeserializerMap", "_cachedTypeDeserializerMap"
+        };
+        private static final List<Field> FIELDS = new ArrayList<>();
+
+        static {
+            for (String name : FIELD_NAMES) {
+                try {
+                    Field field = SerializerFactory.class.getDeclaredField(name);
+                    field.setAccessible(true);
+                    FIELDS.add(field);
+                } catch (NoSuchFieldException e) {
+                    LOGGER.warn("hessian serializer cache {} is not found, it will not be cleared on api reloading",
+                        name);
+                }
+            }
+        }
+
+        static void clear() {
+            SerializerFactory factory = Hessian2SerializerFactory.SERIALIZER_FACTORY;
+            for (Field field : FIELDS) {
+                try {
+                    Object cache = field.get(factory);
+                    if (cache instanceof Map) {
+                        // 与SerializerFactory访问缓存时一致，在缓存上同步
+                        synchronized (cache) {
+                            ((Map<?, ?>) cache).clear();
+                        }
+                    }
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+}
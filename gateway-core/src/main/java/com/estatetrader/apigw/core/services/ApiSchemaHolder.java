@@ -0,0 +1,130 @@
+package com.estatetrader.apigw.core.services;
+
+import com.estatetrader.apigw.core.models.ApiSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 持有当前生效的ApiSchema，支持在不中断请求的情况下替换为新的ApiSchema
+ *
+ * 每个ApiSchema及其占用的资源（类加载器、dubbo引用等）组成一代，请求开始时通过acquire获取当前代并在结束时释放。
+ * 替换后新的请求使用新的一代，正在处理的请求继续使用旧的一代，旧的一代在所有请求释放后关闭其资源
+ */
+public class ApiSchemaHolder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ApiSchemaHolder.class);
+
+    private final AtomicInteger liveGenerations = new AtomicInteger();
+    private volatile Generation current;
+
+    public ApiSchemaHolder(ApiSchema schema, List<AutoCloseable> resources) {
+        this.current = new Generation(1, schema, resources);
+    }
+
+    /**
+     * @return 当前生效的ApiSchema，仅用于不需要等待旧的一代释放的场景（例如文档）
+     */
+    public ApiSchema current() {
+        return current.schema;
+    }
+
+    public int currentVersion() {
+        return current.version;
+    }
+
+    /**
+     * @return 尚未关闭的代的数量，包括当前的一代
+     */
+    public int liveGenerations() {
+        return liveGenerations.get();
+    }
+
+    /**
+     * 获取当前的一代，使用完毕后须调用其release方法
+     */
+    public Generation acquire() {
+        while (true) {
+            Generation g = current;
+            g.leases.incrementAndGet();
+            if (g == current) {
+                return g;
+            }
+            // 获取的同时发生了替换，旧的一代可能已经关闭，重新获取
+            g.release();
+        }
+    }
+
+    /**
+     * 使用新的ApiSchema替换当前的一代
+     *
+     * @param schema 新的ApiSchema，须已经完成解析和校验
+     * @param resources 新的一代占用的资源，在其被替换并释放后关闭
+     * @return 新的一代
+     */
+    public synchronized Generation publish(ApiSchema schema, List<AutoCloseable> resources) {
+        Generation old = current;
+        Generation g = new Generation(old.version + 1, schema, resources);
+        current = g;
+        old.retire();
+        return g;
+    }
+
+    public final class Generation {
+        public final int version;
+        public final ApiSchema schema;
+
+        private final List<AutoCloseable> resources;
+        private final AtomicInteger leases = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean retired;
+
+        private Generation(int version, ApiSchema schema, List<AutoCloseable> resources) {
+            this.version = version;
+            this.schema = schema;
+            this.resources = new ArrayList<>(resources);
+            liveGenerations.incrementAndGet();
+        }
+
+        public void release() {
+            if (leases.decrementAndGet() == 0 && retired) {
+                tryClose();
+            }
+        }
+
+        public boolean isClosed() {
+            return closed.get();
+        }
+
+        private void retire() {
+            retired = true;
+            if (leases.get() == 0) {
+                tryClose();
+            }
+        }
+
+        private void tryClose() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            liveGenerations.decrementAndGet();
+            // 后创建的资源可能依赖先创建的资源（例如dubbo引用依赖类加载器），按照相反的顺序关闭
+            for (int i = resources.size() - 1; i >= 0; i--) {
+                closeQuietly(resources.get(i));
+            }
+            LOGGER.info("api schema generation {} is retired", version);
+        }
+
+        private void closeQuietly(AutoCloseable resource) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                LOGGER.warn("failed to close the resource {} of api schema generation {}", resource, version, e);
+            }
+        }
+    }
+}
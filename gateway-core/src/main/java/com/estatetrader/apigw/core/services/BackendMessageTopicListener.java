@@ -1,5 +1,7 @@
 package com.estatetrader.apigw.core.services;
 
+import com.estatetrader.apigw.core.contracts.MetricsSource;
+import com.estatetrader.apigw.core.utils.LongBloomFilter;
 import com.estatetrader.gateway.backendmsg.BackendMessageConditionMatcher;
 import com.estatetrader.common.utils.ServiceInfo;
 import com.estatetrader.common.utils.redis.RedisPool;
@@ -14,26 +16,143 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-public class BackendMessageTopicListener implements AutoCloseable {
+/**
+ * 后台消息的拉取服务
+ *
+ * 拉取在独立的线程池中执行，线程数和排队数量都有上限，线程池饱和时本次请求不再拉取，消息留在队列中等待下一次请求。
+ * 每次拉取都有截止时间，超时后立即以空结果完成，不会拖慢$backend-message节点；
+ * 截止时间之前尚未开始的拉取不再执行，只有截止时间时正在进行的拉取取出的消息会被丢弃（计入lateMessages）
+ *
+ * 绝大多数用户和设备没有待发送的消息，因此每个主题在本地用布隆过滤器记录最近确认过没有消息的用户/设备，
+ * 在emptySubjectTtlMillis内不再向redis确认。向redis确认是否有消息同样在线程池中执行，受截止时间约束。过滤器分为两代，每半个有效期（或插入的数量达到容量时）轮换一次，
+ * 因此新到达的消息最多推迟emptySubjectTtlMillis被拉取，误判（将有消息的用户/设备当作没有消息）的概率不超过emptySubjectFpp，
+ * 误判同样只会推迟消息的拉取
+ */
+public class BackendMessageTopicListener implements MetricsSource, AutoCloseable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BackendMessageTopicListener.class);
 
     private static final int MAX_POLL_LIMIT = 100;
 
-    private final RedisTopicListener<String, QueuedBackendMessage> listenerForUserId;
-    private final RedisTopicListener<String, QueuedBackendMessage> listenerForDeviceId;
-    private final Executor executor;
+    /**
+     * 消息主题，即本类所使用的RedisTopicListener的功能
+     */
+    public interface Topic extends AutoCloseable {
+        void start();
+
+        boolean isTopicEmpty(long subjectId);
+
+        Map<String, QueuedBackendMessage> poll(long subjectId,
+                                               Predicate<Map.Entry<String, QueuedBackendMessage>> filter,
+                                               int limit);
+    }
+
+    private final Topic topicForUserId;
+    private final Topic topicForDeviceId;
+    private final int pollerThreads;
+    private final int pollerQueueCapacity;
+    private final long pollTimeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor timer;
+    private final EmptySubjects emptyUsers = new EmptySubjects();
+    private final EmptySubjects emptyDevices = new EmptySubjects();
+
+    private volatile long emptySubjectTtlMillis = 3000;
+    private volatile int emptySubjectCapacity = 200_000;
+    private volatile double emptySubjectFpp = 0.001;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder skippedAfterDeadline = new LongAdder();
+    private final LongAdder lateMessages = new LongAdder();
+    private final LongAdder emptyChecks = new LongAdder();
+    private final LongAdder emptyConfirmed = new LongAdder();
+    private final LongAdder emptySkipped = new LongAdder();
+    private final LongAdder emptyRotations = new LongAdder();
+    private final LongAdder totalPollNanos = new LongAdder();
+    private final AtomicLong maxPollNanos = new AtomicLong();
 
     public BackendMessageTopicListener(RedisPool redisPool) {
+        this(redisPool, 5, 1000, 500);
+    }
+
+    /**
+     * @param redisPool 消息所在的redis
+     * @param pollerThreads 拉取线程的数量
+     * @param pollerQueueCapacity 等待拉取线程的最大排队数量
+     * @param pollTimeoutMillis 每次拉取的截止时间（毫秒），0表示不限制
+     */
+    public BackendMessageTopicListener(RedisPool redisPool,
+                                       int pollerThreads,
+                                       int pollerQueueCapacity,
+                                       long pollTimeoutMillis) {
+        this(createTopics(redisPool), pollerThreads, pollerQueueCapacity, pollTimeoutMillis);
+    }
+
+    private BackendMessageTopicListener(Topic[] topics, int pollerThreads, int pollerQueueCapacity, long pollTimeoutMillis) {
+        this(topics[0], topics[1], pollerThreads, pollerQueueCapacity, pollTimeoutMillis);
+    }
+
+    /**
+     * @param topicForUserId 发给用户的消息
+     * @param topicForDeviceId 发给设备的消息
+     * @param pollerThreads 拉取线程的数量
+     * @param pollerQueueCapacity 等待拉取线程的最大排队数量
+     * @param pollTimeoutMillis 每次拉取的截止时间（毫秒），0表示不限制
+     */
+    public BackendMessageTopicListener(Topic topicForUserId,
+                                       Topic topicForDeviceId,
+                                       int pollerThreads,
+                                       int pollerQueueCapacity,
+                                       long pollTimeoutMillis) {
+        if (pollerThreads <= 0) {
+            throw new IllegalArgumentException("pollerThreads must be positive");
+        }
+        if (pollerQueueCapacity <= 0) {
+            throw new IllegalArgumentException("pollerQueueCapacity must be positive");
+        }
+        if (pollTimeoutMillis < 0) {
+            throw new IllegalArgumentException("pollTimeoutMillis must not be negative");
+        }
+
+        this.topicForUserId = topicForUserId;
+        this.topicForDeviceId = topicForDeviceId;
+        this.pollerThreads = pollerThreads;
+        this.pollerQueueCapacity = pollerQueueCapacity;
+        this.pollTimeoutMillis = pollTimeoutMillis;
+        this.executor = new ThreadPoolExecutor(pollerThreads, pollerThreads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(pollerQueueCapacity), r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                t.setName("backend-message-poller");
+                return t;
+            });
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("backend-message-poll-timer");
+            return t;
+        });
+        // 绝大多数拉取在截止时间之前完成，及时移除取消的定时任务
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    private static Topic[] createTopics(RedisPool redisPool) {
         RedisValueTypes defaultValueTypes = new RedisSerializableValueTypes(new HessionSerializer());
 
         RedisQueueService topicService = ServiceInfo.withServiceName(
@@ -41,23 +160,71 @@ public class BackendMessageTopicListener implements AutoCloseable {
             () -> new RedisQueueService(redisPool, defaultValueTypes)
         );
 
-        this.listenerForUserId = topicService.topicListener(
-            "backend-messages-for-user-id", QueuedBackendMessage.class
-        );
-        this.listenerForDeviceId = topicService.topicListener(
-            "backend-messages-for-device-id", QueuedBackendMessage.class
-        );
-        this.executor = Executors.newFixedThreadPool(5, r -> {
-            Thread t = new Thread(r);
-            t.setDaemon(true);
-            t.setName("backend-message-poller");
-            return t;
-        });
+        return new Topic[]{
+            redisTopic(topicService.topicListener("backend-messages-for-user-id", QueuedBackendMessage.class)),
+            redisTopic(topicService.topicListener("backend-messages-for-device-id", QueuedBackendMessage.class))
+        };
+    }
+
+    private static Topic redisTopic(RedisTopicListener<String, QueuedBackendMessage> listener) {
+        return new Topic() {
+            @Override
+            public void start() {
+                listener.start();
+            }
+
+            @Override
+            public boolean isTopicEmpty(long subjectId) {
+                return listener.isTopicEmpty(subjectId);
+            }
+
+            @Override
+            public Map<String, QueuedBackendMessage> poll(long subjectId,
+                                                          Predicate<Map.Entry<String, QueuedBackendMessage>> filter,
+                                                          int limit) {
+                return listener.poll(subjectId, filter, limit);
+            }
+
+            @Override
+            public void close() throws Exception {
+                listener.close();
+            }
+        };
+    }
+
+    /**
+     * 确认没有消息的用户/设备在多长时间（毫秒）内不再向redis确认，0表示每次都向redis确认
+     */
+    public void setEmptySubjectTtlMillis(long emptySubjectTtlMillis) {
+        if (emptySubjectTtlMillis < 0) {
+            throw new IllegalArgumentException("emptySubjectTtlMillis must not be negative");
+        }
+        this.emptySubjectTtlMillis = emptySubjectTtlMillis;
+    }
+
+    /**
+     * 每一代过滤器最多记录的用户/设备数量，超过后提前轮换以保证误判率
+     */
+    public void setEmptySubjectCapacity(int emptySubjectCapacity) {
+        if (emptySubjectCapacity <= 0) {
+            throw new IllegalArgumentException("emptySubjectCapacity must be positive");
+        }
+        this.emptySubjectCapacity = emptySubjectCapacity;
+    }
+
+    /**
+     * 过滤器的误判率上限
+     */
+    public void setEmptySubjectFpp(double emptySubjectFpp) {
+        if (!(emptySubjectFpp > 0 && emptySubjectFpp < 1)) {
+            throw new IllegalArgumentException("emptySubjectFpp must be between 0 and 1");
+        }
+        this.emptySubjectFpp = emptySubjectFpp;
     }
 
     public void start() {
-        listenerForUserId.start();
-        listenerForDeviceId.start();
+        topicForUserId.start();
+        topicForDeviceId.start();
     }
 
     /**
@@ -65,58 +232,145 @@ public class BackendMessageTopicListener implements AutoCloseable {
      * @param userId 不为空表示需要拉取指定userId的消息
      * @param deviceId 不为空表示同时也需要拉取指定deviceId的消息
      * @param matcher 如果要读取的消息指定了condition，则使用此谓词来判断是否可以读取此消息，返回true表示可以读取此消息
-     * @return 发给指定用户/设备的消息列表
+     * @return 发给指定用户/设备的消息列表，最迟在截止时间完成，不会以异常结束；
+     * 不需要拉取（userId和deviceId均为空、最近确认过没有消息或者线程池已饱和）时返回null
      */
     public CompletableFuture<List<PolledBackendMessage>> poll(Long userId, Long deviceId, BackendMessageConditionMatcher matcher) {
-        CompletableFuture<List<PolledBackendMessage>> forUid = doAsyncPoll(listenerForUserId, userId, matcher);
-        CompletableFuture<List<PolledBackendMessage>> forDid = doAsyncPoll(listenerForDeviceId, deviceId, matcher);
-        if (forUid != null) {
-            if (forDid != null) {
-                return CompletableFuture.allOf().thenApply(v -> {
-                    List<PolledBackendMessage> result = new ArrayList<>();
-                    try {
-                        result.addAll(forUid.get());
-                    } catch (Exception e) {
-                        LOGGER.error("failed to poll the backend messages for user {}", userId, e);
-                    }
-                    try {
-                        result.addAll(forDid.get());
-                    } catch (Exception e) {
-                        LOGGER.error("failed to poll the backend messages for device {}", deviceId, e);
-                    }
-                    return result;
-                });
-            } else {
-                return forUid;
-            }
-        } else if (forDid != null) {
-            return forDid;
-        } else {
-            return null;
+        CompletableFuture<List<PolledBackendMessage>> forUid = doAsyncPoll(topicForUserId, emptyUsers, "user", userId, matcher);
+        CompletableFuture<List<PolledBackendMessage>> forDid = doAsyncPoll(topicForDeviceId, emptyDevices, "device", deviceId, matcher);
+        if (forUid != null && forDid != null) {
+            // 在后完成的一方的线程中合并，不阻塞任何线程
+            return forUid.thenCombine(forDid, (a, b) -> {
+                List<PolledBackendMessage> result = new ArrayList<>(a.size() + b.size());
+                result.addAll(a);
+                result.addAll(b);
+                return result;
+            });
         }
+        return forUid != null ? forUid : forDid;
     }
 
     @Override
     public void close() throws Exception {
-        listenerForUserId.close();
-        listenerForDeviceId.close();
+        executor.shutdown();
+        timer.shutdown();
+        topicForUserId.close();
+        topicForDeviceId.close();
     }
 
-    private CompletableFuture<List<PolledBackendMessage>> doAsyncPoll(RedisTopicListener<String, QueuedBackendMessage> receiver,
+    @Override
+    public String metricsName() {
+        return "backend-message-poller";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        long completedCount = completed.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("threads", pollerThreads);
+        metrics.put("queueCapacity", pollerQueueCapacity);
+        metrics.put("pollTimeoutMillis", pollTimeoutMillis);
+        metrics.put("queued", executor.getQueue().size());
+        metrics.put("active", executor.getActiveCount());
+        metrics.put("submitted", submitted.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("completed", completedCount);
+        metrics.put("failed", failed.sum());
+        metrics.put("timedOut", timedOut.sum());
+        metrics.put("skippedAfterDeadline", skippedAfterDeadline.sum());
+        metrics.put("lateMessages", lateMessages.sum());
+        metrics.put("avgPollMillis", completedCount == 0 ? 0.0 : totalPollNanos.sum() / 1e6 / completedCount);
+        metrics.put("maxPollMillis", maxPollNanos.get() / 1e6);
+        metrics.put("emptySubjectTtlMillis", emptySubjectTtlMillis);
+        metrics.put("emptySubjectFpp", emptySubjectFpp);
+        metrics.put("emptyChecks", emptyChecks.sum());
+        metrics.put("emptyConfirmed", emptyConfirmed.sum());
+        metrics.put("emptySkipped", emptySkipped.sum());
+        metrics.put("emptyRotations", emptyRotations.sum());
+        return metrics;
+    }
+
+    private CompletableFuture<List<PolledBackendMessage>> doAsyncPoll(Topic topic,
+                                                                      EmptySubjects emptySubjects,
+                                                                      String subject,
                                                                       Long subjectId,
                                                                       BackendMessageConditionMatcher matcher) {
-        if (subjectId == null || receiver.isTopicEmpty(subjectId)) {
+        if (subjectId == null) {
+            return null;
+        }
+        if (emptySubjects.isKnownEmpty(subjectId)) {
+            emptySkipped.increment();
             return null;
-        } else {
-            return CompletableFuture.supplyAsync(() -> doPoll(receiver, subjectId, matcher), executor);
+        }
+
+        CompletableFuture<List<PolledBackendMessage>> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> runPoll(topic, emptySubjects, subject, subjectId, matcher, result));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            LOGGER.warn("backend message poller is saturated, polling for {} {} is skipped", subject, subjectId);
+            return null;
+        }
+        submitted.increment();
+
+        if (pollTimeoutMillis > 0) {
+            ScheduledFuture<?> timeout = timer.schedule(() -> {
+                if (result.complete(Collections.emptyList())) {
+                    timedOut.increment();
+                    LOGGER.warn("polling backend messages for {} {} timed out after {}ms",
+                        subject, subjectId, pollTimeoutMillis);
+                }
+            }, pollTimeoutMillis, TimeUnit.MILLISECONDS);
+            result.whenComplete((list, throwable) -> timeout.cancel(false));
+        }
+        return result;
+    }
+
+    private void runPoll(Topic topic,
+                         EmptySubjects emptySubjects,
+                         String subject,
+                         long subjectId,
+                         BackendMessageConditionMatcher matcher,
+                         CompletableFuture<List<PolledBackendMessage>> result) {
+        if (result.isDone()) {
+            // 已经超过截止时间，不再取出消息，消息留在队列中等待下一次请求
+            skippedAfterDeadline.increment();
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<PolledBackendMessage> messages;
+        try {
+            emptyChecks.increment();
+            if (topic.isTopicEmpty(subjectId)) {
+                emptyConfirmed.increment();
+                emptySubjects.markEmpty(subjectId);
+                messages = Collections.emptyList();
+            } else {
+                messages = doPoll(topic, subjectId, matcher);
+            }
+        } catch (Exception e) {
+            failed.increment();
+            LOGGER.error("failed to poll the backend messages for {} {}", subject, subjectId, e);
+            messages = Collections.emptyList();
+        }
+        long elapsed = System.nanoTime() - start;
+        completed.increment();
+        totalPollNanos.add(elapsed);
+        maxPollNanos.accumulateAndGet(elapsed, Math::max);
+
+        if (!result.complete(messages) && !messages.isEmpty()) {
+            lateMessages.add(messages.size());
+            LOGGER.warn("{} backend messages for {} {} were polled after the deadline and dropped",
+                messages.size(), subject, subjectId);
         }
     }
 
-    private List<PolledBackendMessage> doPoll(RedisTopicListener<String, QueuedBackendMessage> receiver,
+    private List<PolledBackendMessage> doPoll(Topic topic,
                                               long subjectId,
                                               BackendMessageConditionMatcher matcher) {
         long now = System.currentTimeMillis();
-        return receiver.poll(subjectId, filterMessage(matcher), MAX_POLL_LIMIT)
+        return topic.poll(subjectId, filterMessage(matcher), MAX_POLL_LIMIT)
             .values()
             .stream()
             .filter(Objects::nonNull)
@@ -139,4 +393,70 @@ public class BackendMessageTopicListener implements AutoCloseable {
             return message == null || matcher.match(message.condition);
         };
     }
+
+    /**
+     * 最近确认过没有消息的用户/设备
+     */
+    private final class EmptySubjects {
+        private volatile Generation current;
+        private volatile Generation previous;
+
+        boolean isKnownEmpty(long subjectId) {
+            if (emptySubjectTtlMillis == 0) {
+                return false;
+            }
+            Generation c = currentGeneration();
+            if (c.filter.mightContain(subjectId)) {
+                return true;
+            }
+            // 上一代创建满一个有效期后不再使用，记录的用户/设备最多保留emptySubjectTtlMillis
+            Generation p = previous;
+            return p != null && System.currentTimeMillis() - p.createdAt < emptySubjectTtlMillis &&
+                p.filter.mightContain(subjectId);
+        }
+
+        void markEmpty(long subjectId) {
+            if (emptySubjectTtlMillis == 0) {
+                return;
+            }
+            Generation c = currentGeneration();
+            c.filter.put(subjectId);
+            if (c.insertions.incrementAndGet() >= c.capacity) {
+                rotate(c);
+            }
+        }
+
+        private Generation currentGeneration() {
+            Generation c = current;
+            if (c == null || System.currentTimeMillis() - c.createdAt >= emptySubjectTtlMillis / 2) {
+                c = rotate(c);
+            }
+            return c;
+        }
+
+        private synchronized Generation rotate(Generation expected) {
+            Generation c = current;
+            if (c != expected) {
+                // 已经被其他线程轮换
+                return c;
+            }
+            previous = c;
+            current = c = new Generation(emptySubjectCapacity, emptySubjectFpp);
+            emptyRotations.increment();
+            return c;
+        }
+    }
+
+    private static final class Generation {
+        final LongBloomFilter filter;
+        final int capacity;
+        final long createdAt = System.currentTimeMillis();
+        final AtomicInteger insertions = new AtomicInteger();
+
+        Generation(int capacity, double fpp) {
+            // 查询时最多同时查询两代，每一代各占一半的误判率
+            this.filter = new LongBloomFilter(capacity, fpp / 2);
+            this.capacity = capacity;
+        }
+    }
 }
@@ -0,0 +1,281 @@
+package com.estatetrader.apigw.core.utils;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 有界的多生产者单消费者环形队列，用于将日志的序列化和输出从请求线程中移出
+ *
+ * 1. 生产者通过CAS领取槽位后写入元素，消费者线程按照领取的顺序批量取出元素并交给sink处理，
+ *    因此同一个生产者线程提交的元素总是按提交顺序被处理
+ * 2. 队列已满时按照溢出策略处理：DROP立即丢弃，BLOCK最多等待一段时间后丢弃，被丢弃的元素都会被计数
+ * 3. 关闭时会等待队列中已有的元素全部处理完毕
+ *
+ * @param <T> 元素类型
+ */
+public class AsyncLogQueue<T> implements Closeable {
+
+    /**
+     * 队列已满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /**
+         * 立即丢弃新元素
+         */
+        DROP,
+        /**
+         * 等待消费者腾出空间，超时后丢弃新元素
+         */
+        BLOCK
+    }
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+    private final AtomicReferenceArray<T> slots;
+    private final int capacity;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final int batchSize;
+    private final Consumer<? super T> sink;
+    private final Thread consumer;
+
+    /**
+     * 下一个将被生产者领取的槽位序号
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * 下一个将被消费者取出的槽位序号，仅由消费者线程修改
+     */
+    private volatile long head;
+
+    private volatile boolean closed;
+    private volatile boolean consumerParked;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * @param name 消费者线程的名称
+     * @param capacity 队列容量，会被调整为2的幂
+     * @param overflowPolicy 队列已满时的处理策略
+     * @param blockTimeoutMillis 使用BLOCK策略时最多等待的时间（毫秒）
+     * @param batchSize 消费者每批最多取出的元素数量
+     * @param sink 元素的处理逻辑，在消费者线程中执行
+     */
+    public AsyncLogQueue(String name,
+                         int capacity,
+                         OverflowPolicy overflowPolicy,
+                         long blockTimeoutMillis,
+                         int batchSize,
+                         Consumer<? super T> sink) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(blockTimeoutMillis, 0));
+        this.batchSize = batchSize;
+        this.sink = sink;
+
+        this.consumer = new Thread(this::consume, name);
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * 提交一个元素
+     *
+     * @param item 要提交的元素，不能为null
+     * @return 是否被队列接受，队列已满或已关闭时返回false，此时元素被计为丢弃
+     */
+    public boolean offer(T item) {
+        if (item == null) {
+            throw new NullPointerException("item");
+        }
+
+        boolean waiting = false;
+        long deadline = 0;
+        while (!closed) {
+            long t = tail.get();
+            if (t - head >= capacity) {
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    break;
+                }
+
+                long now = System.nanoTime();
+                if (!waiting) {
+                    waiting = true;
+                    deadline = now + blockTimeoutNanos;
+                } else if (now - deadline >= 0) {
+                    break;
+                }
+                LockSupport.unpark(consumer);
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                continue;
+            }
+
+            if (tail.compareAndSet(t, t + 1)) {
+                slots.lazySet((int) t & mask, item);
+                accepted.increment();
+                if (consumerParked) {
+                    LockSupport.unpark(consumer);
+                }
+                return true;
+            }
+        }
+
+        dropped.increment();
+        return false;
+    }
+
+    private void consume() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (true) {
+            if (drain(batch) > 0) {
+                continue;
+            }
+
+            if (closed && tail.get() == head) {
+                return;
+            }
+
+            consumerParked = true;
+            if (tail.get() == head && !closed) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            } else {
+                // 槽位已被领取但生产者尚未写入元素
+                Thread.yield();
+            }
+            consumerParked = false;
+        }
+    }
+
+    private int drain(List<T> batch) {
+        long h = head;
+        while (batch.size() < batchSize) {
+            int index = (int) h & mask;
+            T item = slots.get(index);
+            if (item == null) {
+                break;
+            }
+            slots.lazySet(index, null);
+            batch.add(item);
+            h++;
+        }
+
+        int n = batch.size();
+        if (n == 0) {
+            return 0;
+        }
+
+        // 先释放槽位，使生产者在sink处理期间可以继续提交
+        head = h;
+        batches.increment();
+        for (T item : batch) {
+            try {
+                sink.accept(item);
+                written.increment();
+            } catch (Throwable e) {
+                failed.increment();
+            }
+        }
+        batch.clear();
+        return n;
+    }
+
+    /**
+     * 当前队列中等待处理的元素数量
+     * @return 元素数量
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * @return 被队列接受的元素数量
+     */
+    public long accepted() {
+        return accepted.sum();
+    }
+
+    /**
+     * @return 由于队列已满或已关闭而被丢弃的元素数量
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return 已被sink成功处理的元素数量
+     */
+    public long written() {
+        return written.sum();
+    }
+
+    /**
+     * @return sink处理失败的元素数量
+     */
+    public long failed() {
+        return failed.sum();
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("capacity", capacity);
+        metrics.put("overflowPolicy", overflowPolicy.name());
+        metrics.put("size", size());
+        metrics.put("accepted", accepted());
+        metrics.put("dropped", dropped());
+        metrics.put("written", written());
+        metrics.put("failed", failed());
+        metrics.put("batches", batches.sum());
+        return metrics;
+    }
+
+    /**
+     * 停止接受新的元素，并等待队列中已有的元素处理完毕
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (!consumer.isAlive()) {
+            // 处理在消费者退出前一刻被提交的元素
+            List<T> batch = new ArrayList<>();
+            while (drain(batch) > 0) {
+                // continue
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.estatetrader.apigw.core.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 隔离舱，限制同时进行的调用数量，达到上限时立即拒绝新的调用而不是排队等待，
+ * 避免一个响应缓慢的服务占满网关的资源从而影响其他服务
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile int maxConcurrent;
+    private volatile int peak;
+
+    /**
+     * @param name 隔离舱的名称，用于指标输出
+     * @param maxConcurrent 同时进行的调用数量上限，须大于0
+     */
+    public Bulkhead(String name, int maxConcurrent) {
+        this.name = name;
+        setMaxConcurrent(maxConcurrent);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * 调整上限，已经进行中的调用不受影响
+     */
+    public void setMaxConcurrent(int maxConcurrent) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 尝试开始一次调用，成功时须在调用结束后调用release
+     *
+     * @return 是否允许此次调用
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxConcurrent) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.increment();
+                if (current + 1 > peak) {
+                    peak = current + 1;
+                }
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("maxConcurrent", maxConcurrent);
+        metrics.put("inFlight", inFlight.get());
+        metrics.put("peak", peak);
+        metrics.put("accepted", accepted.sum());
+        metrics.put("rejected", rejected.sum());
+        return metrics;
+    }
+}
@@ -0,0 +1,227 @@
+package com.estatetrader.apigw.core.utils;
+
+import com.estatetrader.util.IpAddress;
+
+/**
+ * 用于判断IP地址是否属于一组网段（CIDR）的压缩二叉前缀树（Patricia trie）
+ *
+ * 1. IPv4和IPv6网段统一使用128位表示（参见IpAddress），IPv4网段a.b.c.d/n被视为::ffff:a.b.c.d/(96+n)
+ * 2. 每个节点保存一段完整的前缀，只有一个子节点的路径被压缩，因此查找最多访问128层，与网段的数量无关
+ * 3. 构建完成后不可变，可以在多个线程之间共享，配置变化时应整体替换
+ */
+public final class CidrTrie {
+
+    public static final CidrTrie EMPTY = new CidrTrie(null, 0);
+
+    private static final int ADDRESS_BITS = 128;
+    private static final int IPV4_MAPPED_BITS = 96;
+
+    private final Node root;
+    private final int size;
+
+    private CidrTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 判断IP地址是否属于任意一个网段
+     * @param address 已解析的IP地址，为null时返回false
+     * @return 是否属于某个网段
+     */
+    public boolean contains(IpAddress address) {
+        if (address == null) {
+            return false;
+        }
+        long high = address.high();
+        long low = address.low();
+        Node node = root;
+        while (node != null) {
+            if ((high & node.maskHigh) != node.high || (low & node.maskLow) != node.low) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+            node = bitAt(high, low, node.length) == 0 ? node.zero : node.one;
+        }
+        return false;
+    }
+
+    /**
+     * @return 网段的数量（重复添加的网段只计算一次）
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int bitAt(long high, long low, int index) {
+        return index < 64 ? (int) (high >>> (63 - index)) & 1 : (int) (low >>> (127 - index)) & 1;
+    }
+
+    private static long maskHigh(int length) {
+        return length == 0 ? 0 : length >= 64 ? -1L : -1L << (64 - length);
+    }
+
+    private static long maskLow(int length) {
+        return length <= 64 ? 0 : length == 128 ? -1L : -1L << (128 - length);
+    }
+
+    private static int commonPrefixLength(long high1, long low1, long high2, long low2) {
+        long x = high1 ^ high2;
+        return x != 0 ? Long.numberOfLeadingZeros(x) : 64 + Long.numberOfLeadingZeros(low1 ^ low2);
+    }
+
+    private static final class Node {
+        final long high;
+        final long low;
+        final long maskHigh;
+        final long maskLow;
+        final int length;
+        /**
+         * 本节点的前缀是否为添加的网段，否则仅为分支节点
+         */
+        boolean terminal;
+        Node zero;
+        Node one;
+
+        Node(long high, long low, int length, boolean terminal) {
+            this.maskHigh = maskHigh(length);
+            this.maskLow = maskLow(length);
+            this.high = high & maskHigh;
+            this.low = low & maskLow;
+            this.length = length;
+            this.terminal = terminal;
+        }
+
+        void setChild(Node child) {
+            if (bitAt(child.high, child.low, length) == 0) {
+                zero = child;
+            } else {
+                one = child;
+            }
+        }
+    }
+
+    public static final class Builder {
+        private Node root;
+        private int size;
+
+        private Builder() {
+        }
+
+        /**
+         * 添加一个网段或者单个IP地址
+         * @param cidr 形如10.0.0.0/8、fd00::/8的网段，或者单个IPv4/IPv6地址
+         * @return 是否添加成功，格式不合法时返回false
+         */
+        public boolean add(String cidr) {
+            if (cidr == null) {
+                return false;
+            }
+            String text = cidr.trim();
+            int slash = text.indexOf('/');
+            IpAddress address = IpAddress.parse(slash < 0 ? text : text.substring(0, slash));
+            if (address == null) {
+                return false;
+            }
+
+            int length;
+            if (slash < 0) {
+                length = ADDRESS_BITS;
+            } else {
+                String bits = text.substring(slash + 1);
+                if (bits.isEmpty() || bits.length() > 3 || !bits.chars().allMatch(Character::isDigit)) {
+                    return false;
+                }
+                length = Integer.parseInt(bits);
+                if (text.indexOf(':') < 0) {
+                    // 点分十进制表示的IPv4网段
+                    if (length > 32) {
+                        return false;
+                    }
+                    length += IPV4_MAPPED_BITS;
+                } else if (length > ADDRESS_BITS) {
+                    return false;
+                }
+            }
+
+            add(address, length);
+            return true;
+        }
+
+        /**
+         * 添加一个网段
+         * @param address 网段的地址，前缀之后的位被忽略
+         * @param length 前缀的长度（按照128位计算）
+         * @return this
+         */
+        public Builder add(IpAddress address, int length) {
+            if (length < 0 || length > ADDRESS_BITS) {
+                throw new IllegalArgumentException("invalid prefix length " + length);
+            }
+            insert(address.high(), address.low(), length);
+            return this;
+        }
+
+        private void insert(long high, long low, int length) {
+            if (root == null) {
+                root = new Node(high, low, length, true);
+                size++;
+                return;
+            }
+
+            Node parent = null;
+            Node node = root;
+            while (true) {
+                int common = Math.min(Math.min(length, node.length),
+                    commonPrefixLength(high, low, node.high, node.low));
+
+                if (common == node.length) {
+                    if (common == length) {
+                        if (!node.terminal) {
+                            node.terminal = true;
+                            size++;
+                        }
+                        return;
+                    }
+                    Node child = bitAt(high, low, node.length) == 0 ? node.zero : node.one;
+                    if (child == null) {
+                        node.setChild(new Node(high, low, length, true));
+                        size++;
+                        return;
+                    }
+                    parent = node;
+                    node = child;
+                    continue;
+                }
+
+                // 新的前缀与当前节点在common位之后分叉（或者新的前缀是当前节点的前缀），插入一个分支节点
+                Node branch = new Node(high, low, common, common == length);
+                branch.setChild(node);
+                if (common < length) {
+                    branch.setChild(new Node(high, low, length, true));
+                }
+                if (parent == null) {
+                    root = branch;
+                } else {
+                    parent.setChild(branch);
+                }
+                size++;
+                return;
+            }
+        }
+
+        public CidrTrie build() {
+            CidrTrie trie = root == null ? EMPTY : new CidrTrie(root, size);
+            // 构建后的前缀树不可变，builder不再持有其节点
+            root = null;
+            size = 0;
+            return trie;
+        }
+    }
+}
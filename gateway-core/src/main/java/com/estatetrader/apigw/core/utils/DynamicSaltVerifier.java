@@ -0,0 +1,284 @@
+package com.estatetrader.apigw.core.utils;
+
+import com.estatetrader.util.HexStringUtil;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 使用调用者的动态盐（token中的key）校验请求签名
+ *
+ * RsaHelper/EccHelper的静态verify方法在每次调用时都会重新创建KeyFactory、解析公钥并创建Signature，
+ * 而同一个key通常会在短时间内被反复使用。本类按key的内容缓存解析好的公钥和key的十六进制表示，
+ * 并为每个线程复用Signature实例，使得每次请求只需要付出签名校验本身的开销。
+ *
+ * 1. 缓存按key的哈希值分片，每个分片为一个独立加锁的LRU表
+ * 2. 超过最长闲置时间未被使用的缓存项会在下次访问时被重新构建
+ * 3. 无法解析为公钥的key也会被缓存（记录为无效），避免非法key反复触发解析
+ */
+public class DynamicSaltVerifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(DynamicSaltVerifier.class);
+
+    static {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    private static final ThreadLocal<Signature> RSA_SIGNATURE = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance("SHA1WithRSA");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final ThreadLocal<Signature> ECC_SIGNATURE = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance("SHA1withECDSA", "BC");
+        } catch (NoSuchAlgorithmException | NoSuchProviderException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * 表示key无法被解析为对应算法的公钥
+     */
+    private static final PublicKey INVALID_KEY = new PublicKey() {
+        @Override
+        public String getAlgorithm() {
+            return null;
+        }
+
+        @Override
+        public String getFormat() {
+            return null;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return null;
+        }
+    };
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final long maxIdleTime;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity 最多缓存的key的数量（所有分片之和），为0表示不缓存
+     * @param shardCount 分片数量，会被调整为2的幂
+     * @param maxIdleTime 缓存项的最长闲置时间（毫秒）
+     */
+    public DynamicSaltVerifier(int capacity, int shardCount, long maxIdleTime) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        if (maxIdleTime <= 0) {
+            throw new IllegalArgumentException("maxIdleTime must be positive");
+        }
+
+        int n = capacity > 0 ? Integer.highestOneBit(Math.max(1, Math.min(shardCount, capacity))) : 1;
+        this.shards = new Shard[n];
+        int shardCapacity = capacity / n;
+        for (int i = 0; i < n; i++) {
+            shards[i] = new Shard(shardCapacity);
+        }
+        this.shardMask = n - 1;
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * 使用RSA公钥校验请求签名（SHA1WithRSA）
+     * @param sign 签名
+     * @param text 请求签名文本
+     * @param key X509编码的RSA公钥
+     * @return 签名是否正确
+     */
+    public boolean verifyRsa(byte[] sign, RequestSignatureText text, byte[] key) {
+        if (sign == null || key == null) {
+            return false;
+        }
+        PublicKey publicKey = keyInfo(key).rsaKey();
+        return publicKey != INVALID_KEY && verify(RSA_SIGNATURE.get(), publicKey, sign, text);
+    }
+
+    /**
+     * 使用ECC公钥校验请求签名（SHA1withECDSA）
+     * @param sign 签名
+     * @param text 请求签名文本
+     * @param key X509编码的ECC公钥
+     * @return 签名是否正确
+     */
+    public boolean verifyEcc(byte[] sign, RequestSignatureText text, byte[] key) {
+        if (sign == null || key == null) {
+            return false;
+        }
+        PublicKey publicKey = keyInfo(key).eccKey();
+        return publicKey != INVALID_KEY && verify(ECC_SIGNATURE.get(), publicKey, sign, text);
+    }
+
+    /**
+     * 获取动态盐在md5/sha1签名中使用的形式，即其十六进制表示的字节
+     * @param key 动态盐
+     * @return 十六进制表示的ASCII字节，调用方不得修改
+     */
+    public byte[] hexSalt(byte[] key) {
+        return key != null ? keyInfo(key).hex : null;
+    }
+
+    /**
+     * 缓存的统计信息
+     * @return 指标名 -> 指标值
+     */
+    public Map<String, Object> metrics() {
+        long size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("size", size);
+        map.put("hits", hits.sum());
+        map.put("misses", misses.sum());
+        return map;
+    }
+
+    private static boolean verify(Signature signature, PublicKey publicKey, byte[] sign, RequestSignatureText text) {
+        try {
+            signature.initVerify(publicKey);
+            text.update(signature);
+            return signature.verify(sign);
+        } catch (Exception e) {
+            logger.debug("dynamic salt signature verify failed.", e);
+            return false;
+        }
+    }
+
+    private KeyInfo keyInfo(byte[] key) {
+        BytesKey lookup = new BytesKey(key);
+        Shard shard = shards[(lookup.hash * 0x9E3779B9 >>> 16) & shardMask];
+        long now = System.currentTimeMillis();
+        KeyInfo info = shard.lookup(lookup, now - maxIdleTime);
+        if (info != null) {
+            hits.increment();
+            info.lastAccess = now;
+            return info;
+        }
+
+        misses.increment();
+        // 调用方可能替换但不会修改key数组，为安全起见仍然保存一份副本
+        byte[] copy = key.clone();
+        info = new KeyInfo(copy, now);
+        shard.store(new BytesKey(copy), info);
+        return info;
+    }
+
+    private static PublicKey parsePublicKey(byte[] key, String algorithm, String provider) {
+        try {
+            KeyFactory keyFactory = provider != null ?
+                KeyFactory.getInstance(algorithm, provider) :
+                KeyFactory.getInstance(algorithm);
+            return keyFactory.generatePublic(new X509EncodedKeySpec(key));
+        } catch (Exception e) {
+            logger.debug("failed to parse dynamic salt as {} public key", algorithm, e);
+            return INVALID_KEY;
+        }
+    }
+
+    private static final class KeyInfo {
+        final byte[] key;
+        final byte[] hex;
+        volatile long lastAccess;
+        private volatile PublicKey rsaKey;
+        private volatile PublicKey eccKey;
+
+        KeyInfo(byte[] key, long now) {
+            this.key = key;
+            this.hex = HexStringUtil.toHexString(key).getBytes(StandardCharsets.US_ASCII);
+            this.lastAccess = now;
+        }
+
+        PublicKey rsaKey() {
+            PublicKey k = rsaKey;
+            if (k == null) {
+                rsaKey = k = parsePublicKey(key, "RSA", null);
+            }
+            return k;
+        }
+
+        PublicKey eccKey() {
+            PublicKey k = eccKey;
+            if (k == null) {
+                eccKey = k = parsePublicKey(key, "EC", "BC");
+            }
+            return k;
+        }
+    }
+
+    private static final class BytesKey {
+        final byte[] bytes;
+        final int hash;
+
+        BytesKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof BytesKey && Arrays.equals(bytes, ((BytesKey) obj).bytes);
+        }
+    }
+
+    private static final class Shard extends LinkedHashMap<BytesKey, KeyInfo> {
+        private final int capacity;
+
+        Shard(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        synchronized KeyInfo lookup(BytesKey k, long idleBefore) {
+            if (capacity == 0) {
+                return null;
+            }
+            KeyInfo info = super.get(k);
+            if (info != null && info.lastAccess < idleBefore) {
+                super.remove(k);
+                return null;
+            }
+            return info;
+        }
+
+        synchronized void store(BytesKey k, KeyInfo info) {
+            if (capacity > 0) {
+                super.put(k, info);
+            }
+        }
+
+        @Override
+        public synchronized int size() {
+            return super.size();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BytesKey, KeyInfo> eldest) {
+            return super.size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.estatetrader.apigw.core.utils;
+
+import com.estatetrader.algorithm.ObjectCache;
+import com.estatetrader.apigw.core.contracts.ResponseBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+
+/**
+ * 基于堆内存的响应缓冲区，在GatewayResponse不提供自己的缓冲区时使用，释放时将内部的stream归还给缓存
+ */
+public class HeapResponseBuffer implements ResponseBuffer {
+
+    private final ObjectCache<ByteArrayOutputStream> cache;
+    private ByteArrayOutputStream stream;
+
+    public HeapResponseBuffer(ObjectCache<ByteArrayOutputStream> cache) {
+        this.cache = cache;
+        this.stream = cache.acquire();
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return stream;
+    }
+
+    @Override
+    public int size() {
+        return stream.size();
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        stream.writeTo(output);
+    }
+
+    @Override
+    public String toString(Charset charset) {
+        try {
+            return stream.toString(charset.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void release() {
+        if (stream != null) {
+            cache.release(stream);
+            stream = null;
+        }
+    }
+}
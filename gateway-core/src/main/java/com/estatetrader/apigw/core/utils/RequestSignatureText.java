@@ -0,0 +1,259 @@
+package com.estatetrader.apigw.core.utils;
+
+import com.estatetrader.annotation.NotThreadSafe;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * 请求签名的输入源：按参数名排序后拼接的 key=value 序列的UTF-8编码
+ *
+ * 每个线程复用同一个实例以及其中的参数名数组和字节缓冲区，请求文本只会被编码一次，
+ * 之后所有的签名候选（静态盐、user token动态盐、device token动态盐）都直接从缓冲区中读取，
+ * md5/sha1的请求文本部分也只会被摘要一次，不同的盐仅在其基础上追加计算。
+ *
+ * 由于实例是线程内复用的，调用方必须在同一线程内完成校验，且在下一次调用{@link #of}之前不再使用上一次的结果
+ */
+@NotThreadSafe
+public final class RequestSignatureText {
+
+    public static final String MD5 = "MD5";
+    public static final String SHA1 = "SHA1";
+
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final int MAX_RETAINED_NAMES = 1024;
+
+    private static final ThreadLocal<RequestSignatureText> SCRATCH = ThreadLocal.withInitial(RequestSignatureText::new);
+
+    private String[] names = new String[16];
+    private byte[] buffer = new byte[512];
+    private int length;
+    private char pendingHighSurrogate;
+
+    private final MessageDigest md5 = digest(MD5);
+    private final MessageDigest sha1 = digest(SHA1);
+    private boolean md5Ready;
+    private boolean sha1Ready;
+
+    private RequestSignatureText() {
+    }
+
+    /**
+     * 计算当前线程的请求签名文本
+     *
+     * @param parameterNames 请求中包含的参数列表
+     * @param parameterValues 请求中每个参数对应的参数值
+     * @param excludedName 不参与签名的参数（签名参数自身）
+     * @return 当前线程复用的请求签名文本
+     */
+    public static RequestSignatureText of(Iterable<String> parameterNames,
+                                          Function<String, String> parameterValues,
+                                          String excludedName) {
+        RequestSignatureText text = SCRATCH.get();
+        text.build(parameterNames, parameterValues, excludedName);
+        return text;
+    }
+
+    private void build(Iterable<String> parameterNames, Function<String, String> parameterValues, String excludedName) {
+        int count = 0;
+        for (String name : parameterNames) {
+            if (name.equals(excludedName)) {
+                continue;
+            }
+            if (count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+            }
+            names[count++] = name;
+        }
+
+        // 参数排序
+        Arrays.sort(names, 0, count);
+
+        length = 0;
+        pendingHighSurrogate = 0;
+        md5Ready = false;
+        sha1Ready = false;
+        if (buffer.length > MAX_RETAINED_BUFFER) {
+            buffer = new byte[512];
+        }
+
+        for (int i = 0; i < count; i++) {
+            String name = names[i];
+            names[i] = null;
+            append(name);
+            append("=");
+            // 与StringBuilder.append(null)的行为保持一致
+            append(String.valueOf(parameterValues.apply(name)));
+        }
+        finish();
+
+        if (names.length > MAX_RETAINED_NAMES) {
+            names = new String[16];
+        }
+    }
+
+    /**
+     * 请求文本编码后的字节，只有前{@link #length()}个字节有效
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * 请求文本编码后的字节数
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * 将请求文本输入到签名校验器中
+     * @param signature 已经初始化的签名校验器
+     */
+    public void update(Signature signature) throws SignatureException {
+        signature.update(buffer, 0, length);
+    }
+
+    /**
+     * 检查签名是否等于 HASH(请求文本 + salt)
+     *
+     * @param algorithm 摘要算法，MD5或SHA1
+     * @param salt 追加在请求文本之后的盐的字节
+     * @param expected 客户端提供的签名
+     * @return 签名是否匹配
+     */
+    public boolean matchesSaltedDigest(String algorithm, byte[] salt, byte[] expected) {
+        if (expected == null || salt == null) {
+            return false;
+        }
+
+        MessageDigest prefix;
+        if (MD5.equals(algorithm)) {
+            prefix = md5;
+            if (!md5Ready) {
+                md5.reset();
+                md5.update(buffer, 0, length);
+                md5Ready = true;
+            }
+        } else if (SHA1.equals(algorithm)) {
+            prefix = sha1;
+            if (!sha1Ready) {
+                sha1.reset();
+                sha1.update(buffer, 0, length);
+                sha1Ready = true;
+            }
+        } else {
+            throw new IllegalArgumentException("unsupported digest algorithm " + algorithm);
+        }
+
+        MessageDigest digest;
+        try {
+            digest = (MessageDigest) prefix.clone();
+        } catch (CloneNotSupportedException e) {
+            digest = digest(algorithm);
+            digest.update(buffer, 0, length);
+        }
+        digest.update(salt);
+        return MessageDigest.isEqual(expected, digest.digest());
+    }
+
+    /**
+     * 仅用于日志输出
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 与对拼接后的整个字符串调用String.getBytes(UTF_8)相同的编码方式，不成对的代理字符被编码为'?'
+     *
+     * 由于客户端是对拼接后的字符串进行签名的，一个参数值末尾的高位代理字符与下一个参数名开头的低位代理字符
+     * 会组成一个完整的字符，因此末尾的高位代理字符需要暂存到下一次追加时再处理
+     */
+    private void append(String s) {
+        int n = s.length();
+        if (n == 0) {
+            return;
+        }
+
+        // 每个char最多被编码为3个字节，代理对为2个char共4个字节，另外加上暂存的高位代理字符
+        ensureCapacity(n * 3 + 3);
+        byte[] buf = buffer;
+        int pos = length;
+        int i = 0;
+
+        if (pendingHighSurrogate != 0) {
+            char c = s.charAt(0);
+            if (Character.isLowSurrogate(c)) {
+                pos = putCodePoint(buf, pos, Character.toCodePoint(pendingHighSurrogate, c));
+                i = 1;
+            } else {
+                buf[pos++] = '?';
+            }
+            pendingHighSurrogate = 0;
+        }
+
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xc0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)) {
+                if (i + 1 == n) {
+                    pendingHighSurrogate = c;
+                } else if (Character.isLowSurrogate(s.charAt(i + 1))) {
+                    pos = putCodePoint(buf, pos, Character.toCodePoint(c, s.charAt(++i)));
+                } else {
+                    buf[pos++] = '?';
+                }
+            } else if (Character.isLowSurrogate(c)) {
+                buf[pos++] = '?';
+            } else {
+                buf[pos++] = (byte) (0xe0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        length = pos;
+    }
+
+    private void finish() {
+        if (pendingHighSurrogate != 0) {
+            ensureCapacity(1);
+            buffer[length++] = '?';
+            pendingHighSurrogate = 0;
+        }
+    }
+
+    private static int putCodePoint(byte[] buf, int pos, int cp) {
+        buf[pos++] = (byte) (0xf0 | (cp >> 18));
+        buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        buf[pos++] = (byte) (0x80 | (cp & 0x3f));
+        return pos;
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = length + extra;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.estatetrader.apigw.core.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 预先编译的请求路径路由表，用于替代对每个url pattern逐一执行AntPathMatcher
+ *
+ * 1. 所有的pattern在构建时按'/'拆分并合并为一棵以路径段为单位的前缀树，字面量的路径段通过哈希表查找，
+ *    含有通配符（*、?、{name}）的路径段预先编译为正则表达式，'**'匹配零个或多个路径段
+ * 2. 请求路径只拆分一次（参见Path），一次遍历前缀树即可得到所有匹配的路由目标
+ * 3. 匹配语义与AntPathMatcher.match完全一致，包括忽略空路径段、开头和结尾的'/'的处理
+ * 4. 路由目标按照添加的顺序排列，匹配结果保持该顺序，因此优先级与原先逐一匹配时相同
+ *
+ * @param <T> 路由目标的类型
+ */
+public final class RouteTable<T> {
+
+    /**
+     * 不需要检查结尾的'/'（pattern中含有'**'）
+     */
+    private static final int TRAILING_SLASH_ANY = 0;
+    /**
+     * pattern与path须同时以'/'结尾或同时不以'/'结尾
+     */
+    private static final int TRAILING_SLASH_SAME = 1;
+    /**
+     * path须以'/'结尾（pattern的最后一段为'*'而path缺少该段的情况）
+     */
+    private static final int TRAILING_SLASH_REQUIRED = 2;
+
+    private static final Pattern GLOB_PATTERN = Pattern.compile("\\?|\\*|\\{((?:\\{[^/]+?\\}|[^/{}]|\\\\[{}])+?)\\}");
+
+    private final Node absoluteRoot;
+    private final Node relativeRoot;
+    private final List<Route<T>> routes;
+    private final int patternCount;
+
+    private RouteTable(Node absoluteRoot, Node relativeRoot, List<Route<T>> routes, int patternCount) {
+        this.absoluteRoot = absoluteRoot;
+        this.relativeRoot = relativeRoot;
+        this.routes = routes;
+        this.patternCount = patternCount;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * 获取与请求路径匹配的所有路由目标
+     * @param path 请求路径
+     * @return 匹配的路由目标，按照添加的顺序排列
+     */
+    public List<T> resolve(String path) {
+        return resolve(Path.parse(path));
+    }
+
+    /**
+     * 获取与请求路径匹配的所有路由目标
+     * @param path 已经拆分的请求路径
+     * @return 匹配的路由目标，按照添加的顺序排列
+     */
+    public List<T> resolve(Path path) {
+        boolean[] matched = new boolean[patternCount];
+        if (patternCount > 0) {
+            visit(path.absolute ? absoluteRoot : relativeRoot, path, 0, matched);
+        }
+
+        List<T> result = null;
+        for (Route<T> route : routes) {
+            if (route.matches(matched)) {
+                if (result == null) {
+                    result = new ArrayList<>(routes.size());
+                }
+                result.add(route.target);
+            }
+        }
+        return result != null ? result : Collections.emptyList();
+    }
+
+    /**
+     * 获取第一个与请求路径匹配的路由目标
+     * @param path 已经拆分的请求路径
+     * @return 匹配的路由目标，没有匹配时返回null
+     */
+    public T first(Path path) {
+        List<T> list = resolve(path);
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    private static void visit(Node node, Path path, int index, boolean[] matched) {
+        String[] tokens = path.tokens;
+        if (index == tokens.length) {
+            for (Terminal terminal : node.terminals) {
+                if (terminal.accepts(path)) {
+                    matched[terminal.patternId] = true;
+                }
+            }
+        } else {
+            Node literal = node.literals.get(tokens[index]);
+            if (literal != null) {
+                visit(literal, path, index + 1, matched);
+            }
+            for (Node wildcard : node.wildcards) {
+                if (wildcard.pattern.matcher(tokens[index]).matches()) {
+                    visit(wildcard, path, index + 1, matched);
+                }
+            }
+        }
+
+        if (node.anySegments != null) {
+            // '**'可以匹配零个或多个路径段
+            for (int i = index; i <= tokens.length; i++) {
+                visit(node.anySegments, path, i, matched);
+            }
+        }
+    }
+
+    /**
+     * 已经拆分的请求路径，同一个请求路径只需拆分一次即可用于多个路由表的匹配
+     */
+    public static final class Path {
+        private final String path;
+        private final boolean absolute;
+        private final boolean trailingSlash;
+        /**
+         * 忽略空路径段的拆分结果，用于匹配
+         */
+        private final String[] tokens;
+        /**
+         * 与path.split("/")一致的拆分结果
+         */
+        private final String[] segments;
+
+        private Path(String path, boolean absolute, boolean trailingSlash, String[] tokens, String[] segments) {
+            this.path = path;
+            this.absolute = absolute;
+            this.trailingSlash = trailingSlash;
+            this.tokens = tokens;
+            this.segments = segments;
+        }
+
+        public static Path parse(String path) {
+            List<String> segments = new ArrayList<>();
+            int tokenCount = 0;
+            int start = 0;
+            int length = path.length();
+            for (int i = 0; i <= length; i++) {
+                if (i == length || path.charAt(i) == '/') {
+                    String segment = path.substring(start, i);
+                    segments.add(segment);
+                    if (!segment.isEmpty()) {
+                        tokenCount++;
+                    }
+                    start = i + 1;
+                }
+            }
+
+            String[] tokens = new String[tokenCount];
+            int t = 0;
+            for (String segment : segments) {
+                if (!segment.isEmpty()) {
+                    tokens[t++] = segment;
+                }
+            }
+
+            // 与String.split保持一致：去掉结尾的空字符串，但空路径仍然返回一个空字符串
+            int end = segments.size();
+            while (end > 0 && segments.get(end - 1).isEmpty()) {
+                end--;
+            }
+            String[] splits = end == 0 && length == 0 ? new String[]{""}
+                : segments.subList(0, end).toArray(new String[0]);
+
+            return new Path(path, path.startsWith("/"), path.endsWith("/"), tokens, splits);
+        }
+
+        /**
+         * @return 原始的请求路径
+         */
+        public String value() {
+            return path;
+        }
+
+        /**
+         * @return 按照'/'拆分的各个路径段，与String.split("/")的结果一致
+         */
+        public String[] segments() {
+            return segments;
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+
+    private static final class Route<T> {
+        final T target;
+        final int[] patternIds;
+        final boolean matchAll;
+
+        Route(T target, int[] patternIds, boolean matchAll) {
+            this.target = target;
+            this.patternIds = patternIds;
+            this.matchAll = matchAll;
+        }
+
+        boolean matches(boolean[] matched) {
+            for (int id : patternIds) {
+                if (matched[id] != matchAll) {
+                    return !matchAll;
+                }
+            }
+            return matchAll;
+        }
+    }
+
+    private static final class Terminal {
+        final int patternId;
+        final int trailingSlash;
+        final boolean patternTrailingSlash;
+
+        Terminal(int patternId, int trailingSlash, boolean patternTrailingSlash) {
+            this.patternId = patternId;
+            this.trailingSlash = trailingSlash;
+            this.patternTrailingSlash = patternTrailingSlash;
+        }
+
+        boolean accepts(Path path) {
+            switch (trailingSlash) {
+                case TRAILING_SLASH_SAME:
+                    return patternTrailingSlash == path.trailingSlash;
+                case TRAILING_SLASH_REQUIRED:
+                    return path.trailingSlash;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    private static final class Node {
+        final Map<String, Node> literals = new HashMap<>();
+        final List<Node> wildcards = new ArrayList<>();
+        final List<Terminal> terminals = new ArrayList<>();
+        /**
+         * 本节点为通配路径段时编译后的正则表达式
+         */
+        final Pattern pattern;
+        final String token;
+        Node anySegments;
+
+        Node(String token, Pattern pattern) {
+            this.token = token;
+            this.pattern = pattern;
+        }
+
+        Node child(String token) {
+            if ("**".equals(token)) {
+                if (anySegments == null) {
+                    anySegments = new Node(token, null);
+                }
+                return anySegments;
+            }
+            Pattern regex = compileToken(token);
+            if (regex == null) {
+                return literals.computeIfAbsent(token, t -> new Node(t, null));
+            }
+            for (Node wildcard : wildcards) {
+                if (wildcard.token.equals(token)) {
+                    return wildcard;
+                }
+            }
+            Node node = new Node(token, regex);
+            wildcards.add(node);
+            return node;
+        }
+    }
+
+    /**
+     * 将含有通配符的路径段编译为正则表达式，规则与AntPathMatcher一致
+     * @return 正则表达式，路径段不含通配符时返回null
+     */
+    private static Pattern compileToken(String token) {
+        Matcher m = GLOB_PATTERN.matcher(token);
+        StringBuilder regex = new StringBuilder();
+        int end = 0;
+        boolean wildcard = false;
+        while (m.find()) {
+            wildcard = true;
+            regex.append(quote(token, end, m.start()));
+            String match = m.group();
+            if ("?".equals(match)) {
+                regex.append('.');
+            } else if ("*".equals(match)) {
+                regex.append(".*");
+            } else {
+                String variable = match.substring(1, match.length() - 1);
+                int colon = variable.indexOf(':');
+                regex.append('(').append(colon < 0 ? ".*" : variable.substring(colon + 1)).append(')');
+            }
+            end = m.end();
+        }
+        if (!wildcard) {
+            return null;
+        }
+        regex.append(quote(token, end, token.length()));
+        return Pattern.compile(regex.toString());
+    }
+
+    private static String quote(String s, int start, int end) {
+        return start == end ? "" : Pattern.quote(s.substring(start, end));
+    }
+
+    public static final class Builder<T> {
+        private final Node absoluteRoot = new Node("", null);
+        private final Node relativeRoot = new Node("", null);
+        private final List<Route<T>> routes = new ArrayList<>();
+        private int patternCount;
+
+        private Builder() {
+        }
+
+        /**
+         * 添加路由目标，请求路径与任意一个pattern匹配时即匹配该目标，没有pattern时不匹配任何路径
+         * @param target 路由目标
+         * @param patterns ant风格的url pattern
+         * @return this
+         */
+        public Builder<T> any(T target, String... patterns) {
+            routes.add(new Route<>(target, addPatterns(patterns), false));
+            return this;
+        }
+
+        /**
+         * 添加路由目标，请求路径须与所有的pattern匹配才匹配该目标，没有pattern时匹配所有路径
+         * @param target 路由目标
+         * @param patterns ant风格的url pattern
+         * @return this
+         */
+        public Builder<T> all(T target, String... patterns) {
+            routes.add(new Route<>(target, addPatterns(patterns), true));
+            return this;
+        }
+
+        private int[] addPatterns(String[] patterns) {
+            int[] ids = new int[patterns.length];
+            for (int i = 0; i < patterns.length; i++) {
+                ids[i] = addPattern(patterns[i]);
+            }
+            return ids;
+        }
+
+        private int addPattern(String pattern) {
+            int id = patternCount++;
+            Path parsed = Path.parse(pattern);
+            String[] tokens = parsed.tokens;
+            boolean hasAnySegments = false;
+            for (String token : tokens) {
+                if ("**".equals(token)) {
+                    hasAnySegments = true;
+                    break;
+                }
+            }
+
+            Node parent = null;
+            Node node = parsed.absolute ? absoluteRoot : relativeRoot;
+            for (String token : tokens) {
+                parent = node;
+                node = node.child(token);
+            }
+
+            if (hasAnySegments) {
+                node.terminals.add(new Terminal(id, TRAILING_SLASH_ANY, parsed.trailingSlash));
+            } else {
+                node.terminals.add(new Terminal(id, TRAILING_SLASH_SAME, parsed.trailingSlash));
+                if (parent != null && "*".equals(tokens[tokens.length - 1])) {
+                    // AntPathMatcher中，最后一段为'*'的pattern也匹配缺少该段但以'/'结尾的路径
+                    parent.terminals.add(new Terminal(id, TRAILING_SLASH_REQUIRED, parsed.trailingSlash));
+                }
+            }
+            return id;
+        }
+
+        public RouteTable<T> build() {
+            return new RouteTable<>(absoluteRoot, relativeRoot, new ArrayList<>(routes), patternCount);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package com.estatetrader.apigw.core.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * 使用W-TinyLFU准入策略的有界TTL缓存
+ *
+ * 1. 缓存按key的哈希值分片，每个分片独立加锁，分为窗口区（约1%的容量，LRU）和主区（分段LRU，试用区20%，保护区80%）
+ * 2. 新的缓存项先进入窗口区，被挤出窗口区的候选项需要与试用区中最久未使用的项比较访问频率（由Count-Min Sketch估计），
+ *    只有频率更高时才会被接纳进入主区，因此大量只访问一次的key不会将热点数据挤出缓存
+ * 3. 频率估计器记录的访问次数达到容量的10倍后所有计数减半，使频率能够随时间衰减
+ * 4. 缓存项在写入ttl毫秒后过期，过期的项在被访问或被淘汰时删除
+ *
+ * @param <K> key的类型，须正确实现equals和hashCode
+ * @param <V> value的类型
+ */
+public class TinyLfuCache<K, V> {
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final int capacity;
+    private final long ttl;
+    private final LongSupplier clock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param capacity 缓存的最大容量（所有分片之和）
+     * @param shardCount 分片数量，会被调整为2的幂
+     * @param ttl 缓存项的存活时间（毫秒）
+     */
+    public TinyLfuCache(int capacity, int shardCount, long ttl) {
+        this(capacity, shardCount, ttl, System::currentTimeMillis);
+    }
+
+    /**
+     * @param capacity 缓存的最大容量（所有分片之和）
+     * @param shardCount 分片数量，会被调整为2的幂
+     * @param ttl 缓存项的存活时间（毫秒）
+     * @param clock 当前时间（毫秒）
+     */
+    public TinyLfuCache(int capacity, int shardCount, long ttl, LongSupplier clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+
+        int n = Integer.highestOneBit(Math.max(1, Math.min(shardCount, capacity)));
+        this.shards = new TinyLfuCache.Shard[n];
+        int shardCapacity = Math.max(1, capacity / n);
+        for (int i = 0; i < n; i++) {
+            shards[i] = new Shard(shardCapacity);
+        }
+        this.shardMask = n - 1;
+        this.capacity = shardCapacity * n;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        return h ^ (h >>> 16);
+    }
+
+    private Shard shardOf(int hash) {
+        return shards[hash & shardMask];
+    }
+
+    /**
+     * 获取缓存项，同时记录一次对该key的访问
+     * @param key key
+     * @return 缓存的值，未命中或已过期时返回null
+     */
+    public V get(K key) {
+        int hash = spread(key.hashCode());
+        V value = shardOf(hash).get(key, hash, clock.getAsLong());
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * 写入缓存项，新的缓存项可能因为访问频率过低而未被接纳
+     * @param key key
+     * @param value 值，不得为null
+     */
+    public void put(K key, V value) {
+        put(key, value, () -> true);
+    }
+
+    /**
+     * 在满足条件时写入缓存项，条件在分片的锁内判断，因此与同一分片上的删除操作之间不存在竞争
+     * @param key key
+     * @param value 值，不得为null
+     * @param condition 写入的条件
+     * @return 是否满足条件
+     */
+    public boolean put(K key, V value, BooleanSupplier condition) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        int hash = spread(key.hashCode());
+        return shardOf(hash).put(key, value, hash, clock.getAsLong(), condition);
+    }
+
+    /**
+     * 删除缓存项
+     * @param key key
+     * @return 是否删除了缓存项
+     */
+    public boolean invalidate(K key) {
+        int hash = spread(key.hashCode());
+        boolean removed = shardOf(hash).remove(key);
+        if (removed) {
+            invalidations.increment();
+        }
+        return removed;
+    }
+
+    /**
+     * 删除所有满足条件的缓存项
+     * @param predicate 条件
+     * @return 删除的缓存项数量
+     */
+    public int invalidateIf(Predicate<? super K> predicate) {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.removeIf(predicate);
+        }
+        invalidations.add(count);
+        return count;
+    }
+
+    /**
+     * 删除所有缓存项
+     * @return 删除的缓存项数量
+     */
+    public int invalidateAll() {
+        return invalidateIf(key -> true);
+    }
+
+    /**
+     * @return 当前缓存项的数量（包括已过期但尚未删除的项）
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                size += shard.map.size();
+            }
+        }
+        return size;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public Map<String, Object> metrics() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("capacity", capacity);
+        metrics.put("ttl", ttl);
+        metrics.put("size", size());
+        metrics.put("hits", hitCount);
+        metrics.put("misses", missCount);
+        metrics.put("hitRate", total == 0 ? 0 : hitCount / (double) total);
+        metrics.put("evictions", evictions.sum());
+        metrics.put("rejections", rejections.sum());
+        metrics.put("expirations", expirations.sum());
+        metrics.put("invalidations", invalidations.sum());
+        return metrics;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final int hash;
+        V value;
+        long expireAt;
+        byte queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, int hash) {
+            this.key = key;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * 双向循环链表，头部为最久未使用的项
+     */
+    private static final class AccessQueue<K, V> {
+        final Node<K, V> head = new Node<>(null, 0);
+        int size;
+
+        AccessQueue() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        Node<K, V> first() {
+            return head.next == head ? null : head.next;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+            size++;
+        }
+
+        void remove(Node<K, V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            remove(node);
+            addLast(node);
+        }
+    }
+
+    private final class Shard {
+        final Map<K, Node<K, V>> map;
+        final AccessQueue<K, V> window = new AccessQueue<>();
+        final AccessQueue<K, V> probation = new AccessQueue<>();
+        final AccessQueue<K, V> protect = new AccessQueue<>();
+        final int windowCapacity;
+        final int mainCapacity;
+        final int protectedCapacity;
+        final FrequencySketch sketch;
+
+        Shard(int capacity) {
+            this.map = new HashMap<>(Math.max(16, capacity * 4 / 3 + 1));
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.mainCapacity = Math.max(0, capacity - windowCapacity);
+            this.protectedCapacity = mainCapacity * 4 / 5;
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        synchronized V get(K key, int hash, long now) {
+            sketch.increment(hash);
+            Node<K, V> node = map.get(key);
+            if (node == null) {
+                return null;
+            }
+            if (node.expireAt <= now) {
+                unlink(node);
+                map.remove(key);
+                expirations.increment();
+                return null;
+            }
+            onAccess(node);
+            return node.value;
+        }
+
+        synchronized boolean put(K key, V value, int hash, long now, BooleanSupplier condition) {
+            if (!condition.getAsBoolean()) {
+                return false;
+            }
+            long expireAt = now + ttl;
+            Node<K, V> node = map.get(key);
+            if (node != null) {
+                node.value = value;
+                node.expireAt = expireAt;
+                onAccess(node);
+                return true;
+            }
+
+            node = new Node<>(key, hash);
+            node.value = value;
+            node.expireAt = expireAt;
+            node.queue = WINDOW;
+            map.put(key, node);
+            window.addLast(node);
+
+            if (window.size > windowCapacity) {
+                Node<K, V> candidate = window.first();
+                window.remove(candidate);
+                admit(candidate, now);
+            }
+            return true;
+        }
+
+        /**
+         * 决定被挤出窗口区的候选项是否进入主区
+         */
+        private void admit(Node<K, V> candidate, long now) {
+            if (probation.size + protect.size < mainCapacity) {
+                candidate.queue = PROBATION;
+                probation.addLast(candidate);
+                return;
+            }
+
+            Node<K, V> victim = probation.first();
+            if (victim == null) {
+                victim = protect.first();
+            }
+            if (victim == null) {
+                map.remove(candidate.key);
+                rejections.increment();
+                return;
+            }
+
+            if (victim.expireAt <= now || sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                unlink(victim);
+                map.remove(victim.key);
+                if (victim.expireAt <= now) {
+                    expirations.increment();
+                } else {
+                    evictions.increment();
+                }
+                candidate.queue = PROBATION;
+                probation.addLast(candidate);
+            } else {
+                map.remove(candidate.key);
+                rejections.increment();
+            }
+        }
+
+        private void onAccess(Node<K, V> node) {
+            switch (node.queue) {
+                case WINDOW:
+                    window.moveToLast(node);
+                    break;
+                case PROBATION:
+                    // 试用区中再次被访问的项晋升到保护区
+                    probation.remove(node);
+                    node.queue = PROTECTED;
+                    protect.addLast(node);
+                    if (protect.size > protectedCapacity) {
+                        Node<K, V> demoted = protect.first();
+                        protect.remove(demoted);
+                        demoted.queue = PROBATION;
+                        probation.addLast(demoted);
+                    }
+                    break;
+                default:
+                    protect.moveToLast(node);
+            }
+        }
+
+        private void unlink(Node<K, V> node) {
+            switch (node.queue) {
+                case WINDOW:
+                    window.remove(node);
+                    break;
+                case PROBATION:
+                    probation.remove(node);
+                    break;
+                default:
+                    protect.remove(node);
+            }
+        }
+
+        synchronized boolean remove(K key) {
+            Node<K, V> node = map.remove(key);
+            if (node == null) {
+                return false;
+            }
+            unlink(node);
+            return true;
+        }
+
+        synchronized int removeIf(Predicate<? super K> predicate) {
+            int count = 0;
+            Iterator<Node<K, V>> iterator = map.values().iterator();
+            while (iterator.hasNext()) {
+                Node<K, V> node = iterator.next();
+                if (predicate.test(node.key)) {
+                    unlink(node);
+                    iterator.remove();
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 4-bit Count-Min Sketch，每个key对应4个计数器，频率取其中的最小值
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int counterMask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int size = 1;
+            while (size < Math.max(capacity, 16) / 4) {
+                size <<= 1;
+            }
+            // 每个long包含16个计数器
+            this.table = new long[size];
+            this.counterMask = size * 16 - 1;
+            this.sampleSize = Math.max(capacity, 16) * 10;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & counterMask;
+        }
+
+        int frequency(int hash) {
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int count = (int) ((table[index >>> 4] >>> ((index & 15) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int offset = (index & 15) << 2;
+                long mask = 0xfL << offset;
+                long word = table[index >>> 4];
+                if ((word & mask) != mask) {
+                    table[index >>> 4] = word + (1L << offset);
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions >>>= 1;
+        }
+    }
+}
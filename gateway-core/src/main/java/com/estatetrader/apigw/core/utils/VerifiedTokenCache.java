@@ -0,0 +1,234 @@
+package com.estatetrader.apigw.core.utils;
+
+import com.estatetrader.entity.CallerInfo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 缓存token字符串到已解析的调用者信息的映射，避免对同一个token反复进行base64解码、AES解密和反序列化
+ *
+ * 1. 缓存按token的哈希值分片，每个分片为一个独立加锁的LRU表，分片之间互不干扰
+ * 2. 缓存项在caller.expire（以及最长缓存时间）到期后失效，已过期的token不会被缓存
+ * 3. 解析失败的token不会被缓存，因此缓存中只会存在合法签发的token
+ * 4. 缓存内部保存的是调用者信息的私有副本，每次命中都返回一个新的副本，调用方可以随意修改返回值
+ *    （例如token降级和签名校验时替换caller.key），而不会影响缓存中的数据。
+ *    副本与缓存共享caller.key数组，调用方只能替换该数组，不得修改其内容
+ */
+public class VerifiedTokenCache {
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final long maxTimeToLive;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param capacity 缓存的最大容量（所有分片之和）
+     * @param shardCount 分片数量，会被调整为2的幂
+     * @param maxTimeToLive 每个缓存项的最长缓存时间（毫秒），即使token本身尚未过期
+     */
+    public VerifiedTokenCache(int capacity, int shardCount, long maxTimeToLive) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (maxTimeToLive <= 0) {
+            throw new IllegalArgumentException("maxTimeToLive must be positive");
+        }
+
+        int n = Integer.highestOneBit(Math.max(1, Math.min(shardCount, capacity)));
+        this.shards = new Shard[n];
+        int shardCapacity = Math.max(1, capacity / n);
+        for (int i = 0; i < n; i++) {
+            shards[i] = new Shard(shardCapacity);
+        }
+        this.shardMask = n - 1;
+        this.maxTimeToLive = maxTimeToLive;
+    }
+
+    /**
+     * 获取token对应的调用者信息，缓存未命中时使用parser解析token并将结果放入缓存
+     *
+     * @param token 原始token字符串
+     * @param parser token解析器，解析失败时返回null
+     * @return 调用者信息的副本，token非法时返回null
+     */
+    public CallerInfo get(String token, Function<String, CallerInfo> parser) {
+        Shard shard = shardOf(token);
+        long now = System.currentTimeMillis();
+
+        CallerInfo cached = shard.get(token, now);
+        if (cached != null) {
+            hits.increment();
+            return copy(cached);
+        }
+
+        misses.increment();
+        CallerInfo parsed = parser.apply(token);
+        if (parsed == null) {
+            return null;
+        }
+
+        long deadline = now + maxTimeToLive;
+        if (parsed.expire > 0 && parsed.expire < deadline) {
+            deadline = parsed.expire;
+        }
+        if (deadline > now) {
+            shard.put(token, copy(parsed), deadline);
+        }
+        return parsed;
+    }
+
+    /**
+     * 使指定token的缓存失效
+     * @param token 原始token字符串
+     */
+    public void invalidate(String token) {
+        if (shardOf(token).remove(token)) {
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * 使指定用户的所有token的缓存失效，用于token被强制注销时
+     * @param userId 用户编号
+     */
+    public void invalidateUser(long userId) {
+        for (Shard shard : shards) {
+            invalidations.add(shard.removeIf(caller -> caller.uid == userId));
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        for (Shard shard : shards) {
+            invalidations.add(shard.removeIf(caller -> true));
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * 缓存的统计信息
+     * @return 指标名 -> 指标值
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("size", size());
+        map.put("hits", hits.sum());
+        map.put("misses", misses.sum());
+        map.put("evictions", evictions.sum());
+        map.put("invalidations", invalidations.sum());
+        return map;
+    }
+
+    private Shard shardOf(String token) {
+        int h = token.hashCode();
+        h ^= h >>> 16;
+        return shards[h & shardMask];
+    }
+
+    private static CallerInfo copy(CallerInfo source) {
+        CallerInfo caller = new CallerInfo();
+        caller.version = source.version;
+        caller.appid = source.appid;
+        caller.securityLevel = source.securityLevel;
+        caller.expire = source.expire;
+        caller.deviceId = source.deviceId;
+        caller.uid = source.uid;
+        caller.key = source.key;
+        caller.phoneNumber = source.phoneNumber;
+        caller.oauthid = source.oauthid;
+        caller.role = source.role;
+        caller.subsystem = source.subsystem;
+        caller.subSystemMainId = source.subSystemMainId;
+        caller.renewWindow = source.renewWindow;
+        caller.createdTime = source.createdTime;
+        caller.identified = source.identified;
+        caller.partnerBindId = source.partnerBindId;
+        return caller;
+    }
+
+    private static class Entry {
+        final CallerInfo caller;
+        final long deadline;
+
+        Entry(CallerInfo caller, long deadline) {
+            this.caller = caller;
+            this.deadline = deadline;
+        }
+    }
+
+    private interface CallerPredicate {
+        boolean test(CallerInfo caller);
+    }
+
+    private class Shard extends LinkedHashMap<String, Entry> {
+        private final int capacity;
+
+        Shard(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        synchronized CallerInfo get(String token, long now) {
+            Entry entry = super.get(token);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.deadline <= now) {
+                super.remove(token);
+                evictions.increment();
+                return null;
+            }
+            return entry.caller;
+        }
+
+        synchronized void put(String token, CallerInfo caller, long deadline) {
+            super.put(token, new Entry(caller, deadline));
+        }
+
+        synchronized boolean remove(String token) {
+            return super.remove(token) != null;
+        }
+
+        synchronized int removeIf(CallerPredicate predicate) {
+            int count = 0;
+            for (Iterator<Entry> iter = values().iterator(); iter.hasNext(); ) {
+                if (predicate.test(iter.next().caller)) {
+                    iter.remove();
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public synchronized int size() {
+            return super.size();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (super.size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.annotation.ApiGroup;
+import com.estatetrader.annotation.ApiParameter;
+import com.estatetrader.annotation.HttpApi;
+import com.estatetrader.apigw.core.models.ApiMethodInfo;
+import com.estatetrader.apigw.core.models.ApiParameterInfo;
+import com.estatetrader.apigw.core.models.ApiSchema;
+import com.estatetrader.apigw.core.phases.parsing.ApiParser;
+import com.estatetrader.define.IllegalApiDefinitionException;
+import com.estatetrader.define.SecurityType;
+import com.estatetrader.entity.AbstractReturnCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.*;
+
+public class ApiJarParsingTest extends BaseHttpTest {
+
+    public static class RC extends AbstractReturnCode {
+        protected RC(String desc, int code) {
+            super(desc, code);
+        }
+    }
+
+    @ApiGroup(name = "jar1", minCode = 0, maxCode = 100, codeDefine = RC.class, owner = "nick")
+    public static class Service1 {
+        @HttpApi(name = "jar1.echo", desc = "echo", security = SecurityType.Anonym, owner = "nick")
+        public String echo(@ApiParameter(name = "value", required = true, desc = "value") String value) {
+            return value;
+        }
+
+        @HttpApi(name = "jar1.sum", desc = "sum", security = SecurityType.Anonym, owner = "nick")
+        public long sum(@ApiParameter(name = "values", required = true, desc = "values") long[] values) {
+            long sum = 0;
+            for (long v : values) {
+                sum += v;
+            }
+            return sum;
+        }
+    }
+
+    @ApiGroup(name = "jar2", minCode = 0, maxCode = 100, codeDefine = RC.class, owner = "nick")
+    public static class Service2 {
+        @HttpApi(name = "jar2.length", desc = "length", security = SecurityType.Anonym, owner = "nick")
+        public int length(@ApiParameter(name = "value", required = false, desc = "value") String value) {
+            return value == null ? 0 : value.length();
+        }
+    }
+
+    @ApiGroup(name = "jar3", minCode = 0, maxCode = 100, codeDefine = RC.class, owner = "nick")
+    public static class Service3 {
+        @HttpApi(name = "jar3.list", desc = "list", security = SecurityType.Anonym, owner = "nick")
+        public List<String> list(@ApiParameter(name = "count", required = true, desc = "count") int count) {
+            return new ArrayList<>();
+        }
+    }
+
+    @ApiGroup(name = "jar4", minCode = 0, maxCode = 100, codeDefine = RC.class, owner = "nick")
+    public static class Service4 {
+        @HttpApi(name = "jar4.flag", desc = "flag", security = SecurityType.Anonym, owner = "nick")
+        public boolean flag(@ApiParameter(name = "a", required = true, desc = "a") boolean a,
+                            @ApiParameter(name = "b", required = true, desc = "b") boolean b) {
+            return a && b;
+        }
+    }
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("api-jars").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(directory.delete());
+    }
+
+    private String createJar(String name, String type, Class<?>... exports) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Api-Dependency-Type", type);
+        StringBuilder sb = new StringBuilder();
+        for (Class<?> clazz : exports) {
+            sb.append(clazz.getName()).append(' ');
+        }
+        attributes.putValue("Api-Export", sb.toString());
+
+        File file = new File(directory, name);
+        try (JarOutputStream ignored = new JarOutputStream(new FileOutputStream(file), manifest)) {
+            return file.getPath();
+        }
+    }
+
+    private List<String> createJars() throws IOException {
+        List<String> jars = new ArrayList<>();
+        jars.add(createJar("a.jar", "dubbo", Service3.class, Service1.class));
+        jars.add(createJar("b.jar", "local", Service2.class));
+        jars.add(createJar("c.jar", "dubbo", Service2.class));
+        jars.add(createJar("d.jar", "dubbo", Service4.class));
+        return jars;
+    }
+
+    private ApiSchema parse(List<String> jars, int parallelism) {
+        ApiParser parser = getBean(ApiParser.class);
+        ApiSchema schema = new ApiSchema();
+        List<ApiMethodInfo> apis = parser.parseJars(clazz -> null, jars, getClass().getClassLoader(), parallelism);
+        parser.register(apis, schema);
+        return schema;
+    }
+
+    private static String describe(ApiMethodInfo info) {
+        StringBuilder sb = new StringBuilder()
+            .append(info.methodName).append('|')
+            .append(info.groupName).append('|')
+            .append(info.jarFileSimpleName).append('|')
+            .append(info.securityLevel).append('|')
+            .append(info.returnType).append('|')
+            .append(info.dubboInterface.getName()).append('|')
+            .append(info.proxyMethodInfo);
+        for (ApiParameterInfo p : info.parameterInfos) {
+            sb.append('|').append(p.name).append(':').append(p.type).append(':').append(p.isRequired);
+        }
+        return sb.toString();
+    }
+
+    private static List<String> describe(ApiSchema schema) {
+        List<String> list = new ArrayList<>();
+        for (ApiMethodInfo info : schema.getApiInfoList()) {
+            list.add(describe(info));
+        }
+        return list;
+    }
+
+    @Test
+    public void testParallelParsingMatchesSequential() throws IOException {
+        List<String> jars = createJars();
+
+        List<String> sequential = describe(parse(jars, 1));
+        assertEquals(5, sequential.size());
+        assertTrue(sequential.get(0).startsWith("jar3.list|"));
+        assertTrue(sequential.get(4).startsWith("jar4.flag|"));
+
+        for (int round = 0; round < 20; round++) {
+            assertEquals(sequential, describe(parse(jars, 4)));
+        }
+    }
+
+    @Test
+    public void testErrorsAreReportedInJarOrder() throws IOException {
+        List<String> jars = new ArrayList<>();
+        jars.add(createJar("x.jar", "dubbo", Service1.class));
+        jars.add(createJar("y.jar", "dubbo") + ".missing");
+        jars.add(createJar("z.jar", "dubbo", Service2.class));
+        jars.add(directory.getPath() + "/another.jar");
+
+        String sequential = null;
+        try {
+            parse(jars, 1);
+            fail();
+        } catch (IllegalApiDefinitionException e) {
+            sequential = e.getMessage();
+        }
+        try {
+            parse(jars, 4);
+            fail();
+        } catch (IllegalApiDefinitionException e) {
+            assertEquals(sequential, e.getMessage());
+        }
+        assertTrue(sequential.indexOf("y.jar.missing") < sequential.indexOf("another.jar"));
+    }
+}
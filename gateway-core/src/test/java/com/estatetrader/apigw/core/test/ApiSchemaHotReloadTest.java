@@ -0,0 +1,275 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.apigw.core.models.ApiMethodInfo;
+import com.estatetrader.apigw.core.models.ApiSchema;
+import com.estatetrader.apigw.core.phases.parsing.ApiParser;
+import com.estatetrader.apigw.core.services.ApiClassLoaders;
+import com.estatetrader.apigw.core.services.ApiSchemaHolder;
+import org.apache.dubbo.common.serialize.hessian2.Hessian2ObjectInput;
+import org.apache.dubbo.common.serialize.hessian2.Hessian2ObjectOutput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * 使用在测试中编译的两个版本的API jar包验证ApiSchema的热替换
+ */
+public class ApiSchemaHotReloadTest extends BaseHttpTest {
+
+    private static final String CLASS_NAME = "hotreload.HotService";
+
+    private static final String SOURCE_TEMPLATE = "package hotreload;\n" +
+        "import com.estatetrader.annotation.*;\n" +
+        "import com.estatetrader.define.SecurityType;\n" +
+        "import com.estatetrader.entity.AbstractReturnCode;\n" +
+        "@ApiGroup(name = \"hot\", minCode = 0, maxCode = 100, codeDefine = HotService.RC.class, owner = \"nick\")\n" +
+        "public class HotService {\n" +
+        "    public static class RC extends AbstractReturnCode {\n" +
+        "        protected RC(String desc, int code) { super(desc, code); }\n" +
+        "    }\n" +
+        "    @HttpApi(name = \"hot.version\", desc = \"version\", security = SecurityType.Anonym, owner = \"nick\")\n" +
+        "    public String version() { return \"%s\"; }\n" +
+        "%s" +
+        "}\n";
+
+    private static final String ADDED_API =
+        "    @HttpApi(name = \"hot.added\", desc = \"added\", security = SecurityType.Anonym, owner = \"nick\")\n" +
+        "    public String added() { return \"added\"; }\n";
+
+    private static final String ITEM_TEMPLATE = "package hotreload;\n" +
+        "public class HotItem implements java.io.Serializable {\n" +
+        "    public String name;\n" +
+        "    public String version() { return \"%s\"; }\n" +
+        "}\n";
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("hot-reload");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * 编译HotService的源代码并打包为API jar包
+     */
+    private String buildJar(String version, String extraMethods) throws IOException {
+        Path sourceDir = directory.resolve(version + "-src");
+        Path classDir = directory.resolve(version + "-classes");
+        Files.createDirectories(sourceDir.resolve("hotreload"));
+        Files.createDirectories(classDir);
+        Path source = sourceDir.resolve("hotreload/HotService.java");
+        Files.write(source, String.format(SOURCE_TEMPLATE, version, extraMethods).getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("a JDK is required to compile the test api jars", compiler);
+        int exitCode = compiler.run(null, null, null,
+            "-classpath", System.getProperty("java.class.path"),
+            "-d", classDir.toString(),
+            source.toString());
+        assertEquals(0, exitCode);
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Api-Dependency-Type", "dubbo");
+        manifest.getMainAttributes().putValue("Api-Export", CLASS_NAME);
+
+        File jar = directory.resolve("hot-api-" + version + ".jar").toFile();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest);
+             Stream<Path> stream = Files.walk(classDir)) {
+            for (Path path : stream.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                String name = classDir.relativize(path).toString().replace(File.separatorChar, '/');
+                out.putNextEntry(new JarEntry(name));
+                out.write(Files.readAllBytes(path));
+                out.closeEntry();
+            }
+        }
+        return jar.getPath();
+    }
+
+    private ApiSchema loadSchema(String jar, ClassLoader classLoader) {
+        ApiParser parser = getBean(ApiParser.class);
+        ApiSchema schema = new ApiSchema();
+        parser.parseCommonInfo(schema);
+        List<ApiMethodInfo> apis = parser.parseJars(clazz -> null, Collections.singletonList(jar), classLoader, 2);
+        parser.register(apis, schema);
+        parser.process(schema);
+        parser.verify(schema);
+        return schema;
+    }
+
+    private String call(String method, ApiSchema schema) {
+        Map<String, String> params = new HashMap<>();
+        params.put("_mt", method);
+        return extractResult(executeRequest(params, schema));
+    }
+
+    @Test
+    public void testSwapWhileRequestInFlight() throws Exception {
+        String jar1 = buildJar("v1", "");
+        String jar2 = buildJar("v2", ADDED_API);
+
+        URLClassLoader loader1 = new URLClassLoader(new URL[]{new File(jar1).toURI().toURL()}, getClass().getClassLoader());
+        AtomicBoolean closed1 = new AtomicBoolean();
+        ApiSchema schema1 = loadSchema(jar1, loader1);
+        ApiSchemaHolder holder = new ApiSchemaHolder(schema1, Arrays.asList(loader1, () -> closed1.set(true)));
+        assertEquals("v1", call("hot.version", holder.current()));
+        assertFalse(holder.current().apiInfoMap.containsKey("hot.added"));
+
+        // 模拟替换时正在处理的请求
+        ApiSchemaHolder.Generation inFlight = holder.acquire();
+
+        URLClassLoader loader2 = new URLClassLoader(new URL[]{new File(jar2).toURI().toURL()}, getClass().getClassLoader());
+        ApiSchema schema2 = loadSchema(jar2, loader2);
+        // 两个版本的类由各自的类加载器加载
+        assertNotSame(schema1.getApiInfo("hot.version").dubboInterface, schema2.getApiInfo("hot.version").dubboInterface);
+
+        ApiSchemaHolder.Generation published = holder.publish(schema2, Collections.singletonList(loader2));
+        assertEquals(2, published.version);
+        assertEquals(2, holder.liveGenerations());
+
+        // 新的请求使用新的API，正在处理的请求继续使用旧的API
+        ApiSchemaHolder.Generation next = holder.acquire();
+        assertSame(schema2, next.schema);
+        assertEquals("v2", call("hot.version", next.schema));
+        assertEquals("added", call("hot.added", next.schema));
+        next.release();
+
+        assertFalse(closed1.get());
+        assertEquals("v1", call("hot.version", inFlight.schema));
+
+        // 旧的一代在请求结束后关闭
+        inFlight.release();
+        assertTrue(inFlight.isClosed());
+        assertTrue(closed1.get());
+        assertEquals(1, holder.liveGenerations());
+        assertFalse(published.isClosed());
+    }
+
+    @Test
+    public void testRetireWithoutRequests() {
+        AtomicBoolean closed1 = new AtomicBoolean();
+        AtomicBoolean closed2 = new AtomicBoolean();
+        ApiSchemaHolder holder = new ApiSchemaHolder(new ApiSchema(), Collections.singletonList(() -> closed1.set(true)));
+
+        ApiSchemaHolder.Generation first = holder.acquire();
+        first.release();
+        assertFalse(closed1.get());
+
+        holder.publish(new ApiSchema(), Collections.singletonList(() -> closed2.set(true)));
+        assertTrue(closed1.get());
+        assertFalse(closed2.get());
+        assertEquals(1, holder.liveGenerations());
+        assertEquals(2, holder.currentVersion());
+    }
+
+    /**
+     * 使用dubbo的hessian2序列化由loader中的HotItem组成的List，与服务提供方返回List<HotItem>时一致
+     */
+    private static byte[] serializeItems(ClassLoader loader, String... names) throws Exception {
+        Class<?> itemClass = loader.loadClass("hotreload.HotItem");
+        List<Object> items = new ArrayList<>();
+        for (String name : names) {
+            Object item = itemClass.newInstance();
+            itemClass.getField("name").set(item, name);
+            items.add(item);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Hessian2ObjectOutput output = new Hessian2ObjectOutput(out);
+        output.writeObject(items);
+        output.flushBuffer();
+        return out.toByteArray();
+    }
+
+    /**
+     * 在模拟的dubbo客户端线程中反序列化API的返回值
+     */
+    private static List<?> decode(ExecutorService dubboThread, byte[] bytes) throws Exception {
+        return dubboThread.submit(() -> new Hessian2ObjectInput(new ByteArrayInputStream(bytes)).readObject(List.class))
+            .get();
+    }
+
+    @Test
+    public void testDecodeEntityListThroughReloadedJar() throws Exception {
+        String jar1 = buildJar("item-v1", "HotItem", String.format(ITEM_TEMPLATE, "v1"));
+        String jar2 = buildJar("item-v2", "HotItem", String.format(ITEM_TEMPLATE, "v2"));
+        ClassLoader base = getClass().getClassLoader();
+        URLClassLoader loader1 = new URLClassLoader(new URL[]{new File(jar1).toURI().toURL()}, base);
+        URLClassLoader loader2 = new URLClassLoader(new URL[]{new File(jar2).toURI().toURL()}, base);
+
+        // dubbo客户端线程的上下文类加载器为网关的类加载器
+        ExecutorService dubboThread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "test-dubbo-client");
+            t.setContextClassLoader(base);
+            t.setDaemon(true);
+            return t;
+        });
+        ApiClassLoaders loaders = new ApiClassLoaders(base);
+        try {
+            byte[] items1 = serializeItems(loader1, "a", "b");
+            // 类只存在于API jar包的类加载器中，切换之前List中的元素被反序列化为HashMap
+            assertTrue(decode(dubboThread, items1).get(0) instanceof Map);
+
+            AutoCloseable generation1 = loaders.add(loader1);
+            loaders.activateLatest();
+            List<?> decoded1 = decode(dubboThread, items1);
+            Class<?> item1 = loader1.loadClass("hotreload.HotItem");
+            assertSame(item1, decoded1.get(0).getClass());
+            assertEquals("b", item1.getField("name").get(decoded1.get(1)));
+
+            // 重新加载后使用新的一代中的类，而不是hessian按照类名缓存的旧的类
+            loaders.add(loader2);
+            loaders.activateLatest();
+            List<?> decoded2 = decode(dubboThread, serializeItems(loader2, "c"));
+            Class<?> item2 = loader2.loadClass("hotreload.HotItem");
+            assertSame(item2, decoded2.get(0).getClass());
+            assertEquals("v2", item2.getMethod("version").invoke(decoded2.get(0)));
+            assertEquals("c", item2.getField("name").get(decoded2.get(0)));
+
+            // 旧的一代关闭后，没有线程继续使用其类加载器
+            generation1.close();
+            assertSame(loader2, dubboThread.submit(() -> Thread.currentThread().getContextClassLoader()).get());
+            assertSame(loader2, loaders.current());
+        } finally {
+            // 将所有线程的上下文类加载器恢复为网关的类加载器
+            loaders.add(base);
+            loaders.activateLatest();
+            dubboThread.shutdownNow();
+            loader1.close();
+            loader2.close();
+        }
+    }
+}
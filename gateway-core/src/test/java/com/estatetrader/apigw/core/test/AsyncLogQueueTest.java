@@ -0,0 +1,177 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.apigw.core.utils.AsyncLogQueue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AsyncLogQueueTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int ITEMS_PER_PRODUCER = 50_000;
+
+    private static final class Item {
+        final int producer;
+        final int sequence;
+
+        Item(int producer, int sequence) {
+            this.producer = producer;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * 消费者线程中记录每个生产者最后一次被处理的序号，用于检查同一生产者的元素是否按顺序处理
+     */
+    private static final class OrderCheckingSink {
+        final int[] lastSequence = new int[PRODUCERS];
+        final long[] received = new long[PRODUCERS];
+        final List<String> violations = new ArrayList<>();
+
+        OrderCheckingSink() {
+            Arrays.fill(lastSequence, -1);
+        }
+
+        void accept(Item item) {
+            if (item.sequence <= lastSequence[item.producer]) {
+                violations.add("producer " + item.producer + ": " + item.sequence +
+                    " after " + lastSequence[item.producer]);
+            }
+            lastSequence[item.producer] = item.sequence;
+            received[item.producer]++;
+        }
+
+        long total() {
+            long sum = 0;
+            for (long n : received) {
+                sum += n;
+            }
+            return sum;
+        }
+    }
+
+    private static long[] produce(AsyncLogQueue<Item> queue) throws InterruptedException {
+        long[] accepted = new long[PRODUCERS];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < ITEMS_PER_PRODUCER; i++) {
+                    if (queue.offer(new Item(producer, i))) {
+                        accepted[producer]++;
+                    }
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        return accepted;
+    }
+
+    @Test
+    public void testDropPolicyKeepsOrderAndAccountsForLoss() throws InterruptedException {
+        OrderCheckingSink sink = new OrderCheckingSink();
+        AsyncLogQueue<Item> queue = new AsyncLogQueue<>("test-logger", 64,
+            AsyncLogQueue.OverflowPolicy.DROP, 0, 16, item -> {
+            sink.accept(item);
+            // 模拟较慢的输出，迫使队列溢出
+            if (item.sequence % 1000 == 0) {
+                Thread.yield();
+            }
+        });
+
+        long[] accepted = produce(queue);
+        queue.close();
+
+        assertTrue(sink.violations.toString(), sink.violations.isEmpty());
+        for (int p = 0; p < PRODUCERS; p++) {
+            assertEquals(accepted[p], sink.received[p]);
+        }
+
+        long total = (long) PRODUCERS * ITEMS_PER_PRODUCER;
+        assertEquals(total, queue.accepted() + queue.dropped());
+        assertEquals(queue.accepted(), queue.written());
+        assertEquals(queue.written(), sink.total());
+        assertEquals(0, queue.failed());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testBlockPolicyDeliversEverything() throws InterruptedException {
+        OrderCheckingSink sink = new OrderCheckingSink();
+        AsyncLogQueue<Item> queue = new AsyncLogQueue<>("test-logger", 64,
+            AsyncLogQueue.OverflowPolicy.BLOCK, 60_000, 16, sink::accept);
+
+        produce(queue);
+        queue.close();
+
+        long total = (long) PRODUCERS * ITEMS_PER_PRODUCER;
+        assertTrue(sink.violations.toString(), sink.violations.isEmpty());
+        assertEquals(0, queue.dropped());
+        assertEquals(total, queue.written());
+        assertEquals(total, sink.total());
+        for (int p = 0; p < PRODUCERS; p++) {
+            assertEquals(ITEMS_PER_PRODUCER - 1, sink.lastSequence[p]);
+        }
+    }
+
+    @Test
+    public void testCloseFlushesPendingItemsAndRejectsNewOnes() {
+        AtomicLong sum = new AtomicLong();
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncLogQueue<Integer> queue = new AsyncLogQueue<>("test-logger", 1024,
+            AsyncLogQueue.OverflowPolicy.DROP, 0, 8, n -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            sum.addAndGet(n);
+        });
+
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(queue.offer(i));
+        }
+        release.countDown();
+        queue.close();
+
+        assertEquals(5050, sum.get());
+        assertEquals(100, queue.written());
+        assertFalse(queue.offer(1));
+        assertEquals(1, queue.dropped());
+    }
+
+    @Test
+    public void testSinkFailureIsCounted() {
+        AsyncLogQueue<Integer> queue = new AsyncLogQueue<>("test-logger", 16,
+            AsyncLogQueue.OverflowPolicy.BLOCK, 1000, 4, n -> {
+            if (n % 2 == 0) {
+                throw new IllegalStateException("failed to write " + n);
+            }
+        });
+
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i);
+        }
+        queue.close();
+
+        assertEquals(5, queue.written());
+        assertEquals(5, queue.failed());
+    }
+}
@@ -0,0 +1,219 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.apigw.core.services.BackendMessageTopicListener;
+import com.estatetrader.gateway.backendmsg.PolledBackendMessage;
+import com.estatetrader.gateway.backendmsg.QueuedBackendMessage;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class BackendMessageTopicListenerTest {
+
+    /**
+     * 基于内存的消息主题，每次拉取前等待指定的时间以模拟较慢的redis
+     */
+    private static final class MemoryTopic implements BackendMessageTopicListener.Topic {
+        final Map<Long, Map<String, QueuedBackendMessage>> messages = new ConcurrentHashMap<>();
+        volatile long latencyMillis;
+        volatile CountDownLatch gate;
+        volatile CountDownLatch emptyCheckGate;
+        final AtomicInteger emptyChecks = new AtomicInteger();
+
+        void offer(long subjectId, String key) {
+            QueuedBackendMessage message = new QueuedBackendMessage();
+            message.messageKey = key;
+            message.expiredAt = Long.MAX_VALUE;
+            messages.computeIfAbsent(subjectId, id -> new LinkedHashMap<>()).put(key, message);
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public boolean isTopicEmpty(long subjectId) {
+            CountDownLatch latch = emptyCheckGate;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            emptyChecks.incrementAndGet();
+            Map<String, QueuedBackendMessage> map = messages.get(subjectId);
+            return map == null || map.isEmpty();
+        }
+
+        @Override
+        public Map<String, QueuedBackendMessage> poll(long subjectId,
+                                                      Predicate<Map.Entry<String, QueuedBackendMessage>> filter,
+                                                      int limit) {
+            try {
+                CountDownLatch latch = gate;
+                if (latch != null) {
+                    latch.await();
+                }
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Map<String, QueuedBackendMessage> result = new LinkedHashMap<>();
+            Map<String, QueuedBackendMessage> map = messages.remove(subjectId);
+            if (map != null) {
+                map.entrySet().stream().filter(filter).limit(limit)
+                    .forEach(e -> result.put(e.getKey(), e.getValue()));
+            }
+            return result;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static Set<String> keys(List<PolledBackendMessage> messages) {
+        return messages.stream().map(m -> m.key).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void testCombineUserAndDeviceMessages() throws Exception {
+        MemoryTopic users = new MemoryTopic();
+        MemoryTopic devices = new MemoryTopic();
+        users.offer(1, "u1");
+        users.offer(1, "u2");
+        devices.offer(2, "d1");
+        devices.latencyMillis = 50;
+
+        try (BackendMessageTopicListener listener = new BackendMessageTopicListener(users, devices, 2, 10, 0)) {
+            CompletableFuture<List<PolledBackendMessage>> future = listener.poll(1L, 2L, c -> true);
+            assertEquals(new HashSet<>(Arrays.asList("u1", "u2", "d1")), keys(future.get(5, TimeUnit.SECONDS)));
+
+            // 确认没有消息后不再拉取
+            assertTrue(listener.poll(1L, 2L, c -> true).get(5, TimeUnit.SECONDS).isEmpty());
+            assertEquals(2L, listener.metrics().get("emptyConfirmed"));
+            assertNull(listener.poll(1L, 2L, c -> true));
+            assertNull(listener.poll(null, null, c -> true));
+            assertEquals(4L, listener.metrics().get("submitted"));
+        }
+    }
+
+    @Test
+    public void testDeadlineReturnsPartialResult() throws Exception {
+        MemoryTopic users = new MemoryTopic();
+        MemoryTopic devices = new MemoryTopic();
+        users.offer(1, "u1");
+        devices.offer(2, "d1");
+        devices.latencyMillis = 2000;
+
+        try (BackendMessageTopicListener listener = new BackendMessageTopicListener(users, devices, 2, 10, 100)) {
+            long start = System.nanoTime();
+            CompletableFuture<List<PolledBackendMessage>> future = listener.poll(1L, 2L, c -> true);
+            List<PolledBackendMessage> result = future.get(5, TimeUnit.SECONDS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // 较慢的一方超时后以空结果完成，不影响另一方的消息
+            assertEquals(Collections.singleton("u1"), keys(result));
+            assertTrue("elapsed " + elapsedMillis, elapsedMillis < 1000);
+            assertEquals(1L, listener.metrics().get("timedOut"));
+        }
+    }
+
+    @Test
+    public void testDeadlineCoversEmptyCheck() throws Exception {
+        MemoryTopic users = new MemoryTopic();
+        MemoryTopic devices = new MemoryTopic();
+        CountDownLatch gate = new CountDownLatch(1);
+        users.emptyCheckGate = gate;
+
+        try (BackendMessageTopicListener listener = new BackendMessageTopicListener(users, devices, 2, 10, 100)) {
+            long start = System.nanoTime();
+            // 较慢的redis确认不会阻塞请求线程，并且在截止时间以空结果完成
+            CompletableFuture<List<PolledBackendMessage>> future = listener.poll(1L, null, c -> true);
+            assertFalse(future.isDone());
+            assertTrue(future.get(5, TimeUnit.SECONDS).isEmpty());
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("elapsed " + elapsedMillis, elapsedMillis < 1000);
+            gate.countDown();
+        }
+    }
+
+    @Test
+    public void testSaturatedPollerIsRejected() throws Exception {
+        MemoryTopic users = new MemoryTopic();
+        MemoryTopic devices = new MemoryTopic();
+        CountDownLatch gate = new CountDownLatch(1);
+        users.gate = gate;
+        for (long id = 1; id <= 3; id++) {
+            users.offer(id, "u" + id);
+        }
+
+        try (BackendMessageTopicListener listener = new BackendMessageTopicListener(users, devices, 1, 1, 100)) {
+            // 第一个拉取占用唯一的线程，第二个排队，第三个被拒绝
+            CompletableFuture<List<PolledBackendMessage>> first = listener.poll(1L, null, c -> true);
+            CompletableFuture<List<PolledBackendMessage>> second = listener.poll(2L, null, c -> true);
+            CompletableFuture<List<PolledBackendMessage>> third = listener.poll(3L, null, c -> true);
+            assertNotNull(first);
+            assertNotNull(second);
+            assertNull(third);
+            assertEquals(1L, listener.metrics().get("rejected"));
+
+            // 截止时间之后才开始的拉取不再取出消息
+            assertTrue(first.get(5, TimeUnit.SECONDS).isEmpty());
+            assertTrue(second.get(5, TimeUnit.SECONDS).isEmpty());
+            gate.countDown();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((Long) listener.metrics().get("skippedAfterDeadline") < 1) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            assertFalse(users.isTopicEmpty(2));
+            assertFalse(users.isTopicEmpty(3));
+            assertEquals(1L, listener.metrics().get("lateMessages"));
+        }
+    }
+
+    @Test
+    public void testSkipRecentlyEmptySubjects() throws Exception {
+        MemoryTopic users = new MemoryTopic();
+        MemoryTopic devices = new MemoryTopic();
+
+        try (BackendMessageTopicListener listener = new BackendMessageTopicListener(users, devices, 1, 10, 0)) {
+            listener.setEmptySubjectTtlMillis(300);
+            // 向redis确认是否有消息在线程池中执行
+            assertTrue(listener.poll(1L, 2L, c -> true).get(5, TimeUnit.SECONDS).isEmpty());
+            assertEquals(2, users.emptyChecks.get() + devices.emptyChecks.get());
+
+            // 有效期内不再向redis确认，新到达的消息推迟拉取
+            users.offer(1, "u1");
+            for (int i = 0; i < 10; i++) {
+                assertNull(listener.poll(1L, 2L, c -> true));
+            }
+            assertEquals(2, users.emptyChecks.get() + devices.emptyChecks.get());
+            assertEquals(20L, listener.metrics().get("emptySkipped"));
+
+            // 有效期过后重新确认
+            Thread.sleep(350);
+            CompletableFuture<List<PolledBackendMessage>> future = listener.poll(1L, 2L, c -> true);
+            assertNotNull(future);
+            assertEquals(Collections.singleton("u1"), keys(future.get(5, TimeUnit.SECONDS)));
+            assertEquals(4, users.emptyChecks.get() + devices.emptyChecks.get());
+
+            // 关闭后每次都向redis确认
+            listener.setEmptySubjectTtlMillis(0);
+            assertTrue(listener.poll(1L, 2L, c -> true).get(5, TimeUnit.SECONDS).isEmpty());
+            assertEquals(6, users.emptyChecks.get() + devices.emptyChecks.get());
+            assertNotNull(listener.poll(1L, 2L, c -> true));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.apigw.core.utils.CidrTrie;
+import com.estatetrader.util.IpAddress;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 验证网段前缀树与逐一比较网段的结果一致，覆盖每种前缀长度的边界地址
+ */
+public class CidrTrieTest {
+
+    private static final BigInteger MAX_128 = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+
+    private static IpAddress ipv4(long value) {
+        return IpAddress.ofIpv4((int) value);
+    }
+
+    private static IpAddress ipv6(BigInteger value) {
+        return IpAddress.of(value.shiftRight(64).longValue(), value.longValue());
+    }
+
+    private static BigInteger toBigInteger(IpAddress address) {
+        return new BigInteger(1, new byte[]{
+            (byte) (address.high() >>> 56), (byte) (address.high() >>> 48),
+            (byte) (address.high() >>> 40), (byte) (address.high() >>> 32),
+            (byte) (address.high() >>> 24), (byte) (address.high() >>> 16),
+            (byte) (address.high() >>> 8), (byte) address.high(),
+            (byte) (address.low() >>> 56), (byte) (address.low() >>> 48),
+            (byte) (address.low() >>> 40), (byte) (address.low() >>> 32),
+            (byte) (address.low() >>> 24), (byte) (address.low() >>> 16),
+            (byte) (address.low() >>> 8), (byte) address.low(),
+        });
+    }
+
+    private static String ipv4Text(long value) {
+        return ipv4(value).toString();
+    }
+
+    /**
+     * 逐一比较网段的参考实现，前缀按照128位计算
+     */
+    private static boolean naiveContains(List<IpAddress> networks, List<Integer> lengths, IpAddress address) {
+        BigInteger a = toBigInteger(address);
+        for (int i = 0; i < networks.size(); i++) {
+            int length = lengths.get(i);
+            BigInteger mask = MAX_128.shiftRight(length).xor(MAX_128);
+            if (a.and(mask).equals(toBigInteger(networks.get(i)).and(mask))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testIpv4PrefixBoundaries() {
+        Random random = new Random(17);
+        for (int length = 0; length <= 32; length++) {
+            long network = random.nextInt() & 0xffffffffL;
+            long size = 1L << (32 - length);
+            long first = network & ~(size - 1) & 0xffffffffL;
+            long last = first + size - 1;
+
+            CidrTrie.Builder builder = CidrTrie.builder();
+            assertTrue(builder.add(ipv4Text(network) + "/" + length));
+            CidrTrie trie = builder.build();
+
+            String name = ipv4Text(network) + "/" + length;
+            assertTrue(name, trie.contains(ipv4(first)));
+            assertTrue(name, trie.contains(ipv4(last)));
+            assertTrue(name, trie.contains(ipv4(first + (size >>> 1))));
+            if (first > 0) {
+                assertFalse(name, trie.contains(ipv4(first - 1)));
+            }
+            if (last < 0xffffffffL) {
+                assertFalse(name, trie.contains(ipv4(last + 1)));
+            }
+            // IPv4网段不应匹配IPv6地址
+            assertFalse(name, trie.contains(IpAddress.of(0, first)));
+            assertFalse(name, trie.contains(IpAddress.parse("2001:db8::1")));
+        }
+    }
+
+    @Test
+    public void testIpv6PrefixBoundaries() {
+        Random random = new Random(61);
+        for (int length = 0; length <= 128; length++) {
+            BigInteger network = new BigInteger(128, random);
+            BigInteger hostMask = MAX_128.shiftRight(length);
+            BigInteger first = network.andNot(hostMask);
+            BigInteger last = first.or(hostMask);
+
+            CidrTrie trie = CidrTrie.builder().add(ipv6(network), length).build();
+
+            String name = ipv6(network) + "/" + length;
+            assertTrue(name, trie.contains(ipv6(first)));
+            assertTrue(name, trie.contains(ipv6(last)));
+            if (first.signum() > 0) {
+                assertFalse(name, trie.contains(ipv6(first.subtract(BigInteger.ONE))));
+            }
+            if (last.compareTo(MAX_128) < 0) {
+                assertFalse(name, trie.contains(ipv6(last.add(BigInteger.ONE))));
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsLinearScan() {
+        Random random = new Random(2020);
+        List<IpAddress> networks = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        CidrTrie.Builder builder = CidrTrie.builder();
+        for (int i = 0; i < 2000; i++) {
+            IpAddress network;
+            int length;
+            if (random.nextBoolean()) {
+                // 集中在10.0.0.0/8内，使网段之间互相嵌套和重叠
+                network = ipv4(0x0a000000L | (random.nextInt() & 0x00ffffffL));
+                length = 96 + 8 + random.nextInt(25);
+            } else {
+                network = IpAddress.of(0x20010db800000000L | (random.nextLong() & 0xffffffffL), random.nextLong());
+                length = 32 + random.nextInt(97);
+            }
+            networks.add(network);
+            lengths.add(length);
+            builder.add(network, length);
+        }
+        CidrTrie trie = builder.build();
+
+        for (int i = 0; i < 20000; i++) {
+            IpAddress address;
+            if (i % 2 == 0) {
+                address = ipv4(0x0a000000L | (random.nextInt() & 0x00ffffffL));
+            } else {
+                IpAddress base = networks.get(random.nextInt(networks.size()));
+                // 在某个网段附近翻转若干低位，使一部分地址落在网段内，另一部分刚好落在网段外
+                address = IpAddress.of(base.high(), base.low() ^ (1L << random.nextInt(64)));
+            }
+            assertEquals(address.toString(), naiveContains(networks, lengths, address), trie.contains(address));
+        }
+    }
+
+    @Test
+    public void testOverlappingAndDuplicatedNetworks() {
+        CidrTrie.Builder builder = CidrTrie.builder();
+        assertTrue(builder.add("10.1.2.0/24"));
+        assertTrue(builder.add("10.0.0.0/8"));
+        assertTrue(builder.add("10.1.0.0/16"));
+        assertTrue(builder.add("10.0.0.0/8"));
+        assertTrue(builder.add("192.168.1.1"));
+        assertTrue(builder.add(" fd00::/8 "));
+        assertTrue(builder.add("::ffff:172.16.0.0/108"));
+        CidrTrie trie = builder.build();
+
+        assertEquals(6, trie.size());
+        assertTrue(trie.contains(IpAddress.parse("10.255.255.255")));
+        assertTrue(trie.contains(IpAddress.parse("10.1.2.3")));
+        assertFalse(trie.contains(IpAddress.parse("11.0.0.0")));
+        assertTrue(trie.contains(IpAddress.parse("192.168.1.1")));
+        assertFalse(trie.contains(IpAddress.parse("192.168.1.2")));
+        assertTrue(trie.contains(IpAddress.parse("fdff:ffff::1")));
+        assertFalse(trie.contains(IpAddress.parse("fe00::")));
+        assertTrue(trie.contains(IpAddress.parse("172.31.255.255")));
+        assertFalse(trie.contains(IpAddress.parse("172.32.0.0")));
+        assertTrue(trie.contains(IpAddress.parse("::ffff:10.0.0.1")));
+        assertFalse(trie.contains(null));
+
+        assertFalse(CidrTrie.EMPTY.contains(IpAddress.parse("10.0.0.1")));
+        assertTrue(CidrTrie.builder().add(IpAddress.of(0, 0), 0).build().contains(IpAddress.parse("::1")));
+    }
+
+    @Test
+    public void testInvalidNetworks() {
+        CidrTrie.Builder builder = CidrTrie.builder();
+        String[] invalid = {"", "10.0.0.0/", "10.0.0.0/33", "10.0.0.0/-1", "10.0.0.0/a", "10.0.0/8",
+            "fd00::/129", "host.example.com", "10.0.0.0/8/8", null};
+        for (String text : invalid) {
+            assertFalse(String.valueOf(text), builder.add(text));
+        }
+        assertEquals(0, builder.build().size());
+    }
+
+    @Test
+    public void testParseAddress() throws UnknownHostException {
+        String[] valid = {"0.0.0.0", "255.255.255.255", "10.0.0.1", "010.000.000.001", "::", "::1", "1::",
+            "2001:db8::ff00:42:8329", "2001:0db8:0000:0000:0000:ff00:0042:8329", "fe80::1:2:3:4:5",
+            "1:2:3:4:5:6:7:8", "1:2:3:4:5:6::8", "::ffff:192.168.0.1", "64:ff9b::10.0.0.1", "::1.2.3.4",
+            "1:2:3:4:5:6:1.2.3.4"};
+        for (String text : valid) {
+            IpAddress address = IpAddress.parse(text);
+            assertNotNull(text, address);
+            // 去掉前导零以便交给InetAddress解析，其对合法的IP字面量不会进行DNS查询
+            String literal = text.contains(":") ? text : ipv4Text(address.ipv4());
+            byte[] bytes = InetAddress.getByName(literal).getAddress();
+            BigInteger expected = new BigInteger(1, bytes);
+            if (bytes.length == 4) {
+                expected = expected.or(BigInteger.valueOf(0xffffL).shiftLeft(32));
+            }
+            assertEquals(text, expected, toBigInteger(address));
+        }
+
+        assertEquals(IpAddress.parse("fe80::1"), IpAddress.parse("[fe80::1%eth0]"));
+        assertEquals(IpAddress.parse("10.0.0.1"), IpAddress.parse("::ffff:10.0.0.1"));
+        assertTrue(IpAddress.parse("::ffff:10.0.0.1").isIpv4());
+        assertFalse(IpAddress.parse("::10.0.0.1").isIpv4());
+        assertEquals("10.0.0.1", IpAddress.parse("::ffff:a00:1").toString());
+        assertEquals("2001:db8::1", IpAddress.parse("2001:0DB8:0:0:0:0:0:1").toString());
+        assertEquals("::", IpAddress.parse("0:0:0:0:0:0:0:0").toString());
+        assertEquals("::1", IpAddress.parse("0:0:0:0:0:0:0:1").toString());
+        assertEquals("1::", IpAddress.parse("1:0:0:0:0:0:0:0").toString());
+        assertEquals("1:0:2::3", IpAddress.parse("1:0:2:0:0:0:0:3").toString());
+        assertEquals("1:0:0:2::3", IpAddress.parse("1:0:0:2:0:0:0:3").toString());
+        assertEquals("1::2:0:0:3:4", IpAddress.parse("1:0:0:2:0:0:3:4").toString());
+
+        String[] invalid = {null, "", "1.2.3", "1.2.3.4.5", "256.0.0.1", "1.2.3.4:80", "1..2.3", "1.2.3.",
+            "1234.1.1.1", ":::", "1:2:3:4:5:6:7:8:9", "1::2::3", "12345::", ":1::", "1:", "1:2:3:4:5:6:7",
+            "::g", "1:2:3:4:5:6:7:1.2.3.4", "[::1", "unknown", " 10.0.0.1"};
+        for (String text : invalid) {
+            assertNull(String.valueOf(text), IpAddress.parse(text));
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.apigw.core.models.inject.DatumKeyIndex;
+import com.estatetrader.apigw.core.models.inject.DatumKeyIndexer;
+import com.estatetrader.apigw.core.models.inject.DatumKeyInfo;
+import com.estatetrader.apigw.core.models.inject.DatumKeyTypeMatched;
+import com.estatetrader.generic.GenericType;
+import com.estatetrader.generic.GenericTypes;
+import org.junit.Test;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * 验证基于索引的datum匹配与逐一比较的匹配结果完全一致
+ */
+public class DatumKeyIndexTest {
+
+    @SuppressWarnings("unused")
+    private static class TypeHolder {
+        List<Integer> integerList;
+        List<Long> longList;
+        List<String> stringList;
+        Set<Double> doubleSet;
+    }
+
+    private static GenericType fieldType(String name) {
+        try {
+            Type type = TypeHolder.class.getDeclaredField(name).getGenericType();
+            return GenericTypes.of(type);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final Class<?>[] KEY_CLASSES = {
+        int.class, Integer.class, long.class, Long.class, short.class, Short.class,
+        double.class, Double.class, float.class, String.class
+    };
+
+    private static final Object[] PLURAL_TARGET_TYPES = {
+        "integerList", "longList", "stringList", "doubleSet",
+        int[].class, long[].class, Integer[].class, Long[].class, double[].class, String[].class
+    };
+
+    private static Object randomValue(Random random, Class<?> clazz, boolean nullable) {
+        if (nullable && !clazz.isPrimitive() && random.nextInt(10) == 0) {
+            return null;
+        }
+        int n = random.nextInt(20) - 5;
+        if (clazz == int.class || clazz == Integer.class) {
+            return n;
+        } else if (clazz == long.class || clazz == Long.class) {
+            return (long) n;
+        } else if (clazz == short.class || clazz == Short.class) {
+            return (short) n;
+        } else if (clazz == double.class || clazz == Double.class) {
+            switch (random.nextInt(12)) {
+                case 0: return Double.NaN;
+                case 1: return -0.0;
+                case 2: return n + 0.5;
+                default: return (double) n;
+            }
+        } else if (clazz == float.class || clazz == Float.class) {
+            return random.nextInt(8) == 0 ? Float.NaN : (float) n;
+        } else if (clazz == String.class) {
+            return String.valueOf(n);
+        } else {
+            throw new IllegalArgumentException(clazz.toString());
+        }
+    }
+
+    private static Object randomPluralTarget(Random random, Object targetType) {
+        int size = random.nextInt(6);
+        if (targetType instanceof String) {
+            if (random.nextInt(10) == 0) {
+                return null;
+            }
+            Class<?> elementClass;
+            switch ((String) targetType) {
+                case "integerList": elementClass = Integer.class; break;
+                case "longList": elementClass = Long.class; break;
+                case "stringList": elementClass = String.class; break;
+                default: elementClass = Double.class;
+            }
+            List<Object> list = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                list.add(randomValue(random, elementClass, true));
+            }
+            return "doubleSet".equals(targetType) ? new LinkedHashSet<>(list) : list;
+        }
+
+        Class<?> componentType = ((Class<?>) targetType).getComponentType();
+        Object array = Array.newInstance(componentType, size);
+        for (int i = 0; i < size; i++) {
+            Array.set(array, i, randomValue(random, componentType, true));
+        }
+        return array;
+    }
+
+    private static GenericType typeOf(Object targetType) {
+        return targetType instanceof String ? fieldType((String) targetType) : GenericTypes.of((Class<?>) targetType);
+    }
+
+    private static void verify(Random random, Class<?> datumKeyClass, Object targetType, boolean plural) {
+        DatumKeyInfo keyInfo = new DatumKeyInfo("id", GenericTypes.of(datumKeyClass), datum -> ((Object[]) datum)[0]);
+        DatumKeyTypeMatched matched = keyInfo.tryMatchType(typeOf(targetType));
+        if (matched == null || matched.plural != plural) {
+            return;
+        }
+
+        DatumKeyIndexer indexer = matched.datumKeyMatcher.indexer();
+        assertNotNull("no indexer for " + datumKeyClass + " -> " + targetType, indexer);
+
+        for (int round = 0; round < 20; round++) {
+            List<Object> datums = new ArrayList<>();
+            int count = random.nextInt(40);
+            for (int i = 0; i < count; i++) {
+                datums.add(new Object[]{randomValue(random, datumKeyClass, true), i});
+            }
+            DatumKeyIndex index = new DatumKeyIndex(datums, indexer);
+
+            for (int t = 0; t < 20; t++) {
+                Object target = plural
+                    ? randomPluralTarget(random, targetType)
+                    : randomValue(random, (Class<?>) targetType, true);
+
+                List<Object> expected = new ArrayList<>();
+                for (Object datum : datums) {
+                    if (matched.datumKeyMatcher.matches(datum, target)) {
+                        expected.add(datum);
+                    }
+                }
+
+                List<Object> actual = new ArrayList<>();
+                for (int position : index.lookup(target)) {
+                    actual.add(index.datum(position));
+                }
+
+                assertEquals(datumKeyClass.getSimpleName() + " -> " + describe(target), expected, actual);
+            }
+        }
+    }
+
+    private static String describe(Object target) {
+        if (target != null && target.getClass().isArray()) {
+            int n = Array.getLength(target);
+            Object[] values = new Object[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = Array.get(target, i);
+            }
+            return Arrays.toString(values);
+        }
+        return String.valueOf(target);
+    }
+
+    @Test
+    public void testSingularKeysMatchLinearScan() {
+        Random random = new Random(20240601);
+        for (Class<?> datumKeyClass : KEY_CLASSES) {
+            for (Class<?> targetClass : KEY_CLASSES) {
+                verify(random, datumKeyClass, targetClass, false);
+            }
+        }
+    }
+
+    @Test
+    public void testPluralKeysMatchLinearScan() {
+        Random random = new Random(20240602);
+        for (Class<?> datumKeyClass : KEY_CLASSES) {
+            for (Object targetType : PLURAL_TARGET_TYPES) {
+                verify(random, datumKeyClass, targetType, true);
+            }
+        }
+    }
+
+    @Test
+    public void testLookupKeepsProviderOrderWithoutDuplicates() {
+        DatumKeyInfo keyInfo = new DatumKeyInfo("id", GenericTypes.of(long.class), datum -> ((Object[]) datum)[0]);
+        DatumKeyTypeMatched matched = keyInfo.tryMatchType(GenericTypes.of(int[].class));
+        assertTrue(matched.plural);
+
+        List<Object> datums = new ArrayList<>();
+        for (long id : new long[]{3, 1, 2, 3, 1}) {
+            datums.add(new Object[]{id});
+        }
+        DatumKeyIndex index = new DatumKeyIndex(datums, matched.datumKeyMatcher.indexer());
+
+        assertArrayEquals(new int[]{0, 1, 3, 4}, index.lookup(new int[]{1, 3, 1, 3}));
+        assertArrayEquals(new int[]{2}, index.lookup(new int[]{2, 5}));
+        assertArrayEquals(new int[0], index.lookup(new int[]{7}));
+        assertArrayEquals(new int[0], index.lookup(null));
+    }
+}
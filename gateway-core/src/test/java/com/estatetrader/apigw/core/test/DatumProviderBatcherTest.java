@@ -0,0 +1,209 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.apigw.core.models.inject.DatumProviderBatcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class DatumProviderBatcherTest {
+
+    /**
+     * 模拟的datum provider，按照id返回用户名，并记录被调用的次数和每次调用的参数
+     */
+    private static class StubProvider {
+        final AtomicInteger invocations = new AtomicInteger();
+        final List<List<Object>> calls = Collections.synchronizedList(new ArrayList<>());
+
+        List<String> getUserNames(List<Object> ids) {
+            invocations.incrementAndGet();
+            calls.add(ids);
+            return ids.stream().map(id -> "user-" + id).collect(Collectors.toList());
+        }
+    }
+
+    private static final long MAX_WAIT = 2000;
+
+    private ExecutorService dispatcher;
+    private DatumProviderBatcher batcher;
+    private StubProvider provider;
+
+    @Before
+    public void setUp() {
+        dispatcher = Executors.newCachedThreadPool();
+        batcher = new DatumProviderBatcher(dispatcher);
+        provider = new StubProvider();
+    }
+
+    @After
+    public void tearDown() {
+        batcher.close();
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * 模拟一次需要注入的请求：leader负责调用provider并分发结果，follower等待结果，
+     * 最后每个请求都只保留与自己的key匹配的datum
+     */
+    private CompletableFuture<List<String>> request(Object groupKey, List<Object> ids, int window, int maxKeys) {
+        DatumProviderBatcher.Ticket ticket = batcher.join(groupKey, ids, window, maxKeys, MAX_WAIT);
+        CompletableFuture<Object> provided = new CompletableFuture<>();
+        if (ticket == null) {
+            provided.complete(provider.getUserNames(ids));
+        } else if (ticket.isLeader()) {
+            ticket.sealed().setCallback((keys, throwable) -> {
+                @SuppressWarnings("unchecked")
+                List<String> result = provider.getUserNames((List<Object>) keys);
+                ticket.publish(result, null);
+                provided.complete(result);
+            });
+        } else {
+            ticket.result().setCallback((result, throwable) -> {
+                if (throwable != null) {
+                    provided.completeExceptionally(throwable);
+                } else {
+                    provided.complete(result);
+                }
+            });
+        }
+
+        return provided.thenApply(result -> {
+            @SuppressWarnings("unchecked")
+            List<String> names = (List<String>) result;
+            List<String> expected = ids.stream().map(id -> "user-" + id).collect(Collectors.toList());
+            return names.stream().filter(expected::contains).collect(Collectors.toList());
+        });
+    }
+
+    private static List<Object> ids(Object... ids) {
+        return Arrays.asList(ids);
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneProviderCall() throws Exception {
+        int requests = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<List<String>>> futures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            int id = i;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                futures.add(request("profile", ids(id, id + 1), 200, 0));
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        for (CompletableFuture<List<String>> future : futures) {
+            assertEquals(2, future.get(5, TimeUnit.SECONDS).size());
+        }
+        assertEquals(1, provider.invocations.get());
+        // key取并集且不重复
+        assertEquals(requests + 1, provider.calls.get(0).size());
+
+        Map<String, Object> metrics = batcher.metrics();
+        assertEquals((long) requests, metrics.get("joined"));
+        assertEquals(1L, metrics.get("batches"));
+        assertEquals((long) requests - 1, metrics.get("savedCalls"));
+    }
+
+    @Test
+    public void testEachRequestReceivesOnlyItsOwnDatums() throws Exception {
+        CompletableFuture<List<String>> a = request("profile", ids(1, 2), 50, 0);
+        CompletableFuture<List<String>> b = request("profile", ids(2, 3), 50, 0);
+        CompletableFuture<List<String>> c = request("profile", ids(4), 50, 0);
+
+        assertEquals(Arrays.asList("user-1", "user-2"), a.get(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("user-2", "user-3"), b.get(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("user-4"), c.get(5, TimeUnit.SECONDS));
+        assertEquals(1, provider.invocations.get());
+        assertEquals(ids(1, 2, 3, 4), provider.calls.get(0));
+    }
+
+    @Test
+    public void testDifferentGroupsAreNotMerged() throws Exception {
+        CompletableFuture<List<String>> a = request("profile:zh", ids(1), 50, 0);
+        CompletableFuture<List<String>> b = request("profile:en", ids(1), 50, 0);
+
+        assertEquals(1, a.get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, b.get(5, TimeUnit.SECONDS).size());
+        assertEquals(2, provider.invocations.get());
+    }
+
+    @Test
+    public void testMaxKeysSealsBatchEarly() throws Exception {
+        // 窗口足够长，只有达到key数量上限才会立即发起调用
+        long begin = System.nanoTime();
+        CompletableFuture<List<String>> a = request("profile", ids(1, 2), 10_000, 4);
+        CompletableFuture<List<String>> b = request("profile", ids(3, 4), 10_000, 4);
+        assertEquals(2, a.get(5, TimeUnit.SECONDS).size());
+        assertEquals(2, b.get(5, TimeUnit.SECONDS).size());
+        assertTrue(System.nanoTime() - begin < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(1, provider.invocations.get());
+
+        // 超过上限的调用开启新的批次，原批次立即发起调用
+        CompletableFuture<List<String>> c = request("profile", ids(5, 6), 10_000, 4);
+        CompletableFuture<List<String>> d = request("profile", ids(7, 8, 9), 10_000, 4);
+        assertEquals(2, c.get(5, TimeUnit.SECONDS).size());
+        assertEquals(2, provider.invocations.get());
+        assertFalse(d.isDone());
+
+        // 单个调用的key数量已经达到上限时不参与合并
+        CompletableFuture<List<String>> e = request("profile", ids(10, 11, 12, 13), 10_000, 4);
+        assertEquals(4, e.get(5, TimeUnit.SECONDS).size());
+        assertEquals(3, provider.invocations.get());
+        assertEquals(1L, batcher.metrics().get("bypassed"));
+    }
+
+    @Test
+    public void testFollowersFailWhenLeaderNeverPublishes() throws Exception {
+        // 等待时间由开启批次的leader决定
+        DatumProviderBatcher.Ticket leader = batcher.join("profile", ids(1), 10, 0, 50);
+        DatumProviderBatcher.Ticket follower = batcher.join("profile", ids(2), 10, 0, MAX_WAIT);
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        follower.result().setCallback((result, throwable) -> failure.complete(throwable));
+        assertTrue(failure.get(1, TimeUnit.SECONDS) instanceof TimeoutException);
+        assertEquals(1L, batcher.metrics().get("expired"));
+    }
+
+    @Test
+    public void testProviderFailureIsPropagatedToFollowers() throws Exception {
+        DatumProviderBatcher.Ticket leader = batcher.join("profile", ids(1), 10, 0, MAX_WAIT);
+        DatumProviderBatcher.Ticket follower = batcher.join("profile", ids(2), 10, 0, MAX_WAIT);
+
+        IllegalStateException error = new IllegalStateException("provider failed");
+        leader.sealed().setCallback((keys, throwable) -> leader.publish(null, error));
+
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        follower.result().setCallback((result, throwable) -> failure.complete(throwable));
+        assertSame(error, failure.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, batcher.metrics().get("failed"));
+    }
+}
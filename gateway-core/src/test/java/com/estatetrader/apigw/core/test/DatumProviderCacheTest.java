@@ -0,0 +1,183 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.apigw.core.models.inject.DatumKeyIndexer;
+import com.estatetrader.apigw.core.models.inject.DatumKeyInfo;
+import com.estatetrader.apigw.core.models.inject.DatumProviderCache;
+import com.estatetrader.apigw.core.utils.TinyLfuCache;
+import com.estatetrader.core.ParameterConverter;
+import com.estatetrader.generic.GenericTypes;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class DatumProviderCacheTest {
+
+    /**
+     * 模拟provider返回的datum
+     */
+    private static class City {
+        final long id;
+        final String name;
+
+        City(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private static DatumKeyIndexer indexer() {
+        DatumKeyInfo keyInfo = new DatumKeyInfo("cityId", GenericTypes.of(long.class), datum -> ((City) datum).id);
+        return keyInfo.tryMatchType(GenericTypes.of(long.class)).datumKeyMatcher.indexer();
+    }
+
+    private static DatumProviderCache newCache(DatumKeyIndexer indexer, int shardCount) {
+        return new DatumProviderCache(indexer, ParameterConverter.getConverter(GenericTypes.of(long.class)),
+            100, shardCount, 60_000);
+    }
+
+    /**
+     * 模拟一次provider调用，id为负数的城市不存在
+     */
+    private static List<Object> provide(List<Object> ids) {
+        return ids.stream()
+            .filter(id -> ((Long) id) >= 0)
+            .map(id -> new City((Long) id, "city-" + id))
+            .collect(Collectors.toList());
+    }
+
+    private static List<Object> ids(Object... ids) {
+        return Arrays.asList(ids);
+    }
+
+    private static List<Long> idsOf(List<Object> datums) {
+        return datums.stream().map(d -> ((City) d).id).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testPartialHitOnlyFetchesMissingKeys() {
+        DatumProviderCache cache = newCache(indexer(), 1);
+        String[] parameters = {null, "zh"};
+
+        DatumProviderCache.Lookup first = cache.lookup(parameters, ids(1L, 2L, -3L));
+        assertTrue(first.getCachedDatums().isEmpty());
+        assertEquals(ids(1L, 2L, -3L), first.getMissingKeys());
+        assertEquals(2, cache.store(first, provide(first.getMissingKeys()).stream()).size());
+
+        // 1和2命中，不存在的-3同样被缓存，仅4需要调用provider
+        DatumProviderCache.Lookup second = cache.lookup(parameters, ids(2L, 4L, 1L, -3L));
+        assertEquals(Arrays.asList(1L, 2L), idsOf(second.getCachedDatums()));
+        assertEquals(ids(4L), second.getMissingKeys());
+        cache.store(second, provide(second.getMissingKeys()).stream());
+
+        DatumProviderCache.Lookup third = cache.lookup(parameters, ids(1L, 2L, 4L));
+        assertEquals(Arrays.asList(1L, 2L, 4L), idsOf(third.getCachedDatums()));
+        assertTrue(third.getMissingKeys().isEmpty());
+
+        // 其余参数不同的调用不共享缓存
+        DatumProviderCache.Lookup other = cache.lookup(new String[]{null, "en"}, ids(1L));
+        assertEquals(ids(1L), other.getMissingKeys());
+    }
+
+    @Test
+    public void testInvalidate() {
+        DatumProviderCache cache = newCache(indexer(), 2);
+        String[] parameters = {null};
+        DatumProviderCache.Lookup lookup = cache.lookup(parameters, ids(1L, 2L, 3L));
+        cache.store(lookup, provide(lookup.getMissingKeys()).stream());
+
+        assertEquals(1, cache.invalidate("2"));
+        assertEquals(0, cache.invalidate("2"));
+        assertEquals(ids(2L), cache.lookup(parameters, ids(1L, 2L, 3L)).getMissingKeys());
+
+        // 无法解析为key类型的文本不会匹配任何缓存项
+        assertEquals(0, cache.invalidate("abc"));
+
+        assertEquals(2, cache.invalidateAll());
+        assertEquals(3, cache.lookup(parameters, ids(1L, 2L, 3L)).getMissingKeys().size());
+    }
+
+    @Test
+    public void testInvalidateNormalizesKey() {
+        // datum中的key为double类型，参数中的key为long类型，归一化后的key为Double
+        DatumKeyInfo keyInfo = new DatumKeyInfo("cityId", GenericTypes.of(double.class),
+            datum -> (double) ((City) datum).id);
+        DatumProviderCache cache = newCache(keyInfo.tryMatchType(GenericTypes.of(long.class)).datumKeyMatcher.indexer(), 1);
+        String[] parameters = {null};
+        DatumProviderCache.Lookup lookup = cache.lookup(parameters, ids(1L, 2L));
+        cache.store(lookup, provide(lookup.getMissingKeys()).stream());
+        assertTrue(cache.lookup(parameters, ids(1L, 2L)).getMissingKeys().isEmpty());
+
+        assertEquals(1, cache.invalidate("1"));
+        assertEquals(ids(1L), cache.lookup(parameters, ids(1L, 2L)).getMissingKeys());
+    }
+
+    @Test
+    public void testStoreAfterInvalidateIsDropped() {
+        DatumProviderCache cache = newCache(indexer(), 1);
+        String[] parameters = {null};
+
+        // provider调用发起之后、返回之前，key被删除
+        DatumProviderCache.Lookup inFlight = cache.lookup(parameters, ids(1L, 2L));
+        assertEquals(0, cache.invalidate("1"));
+        assertEquals(2, cache.store(inFlight, provide(inFlight.getMissingKeys()).stream()).size());
+
+        // 被删除的key的旧datum不会写回缓存，其余的key不受影响
+        assertEquals(ids(1L), cache.lookup(parameters, ids(1L, 2L)).getMissingKeys());
+
+        // 删除所有缓存项同样使进行中的调用无法写入
+        DatumProviderCache.Lookup beforeAll = cache.lookup(parameters, ids(1L, 3L));
+        cache.invalidateAll();
+        cache.store(beforeAll, provide(beforeAll.getMissingKeys()).stream());
+        assertEquals(ids(1L, 2L, 3L), cache.lookup(parameters, ids(1L, 2L, 3L)).getMissingKeys());
+
+        // 删除之后发起的调用可以正常写入
+        DatumProviderCache.Lookup after = cache.lookup(parameters, ids(1L));
+        cache.store(after, provide(after.getMissingKeys()).stream());
+        assertTrue(cache.lookup(parameters, ids(1L)).getMissingKeys().isEmpty());
+    }
+
+    @Test
+    public void testEntriesExpireAfterTtl() {
+        AtomicLong now = new AtomicLong(1000);
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 1, 500, now::get);
+        cache.put("a", "1");
+        now.addAndGet(499);
+        assertEquals("1", cache.get("a"));
+        now.addAndGet(1);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(1L, cache.metrics().get("expirations"));
+    }
+
+    @Test
+    public void testFrequentKeysSurviveOneHitFlood() {
+        int capacity = 200;
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(capacity, 1, 60_000);
+        List<Integer> hotKeys = IntStream.range(0, capacity / 2).boxed().collect(Collectors.toList());
+        for (int round = 0; round < 5; round++) {
+            for (Integer key : hotKeys) {
+                if (cache.get(key) == null) {
+                    cache.put(key, key);
+                }
+            }
+        }
+
+        // 大量只访问一次的key不应将热点key挤出缓存
+        for (int i = 0; i < capacity * 20; i++) {
+            int key = 1_000_000 + i;
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            }
+        }
+
+        long retained = hotKeys.stream().filter(key -> cache.get(key) != null).count();
+        assertTrue("retained " + retained, retained >= hotKeys.size() * 9 / 10);
+        assertTrue(cache.size() <= capacity);
+    }
+}
@@ -0,0 +1,90 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.apigw.core.utils.DynamicSaltVerifier;
+import com.estatetrader.apigw.core.utils.EccHelper;
+import com.estatetrader.apigw.core.utils.RequestSignatureText;
+import com.estatetrader.apigw.core.utils.RsaHelper;
+import com.estatetrader.util.HexStringUtil;
+import com.estatetrader.util.Md5Util;
+import com.estatetrader.util.SHAUtil;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DynamicSaltVerifierTest {
+
+    private static final String TEXT = "_aid=1_mt=demo.sayHelloname=world";
+    private static final byte[] CONTENT = TEXT.getBytes(StandardCharsets.UTF_8);
+
+    private final DynamicSaltVerifier verifier = new DynamicSaltVerifier(16, 4, 60_000);
+
+    /**
+     * 按参数构建请求签名文本，结果与TEXT相同
+     */
+    private static RequestSignatureText requestText(String name) {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("name", name);
+        parameters.put("_mt", "demo.sayHello");
+        parameters.put("_aid", "1");
+        parameters.put("_sig", "ignored");
+        return RequestSignatureText.of(parameters.keySet(), parameters::get, "_sig");
+    }
+
+    @Test
+    public void testRsa() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair pair = generator.generateKeyPair();
+        byte[] key = pair.getPublic().getEncoded();
+        byte[] sign = RsaHelper.sign(CONTENT, pair.getPrivate().getEncoded());
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(verifier.verifyRsa(sign, requestText("world"), key));
+            assertFalse(verifier.verifyRsa(sign, requestText("other"), key));
+        }
+        assertFalse(verifier.verifyRsa(sign, requestText("world"), new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void testEcc() throws Exception {
+        // 触发BouncyCastle的注册
+        EccHelper.class.getName();
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "BC");
+        generator.initialize(256);
+        KeyPair pair = generator.generateKeyPair();
+        byte[] key = pair.getPublic().getEncoded();
+        byte[] sign = EccHelper.sign(CONTENT, pair.getPrivate().getEncoded());
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(verifier.verifyEcc(sign, requestText("world"), key));
+        }
+        assertFalse(verifier.verifyEcc(sign, requestText("world"), new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void testSaltedDigest() {
+        byte[] key = {1, 2, (byte) 0xAB, (byte) 0xFF};
+        byte[] salted = (TEXT + HexStringUtil.toHexString(key)).getBytes(StandardCharsets.UTF_8);
+        byte[] md5 = Md5Util.compute(salted);
+        byte[] sha1 = SHAUtil.computeSHA1(salted);
+
+        byte[] hex = verifier.hexSalt(key);
+        assertArrayEquals(HexStringUtil.toHexString(key).getBytes(StandardCharsets.US_ASCII), hex);
+        // 第二次从缓存中获取
+        assertSame(hex, verifier.hexSalt(key));
+        assertNull(verifier.hexSalt(null));
+
+        RequestSignatureText text = requestText("world");
+        assertTrue(text.matchesSaltedDigest(RequestSignatureText.MD5, hex, md5));
+        assertTrue(text.matchesSaltedDigest(RequestSignatureText.SHA1, hex, sha1));
+        assertFalse(text.matchesSaltedDigest(RequestSignatureText.MD5, hex, sha1));
+        assertFalse(text.matchesSaltedDigest(RequestSignatureText.SHA1, verifier.hexSalt(new byte[]{1, 2}), sha1));
+        assertFalse(text.matchesSaltedDigest(RequestSignatureText.MD5, hex, null));
+    }
+}
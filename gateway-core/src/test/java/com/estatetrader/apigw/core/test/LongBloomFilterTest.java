@@ -0,0 +1,46 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.apigw.core.utils.LongBloomFilter;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongBloomFilterTest {
+
+    @Test
+    public void testNoFalseNegatives() {
+        LongBloomFilter filter = new LongBloomFilter(10_000, 0.01);
+        Random random = new Random(22);
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextLong();
+            filter.put(values[i]);
+        }
+        for (long value : values) {
+            assertTrue(filter.mightContain(value));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        int n = 100_000;
+        double fpp = 0.001;
+        LongBloomFilter filter = new LongBloomFilter(n, fpp);
+        // 连续的id是最常见的情况
+        for (long id = 1; id <= n; id++) {
+            filter.put(id);
+        }
+
+        int falsePositives = 0;
+        int probes = 1_000_000;
+        for (long id = n + 1; id <= n + probes; id++) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        assertTrue("false positive rate " + rate, rate < fpp * 1.5);
+    }
+}
@@ -0,0 +1,101 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.apigw.core.utils.RequestSignatureText;
+import com.estatetrader.util.Md5Util;
+import com.estatetrader.util.SHAUtil;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RequestSignatureTextTest {
+
+    /**
+     * 网关原有的请求文本拼接方式
+     */
+    private static String legacyRequestText(Map<String, String> params) {
+        List<String> names = new ArrayList<>(params.keySet());
+        names.sort(String::compareTo);
+        StringBuilder sb = new StringBuilder();
+        for (String name : names) {
+            if ("_sig".equals(name)) {
+                continue;
+            }
+            sb.append(name).append('=').append(params.get(name));
+        }
+        return sb.toString();
+    }
+
+    private static String randomString(Random random) {
+        int length = random.nextInt(12);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(6)) {
+                case 0:
+                    sb.append((char) (0x80 + random.nextInt(0x780)));
+                    break;
+                case 1:
+                    sb.append((char) (0x800 + random.nextInt(0xD000)));
+                    break;
+                case 2:
+                    sb.appendCodePoint(0x10000 + random.nextInt(0x10000));
+                    break;
+                case 3:
+                    // 不成对的代理字符
+                    sb.append((char) (0xD800 + random.nextInt(0x800)));
+                    break;
+                default:
+                    sb.append((char) (0x20 + random.nextInt(0x5f)));
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testSameBytesAsLegacyText() {
+        Random random = new Random(20191017);
+        for (int round = 0; round < 2000; round++) {
+            Map<String, String> params = new HashMap<>();
+            int count = random.nextInt(40);
+            for (int i = 0; i < count; i++) {
+                params.put(randomString(random), random.nextInt(10) == 0 ? null : randomString(random));
+            }
+            if (random.nextBoolean()) {
+                params.put("_sig", "abc");
+            }
+
+            RequestSignatureText text = RequestSignatureText.of(params.keySet(), params::get, "_sig");
+            byte[] expected = legacyRequestText(params).getBytes(StandardCharsets.UTF_8);
+            assertArrayEquals(expected, Arrays.copyOf(text.buffer(), text.length()));
+        }
+    }
+
+    @Test
+    public void testSaltedDigest() {
+        Map<String, String> params = new HashMap<>();
+        params.put("_mt", "demo.sayHello");
+        params.put("_aid", "1");
+        params.put("name", "世界");
+        params.put("_sig", "ignored");
+
+        String legacy = legacyRequestText(params);
+        byte[] salt1 = "static-salt".getBytes(StandardCharsets.UTF_8);
+        byte[] salt2 = "0a1b2c".getBytes(StandardCharsets.UTF_8);
+
+        RequestSignatureText text = RequestSignatureText.of(params.keySet(), params::get, "_sig");
+        for (int i = 0; i < 2; i++) {
+            assertTrue(text.matchesSaltedDigest(RequestSignatureText.MD5, salt1,
+                Md5Util.compute((legacy + "static-salt").getBytes(StandardCharsets.UTF_8))));
+            assertTrue(text.matchesSaltedDigest(RequestSignatureText.MD5, salt2,
+                Md5Util.compute((legacy + "0a1b2c").getBytes(StandardCharsets.UTF_8))));
+            assertTrue(text.matchesSaltedDigest(RequestSignatureText.SHA1, salt2,
+                SHAUtil.computeSHA1((legacy + "0a1b2c").getBytes(StandardCharsets.UTF_8))));
+            assertFalse(text.matchesSaltedDigest(RequestSignatureText.SHA1, salt1,
+                SHAUtil.computeSHA1((legacy + "0a1b2c").getBytes(StandardCharsets.UTF_8))));
+            assertFalse(text.matchesSaltedDigest(RequestSignatureText.SHA1, salt1, null));
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.estatetrader.apigw.core.test;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.AfterFilter;
+import com.alibaba.fastjson.serializer.NameFilter;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.serializer.SerializeFilter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.alibaba.fastjson.util.IOUtils;
+import com.estatetrader.apigw.core.extensions.Extensions;
+import com.estatetrader.apigw.core.features.DynamicTypeFeature;
+import com.estatetrader.apigw.core.features.ResponseFilterFeature;
+import com.estatetrader.apigw.core.models.ApiContext;
+import com.estatetrader.apigw.core.models.ApiMethodCall;
+import com.estatetrader.apigw.core.models.ApiMethodInfo;
+import com.estatetrader.apigw.core.phases.executing.serialize.ResponseSerializer;
+import com.estatetrader.apigw.core.phases.executing.serialize.SerializingConfigurer;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.alibaba.fastjson.JSON.DEFAULT_GENERATE_FEATURE;
+import static org.junit.Assert.*;
+
+/**
+ * 验证使用序列化计划的序列化结果与每次重新计算filters和features的原有实现逐字节一致
+ */
+public class ResponseSerializerTest {
+
+    public enum Status {
+        CREATED, PAID
+    }
+
+    public static class Item {
+        private String name;
+        private int quantity;
+
+        public Item() {
+        }
+
+        public Item(String name, int quantity) {
+            this.name = name;
+            this.quantity = quantity;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+    }
+
+    public static class Order {
+        private long id;
+        private String title;
+        private String remark;
+        private boolean active;
+        private Status status;
+        private BigDecimal price;
+        private List<String> tags;
+        private List<Item> items;
+        private Map<String, Object> attributes;
+        private Date createdAt;
+
+        public long getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getRemark() {
+            return remark;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public List<Item> getItems() {
+            return items;
+        }
+
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        public Date getCreatedAt() {
+            return createdAt;
+        }
+    }
+
+    /**
+     * 与API定义有关的filter，在序列化计划中被预先计算
+     */
+    private static class RenamingConfigurer implements SerializingConfigurer {
+        private final List<SerializeFilter> filters = Collections.singletonList(
+            (NameFilter) (object, name, value) -> "quantity".equals(name) ? "qty" : name);
+
+        @Override
+        public List<SerializeFilter> filters(Object object, ApiMethodCall methodCall, ApiContext context) {
+            return filters;
+        }
+
+        @Override
+        public List<SerializeFilter> precomputedFilters(ApiMethodInfo method) {
+            return filters;
+        }
+
+        @Override
+        public List<SerializerFeature> precomputedFeatures(ApiMethodInfo method) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 与返回值有关的filter和与请求有关的feature，须在每次序列化时计算
+     */
+    private static class PerRequestConfigurer implements SerializingConfigurer {
+        @Override
+        public List<SerializeFilter> filters(Object object, ApiMethodCall methodCall, ApiContext context) {
+            return Collections.singletonList(new AfterFilter() {
+                @Override
+                public void writeAfter(Object o) {
+                    if (o instanceof Item) {
+                        writeKeyValue("$root", object.getClass().getSimpleName());
+                    }
+                }
+            });
+        }
+
+        @Override
+        public List<SerializerFeature> features(ApiMethodCall methodCall, ApiContext context) {
+            return Collections.singletonList(SerializerFeature.BrowserCompatible);
+        }
+    }
+
+    /**
+     * 网关原有的序列化实现，每次序列化时重新计算filters和features
+     */
+    private static byte[] legacyToJson(Extensions<SerializingConfigurer> configurers,
+                                       Object object,
+                                       ApiMethodCall call) throws IOException {
+        List<SerializeFilter> filters = new ArrayList<>();
+        List<SerializerFeature> features = new ArrayList<>();
+        for (SerializingConfigurer configurer : configurers) {
+            filters.addAll(configurer.filters(object, call, null));
+            features.addAll(configurer.features(call, null));
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        JSON.writeJSONString(
+            stream,
+            IOUtils.UTF8,
+            object,
+            SerializeConfig.globalInstance,
+            filters.toArray(new SerializeFilter[0]),
+            null,
+            DEFAULT_GENERATE_FEATURE,
+            features.toArray(new SerializerFeature[0])
+        );
+        return stream.toByteArray();
+    }
+
+    private static byte[] toJson(ResponseSerializer serializer, Object object, ApiMethodCall call) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        serializer.toJson(stream, object, call, null);
+        return stream.toByteArray();
+    }
+
+    private static Extensions<SerializingConfigurer> builtinConfigurers(SerializingConfigurer... extra) {
+        List<SerializingConfigurer> list = new ArrayList<>(Arrays.asList(
+            new SerializingConfigurer.DefaultSerializingConfigurer(),
+            new DynamicTypeFeature.SerializingConfigurerImpl(),
+            new ResponseFilterFeature.ApiResultSerializingConfigurer()
+        ));
+        list.addAll(Arrays.asList(extra));
+        return new Extensions.ExtensionsImpl<>(list);
+    }
+
+    private static ApiMethodCall newCall() {
+        ApiMethodInfo method = new ApiMethodInfo();
+        method.methodName = "test.serialize";
+        return new ApiMethodCall(method);
+    }
+
+    private static Order order() {
+        Order order = new Order();
+        order.id = 1001;
+        order.title = "订单";
+        order.active = true;
+        order.status = Status.PAID;
+        order.price = new BigDecimal("12.50");
+        order.tags = Arrays.asList("x", "y");
+        order.items = Collections.singletonList(new Item("a\"b\n", 2));
+        order.attributes = new LinkedHashMap<>();
+        order.attributes.put("floor", 3);
+        order.attributes.put("view", "海景");
+        return order;
+    }
+
+    private static List<Object> corpus() {
+        Order withDate = order();
+        withDate.createdAt = new Date(1500000000000L);
+        withDate.status = Status.CREATED;
+        withDate.tags = Collections.emptyList();
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("order", order());
+        map.put("none", null);
+        map.put("numbers", new long[]{1, -2, Long.MAX_VALUE});
+
+        return Arrays.asList(
+            order(),
+            withDate,
+            Arrays.asList(new Item("p", 1), new Item()),
+            map,
+            "<script> ",
+            123.25d,
+            new Order()
+        );
+    }
+
+    private static byte[] golden(String name) throws IOException {
+        try (InputStream is = ResponseSerializerTest.class.getClassLoader()
+            .getResourceAsStream("serializer-golden/" + name)) {
+            assertNotNull("missing golden file " + name, is);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    public void testGoldenFiles() throws IOException {
+        Extensions<SerializingConfigurer> configurers = builtinConfigurers();
+        ResponseSerializer serializer = new ResponseSerializer.DefaultResponseSerializer(configurers);
+
+        assertArrayEquals(golden("order.json"), toJson(serializer, order(), newCall()));
+        assertArrayEquals(golden("items.json"),
+            toJson(serializer, Arrays.asList(new Item("p", 1), new Item()), newCall()));
+    }
+
+    @Test
+    public void testIdenticalToLegacySerializer() throws IOException {
+        Extensions<SerializingConfigurer> builtin = builtinConfigurers();
+        Extensions<SerializingConfigurer> mixed = builtinConfigurers(
+            new RenamingConfigurer(), new PerRequestConfigurer(), new RenamingConfigurer());
+
+        for (Extensions<SerializingConfigurer> configurers : Arrays.asList(builtin, mixed)) {
+            ResponseSerializer serializer = new ResponseSerializer.DefaultResponseSerializer(configurers);
+            for (Object object : corpus()) {
+                ApiMethodCall call = newCall();
+                byte[] expected = legacyToJson(configurers, object, call);
+                // 第一次序列化时生成计划，第二次使用已生成的计划
+                assertArrayEquals(expected, toJson(serializer, object, call));
+                assertArrayEquals(expected, toJson(serializer, object, call));
+                assertArrayEquals(expected, toJson(serializer, object, null));
+                assertEquals(new String(expected, IOUtils.UTF8), serializer.toJsonString(object, call, null));
+            }
+        }
+    }
+}
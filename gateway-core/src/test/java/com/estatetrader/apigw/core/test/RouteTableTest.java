@@ -0,0 +1,151 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.apigw.core.utils.RouteTable;
+import org.junit.Test;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 使用网关中注册的所有请求处理器和过滤器的url pattern验证路由表的匹配结果
+ */
+public class RouteTableTest {
+
+    /**
+     * 网关中注册的请求处理器（@RequestHandler），按照注册顺序排列
+     */
+    private static final Object[][] HANDLERS = {
+        {"api-jars-reload-request", new String[]{"/apigw/api-jars/reload"}},
+        {"api-request", new String[]{"/apigw/m.api", "/apigw/*.*.api", "/apigw/*.*/**"}},
+        {"info-request", new String[]{"/apigw/info.api"}},
+        {"inject-cache-request", new String[]{"/apigw/inject-cache/invalidate"}},
+        {"metrics-request", new String[]{"/apigw/metrics"}},
+        {"status-request", new String[]{"/apigw/status"}},
+        {"static-resource-request", new String[]{"/apigw/*.html", "/apigw/assets/*.*"}},
+    };
+
+    /**
+     * 网关中注册的请求过滤器（@RequestFilter），按照注册顺序排列
+     */
+    private static final Object[][] FILTERS = {
+        {"AccessControlFilter", new String[]{"/**"}},
+        {"FormParameterFilter", new String[]{"/apigw/m.api"}},
+        {"PathParamsFilter", new String[]{"/apigw/*.*/**"}},
+        {"ThirdPartyFilter", new String[]{"/apigw/*.*.api"}},
+    };
+
+    /**
+     * 请求路径 -> 匹配的处理器（按照优先级排列），匹配的过滤器（按照执行顺序排列）
+     */
+    private static final Object[][] CASES = {
+        {"/apigw/m.api", names("api-request"),
+            names("AccessControlFilter", "FormParameterFilter", "PathParamsFilter")},
+        {"/apigw/user.getInfo.api", names("api-request"),
+            names("AccessControlFilter", "PathParamsFilter", "ThirdPartyFilter")},
+        {"/apigw/user.getInfo/12/abc", names("api-request"),
+            names("AccessControlFilter", "PathParamsFilter")},
+        {"/apigw/user.getInfo/", names("api-request"),
+            names("AccessControlFilter", "PathParamsFilter")},
+        {"/apigw/M.API", names("api-request"),
+            names("AccessControlFilter", "PathParamsFilter")},
+        {"/apigw/info.api", names("api-request", "info-request"),
+            names("AccessControlFilter", "PathParamsFilter")},
+        {"/apigw/inject-cache/invalidate", names("inject-cache-request"), names("AccessControlFilter")},
+        {"/apigw/api-jars/reload", names("api-jars-reload-request"), names("AccessControlFilter")},
+        {"/apigw/metrics", names("metrics-request"), names("AccessControlFilter")},
+        {"/apigw/status", names("status-request"), names("AccessControlFilter")},
+        {"//apigw//status", names("status-request"), names("AccessControlFilter")},
+        {"/apigw/status/", names(), names("AccessControlFilter")},
+        {"/apigw/status/x", names(), names("AccessControlFilter")},
+        {"/apigw/index.html", names("api-request", "static-resource-request"),
+            names("AccessControlFilter", "PathParamsFilter")},
+        {"/apigw/assets/app.js", names("static-resource-request"), names("AccessControlFilter")},
+        {"/apigw/assets/js/app.js", names(), names("AccessControlFilter")},
+        {"/apigw/assets/", names(), names("AccessControlFilter")},
+        {"/other/m.api", names(), names("AccessControlFilter")},
+        {"/", names(), names("AccessControlFilter")},
+        {"", names(), names()},
+        {"apigw/status", names(), names()},
+    };
+
+    private static List<String> names(String... names) {
+        return Arrays.asList(names);
+    }
+
+    private static RouteTable<String> handlerTable() {
+        RouteTable.Builder<String> builder = RouteTable.builder();
+        for (Object[] handler : HANDLERS) {
+            builder.any((String) handler[0], (String[]) handler[1]);
+        }
+        return builder.build();
+    }
+
+    private static RouteTable<String> filterTable() {
+        RouteTable.Builder<String> builder = RouteTable.builder();
+        for (Object[] filter : FILTERS) {
+            builder.all((String) filter[0], (String[]) filter[1]);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testRegisteredRoutes() {
+        RouteTable<String> handlers = handlerTable();
+        RouteTable<String> filters = filterTable();
+        for (Object[] c : CASES) {
+            RouteTable.Path path = RouteTable.Path.parse((String) c[0]);
+            assertEquals("handlers of " + c[0], c[1], handlers.resolve(path));
+            assertEquals("filters of " + c[0], c[2], filters.resolve(path));
+        }
+    }
+
+    @Test
+    public void testSameAsAntPathMatcher() {
+        AntPathMatcher matcher = new AntPathMatcher();
+        String[] patterns = {
+            "/apigw/m.api", "/apigw/*.*.api", "/apigw/*.*/**", "/apigw/info.api", "/apigw/status",
+            "/apigw/*.html", "/apigw/assets/*.*", "/**", "/apigw/*", "/a/**/b", "/a/**/**/c/*",
+            "/a/{id}", "/a/{id:\\d+}.json", "/a/?", "/a/b/", "a/*", "/", "/**/x.*",
+        };
+        String[] paths = {
+            "/apigw/m.api", "/apigw/a.b.api", "/apigw/a.b/1/2", "/apigw/a.b/", "/apigw/a.b", "/apigw/info.api",
+            "/apigw/status", "/apigw/status/", "/apigw/x.html", "/apigw/assets/a.js", "/apigw/assets/a",
+            "/apigw/", "/apigw", "/a/b", "/a/b/", "/a/x/y/b", "/a/c/z", "/a/x/c/z", "/a/x/c/", "/a/12",
+            "/a/12.json", "/a/x2.json", "/a/x", "/a/xy", "a/x", "a/", "/", "", "//a//b", "/x.y", "/p/q/x.y",
+            "/x.y/", "/a/.json",
+        };
+
+        for (String pattern : patterns) {
+            RouteTable<String> table = RouteTable.<String>builder().any(pattern, pattern).build();
+            for (String path : paths) {
+                boolean expected = matcher.match(pattern, path);
+                boolean actual = !table.resolve(path).isEmpty();
+                assertEquals(pattern + " vs " + path, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchAllAndEmptyPatterns() {
+        RouteTable<String> table = RouteTable.<String>builder()
+            .all("default-filter")
+            .any("no-pattern-handler")
+            .all("both", "/apigw/**", "/**/*.api")
+            .build();
+        assertEquals(names("default-filter", "both"), table.resolve("/apigw/x.api"));
+        assertEquals(names("default-filter"), table.resolve("/apigw/x.html"));
+        assertEquals(Collections.singletonList("default-filter"), table.resolve("anything"));
+    }
+
+    @Test
+    public void testSegmentsSameAsStringSplit() {
+        String[] paths = {"/apigw/a.b/1/%E4%B8%AD", "/apigw/a.b//x", "/apigw/a.b/x//", "/", "", "a/b", "//"};
+        for (String path : paths) {
+            assertArrayEquals(path, path.split("/"), RouteTable.Path.parse(path).segments());
+        }
+    }
+}
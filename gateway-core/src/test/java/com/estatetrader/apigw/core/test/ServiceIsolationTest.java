@@ -0,0 +1,300 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.algorithm.workflow.ExecutionResult;
+import com.estatetrader.algorithm.workflow.NodeDeadlineException;
+import com.estatetrader.algorithm.workflow.WorkflowGraph;
+import com.estatetrader.annotation.ApiDubboConsumer;
+import com.estatetrader.annotation.ApiGroup;
+import com.estatetrader.apigw.core.extensions.Next;
+import com.estatetrader.apigw.core.features.ServiceIsolationFeature;
+import com.estatetrader.apigw.core.models.ApiMethodCall;
+import com.estatetrader.apigw.core.models.ApiMethodInfo;
+import com.estatetrader.apigw.core.utils.Bulkhead;
+import com.estatetrader.core.GatewayException;
+import com.estatetrader.entity.AbstractReturnCode;
+import com.estatetrader.entity.ApiReturnCode;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ServiceIsolationTest {
+
+    public static class RC extends AbstractReturnCode {
+        protected RC(String desc, int code) {
+            super(desc, code);
+        }
+    }
+
+    @ApiGroup(name = "slow", minCode = 0, maxCode = 100, codeDefine = RC.class, owner = "nick")
+    @ApiDubboConsumer(threads = 4, queues = 0, timeout = 2000, loadBalance = "leastactive", maxConcurrent = 10)
+    public interface SlowService {
+    }
+
+    @ApiGroup(name = "plain", minCode = 0, maxCode = 100, codeDefine = RC.class, owner = "nick")
+    public interface PlainService {
+    }
+
+    /**
+     * 由测试控制完成时机的下一个启动器
+     */
+    private static class PendingLauncher implements Next<ExecutionResult, GatewayException> {
+        final List<ExecutionResult.Async> started = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public ExecutionResult go() {
+            ExecutionResult.Async result = new ExecutionResult.Async();
+            started.add(result);
+            return result;
+        }
+
+        @Override
+        public ExecutionResult go(ExecutionResult result) {
+            return go();
+        }
+
+        @Override
+        public ExecutionResult previousResult() {
+            return null;
+        }
+    }
+
+    /**
+     * 在工作流节点中通过启动器发起一次调用
+     *
+     * @param deadline 节点的截止时间，0表示不设置
+     * @param outcome  节点的执行结果或者失败的原因
+     * @return 工作流结束时完成的future
+     */
+    private static CompletableFuture<Void> launchInNode(ApiMethodInfo method,
+                                                        PendingLauncher next,
+                                                        long deadline,
+                                                        AtomicReference<Object> outcome) {
+        ServiceIsolationFeature.ApiCallLauncherImpl launcher = new ServiceIsolationFeature.ApiCallLauncherImpl();
+        WorkflowGraph graph = new WorkflowGraph(pipeline -> {
+            pipeline.node("call", (Object) null, p -> {
+                if (deadline > 0) {
+                    p.deadline(deadline);
+                }
+                return launcher.launch(new ApiMethodCall(method), null, p, next);
+            });
+            return null;
+        }, (originFailed, nodesFailed, result, context) -> {
+            if (!nodesFailed.isEmpty()) {
+                outcome.set(nodesFailed.get(0));
+                return;
+            }
+            try {
+                outcome.set(result.getResult("call"));
+            } catch (Throwable t) {
+                outcome.set(t);
+            }
+        });
+        return graph.start(10000);
+    }
+
+    private static ApiMethodInfo slowMethod(Bulkhead bulkhead) {
+        ApiMethodInfo method = new ApiMethodInfo();
+        method.methodName = "slow.call";
+        method.bulkhead = bulkhead;
+        return method;
+    }
+
+    @Test
+    public void testConfiguredSettingsOverrideAnnotation() {
+        ServiceIsolationFeature.Config config = new ServiceIsolationFeature.Config(
+            "slow:threads=16, max-concurrent=3; other:timeout=100", 50);
+
+        ServiceIsolationFeature.ConsumerSettings slow = config.consumerSettings(SlowService.class);
+        assertEquals(16, slow.threads);
+        assertEquals(0, slow.queues);
+        assertEquals(2000, slow.timeout);
+        assertEquals("leastactive", slow.loadBalance);
+        assertEquals(3, slow.maxConcurrent);
+        assertTrue(slow.hasThreadPoolSettings());
+
+        ServiceIsolationFeature.ConsumerSettings plain = config.consumerSettings(PlainService.class);
+        assertFalse(plain.hasThreadPoolSettings());
+        assertEquals(0, plain.timeout);
+        assertEquals(50, plain.maxConcurrent);
+    }
+
+    @Test
+    public void testSettingsPrecedence() {
+        // 网关配置 > 注解 > 全局配置
+        ServiceIsolationFeature.Config configured = new ServiceIsolationFeature.Config("slow:timeout=500", 50);
+        ServiceIsolationFeature.ConsumerSettings slow = configured.consumerSettings(SlowService.class);
+        assertEquals(500, slow.timeout);
+        assertEquals(10, slow.maxConcurrent);
+        assertEquals(4, slow.threads);
+
+        ServiceIsolationFeature.Config global = new ServiceIsolationFeature.Config("", 50);
+        assertEquals(10, global.consumerSettings(SlowService.class).maxConcurrent);
+        assertEquals(50, global.consumerSettings(PlainService.class).maxConcurrent);
+
+        ServiceIsolationFeature.Config plainConfigured = new ServiceIsolationFeature.Config("plain:max-concurrent=5", 50);
+        assertEquals(5, plainConfigured.consumerSettings(PlainService.class).maxConcurrent);
+    }
+
+    @Test
+    public void testParseSettings() {
+        ServiceIsolationFeature.ConsumerSettings settings = ServiceIsolationFeature.ConsumerSettings.parse(
+            " threads = 20 ,threadpool=cached, queues=0,timeout=3000,connections=2,loadbalance=random,max-concurrent=50,");
+        assertEquals(20, settings.threads);
+        assertEquals("cached", settings.threadPool);
+        assertEquals(0, settings.queues);
+        assertEquals(3000, settings.timeout);
+        assertEquals(2, settings.connections);
+        assertEquals("random", settings.loadBalance);
+        assertEquals(50, settings.maxConcurrent);
+
+        ServiceIsolationFeature.ConsumerSettings empty = ServiceIsolationFeature.ConsumerSettings.parse("");
+        assertFalse(empty.hasThreadPoolSettings());
+        assertEquals(0, empty.maxConcurrent);
+    }
+
+    @Test
+    public void testParseInvalidSettings() {
+        for (String text : new String[] {"threads", "=20", "threads=abc", "max-concurrent="}) {
+            try {
+                ServiceIsolationFeature.ConsumerSettings.parse(text);
+                fail(text);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownConfigItem() {
+        try {
+            new ServiceIsolationFeature.Config("slow:thread=16", 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("thread"));
+        }
+    }
+
+    @Test
+    public void testConfigWithoutGroupName() {
+        try {
+            new ServiceIsolationFeature.Config("threads=16", 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("threads=16"));
+        }
+    }
+
+    @Test
+    public void testBulkheadCap() {
+        Bulkhead bulkhead = new Bulkhead("slow", 2);
+        assertTrue(bulkhead.tryAcquire());
+        assertTrue(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquire());
+        assertEquals(2, bulkhead.inFlight());
+
+        bulkhead.release();
+        assertTrue(bulkhead.tryAcquire());
+
+        Map<String, Object> metrics = bulkhead.metrics();
+        assertEquals(3L, metrics.get("accepted"));
+        assertEquals(2L, metrics.get("rejected"));
+        assertEquals(2, metrics.get("peak"));
+    }
+
+    @Test
+    public void testBulkheadLowerCapWhileInFlight() {
+        Bulkhead bulkhead = new Bulkhead("slow", 3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bulkhead.tryAcquire());
+        }
+
+        // 调低上限不影响进行中的调用，但在进行中的调用数降到新上限以下之前拒绝新的调用
+        bulkhead.setMaxConcurrent(1);
+        assertEquals(3, bulkhead.inFlight());
+        assertFalse(bulkhead.tryAcquire());
+        bulkhead.release();
+        bulkhead.release();
+        assertFalse(bulkhead.tryAcquire());
+        bulkhead.release();
+        assertTrue(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquire());
+
+        try {
+            bulkhead.setMaxConcurrent(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, bulkhead.getMaxConcurrent());
+        }
+    }
+
+    @Test
+    public void testBulkheadRejectsWhenFull() throws Exception {
+        ServiceIsolationFeature.Config config = new ServiceIsolationFeature.Config("", 0);
+        assertNull(config.bulkhead("slow", 0));
+        Bulkhead bulkhead = config.bulkhead("slow", 2);
+        // 重新加载API时复用同一个隔离舱
+        assertSame(bulkhead, config.bulkhead("slow", 2));
+
+        ApiMethodInfo method = slowMethod(bulkhead);
+        PendingLauncher next = new PendingLauncher();
+
+        AtomicReference<Object> first = new AtomicReference<>();
+        CompletableFuture<Void> firstFinished = launchInNode(method, next, 0, first);
+        AtomicReference<Object> second = new AtomicReference<>();
+        CompletableFuture<Void> secondFinished = launchInNode(method, next, 0, second);
+        assertEquals(2, bulkhead.inFlight());
+
+        AtomicReference<Object> rejected = new AtomicReference<>();
+        launchInNode(method, next, 0, rejected).get(10, TimeUnit.SECONDS);
+        assertTrue(rejected.get() instanceof GatewayException);
+        assertSame(ApiReturnCode.DUBBO_SERVICE_OVERLOADED, ((GatewayException) rejected.get()).getCode());
+        assertEquals(2, next.started.size());
+
+        // 调用结束后释放许可，并将结果传递给工作流
+        next.started.get(0).success("done");
+        firstFinished.get(10, TimeUnit.SECONDS);
+        assertEquals("done", first.get());
+        assertEquals(1, bulkhead.inFlight());
+
+        AtomicReference<Object> third = new AtomicReference<>();
+        CompletableFuture<Void> thirdFinished = launchInNode(method, next, 0, third);
+        next.started.get(1).fail(new IllegalStateException());
+        next.started.get(2).success(null);
+        secondFinished.get(10, TimeUnit.SECONDS);
+        thirdFinished.get(10, TimeUnit.SECONDS);
+        assertTrue(second.get() instanceof IllegalStateException);
+        assertEquals(0, bulkhead.inFlight());
+
+        Map<String, Object> metrics = bulkhead.metrics();
+        assertEquals(3L, metrics.get("accepted"));
+        assertEquals(1L, metrics.get("rejected"));
+        assertEquals(2, metrics.get("peak"));
+    }
+
+    @Test
+    public void testPermitReleasedOnNodeDeadline() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("slow", 1);
+        ApiMethodInfo method = slowMethod(bulkhead);
+        PendingLauncher next = new PendingLauncher();
+
+        // dubbo的回调丢失时由节点的截止时间释放许可
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        launchInNode(method, next, 50, outcome).get(10, TimeUnit.SECONDS);
+        assertTrue(outcome.get() instanceof NodeDeadlineException);
+        assertEquals(0, bulkhead.inFlight());
+
+        assertTrue(bulkhead.tryAcquire());
+        // 迟到的回调不会重复释放许可
+        next.started.get(0).success("late");
+        assertEquals(1, bulkhead.inFlight());
+    }
+}
@@ -0,0 +1,97 @@
+package com.estatetrader.apigw.core.test;
+
+import com.estatetrader.apigw.core.utils.VerifiedTokenCache;
+import com.estatetrader.entity.CallerInfo;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class VerifiedTokenCacheTest {
+
+    private static CallerInfo caller(long uid, long expire) {
+        CallerInfo caller = new CallerInfo();
+        caller.uid = uid;
+        caller.expire = expire;
+        caller.key = new byte[]{1, 2, 3};
+        caller.role = "user";
+        return caller;
+    }
+
+    private static Function<String, CallerInfo> countingParser(AtomicInteger counter, long expire) {
+        return token -> {
+            counter.incrementAndGet();
+            return token.startsWith("bad") ? null : caller(Long.parseLong(token), expire);
+        };
+    }
+
+    @Test
+    public void testHitReturnsIndependentCopy() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, 4, 60_000);
+        AtomicInteger parsed = new AtomicInteger();
+        Function<String, CallerInfo> parser = countingParser(parsed, System.currentTimeMillis() + 60_000);
+
+        CallerInfo first = cache.get("1", parser);
+        first.uid = 0;
+        first.role = null;
+
+        CallerInfo second = cache.get("1", parser);
+        CallerInfo third = cache.get("1", parser);
+        assertEquals(1, parsed.get());
+        assertEquals(1, second.uid);
+        assertEquals("user", second.role);
+        assertNotSame(second, third);
+        assertEquals(2L, cache.metrics().get("hits"));
+        assertEquals(1L, cache.metrics().get("misses"));
+    }
+
+    @Test
+    public void testInvalidAndExpiredTokensAreNotCached() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, 4, 60_000);
+        AtomicInteger parsed = new AtomicInteger();
+
+        assertNull(cache.get("bad", countingParser(parsed, 0)));
+        assertNull(cache.get("bad", countingParser(parsed, 0)));
+        assertEquals(2, parsed.get());
+
+        Function<String, CallerInfo> expired = countingParser(parsed, System.currentTimeMillis() - 1);
+        assertNotNull(cache.get("2", expired));
+        assertNotNull(cache.get("2", expired));
+        assertEquals(4, parsed.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidateUser() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, 4, 60_000);
+        AtomicInteger parsed = new AtomicInteger();
+        Function<String, CallerInfo> parser = countingParser(parsed, 0);
+
+        cache.get("1", parser);
+        cache.get("2", parser);
+        cache.invalidateUser(1);
+        assertEquals(1, cache.size());
+
+        cache.get("1", parser);
+        cache.get("2", parser);
+        assertEquals(3, parsed.get());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCapacityIsBounded() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(8, 1, 60_000);
+        AtomicInteger parsed = new AtomicInteger();
+        Function<String, CallerInfo> parser = countingParser(parsed, 0);
+
+        for (int i = 0; i < 100; i++) {
+            cache.get(String.valueOf(i), parser);
+        }
+        assertEquals(8, cache.size());
+        assertEquals(92L, cache.metrics().get("evictions"));
+    }
+}
@@ -18,4 +18,17 @@ docker run --rm -v "$PWD":"$PWD" -w "$PWD" api-gateway-verifier:2.1 api-jars-new
 echo --- sync the new api jars
 rsync -r --delete -v api-jars-new/ api-jars/
 echo --- reload gateway
-docker-compose restart
\ No newline at end of file
+if [ -n "$GATEWAY_RELOAD_TOKEN" ]; then
+  # 网关启用了gateway.api-jars.hot-reload.enabled时在进程内重新加载，不中断正在处理的请求
+  # 未启用热加载或者加载失败时api-jars已经被替换，必须重启网关使其与目录中的jar包一致
+  if curl -fsS -X POST -H "X-INTERNAL-ENVIRONMENT-TOKEN: $GATEWAY_RELOAD_TOKEN" \
+    "http://localhost:${GATEWAY_PORT:-9000}/apigw/api-jars/reload"; then
+    echo
+    echo --- gateway reloaded in place
+  else
+    echo --- hot reload failed, restart gateway instead
+    docker-compose restart
+  fi
+else
+  docker-compose restart
+fi
\ No newline at end of file